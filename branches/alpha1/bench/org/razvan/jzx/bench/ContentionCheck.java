@@ -0,0 +1,167 @@
+package org.razvan.jzx.bench;
+
+import java.io.FileInputStream;
+
+import org.razvan.jzx.BaseLoader;
+import org.razvan.jzx.BaseSpectrum;
+import org.razvan.jzx.Z80;
+import org.razvan.jzx.v48.Spectrum;
+
+/**
+ * Check the memory and I/O contention of the 48K Spectrum against known
+ * timings.
+ * <P>
+ * Every case runs a single instruction that starts at a given T-State, so
+ * that its memory or I/O access falls at a known position of the contended
+ * window (the first contended T-State of the frame is 14335, where an access
+ * is delayed by 6 T-States, then 5, 4, 3, 2, 1, 0 and 0.) The T-States taken
+ * by the instruction are compared with the reference timings of the real
+ * machine. To build and run it (see {@link Z80Benchmark}):
+ *
+ * <PRE>
+ * java -cp bin org.razvan.jzx.bench.ContentionCheck res/raw/sinclair48.rom
+ * </PRE>
+ */
+public class ContentionCheck {
+	/** Address of the instruction, in uncontended memory. */
+	private static final int CODE = 0x8000;
+
+	/** Address of the instruction, when its fetch is contended. */
+	private static final int CONTENDED_CODE = 0x6000;
+
+	/** The cases, with the T-States expected from the real machine. */
+	private static final Case[] CASES = {
+			// The read is at T+4.
+			new Case("ld a,(hl)", CODE, new int[] { 0x7e }, 0, 0x4000, 14331,
+					7 + 6),
+			new Case("ld a,(hl)", CODE, new int[] { 0x7e }, 0, 0x4000, 14332,
+					7 + 5),
+			new Case("ld a,(hl)", CODE, new int[] { 0x7e }, 0, 0x4000, 14337,
+					7),
+			new Case("ld (hl),a", CODE, new int[] { 0x77 }, 0, 0x5800, 14333,
+					7 + 4),
+			// The read is at T+4, then the internal T-State and the write
+			// are delayed too.
+			new Case("inc (hl)", CODE, new int[] { 0x34 }, 0, 0x4000, 14331,
+					11 + 6 + 5),
+			// The read is at T+16.
+			new Case("ld b,(ix+0)", CODE, new int[] { 0xdd, 0x46, 0x00 }, 0,
+					0x4000, 14319, 19 + 6),
+			// The fetch is at T.
+			new Case("nop", CONTENDED_CODE, new int[] { 0x00 }, 0, 0, 14335,
+					4 + 6),
+			// The I/O cycle is at T+7: N:1, C:3 for the ULA port.
+			new Case("out (fe),a", CODE, new int[] { 0xd3, 0xfe }, 0x00, 0,
+					14327, 11 + 6),
+			new Case("out (fe),a", CODE, new int[] { 0xd3, 0xfe }, 0x00, 0,
+					14330, 11 + 3),
+			new Case("in a,(fe)", CODE, new int[] { 0xdb, 0xfe }, 0x00, 0,
+					14328, 11 + 5),
+			// C:1, C:3 when the high byte of the port is contended.
+			new Case("out (fe),a", CODE, new int[] { 0xd3, 0xfe }, 0x40, 0,
+					14329, 11 + 5),
+			// C:1, C:1, C:1, C:1 for other ports with a contended high byte.
+			new Case("out (ff),a", CODE, new int[] { 0xd3, 0xff }, 0x40, 0,
+					14328, 11 + 6 + 0 + 6 + 0) };
+
+	private static BaseSpectrum s_spectrum;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: ContentionCheck rom");
+			System.exit(1);
+		}
+
+		s_spectrum = new Spectrum();
+		s_spectrum.setThrottled(false);
+		s_spectrum.init(null, new FileInputStream(args[0]));
+
+		int failures = 0;
+		System.out.println("instruction   start   expected  actual");
+		for (int i = 0; i < CASES.length; i++) {
+			final Case c = CASES[i];
+			final int actual = run(c);
+			final boolean ok = (actual == c.m_expected);
+			if (!ok) {
+				failures++;
+			}
+			System.out.println(pad(c.m_name, 14)
+					+ pad(Integer.toString(c.m_start), 8)
+					+ pad(Integer.toString(c.m_expected), 10) + actual
+					+ (ok ? "" : "  FAILED"));
+		}
+		s_spectrum.terminate();
+
+		System.out.println(failures == 0 ? "OK" : failures + " FAILED");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Run the instruction of the given case from its starting T-State and
+	 * return the T-States it took.
+	 */
+	private static int run(Case c) {
+		s_spectrum.reset();
+		s_spectrum.load(new CodeLoader(c));
+		final Z80 cpu = s_spectrum.getCPU();
+		cpu.setTStates(c.m_start);
+		// The budget is reached by the first instruction.
+		cpu.execute(c.m_start + 1);
+		return cpu.getTStates() - c.m_start;
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buffer = new StringBuffer(s);
+		while (buffer.length() < width) {
+			buffer.append(' ');
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * One instruction, placed at the given address and run with the given A
+	 * and HL (also IX) registers from the given T-State.
+	 */
+	private static class Case {
+		final String m_name;
+		final int m_addr;
+		final int[] m_code;
+		final int m_a8;
+		final int m_hl16;
+		final int m_start;
+		final int m_expected;
+
+		Case(String name, int addr, int[] code, int a8, int hl16, int start,
+				int expected) {
+			m_name = name;
+			m_addr = addr;
+			m_code = code;
+			m_a8 = a8;
+			m_hl16 = hl16;
+			m_start = start;
+			m_expected = expected;
+		}
+	}
+
+	/**
+	 * Loader that places the instruction of a case in memory, with interrupts
+	 * disabled.
+	 */
+	private static class CodeLoader extends BaseLoader {
+		CodeLoader(Case c) {
+			super(s_spectrum.getLogger());
+			for (int i = 0; i < c.m_code.length; i++) {
+				m_memory[c.m_addr + i] = (byte) c.m_code[i];
+			}
+			m_pc16 = c.m_addr;
+			m_sp16 = 0xff00;
+			m_af16 = c.m_a8 << 8;
+			m_hl16 = c.m_hl16;
+			m_ix16 = c.m_hl16;
+			m_im2 = 1;
+			m_border = 7;
+			m_iff1a = 0;
+			m_iff1b = 0;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package org.razvan.jzx.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.razvan.jzx.BaseScreen;
+import org.razvan.jzx.BaseSpectrum;
+import org.razvan.jzx.Z80;
+import org.razvan.jzx.Z80Loader;
+import org.razvan.jzx.v48.Spectrum;
+
+/**
+ * Measure the cost of a screen refresh, for screens that change by different
+ * amounts between two refreshes.
+ * <P>
+ * Every workload writes to the screen memory through the CPU, the way a game
+ * would, then refreshes the screen; both the writes and the refresh are timed,
+ * since the cost of tracking the changes is spread between them:
+ * <UL>
+ * <LI><TT>static</TT>: nothing changes.</LI>
+ * <LI><TT>same</TT>: a 16x16 sprite is redrawn with the same contents.</LI>
+ * <LI><TT>sprite</TT>: a 16x16 sprite moves by one pixel.</LI>
+ * <LI><TT>attrs</TT>: all the attributes change.</LI>
+ * <LI><TT>full</TT>: all the pixels and attributes change.</LI>
+ * <LI><TT>game</TT>: one frame of the snapshot is emulated (and timed.)</LI>
+ * </UL>
+ * Every workload is run with both change detection strategies of the screen
+ * (<TT>BaseScreen.TRACK_WRITES</TT> and <TT>TRACK_SHADOW</TT>), and the
+ * results are reported in microseconds per refresh. The <TT>game</TT> workload
+ * shows which strategy suits the given snapshot. To build and run it (see
+ * {@link Z80Benchmark}):
+ *
+ * <PRE>
+ * java -cp bin org.razvan.jzx.bench.ScreenBenchmark res/raw/sinclair48.rom \
+ *     res/raw/knightlore.z80 [workload...]
+ * </PRE>
+ */
+public class ScreenBenchmark {
+	/** Number of refreshes measured by each iteration. */
+	private static final int REFRESHES = 500;
+
+	/** Number of warmup iterations (not reported.) */
+	private static final int WARMUP = 8;
+
+	/** Number of measurement iterations. */
+	private static final int ITERATIONS = 10;
+
+	/** The change detection strategies, in the order in which they are run. */
+	private static final int[] TRACKINGS = { BaseScreen.TRACK_WRITES,
+			BaseScreen.TRACK_SHADOW };
+
+	/** The names of the change detection strategies. */
+	private static final String[] TRACKING_NAMES = { "writes", "shadow" };
+
+	/** The names of the workloads, in the order in which they are run. */
+	private static final String[] WORKLOADS = { "static", "same", "sprite",
+			"attrs", "full", "game" };
+
+	private static String s_snapshot;
+
+	/** The machine on which all the workloads are run. */
+	private static BaseSpectrum s_spectrum;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: ScreenBenchmark rom snapshot.z80 "
+					+ "[workload...]");
+			System.exit(1);
+		}
+		s_snapshot = args[1];
+		String[] workloads = WORKLOADS;
+		if (args.length > 2) {
+			workloads = new String[args.length - 2];
+			System.arraycopy(args, 2, workloads, 0, workloads.length);
+		}
+
+		s_spectrum = new Spectrum();
+		s_spectrum.setThrottled(false);
+		s_spectrum.init(null, new FileInputStream(args[0]));
+
+		System.out.println("workload  tracking  us (mean)    us (min)    us (max)");
+		for (int i = 0; i < workloads.length; i++) {
+			for (int j = 0; j < TRACKINGS.length; j++) {
+				s_spectrum.getScreen().setTracking(TRACKINGS[j]);
+				run(workloads[i], TRACKING_NAMES[j]);
+			}
+		}
+		s_spectrum.terminate();
+	}
+
+	/**
+	 * Run the warmup and measurement iterations for the given workload and
+	 * report the results.
+	 */
+	private static void run(String workload, String tracking)
+			throws IOException {
+		for (int i = 0; i < WARMUP; i++) {
+			iteration(workload);
+		}
+
+		double sum = 0, min = Double.MAX_VALUE, max = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			double us = iteration(workload);
+			sum += us;
+			min = Math.min(min, us);
+			max = Math.max(max, us);
+		}
+
+		System.out.println(pad(workload, 10) + pad(tracking, 10)
+				+ pad(format(sum / ITERATIONS), 13)
+				+ pad(format(min), 12) + format(max));
+	}
+
+	/**
+	 * Load the snapshot, then change the screen and refresh it
+	 * {@link #REFRESHES} times, and return the mean time of a change plus
+	 * refresh, in microseconds.
+	 */
+	private static double iteration(String workload) throws IOException {
+		s_spectrum.reset();
+		Z80Loader loader = new Z80Loader(s_spectrum.getLogger());
+		loader.load(new FileInputStream(s_snapshot));
+		s_spectrum.load(loader);
+		final Z80 cpu = s_spectrum.getCPU();
+		final BaseScreen screen = s_spectrum.getScreen();
+		screen.update();
+
+		long start = System.nanoTime();
+		for (int n = 0; n < REFRESHES; n++) {
+			if ("game".equals(workload)) {
+				s_spectrum.emulate(1);
+			} else {
+				change(cpu, workload, n);
+			}
+			screen.update();
+		}
+		long elapsed = System.nanoTime() - start;
+		return elapsed / (REFRESHES * 1e3);
+	}
+
+	/**
+	 * Change the screen memory for the given workload, before the given
+	 * refresh.
+	 */
+	private static void change(Z80 cpu, String workload, int n) {
+		if ("static".equals(workload)) {
+			return;
+		} else if ("same".equals(workload) || "sprite".equals(workload)) {
+			final int shift = ("same".equals(workload) ? 0 : n & 7);
+			for (int y = 64; y < 80; y++) {
+				final int addr16 = pixelAddr16(96, y);
+				final int pattern = (0xffff00 >>> shift);
+				cpu.write8(addr16, pattern >> 16);
+				cpu.write8(addr16 + 1, (pattern >> 8) & 0xff);
+				cpu.write8(addr16 + 2, pattern & 0xff);
+			}
+		} else if ("attrs".equals(workload)) {
+			for (int i = 0; i < BaseScreen.ATTR_LENGTH; i++) {
+				cpu.write8(BaseScreen.ATTR_START + i, (i + n) & 0x7f);
+			}
+		} else if ("full".equals(workload)) {
+			for (int i = 0; i < BaseScreen.SCREEN_LENGTH; i++) {
+				cpu.write8(BaseScreen.PIXEL_START + i, (i + n) & 0x7f);
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown workload: "
+					+ workload);
+		}
+	}
+
+	/**
+	 * Return the address of the screen byte at the given pixel coordinates.
+	 */
+	private static int pixelAddr16(int x, int y) {
+		return BaseScreen.PIXEL_START + ((y & 0xc0) << 5) + ((y & 0x07) << 8)
+				+ ((y & 0x38) << 2) + (x >> 3);
+	}
+
+	private static String format(double value) {
+		return Double.toString(Math.round(value * 100) / 100.0);
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buffer = new StringBuffer(s);
+		while (buffer.length() < width) {
+			buffer.append(' ');
+		}
+		return buffer.toString();
+	}
+}
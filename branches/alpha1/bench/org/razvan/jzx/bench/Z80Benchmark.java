@@ -0,0 +1,258 @@
+package org.razvan.jzx.bench;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import org.razvan.jzx.BaseLoader;
+import org.razvan.jzx.BaseSpectrum;
+import org.razvan.jzx.Z80Loader;
+import org.razvan.jzx.v48.Spectrum;
+
+/**
+ * Measure the Z80 instruction throughput, per opcode family.
+ * <P>
+ * Every workload is a synthetic instruction stream that exercises one of the
+ * decode paths of the CPU (the main table, CB, ED, DD/FD and DDCB/FDCB), plus a
+ * mixed workload taken from a real snapshot. Each workload is run headless, at
+ * full speed, for a number of warmup and measurement iterations; the results
+ * are reported in emulated T-States per second (MHz) and in bytes allocated per
+ * emulated frame.
+ * <P>
+ * This benchmark runs on a desktop JVM only, so it lives outside of the
+ * Android source tree. To build and run it:
+ *
+ * <PRE>
+ * javac -d bin src/org/razvan/jzx/*.java src/org/razvan/jzx/v48/*.java \
+ *     bench/org/razvan/jzx/bench/*.java
+ * java -cp bin org.razvan.jzx.bench.Z80Benchmark res/raw/sinclair48.rom \
+ *     res/raw/knightlore.z80 [workload...]
+ * </PRE>
+ */
+public class Z80Benchmark {
+	/** Address where the synthetic instruction streams are loaded. */
+	private static final int CODE_START = 0x8000;
+
+	/** Length of the synthetic instruction streams (before the jump back.) */
+	private static final int CODE_LENGTH = 0x800;
+
+	/** Address pointed to by HL, IX and IY in the synthetic workloads. */
+	private static final int DATA_START = 0xc200;
+
+	/** Number of frames emulated by each iteration. */
+	private static final int FRAMES = 250;
+
+	/** Number of warmup iterations (not reported.) */
+	private static final int WARMUP = 8;
+
+	/** Number of measurement iterations. */
+	private static final int ITERATIONS = 10;
+
+	/** Main table: 8-bit ALU, loads, rotates, stack, exchanges, jumps. */
+	private static final int[] MAIN = { 0x00, 0x3c, 0x80, 0x4f, 0x91, 0xa9,
+			0xb0, 0xa1, 0xb8, 0x05, 0x0c, 0x17, 0x1f, 0x07, 0x0f, 0x27, 0x2f,
+			0x37, 0x3f, 0x7e, 0x77, 0x8e, 0x9e, 0xc5, 0xd1, 0x13, 0x1b, 0xd9,
+			0x08, 0xd9, 0x08, 0x18, 0x00, 0x20, 0x00, 0x38, 0x00, 0x06, 0x42,
+			0x78, 0x41 };
+
+	/** CB table: rotates, shifts, BIT/SET/RES on registers and (HL). */
+	private static final int[] CB = { 0xcb, 0x00, 0xcb, 0x11, 0xcb, 0x2a,
+			0xcb, 0x3b, 0xcb, 0x47, 0xcb, 0x7e, 0xcb, 0xc7, 0xcb, 0x87, 0xcb,
+			0x16, 0xcb, 0xfe, 0xcb, 0xb6, 0xcb, 0x0f, 0xcb, 0x30, 0xcb, 0x5d };
+
+	/** ED table: NEG, 16-bit ALU, 16-bit memory loads, I/R, RRD/RLD, I/O. */
+	private static final int[] ED = { 0xed, 0x44, 0xed, 0x4a, 0xed, 0x42,
+			0xed, 0x43, 0x00, 0xc3, 0xed, 0x4b, 0x00, 0xc3, 0xed, 0x47, 0xed,
+			0x57, 0xed, 0x5f, 0xed, 0x67, 0xed, 0x6f, 0xed, 0x56, 0xed, 0x78,
+			0xed, 0x5a, 0xed, 0x52, 0x21, DATA_START & 0xff, DATA_START >> 8 };
+
+	/** DD/FD table: indexed loads, ALU, INC/DEC and stack operations. */
+	private static final int[] XX = { 0xdd, 0x7e, 0x05, 0xdd, 0x77, 0x06,
+			0xdd, 0x86, 0x07, 0xfd, 0x96, 0x08, 0xdd, 0x34, 0x09, 0xfd, 0x35,
+			0x0a, 0xdd, 0x23, 0xdd, 0x2b, 0xdd, 0x7c, 0xfd, 0x7d, 0xdd, 0xe5,
+			0xdd, 0xe1, 0xfd, 0x46, 0x0b, 0xdd, 0x36, 0x0c, 0x55, 0xfd, 0xbe,
+			0x0d, 0xdd, 0xa6, 0x0e };
+
+	/** DDCB/FDCB table: rotates, shifts, BIT/SET/RES on (IX+d)/(IY+d). */
+	private static final int[] XXCB = { 0xdd, 0xcb, 0x05, 0x06, 0xdd, 0xcb,
+			0x06, 0x46, 0xdd, 0xcb, 0x07, 0xc6, 0xdd, 0xcb, 0x08, 0x86, 0xfd,
+			0xcb, 0x09, 0x1e, 0xfd, 0xcb, 0x0a, 0x7e, 0xfd, 0xcb, 0x0b, 0x3e,
+			0xdd, 0xcb, 0x0c, 0x26 };
+
+	/** The names of the workloads, in the order in which they are run. */
+	private static final String[] WORKLOADS = { "main", "cb", "ed", "xx",
+			"xxcb", "mixed" };
+
+	private static String s_snapshot;
+
+	/** The machine on which all the workloads are run. */
+	private static BaseSpectrum s_spectrum;
+
+	/** Bytes allocated while emulating during the last iteration. */
+	private static long s_allocated;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: Z80Benchmark rom snapshot.z80 "
+					+ "[workload...]");
+			System.exit(1);
+		}
+		s_snapshot = args[1];
+		String[] workloads = WORKLOADS;
+		if (args.length > 2) {
+			workloads = new String[args.length - 2];
+			System.arraycopy(args, 2, workloads, 0, workloads.length);
+		}
+
+		s_spectrum = new Spectrum();
+		s_spectrum.setThrottled(false);
+		s_spectrum.init(null, new FileInputStream(args[0]));
+
+		System.out.println("workload      MHz (mean)   MHz (min)   MHz (max)"
+				+ "   bytes/frame");
+		for (int i = 0; i < workloads.length; i++) {
+			run(workloads[i]);
+		}
+		s_spectrum.terminate();
+	}
+
+	/**
+	 * Run the warmup and measurement iterations for the given workload and
+	 * report the results.
+	 */
+	private static void run(String workload) throws IOException {
+		for (int i = 0; i < WARMUP; i++) {
+			iteration(workload);
+		}
+
+		double sum = 0, min = Double.MAX_VALUE, max = 0;
+		long bytes = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			double mhz = iteration(workload);
+			bytes += s_allocated;
+			sum += mhz;
+			min = Math.min(min, mhz);
+			max = Math.max(max, mhz);
+		}
+
+		System.out.println(pad(workload, 10) + pad(format(sum / ITERATIONS), 14)
+				+ pad(format(min), 12) + pad(format(max), 12)
+				+ pad(Long.toString(bytes / ((long) ITERATIONS * FRAMES)), 14));
+	}
+
+	/**
+	 * Load the given workload, emulate {@link #FRAMES} frames and return the
+	 * emulated speed, in MHz.
+	 * <P>
+	 * Only the emulation itself is timed and checked for allocations, not the
+	 * loading of the workload.
+	 */
+	private static double iteration(String workload) throws IOException {
+		s_spectrum.reset();
+		if ("mixed".equals(workload)) {
+			Z80Loader loader = new Z80Loader(s_spectrum.getLogger());
+			loader.load(new FileInputStream(s_snapshot));
+			s_spectrum.load(loader);
+		} else {
+			s_spectrum.load(new StreamLoader(stream(workload)));
+		}
+
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		if ("mixed".equals(workload)) {
+			// Get past the title screen, so that the game is actually running
+			s_spectrum.getKeyboard().keyPressed('0');
+			s_spectrum.emulate(10);
+			s_spectrum.getKeyboard().keyReleased('0');
+			s_spectrum.emulate(FRAMES - 10);
+		} else {
+			s_spectrum.emulate(FRAMES);
+		}
+		long elapsed = System.nanoTime() - start;
+		s_allocated = allocatedBytes() - allocated;
+
+		long tstates = (long) FRAMES * s_spectrum.getTvLines()
+				* s_spectrum.getCyclesLine();
+		return (tstates * 1e3) / elapsed;
+	}
+
+	/**
+	 * Return the instruction stream for the given workload.
+	 */
+	private static int[] stream(String workload) {
+		if ("main".equals(workload)) {
+			return MAIN;
+		} else if ("cb".equals(workload)) {
+			return CB;
+		} else if ("ed".equals(workload)) {
+			return ED;
+		} else if ("xx".equals(workload)) {
+			return XX;
+		} else if ("xxcb".equals(workload)) {
+			return XXCB;
+		}
+		throw new IllegalArgumentException("Unknown workload: " + workload);
+	}
+
+	/**
+	 * Return the number of bytes allocated so far by the current thread, or 0
+	 * if the JVM cannot measure it.
+	 */
+	private static long allocatedBytes() {
+		try {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+					.getThreadMXBean();
+			return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		} catch (Throwable t) {
+			return 0;
+		}
+	}
+
+	private static String format(double value) {
+		return Double.toString(Math.round(value * 100) / 100.0);
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buffer = new StringBuffer(s);
+		while (buffer.length() < width) {
+			buffer.append(' ');
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Loader that places a synthetic instruction stream in memory, repeated
+	 * until it fills {@link Z80Benchmark#CODE_LENGTH} bytes and followed by a
+	 * jump back to its start.
+	 * <P>
+	 * Interrupts are disabled, and HL, IX and IY (and the alternate HL) all
+	 * point to a scratch data area, away from the screen and the code.
+	 */
+	private static class StreamLoader extends BaseLoader {
+		StreamLoader(int[] stream) {
+			super(s_spectrum.getLogger());
+			int addr = CODE_START;
+			while (addr + stream.length <= CODE_START + CODE_LENGTH) {
+				for (int i = 0; i < stream.length; i++) {
+					m_memory[addr++] = (byte) stream[i];
+				}
+			}
+			m_memory[addr++] = (byte) 0xc3;
+			m_memory[addr++] = (byte) (CODE_START & 0xff);
+			m_memory[addr++] = (byte) (CODE_START >> 8);
+
+			m_pc16 = CODE_START;
+			m_sp16 = 0xff00;
+			m_hl16 = DATA_START;
+			m_hl16alt = DATA_START;
+			m_ix16 = DATA_START;
+			m_iy16 = DATA_START + 0x40;
+			m_bc16 = 0x1234;
+			m_de16 = 0x5678;
+			m_im2 = 1;
+			m_border = 7;
+			m_iff1a = 0;
+			m_iff1b = 0;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package com.blogspot.defik.zxandroid;
+
+import org.razvan.jzx.ILogger;
+
+import android.util.Log;
+
+/**
+ * Log messages generated by the emulator to the Android log.
+ * 
+ * @see ILogger
+ */
+public class AndroidLogger implements ILogger {
+	/** The tag used for all the emulator messages. */
+	private static final String TAG = "ZXAndroid";
+
+	/**
+	 * Send the message to the Android log, with a priority that matches the
+	 * channel.
+	 */
+	public void log(int channel, String message) {
+		if (channel == C_ERROR) {
+			Log.e(TAG, message);
+		} else {
+			Log.d(TAG, message);
+		}
+	}
+
+	/**
+	 * Send the exception to the Android log, with a priority that matches the
+	 * channel.
+	 */
+	public void log(int channel, Throwable t) {
+		if (channel == C_ERROR) {
+			Log.e(TAG, t.toString(), t);
+		} else {
+			Log.d(TAG, t.toString(), t);
+		}
+	}
+}
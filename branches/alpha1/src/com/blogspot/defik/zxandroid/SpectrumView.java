@@ -1,17 +1,27 @@
 package com.blogspot.defik.zxandroid;
 
+import org.razvan.jzx.BaseKeyboard;
 import org.razvan.jzx.BaseSpectrum;
+import org.razvan.jzx.FrameStats;
+import org.razvan.jzx.ILogger;
 import org.razvan.jzx.Z80Loader;
+import org.razvan.jzx.v48.Spectrum;
 
 import android.content.Context;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.KeyEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 
+/**
+ * Adapter between the Android view system and the emulator core: it hands the
+ * surface to the core as a frame sink and translates the Android key events
+ * into emulator key codes.
+ */
 public class SpectrumView extends SurfaceView implements SurfaceHolder.Callback {
 	private Context context;
+	private final ILogger logger = new AndroidLogger();
+	private final BaseSpectrum spectrum = new Spectrum();
 
 	public SpectrumView(Context context, AttributeSet attrs) {
 		super(context, attrs);
@@ -19,41 +29,98 @@ public class SpectrumView extends SurfaceView implements SurfaceHolder.Callback
 		bringToFront();
 		setDrawingCacheEnabled(true);
 		requestFocus();
-		BaseSpectrum.setRomIS(context.getResources().openRawResource(
-				R.raw.sinclair48));
 		SurfaceHolder holder = getHolder();
 		holder.addCallback(this);
 		this.context = context;
+		spectrum.setLogger(logger);
+		// Log the frame rate every 5 seconds, to diagnose stutter.
+		FrameStats stats = new FrameStats();
+		stats.setSummaryFrames(250);
+		spectrum.setFrameStats(stats);
 	}
 
 	@Override
 	public boolean onKeyDown(int keyCode, KeyEvent event) {
-		return BaseSpectrum.doKeyDown(keyCode, event);
+		int key = translate(keyCode);
+		if (key >= 0) {
+			spectrum.getKeyboard().keyPressed(key);
+		}
+		return true;
 	}
 
 	@Override
 	public boolean onKeyUp(int keyCode, KeyEvent event) {
-		return BaseSpectrum.doKeyUp(keyCode, event);
+		int key = translate(keyCode);
+		if (key >= 0) {
+			spectrum.getKeyboard().keyReleased(key);
+		}
+		return true;
 	}
 
-	public void surfaceCreated(SurfaceHolder holder) {
-		int scale = 1;
+	/**
+	 * Translate an Android key code into an emulator key code.
+	 * 
+	 * @return The emulator key code, or -1 if the key is not used.
+	 */
+	private static int translate(int keyCode) {
+		if (keyCode >= KeyEvent.KEYCODE_0 && keyCode <= KeyEvent.KEYCODE_9) {
+			return '0' + (keyCode - KeyEvent.KEYCODE_0);
+		}
+		if (keyCode >= KeyEvent.KEYCODE_A && keyCode <= KeyEvent.KEYCODE_Z) {
+			return 'A' + (keyCode - KeyEvent.KEYCODE_A);
+		}
+		switch (keyCode) {
+		case KeyEvent.KEYCODE_SPACE:
+			return ' ';
+		case KeyEvent.KEYCODE_ENTER:
+			return BaseKeyboard.KEY_ENTER;
+		case KeyEvent.KEYCODE_DEL:
+			return BaseKeyboard.KEY_DELETE;
+		case KeyEvent.KEYCODE_DPAD_CENTER:
+			return BaseKeyboard.KEY_FIRE;
+		case KeyEvent.KEYCODE_DPAD_UP:
+			return BaseKeyboard.KEY_UP;
+		case KeyEvent.KEYCODE_DPAD_DOWN:
+			return BaseKeyboard.KEY_DOWN;
+		case KeyEvent.KEYCODE_DPAD_LEFT:
+			return BaseKeyboard.KEY_LEFT;
+		case KeyEvent.KEYCODE_DPAD_RIGHT:
+			return BaseKeyboard.KEY_RIGHT;
+		case KeyEvent.KEYCODE_SHIFT_LEFT:
+		case KeyEvent.KEYCODE_SHIFT_RIGHT:
+			return BaseKeyboard.KEY_CAPS_SHIFT;
+		case KeyEvent.KEYCODE_ALT_LEFT:
+		case KeyEvent.KEYCODE_ALT_RIGHT:
+			return BaseKeyboard.KEY_SYMBOL_SHIFT;
+		case KeyEvent.KEYCODE_COMMA:
+			return ',';
+		case KeyEvent.KEYCODE_MINUS:
+			return '-';
+		case KeyEvent.KEYCODE_PERIOD:
+			return '.';
+		case KeyEvent.KEYCODE_SLASH:
+			return '/';
+		case KeyEvent.KEYCODE_SEMICOLON:
+			return ';';
+		case KeyEvent.KEYCODE_EQUALS:
+			return '=';
+		default:
+			return -1;
+		}
+	}
 
-		BaseSpectrum.setRomIS(context.getResources().openRawResource(
-				R.raw.sinclair48));
-		BaseSpectrum.setScale(scale);
-		BaseSpectrum.init(holder, context.getResources().openRawResource(
-				R.raw.sinclair48));
-		BaseSpectrum.reset();
-		Z80Loader load = new Z80Loader();
+	public void surfaceCreated(SurfaceHolder holder) {
+		spectrum.init(new SurfaceFrameSink(holder), context.getResources()
+				.openRawResource(R.raw.sinclair48));
+		spectrum.reset();
+		Z80Loader load = new Z80Loader(logger);
 		try {
 			load.load(context.getResources().openRawResource(R.raw.knightlore));
 		} catch (Exception e) {
-			Log.e(this.getClass().getName(), "Error loading file: "
-					+ e.toString(), e);
+			logger.log(ILogger.C_ERROR, "Error loading file: " + e.toString());
 		}
-		BaseSpectrum.load(load);
-		new Thread(new BaseSpectrum()).start();
+		spectrum.load(load);
+		new Thread(spectrum).start();
 	}
 
 	public void surfaceChanged(SurfaceHolder holder, int format, int width,
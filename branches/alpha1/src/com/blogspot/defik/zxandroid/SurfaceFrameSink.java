@@ -0,0 +1,159 @@
+package com.blogspot.defik.zxandroid;
+
+import java.nio.ShortBuffer;
+
+import org.razvan.jzx.IFrameSink;
+import org.razvan.jzx.IFrameSink16;
+import org.razvan.jzx.IRegionFrameSink;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.Bitmap.Config;
+import android.view.SurfaceHolder;
+
+/**
+ * Display the frames rendered by the emulator on an Android surface.
+ * <P>
+ * The bitmap is RGB565, so the sink takes the frames in that format
+ * ({@link IFrameSink16}), which are copied into the bitmap as they are.
+ * <P>
+ * Only the region of the frame that changed ({@link IRegionFrameSink}) is
+ * locked on the surface and drawn; the bitmap always holds the whole frame, so
+ * it can also redraw whatever the surface asks for when it has lost the
+ * contents of its buffer.
+ * 
+ * @see IFrameSink
+ */
+public class SurfaceFrameSink implements IFrameSink16, IRegionFrameSink {
+	/** Surface holder of the main surface */
+	private final SurfaceHolder m_holder;
+	/** Bitmap used for rendering */
+	private Bitmap m_bitmap;
+	/** The changed region of the next frame, or null for the whole frame */
+	private Rect m_region;
+	/** The region locked on the surface */
+	private final Rect m_dirty = new Rect();
+	/** The number of rows in the strip bitmap */
+	private static final int STRIP_ROWS = 8;
+	/** Bitmap through which the changed rows of a RGB565 frame are copied */
+	private Bitmap m_strip;
+	/** Canvas that draws the strips into the bitmap */
+	private Canvas m_canvas;
+
+	public SurfaceFrameSink(SurfaceHolder holder) {
+		m_holder = holder;
+	}
+
+	/**
+	 * Set the changed region of the next frame; it is only used for that
+	 * frame.
+	 */
+	public void setDirtyRegion(int left, int top, int right, int bottom) {
+		if (m_region == null) {
+			m_region = new Rect();
+		}
+		m_region.set(left, top, right, bottom);
+	}
+
+	/**
+	 * Copy the changed pixels into the bitmap and draw them onto the surface.
+	 */
+	public void present(int[] pixels, int width, int height) {
+		final Rect region = nextRegion(width, height);
+		if (region.width() <= 0 || region.height() <= 0) {
+			return;
+		}
+		m_bitmap.setPixels(pixels, region.top * width + region.left, width,
+				region.left, region.top, region.width(), region.height());
+		draw(region);
+	}
+
+	/**
+	 * Copy the changed RGB565 pixels into the bitmap and draw them onto the
+	 * surface.
+	 * <P>
+	 * A whole frame is copied with a single bulk copy. The bulk copy cannot
+	 * start in the middle of the bitmap, though, so for a smaller region the
+	 * rows that it spans, which are one range of the buffer, are bulk copied
+	 * a strip of {@link #STRIP_ROWS} rows at a time into a small bitmap, and
+	 * each strip is drawn into place. The pixels stay in RGB565 all the way.
+	 */
+	public void present(ShortBuffer pixels, int width, int height) {
+		final Rect region = nextRegion(width, height);
+		if (region.width() <= 0 || region.height() <= 0) {
+			return;
+		}
+		if (region.height() == height) {
+			m_bitmap.copyPixelsFromBuffer(pixels);
+		} else {
+			if (m_strip == null) {
+				m_strip = Bitmap.createBitmap(width, STRIP_ROWS,
+						Config.RGB_565);
+				m_canvas = new Canvas(m_bitmap);
+			}
+			for (int y = region.top; y < region.bottom; y += STRIP_ROWS) {
+				// The last strip of the frame overlaps the previous one.
+				final int top = Math.min(y, height - STRIP_ROWS);
+				pixels.limit((top + STRIP_ROWS) * width);
+				pixels.position(top * width);
+				m_strip.copyPixelsFromBuffer(pixels);
+				m_canvas.drawBitmap(m_strip, 0, top, null);
+			}
+			pixels.limit(width * height);
+			pixels.position(0);
+		}
+		draw(region);
+	}
+
+	/**
+	 * Return the changed region of the frame being presented, and forget it:
+	 * the next frame is presented whole unless its region is set. The first
+	 * frame is always presented whole, since the bitmap is empty.
+	 */
+	private Rect nextRegion(int width, int height) {
+		if (m_bitmap == null) {
+			m_bitmap = createCompatibleImage(width, height);
+			m_region = null;
+		}
+		final Rect region = m_dirty;
+		if (m_region != null) {
+			region.set(m_region.left, m_region.top, m_region.right,
+					m_region.bottom);
+			m_region = null;
+		} else {
+			region.set(0, 0, width, height);
+		}
+		return region;
+	}
+
+	/**
+	 * Lock the given region of the surface and draw the bitmap into it. The
+	 * surface may grow the region, if it does not have the previous contents
+	 * of the rest of it.
+	 */
+	private void draw(Rect region) {
+		Canvas c = null;
+		try {
+			c = m_holder.lockCanvas(region);
+			if (c != null) {
+				if (region.intersect(0, 0, m_bitmap.getWidth(),
+						m_bitmap.getHeight())) {
+					c.drawBitmap(m_bitmap, region, region, null);
+				}
+			}
+		} finally {
+			if (c != null)
+				m_holder.unlockCanvasAndPost(c);
+		}
+	}
+
+	/**
+	 * Create and return a Bitmap object that is appropriate for this surface.
+	 */
+	private static Bitmap createCompatibleImage(final int width,
+			final int height) {
+		final Bitmap b = Bitmap.createBitmap(width, height, Config.RGB_565);
+		return b;
+	}
+}
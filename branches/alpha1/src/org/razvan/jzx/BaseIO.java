@@ -1,7 +1,5 @@
 package org.razvan.jzx;
 
-import org.razvan.jzx.v48.Spectrum;
-
 /**
  * Base class extended by all I/O components that comprise the emulator.
  * <P>
@@ -23,7 +21,7 @@ import org.razvan.jzx.v48.Spectrum;
  * @see org.razvan.jzx.v48.IO
  * @see org.razvan.jzx.v128.IO
  */
-public class BaseIO {
+public class BaseIO extends BaseComponent {
 	/** The sampling frequency for playing sounds with the speaker or AY chip. */
 	public static final float SAMPLE_FREQ = 48000.0f;
 	/** The size of the buffer used for generating sounds. */
@@ -44,7 +42,7 @@ public class BaseIO {
 	private static final double MICROSECONDS_PER_SAMPLE = 1e6d / SAMPLE_FREQ;
 
 	/** The sound buffer as it is currently being filled and played. */
-	private static byte[] m_buffer = new byte[BaseIO.LINE_BUF_SIZE];
+	private byte[] m_buffer = new byte[BaseIO.LINE_BUF_SIZE];
 	/** The current index into the sound buffer. */
 	protected int m_index;
 
@@ -116,35 +114,44 @@ public class BaseIO {
 	 * This is used to determine if the newly specified border color should
 	 * trigger a screen update.
 	 */
-	private static int m_lastBorderColor = BaseScreen.WHITE;
+	private int m_lastBorderColor = BaseScreen.WHITE;
 
 	/**
 	 * The input port array.
 	 * <P>
 	 * This array is modified by the Z80 I/O instructions.
 	 */
-	private static int m_inPorts[];
+	private int m_inPorts[];
 
 	/**
 	 * The output port array.
 	 * <P>
 	 * This array is modified by the Z80 I/O instructions.
 	 */
-	private static int m_outPorts[];
+	private int m_outPorts[];
 
 	/**
 	 * The keyboard port array.
 	 * <P>
 	 * This array is modified by the Keyboard component directly.
 	 */
-	private static int m_keyPorts[];
+	private int m_keyPorts[];
+
+	private int m_speakerLevel;
 
-	private static int m_speakerLevel;
+	/** The cached CPU component. */
+	protected Z80 m_cpu;
+
+	/** The cached screen component. */
+	protected BaseScreen m_screen;
 
 	/**
 	 * Allocate the port arrays and cache the Z80, memory and screen components.
 	 */
-	public static void init() {
+	public void init(BaseSpectrum spectrum) {
+		super.init(spectrum);
+		m_cpu = spectrum.getCPU();
+		m_screen = spectrum.getScreen();
 
 		m_keyPorts = new int[9];
 		m_inPorts = new int[256];
@@ -154,7 +161,7 @@ public class BaseIO {
 	/**
 	 * Set the port arrays to zero.
 	 */
-	public static void reset() {
+	public void reset() {
 		for (int i = 0; i < m_keyPorts.length; i++) {
 			m_keyPorts[i] = 0xff;
 		}
@@ -172,7 +179,7 @@ public class BaseIO {
 	/**
 	 * Release references to all cached components and port arrays.
 	 */
-	public static  void terminate() {
+	public void terminate() {
 		/*
 		 * if (m_line != null) { m_line.stop(); m_line.release(); m_line = null;
 		 * }
@@ -181,6 +188,9 @@ public class BaseIO {
 		m_keyPorts = null;
 		m_inPorts = null;
 		m_outPorts = null;
+		m_cpu = null;
+		m_screen = null;
+		super.terminate();
 	}
 
 	/**
@@ -188,9 +198,10 @@ public class BaseIO {
 	 * <P>
 	 * The flow of this call is as follows:
 	 * <UL>
+	 * <LI>Delay the CPU if the port contends with the ULA.</LI>
 	 * <LI>If you read from both the joystick and keyboard ports, the joystick
 	 * takes priority.</LI>
-	 * <LI>Read keyboard ports and increment CPU T-states.</LI>
+	 * <LI>Read keyboard ports.</LI>
 	 * <LI>Return random value or memory value for all other unrecognized ports.
 	 * </LI>
 	 * </UL>
@@ -201,7 +212,9 @@ public class BaseIO {
 	 *            The 16-bit I/O input port.
 	 * @return The 8-bit value read from the I/O port.
 	 */
-	public static int in8(final int port16) {
+	public int in8(final int port16) {
+		m_cpu.contendIO(port16);
+
 		// Joystick takes priority over keyboard.
 		if ((port16 & B_KEMPSTON) == 0) {
 			// Bits A5-7 are always 0
@@ -213,7 +226,7 @@ public class BaseIO {
 			// Bit 5 of port #FE is the EAR bit. Its value is either zero
 			// (new Spectrum models) or one (Spectrum Model 2). Bits 6 and 7
 			// are one.
-			int res8 = (Spectrum.getIssue() == BaseSpectrum.ISSUE_2) ? 0xff
+			int res8 = (m_spectrum.getIssue() == BaseSpectrum.ISSUE_2) ? 0xff
 					: 0xdf;
 
 			// The high 8 bits of port #FE is read selects a half-row
@@ -264,20 +277,15 @@ public class BaseIO {
 				res8 &= m_keyPorts[0];
 			}
 
-			// Reading from port #FE is slower than from other ports, since
-			// the ULA provides the result. A normal IN operation takes 11
-			// T-States, while a IN FE operation takes 12 T-States.
-			Z80.addTStates(1);
-
 			return res8;
 		}
 
 		// If the processor reads from a non-existing IN port, nothing goes
 		// on the data bus: you'll either read FF's (idle bus), or screen data
 		// bytes (whenever the ULA is reading the screen memory.)
-		final int vline = BaseSpectrum.getVline();
-		return (vline < 192 ? Z80.read8((BaseScreen.ATTR_START)
-				| ((vline & 0xf8) << 2)) : 0xff);
+		final int vline = m_spectrum.getVline();
+		return (vline < 192 ? m_cpu.getBank(m_screen.getPage())[BaseScreen.PIXEL_LENGTH
+				| ((vline & 0xf8) << 2)] & 0xff : 0xff);
 	}
 
 	/**
@@ -285,9 +293,9 @@ public class BaseIO {
 	 * <P>
 	 * The flow of this call is as follows:
 	 * <UL>
+	 * <LI>Delay the CPU if the port contends with the ULA.</LI>
 	 * <LI>Set new border color, if appropriate.</LI>
 	 * <LI>Output speaker sound, if appropriate.</LI>
-	 * <LI>Insert appropriate delay if ULA is busy with video update.</LI>
 	 * </UL>
 	 * <P>
 	 * See the explicit code comments for specific details.
@@ -297,7 +305,9 @@ public class BaseIO {
 	 * @param val8
 	 *            The 8-bit value to write to the I/O port.
 	 */
-	public static void out(final int port16, final int val8) {
+	public void out(final int port16, final int val8) {
+		m_cpu.contendIO(port16);
+
 		// Border color and speaker control
 		if ((port16 & B_ULA) == 0) {
 			// Lowest three bits are the border color.
@@ -306,7 +316,7 @@ public class BaseIO {
 			// Other bits are unused.
 			if (m_lastBorderColor != (val8 & B_BORDER)) {
 				m_lastBorderColor = val8 & B_BORDER;
-				BaseScreen.setBorderColor(m_lastBorderColor);
+				m_screen.setBorderColor(m_lastBorderColor);
 			}
 
 			/*
@@ -321,17 +331,6 @@ public class BaseIO {
 			} else {
 				m_speakerLevel = 0;
 			}
-
-			// Writing to ULA I/O port causes the ULA to halt the processor. The
-			// processor is halted when you want to access the ULA or low memory
-			// and the ULA is busy reading. The ULA will only read bytes during
-			// 128
-			// of the 224 T states of each screen line, in which case it halts
-			// the
-			// CPU for 4 T-States.
-			if (Spectrum.getVline() < 192 && Z80.getTStates() < 128) {
-				Z80.addTStates(4);
-			}
 		}
 
 		m_outPorts[port16 & 0xff] = val8;
@@ -368,42 +367,42 @@ public class BaseIO {
 	/**
 	 * INport(port16) = INport(port16) OR mask8
 	 */
-	public static void orIn(final int port16, final int mask8) {
+	public void orIn(final int port16, final int mask8) {
 		m_inPorts[port16] |= mask8;
 	}
 
 	/**
 	 * INport(port16) = INport(port16) AND mask8
 	 */
-	public static void andIn(final int port16, final int mask8) {
+	public void andIn(final int port16, final int mask8) {
 		m_inPorts[port16] &= mask8;
 	}
 
 	/**
 	 * OUTport(port16) = OUTport(port16) OR mask8
 	 */
-	public static void orOut(final int port16, final int mask8) {
+	public void orOut(final int port16, final int mask8) {
 		m_outPorts[port16] |= mask8;
 	}
 
 	/**
 	 * OUTport(port16) = OUTport(port16) AND mask8
 	 */
-	public static void andOut(final int port16, final int mask8) {
+	public void andOut(final int port16, final int mask8) {
 		m_outPorts[port16] &= mask8;
 	}
 
 	/**
 	 * KEYport(port16) = KEYport(port16) OR mask8
 	 */
-	public static void orKey(final int port16, final int mask8) {
+	public void orKey(final int port16, final int mask8) {
 		m_keyPorts[port16] |= mask8;
 	}
 
 	/**
 	 * KEYport(port16) = KEYport(port16) AND mask8
 	 */
-	public static void andKey(final int port16, final int mask8) {
+	public void andKey(final int port16, final int mask8) {
 		m_keyPorts[port16] &= mask8;
 	}
 
@@ -411,7 +410,7 @@ public class BaseIO {
 	 * Extracts the saved border color and outputs it to the appropriate I/O
 	 * port.
 	 */
-	public static void load(BaseLoader loader) {
+	public void load(BaseLoader loader) {
 		out(BaseIO.P_ULA, loader.getBorder());
 	}
 }
\ No newline at end of file
@@ -1,15 +1,15 @@
 package org.razvan.jzx;
 
-import android.util.Log;
-import android.view.KeyEvent;
-
-;
-
 /**
  * Base class extended by all Keyboard components that comprise the emulator.
  * <P>
  * There are currently no children of this class, so all keyboard functionality
  * is included in this class.
+ * <P>
+ * Keys are identified by platform independent key codes: printable keys use
+ * their (upper case) ASCII value, the other keys use the <TT>KEY_*</TT>
+ * constants below. The platform front-end is responsible for translating its
+ * own key events into these codes.
  * 
  * @author <A HREF="mailto:razvan.surdulescu@post.harvard.edu">Razvan
  *         Surdulescu</A> (c) 2001 - 2006
@@ -22,22 +22,49 @@ import android.view.KeyEvent;
  *         name for publicity reasons or modify the code without permission from
  *         me.
  */
-public class BaseKeyboard {
+public class BaseKeyboard extends BaseComponent {
+
+	/** Key code for the DELETE key. */
+	public static final int KEY_DELETE = 8;
+
+	/** Key code for the ENTER key. */
+	public static final int KEY_ENTER = 10;
+
+	/** Key code for the CAPS SHIFT key. */
+	public static final int KEY_CAPS_SHIFT = 14;
+
+	/** Key code for the SYMBOL SHIFT key. */
+	public static final int KEY_SYMBOL_SHIFT = 15;
+
+	/** Key code for the cursor/joystick UP key. */
+	public static final int KEY_UP = 17;
+
+	/** Key code for the cursor/joystick DOWN key. */
+	public static final int KEY_DOWN = 18;
+
+	/** Key code for the cursor/joystick LEFT key. */
+	public static final int KEY_LEFT = 19;
+
+	/** Key code for the cursor/joystick RIGHT key. */
+	public static final int KEY_RIGHT = 20;
+
+	/** Key code for the joystick FIRE key (also acts as ENTER.) */
+	public static final int KEY_FIRE = 21;
 
 	/** Joystick UP event = Keypad 8 */
-	protected static final int JOY_UP = KeyEvent.KEYCODE_DPAD_RIGHT;
+	protected static final int JOY_UP = KEY_RIGHT;
 
 	/** Joystick DOWN event = Keypad 2 */
-	protected static final int JOY_DOWN = KeyEvent.KEYCODE_DPAD_LEFT;
+	protected static final int JOY_DOWN = KEY_LEFT;
 
 	/** Joystick LEFT event = Keypad 4 */
-	protected static final int JOY_LEFT = KeyEvent.KEYCODE_DPAD_UP;
+	protected static final int JOY_LEFT = KEY_UP;
 
 	/** Joystick RIGHT event = Keypad 5 */
-	protected static final int JOY_RIGHT = KeyEvent.KEYCODE_DPAD_DOWN;
+	protected static final int JOY_RIGHT = KEY_DOWN;
 
 	/** Joystick FIRE event = Keypad 0 */
-	protected static final int JOY_FIRE = KeyEvent.KEYCODE_DPAD_CENTER;
+	protected static final int JOY_FIRE = KEY_FIRE;
 
 	/**
 	 * Maps ASCII keys to a keyboard row and bit to set/reset.
@@ -91,164 +118,171 @@ public class BaseKeyboard {
 	7FFE-32766     B  N  M SS Space   111 8
 	     D4 D3 D2 D1  D0	
 */	     
-	protected static final int[][] keyTable = new int [256][2];
+	protected static final int[][] keyTable = new int [128][];
 	static {
-		keyTable[KeyEvent.KEYCODE_1] = new int [] {3, 0xfe};
-		keyTable[KeyEvent.KEYCODE_2] = new int [] {3, 0xfd};
-		keyTable[KeyEvent.KEYCODE_3] = new int [] {3, 0xfb};
-		keyTable[KeyEvent.KEYCODE_4] = new int [] {3, 0xf7};
-		keyTable[KeyEvent.KEYCODE_5] = new int [] {3, 0xef};
-		keyTable[KeyEvent.KEYCODE_6] = new int [] {4, 0xef};
-		keyTable[KeyEvent.KEYCODE_7] = new int [] {4, 0xf7};
-		keyTable[KeyEvent.KEYCODE_8] = new int [] {4, 0xfb};
-		keyTable[KeyEvent.KEYCODE_9] = new int [] {4, 0xfd};
-		keyTable[KeyEvent.KEYCODE_0] = new int [] {4, 0xfe};
-		keyTable[KeyEvent.KEYCODE_A] = new int [] {1, 0xfe};
-		keyTable[KeyEvent.KEYCODE_B] = new int [] {7, 0xef};
-		keyTable[KeyEvent.KEYCODE_C] = new int [] {0, 0xf7};
-		keyTable[KeyEvent.KEYCODE_D] = new int [] {1, 0xfb};
-		keyTable[KeyEvent.KEYCODE_E] = new int [] {2, 0xfb};
-		keyTable[KeyEvent.KEYCODE_F] = new int [] {1, 0xf7};
-		keyTable[KeyEvent.KEYCODE_G] = new int [] {1, 0xef};
-		keyTable[KeyEvent.KEYCODE_H] = new int [] {6, 0xef};
-		keyTable[KeyEvent.KEYCODE_I] = new int [] {5, 0xfb};
-		keyTable[KeyEvent.KEYCODE_J] = new int [] {6, 0xf7};
-		keyTable[KeyEvent.KEYCODE_K] = new int [] {6, 0xfb};
-		keyTable[KeyEvent.KEYCODE_L] = new int [] {6, 0xfd};
-		keyTable[KeyEvent.KEYCODE_M] = new int [] {7, 0xfb};
-		keyTable[KeyEvent.KEYCODE_N] = new int [] {7, 0xf7};
-		keyTable[KeyEvent.KEYCODE_O] = new int [] {5, 0xfd};
-		keyTable[KeyEvent.KEYCODE_P] = new int [] {5, 0xfe};
-		keyTable[KeyEvent.KEYCODE_Q] = new int [] {2, 0xfe};
-		keyTable[KeyEvent.KEYCODE_R] = new int [] {2, 0xf7};
-		keyTable[KeyEvent.KEYCODE_S] = new int [] {1, 0xfd};
-		keyTable[KeyEvent.KEYCODE_T] = new int [] {2, 0xef};
-		keyTable[KeyEvent.KEYCODE_U] = new int [] {5, 0xf7};
-		keyTable[KeyEvent.KEYCODE_V] = new int [] {0, 0xef};
-		keyTable[KeyEvent.KEYCODE_W] = new int [] {2, 0xfd};
-		keyTable[KeyEvent.KEYCODE_X] = new int [] {0, 0xfb};
-		keyTable[KeyEvent.KEYCODE_Y] = new int [] {5, 0xef};
-		keyTable[KeyEvent.KEYCODE_Z] = new int [] {0, 0xfd};
-		keyTable[KeyEvent.KEYCODE_SPACE] = new int [] {7, 0xfe};
+		for (int i = 0; i < keyTable.length; i++) {
+			keyTable[i] = new int [] {8, 0x00};
+		}
+		keyTable['1'] = new int [] {3, 0xfe};
+		keyTable['2'] = new int [] {3, 0xfd};
+		keyTable['3'] = new int [] {3, 0xfb};
+		keyTable['4'] = new int [] {3, 0xf7};
+		keyTable['5'] = new int [] {3, 0xef};
+		keyTable['6'] = new int [] {4, 0xef};
+		keyTable['7'] = new int [] {4, 0xf7};
+		keyTable['8'] = new int [] {4, 0xfb};
+		keyTable['9'] = new int [] {4, 0xfd};
+		keyTable['0'] = new int [] {4, 0xfe};
+		keyTable['A'] = new int [] {1, 0xfe};
+		keyTable['B'] = new int [] {7, 0xef};
+		keyTable['C'] = new int [] {0, 0xf7};
+		keyTable['D'] = new int [] {1, 0xfb};
+		keyTable['E'] = new int [] {2, 0xfb};
+		keyTable['F'] = new int [] {1, 0xf7};
+		keyTable['G'] = new int [] {1, 0xef};
+		keyTable['H'] = new int [] {6, 0xef};
+		keyTable['I'] = new int [] {5, 0xfb};
+		keyTable['J'] = new int [] {6, 0xf7};
+		keyTable['K'] = new int [] {6, 0xfb};
+		keyTable['L'] = new int [] {6, 0xfd};
+		keyTable['M'] = new int [] {7, 0xfb};
+		keyTable['N'] = new int [] {7, 0xf7};
+		keyTable['O'] = new int [] {5, 0xfd};
+		keyTable['P'] = new int [] {5, 0xfe};
+		keyTable['Q'] = new int [] {2, 0xfe};
+		keyTable['R'] = new int [] {2, 0xf7};
+		keyTable['S'] = new int [] {1, 0xfd};
+		keyTable['T'] = new int [] {2, 0xef};
+		keyTable['U'] = new int [] {5, 0xf7};
+		keyTable['V'] = new int [] {0, 0xef};
+		keyTable['W'] = new int [] {2, 0xfd};
+		keyTable['X'] = new int [] {0, 0xfb};
+		keyTable['Y'] = new int [] {5, 0xef};
+		keyTable['Z'] = new int [] {0, 0xfd};
+		keyTable[' '] = new int [] {7, 0xfe};
 	
 	}
 
 	/**
 	 * Is the cursor currently in SHIFT mode?
 	 */
-	private static  boolean capsShiftON;
-	private static  boolean symbShiftON;
+	private boolean capsShiftON;
+	private boolean symbShiftON;
+
+	/** The cached I/O component. */
+	private BaseIO m_io;
 
 	/**
 	 * Cache the reference to the I/O component.
 	 */
-	public static void init() {
+	public void init(BaseSpectrum spectrum) {
+		super.init(spectrum);
+		m_io = spectrum.getIO();
 	}
 
 	/**
 	 * Does nothing.
 	 */
-	public static void reset() {
+	public void reset() {
 		// Empty
 	}
 
 	/**
 	 * Releases the cached I/O component reference.
 	 */
-	public static void terminate() {
-
+	public void terminate() {
+		m_io = null;
+		super.terminate();
 	}
 
 	/**
 	 * Modify the I/O ports in accordance with the key that was pressed.
 	 */
-	public static void keyPressed(KeyEvent kevent) {
-		int key = kevent.getKeyCode();
-		Log.e("keyPressed", "Received key code " + key);
+	public void keyPressed(int key) {
+		m_spectrum.getLogger().log(ILogger.C_DEBUG,
+				"Received key code " + key);
 		// Joystick takes precedence.
 		if (key == JOY_UP) {
-			BaseIO.orIn(BaseIO.P_KEMPSTON, BaseIO.B_UP);
+			m_io.orIn(BaseIO.P_KEMPSTON, BaseIO.B_UP);
 		} else if (key == JOY_DOWN) {
-			BaseIO.orIn(BaseIO.P_KEMPSTON, BaseIO.B_DOWN);
+			m_io.orIn(BaseIO.P_KEMPSTON, BaseIO.B_DOWN);
 		} else if (key == JOY_LEFT) {
-			BaseIO.orIn(BaseIO.P_KEMPSTON, BaseIO.B_LEFT);
+			m_io.orIn(BaseIO.P_KEMPSTON, BaseIO.B_LEFT);
 		} else if (key == JOY_RIGHT) {
-			BaseIO.orIn(BaseIO.P_KEMPSTON, BaseIO.B_RIGHT);
+			m_io.orIn(BaseIO.P_KEMPSTON, BaseIO.B_RIGHT);
 		} else if (key == JOY_FIRE) {
-			BaseIO.orIn(BaseIO.P_KEMPSTON, BaseIO.B_FIRE);
+			m_io.orIn(BaseIO.P_KEMPSTON, BaseIO.B_FIRE);
 		}
 
 		switch (key) {
-		case KeyEvent.KEYCODE_DPAD_CENTER:
-		case KeyEvent.KEYCODE_ENTER:
-			BaseIO.andKey(6, 0xfe);
+		case KEY_FIRE:
+		case KEY_ENTER:
+			m_io.andKey(6, 0xfe);
 			break;
-		case KeyEvent.KEYCODE_DEL:
-			BaseIO.andKey(0, 0xfe);
-			BaseIO.andKey(4, 0xfe);
+		case KEY_DELETE:
+			m_io.andKey(0, 0xfe);
+			m_io.andKey(4, 0xfe);
 			break;
-		case KeyEvent.KEYCODE_DPAD_RIGHT:
+		case KEY_RIGHT:
 			if (!capsShiftON) {
-				BaseIO.andKey(0, 0xfe);
+				m_io.andKey(0, 0xfe);
 			}
-			BaseIO.andKey(4, 0xf7);
+			m_io.andKey(4, 0xf7);
 			break;
-		case KeyEvent.KEYCODE_DPAD_LEFT:
+		case KEY_LEFT:
 			if (!capsShiftON) {
-				BaseIO.andKey(0, 0xfe);
+				m_io.andKey(0, 0xfe);
 			}
-			BaseIO.andKey(4, 0xef);
+			m_io.andKey(4, 0xef);
 			break;
-		case KeyEvent.KEYCODE_DPAD_UP:
+		case KEY_UP:
 			if (!capsShiftON) {
-				BaseIO.andKey(0, 0xfe);
+				m_io.andKey(0, 0xfe);
 			}
-			BaseIO.andKey(3, 0xef);
+			m_io.andKey(3, 0xef);
 			break;
-		case KeyEvent.KEYCODE_DPAD_DOWN:
+		case KEY_DOWN:
 			if (!capsShiftON) {
-				BaseIO.andKey(0, 0xfe);
+				m_io.andKey(0, 0xfe);
 			}
-			BaseIO.andKey(4, 0xfb);
+			m_io.andKey(4, 0xfb);
 			break;
-		case KeyEvent.KEYCODE_COMMA:
-			BaseIO.andKey(7, 0xfd);
-			BaseIO.andKey(7, 0xf7);
+		case ',':
+			m_io.andKey(7, 0xfd);
+			m_io.andKey(7, 0xf7);
 			break;
-		case KeyEvent.KEYCODE_MINUS:
-			BaseIO.andKey(7, 0xfd);
-			BaseIO.andKey(6, 0xf7);
+		case '-':
+			m_io.andKey(7, 0xfd);
+			m_io.andKey(6, 0xf7);
 			break;
-		case KeyEvent.KEYCODE_PERIOD:
-			BaseIO.andKey(7, 0xfd);
-			BaseIO.andKey(7, 0xfb);
+		case '.':
+			m_io.andKey(7, 0xfd);
+			m_io.andKey(7, 0xfb);
 			break;
-		case KeyEvent.KEYCODE_SLASH:
-			BaseIO.andKey(7, 0xfd);
-			BaseIO.andKey(0, 0xef);
+		case '/':
+			m_io.andKey(7, 0xfd);
+			m_io.andKey(0, 0xef);
 			break;
-		case KeyEvent.KEYCODE_SEMICOLON:
+		case ';':
 			/*
-			 * BaseIO.andKey(7, 0xfd); BaseIO.andKey(5, 0xfd);
+			 * m_io.andKey(7, 0xfd); m_io.andKey(5, 0xfd);
 			 */
 			break;
-		case KeyEvent.KEYCODE_EQUALS:
+		case '=':
 			/*
-			 * BaseIO.andKey(7, 0xfd); BaseIO.andKey(6, 0xfd);
+			 * m_io.andKey(7, 0xfd); m_io.andKey(6, 0xfd);
 			 */
 			break;
-		case KeyEvent.KEYCODE_SHIFT_LEFT:
-		case KeyEvent.KEYCODE_SHIFT_RIGHT:
-			BaseIO.andKey(0, 0xfe);
+		case KEY_CAPS_SHIFT:
+			m_io.andKey(0, 0xfe);
 			break;
-		case KeyEvent.KEYCODE_ALT_LEFT:
-		case KeyEvent.KEYCODE_ALT_RIGHT:
-			BaseIO.andKey(7, 0xfd);
+		case KEY_SYMBOL_SHIFT:
+			m_io.andKey(7, 0xfd);
 			break;
 
 		default:
-			if (key < 128) {
-				BaseIO.andKey(keyTable[key][0], keyTable[key][1]);
+			if (key >= 0 && key < keyTable.length) {
+				m_io.andKey(keyTable[key][0], keyTable[key][1]);
 			}
 		break;
 		}
@@ -257,104 +291,102 @@ public class BaseKeyboard {
 	/**
 	 * Modify the I/O ports in accordance with the key that was released.
 	 */
-	public static void keyReleased(KeyEvent kevent) {
-		int key = kevent.getKeyCode();
-		Log.e("keyReleased", "Received key code " + key);
+	public void keyReleased(int key) {
+		m_spectrum.getLogger().log(ILogger.C_DEBUG,
+				"Released key code " + key);
 		// Joystick takes precedence.
 		if (key == JOY_UP) {
-			BaseIO.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_UP);
+			m_io.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_UP);
 		} else if (key == JOY_DOWN) {
-			BaseIO.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_DOWN);
+			m_io.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_DOWN);
 		} else if (key == JOY_LEFT) {
-			BaseIO.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_LEFT);
+			m_io.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_LEFT);
 		} else if (key == JOY_RIGHT) {
-			BaseIO.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_RIGHT);
+			m_io.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_RIGHT);
 		} else if (key == JOY_FIRE) {
-			BaseIO.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_FIRE);
+			m_io.andIn(BaseIO.P_KEMPSTON, ~BaseIO.B_FIRE);
 		}
 		switch (key) {
-		case KeyEvent.KEYCODE_SHIFT_LEFT:
-		case KeyEvent.KEYCODE_SHIFT_RIGHT:
+		case KEY_CAPS_SHIFT:
 			if (capsShiftON)
-				BaseIO.orKey(0, 0x01);
+				m_io.orKey(0, 0x01);
 			if (symbShiftON) {
-				BaseIO.orKey(7, 0x02);
+				m_io.orKey(7, 0x02);
 				symbShiftON = !symbShiftON;
 			}
 			capsShiftON = !capsShiftON;
 			break;
-		case KeyEvent.KEYCODE_ALT_LEFT:
-		case KeyEvent.KEYCODE_ALT_RIGHT:
+		case KEY_SYMBOL_SHIFT:
 			if (symbShiftON)
-				BaseIO.orKey(7, 0x02);
+				m_io.orKey(7, 0x02);
 			if (capsShiftON) { // turn off caps shift (we're in the E mode) 
-				BaseIO.orKey(0, 0x01);
+				m_io.orKey(0, 0x01);
 				capsShiftON = !capsShiftON;
 			}
 			symbShiftON = !symbShiftON;
 			break;			
 			
-		case KeyEvent.KEYCODE_ENTER:
-		case KeyEvent.KEYCODE_DPAD_CENTER:			
-			BaseIO.orKey(6, 0x01);
+		case KEY_ENTER:
+		case KEY_FIRE:			
+			m_io.orKey(6, 0x01);
 			break;
-		case KeyEvent.KEYCODE_DEL:
-			BaseIO.orKey(0, 0x01);
-			BaseIO.orKey(4, 0x01);
+		case KEY_DELETE:
+			m_io.orKey(0, 0x01);
+			m_io.orKey(4, 0x01);
 			break;
-		case KeyEvent.KEYCODE_DPAD_LEFT:
+		case KEY_LEFT:
 			if (!capsShiftON) {
-				BaseIO.orKey(0, 0x01);
+				m_io.orKey(0, 0x01);
 			}
-			BaseIO.orKey(4, 0x08);
+			m_io.orKey(4, 0x08);
 			break;
-		case KeyEvent.KEYCODE_DPAD_RIGHT:
+		case KEY_RIGHT:
 			if (!capsShiftON) {
-				BaseIO.orKey(0, 0x01);
+				m_io.orKey(0, 0x01);
 			}
-			BaseIO.orKey(4, 0x10);
+			m_io.orKey(4, 0x10);
 			break;
-		case KeyEvent.KEYCODE_DPAD_UP:
+		case KEY_UP:
 			if (!capsShiftON) {
-				BaseIO.orKey(0, 0x01);
+				m_io.orKey(0, 0x01);
 			}
-			BaseIO.orKey(3, 0x10);
+			m_io.orKey(3, 0x10);
 			break;
-		case KeyEvent.KEYCODE_DPAD_DOWN:
+		case KEY_DOWN:
 			if (!capsShiftON) {
-				BaseIO.orKey(0, 0x01);
+				m_io.orKey(0, 0x01);
 			}
-			BaseIO.orKey(4, 0x04);
+			m_io.orKey(4, 0x04);
 			break;
-		case KeyEvent.KEYCODE_COMMA:
-			BaseIO.orKey(7, ~0xf7);
-			BaseIO.orKey(7, 0x02);
+		case ',':
+			m_io.orKey(7, ~0xf7);
+			m_io.orKey(7, 0x02);
 			break;
-		case KeyEvent.KEYCODE_MINUS:
-			BaseIO.orKey(6, ~0xf7);
-			BaseIO.orKey(7, 0x02);
+		case '-':
+			m_io.orKey(6, ~0xf7);
+			m_io.orKey(7, 0x02);
 			break;
-		case KeyEvent.KEYCODE_PERIOD:
-			BaseIO.orKey(7, ~0xfb);
-			BaseIO.orKey(7, 0x02);
+		case '.':
+			m_io.orKey(7, ~0xfb);
+			m_io.orKey(7, 0x02);
 			break;
-		case KeyEvent.KEYCODE_SLASH:
-			BaseIO.orKey(0, ~0xef);
-			BaseIO.orKey(7, 0x02);
+		case '/':
+			m_io.orKey(0, ~0xef);
+			m_io.orKey(7, 0x02);
 			break;
-		case KeyEvent.KEYCODE_SEMICOLON:
+		case ';':
 			/*
-			 * BaseIO.orKey(5, ~0xfd); BaseIO.orKey(7, 0xfd);
+			 * m_io.orKey(5, ~0xfd); m_io.orKey(7, 0xfd);
 			 */
 			break;
-		case KeyEvent.KEYCODE_EQUALS:
+		case '=':
 			/*
-			 * BaseIO.orKey(6, ~0xfd); BaseIO.orKey(7, 0xfd);
+			 * m_io.orKey(6, ~0xfd); m_io.orKey(7, 0xfd);
 			 */
 			break;
 		default:
-			if (key < 128) {
-				BaseIO.orKey(keyTable[key][0], ~keyTable[key][1]);
+			if (key >= 0 && key < keyTable.length) {
+				m_io.orKey(keyTable[key][0], ~keyTable[key][1]);
 			}
 
 		break;
@@ -366,23 +398,23 @@ public class BaseKeyboard {
 	 * <P>
 	 * No keyboard state is saved, so there is nothing to load.
 	 */
-	public static void load(BaseLoader loader) {
+	public void load(BaseLoader loader) {
 	}
 
-	public static boolean isCapsShiftON() {
+	public boolean isCapsShiftON() {
 		return capsShiftON;
 	}
 
-	public static void setCapsShiftON(boolean capsShiftON) {
-		BaseKeyboard.capsShiftON = capsShiftON;
+	public void setCapsShiftON(boolean capsShiftON) {
+		this.capsShiftON = capsShiftON;
 	}
 
-	public static boolean isSymbShiftON() {
+	public boolean isSymbShiftON() {
 		return symbShiftON;
 	}
 
-	public static void setSymbShiftON(boolean symbShiftON) {
-		BaseKeyboard.symbShiftON = symbShiftON;
+	public void setSymbShiftON(boolean symbShiftON) {
+		this.symbShiftON = symbShiftON;
 	}
 
 	
@@ -56,12 +56,19 @@ public class BaseLoader {
 	protected int m_last0xfffd;
 
 	protected InputStream m_is;
+	/** The logger used for reporting problems with the loaded data. */
+	protected ILogger m_logger;
 	/**
 	 * "headless" memory object that stores the memory image.
 	 * 
 	 * @see BaseMemory
 	 */
 	protected byte [] m_memory;
+	/**
+	 * The 16K RAM banks of a 128k snapshot, indexed by bank number (null
+	 * for the banks that were not loaded.)
+	 */
+	protected byte [][] m_banks = new byte [8][];
 
 	public int getAF16() {
 		return m_af16;
@@ -157,10 +164,26 @@ public class BaseLoader {
 	}
 
 	/**
-	 * Setup the logger and url, allocate and initialize the "headless" memory
+	 * Accessor for the given RAM bank of a 128k snapshot, or null if the bank
+	 * was not loaded.
+	 */
+	public byte [] getBank(int bank) {
+		return m_banks[bank];
+	}
+
+	/**
+	 * Setup the logger, allocate and initialize the "headless" memory object.
+	 */
+	public BaseLoader(ILogger logger) {
+		m_logger = logger;
+		m_memory = new byte [0x10000];
+	}
+
+	/**
+	 * Setup a console logger, allocate and initialize the "headless" memory
 	 * object.
 	 */
 	public BaseLoader() {
-		m_memory = new byte [0x10000];
+		this(new ConsoleLogger());
 	}
 }
@@ -1,24 +1,20 @@
 package org.razvan.jzx;
 
-import org.razvan.jzx.v48.Spectrum;
-
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Bitmap.Config;
-import android.util.Log;
-import android.view.SurfaceHolder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 
 /**
  * Base class extended by all screen components that comprise the emulator.
  * <P>
- * Note: BaseScreen must extend Canvas, so it does not extend BaseComponent,
- * although it (correctly) should. Instead, it implements all the BaseComponent
- * methods explicitly.
- * <P>
  * This class provides basic, common screen functionality for the screen
- * subsystem of the emulator. Specific methods are overriden or implemented so
- * as to comply with the idiosyncracies of various JVM versions. There are no
- * differences between the Spectrum 48k and the Spectrum 128k models.
+ * subsystem of the emulator. The screen is rendered into an array of RGB
+ * values, which is then handed over to an {@link IFrameSink} for display; if
+ * the sink is an {@link IFrameSink16}, the screen is rendered into a buffer of
+ * RGB565 values instead. If the sink is an {@link IRegionFrameSink}, it is told
+ * which region of the frame changed, so that it can present only that region.
+ * There are no differences between the Spectrum 48k and the Spectrum 128k
+ * models.
  * 
  * @author <A HREF="mailto:razvan.surdulescu@post.harvard.edu">Razvan
  *         Surdulescu</A> (c) 2001 - 2006
@@ -31,7 +27,7 @@ import android.view.SurfaceHolder;
  *         name for publicity reasons or modify the code without permission from
  *         me.
  */
-public class BaseScreen implements Runnable {
+public class BaseScreen extends BaseComponent implements Runnable {
 	/** Memory address where the screen area starts. */
 	public static final int PIXEL_START = 16384;
 	/** Number of character rows on the screen. */
@@ -53,6 +49,24 @@ public class BaseScreen implements Runnable {
 	public static final int SCREEN_START = 0x4000;
 	public static final int SCREEN_END = 0x4000 + ((256 / 8) * 192) + (32 * 24);;
 
+	/**
+	 * Change detection: every CPU write to the screen memory touches the
+	 * byte it writes (see {@link #screenTouch} and {@link #attrTouch}.)
+	 */
+	public static final int TRACK_WRITES = 0;
+	/**
+	 * Change detection: the screen memory is compared against a shadow copy
+	 * when the screen is rendered, and the CPU writes carry no screen hooks.
+	 */
+	public static final int TRACK_SHADOW = 1;
+
+	/**
+	 * The percentage of the screen area above which the changed region is
+	 * presented as the whole frame: a single full upload then costs about as
+	 * much as the partial one.
+	 */
+	public static final int FULL_FRAME_PERCENT = 50;
+
 	/** Width of border area, in pixels. */
 	public static final int BORDER_PIXELS = 30;
 	/** The Spectrum index of the color "black" */
@@ -96,10 +110,6 @@ public class BaseScreen implements Runnable {
 	/** Ink attribute mask. */
 	public static final int INK = 0x07;
 	private static int CHARSET_ADDR = 15616;
-	/** The screen scaling factor. */
-	private static int m_scale = 1;
-	/** The screen width, in pixels (uses m_scale.) */
-	private static int m_screenWidth = X_PIXELS * m_scale;
 	/**
 	 * An array of Color objects corresponding to the color indices above.
 	 */
@@ -140,79 +150,159 @@ public class BaseScreen implements Runnable {
 	0xffff00, /* bright yellow */
 	0xffffff /* bright white */
 	};
+	/**
+	 * The RGB565 values corresponding to {@link #s_rgbPalette}.
+	 */
+	private static final int[] s_rgb565Palette = new int[16];
+	static {
+		for (int i = 0; i < s_rgb565Palette.length; i++) {
+			final int rgb = s_rgbPalette[i];
+			s_rgb565Palette[i] = ((rgb >> 8) & 0xf800) | ((rgb >> 5) & 0x07e0)
+					| ((rgb >> 3) & 0x001f);
+		}
+	}
+	/**
+	 * Expands every pixel byte into 8 masks, one per pixel from left to
+	 * right: -1 for an ink pixel, 0 for a paper pixel.
+	 */
+	private static final int[] s_pixelMasks = new int[256 * 8];
+	static {
+		for (int pix8 = 0; pix8 < 256; pix8++) {
+			for (int i = 0; i < 8; i++) {
+				s_pixelMasks[(pix8 << 3) + i] = ((pix8 & (0x80 >> i)) != 0 ? -1
+						: 0);
+			}
+		}
+	}
 	/** Is the flash phase normal or inverted? */
-	private static boolean m_flashPhase;
+	private boolean m_flashPhase;
+	/**
+	 * Maps every attribute value to its RGB ink color, in the normal (index
+	 * 0) and the inverted (index 1) flash phase.
+	 */
+	private int[][] m_inkRGB;
 	/**
-	 * Maps a given attribute value to its corresponding ink value, to avoid
-	 * having to decode it explicitly.
+	 * Maps every attribute value to its RGB paper color, in the normal
+	 * (index 0) and the inverted (index 1) flash phase.
 	 */
-	private static int[] m_inkTable;
+	private int[][] m_paperRGB;
+	/** The ink colors of the current flash phase. */
+	private int[] m_ink;
+	/** The paper colors of the current flash phase. */
+	private int[] m_paper;
+	/** The number of bits in a word of the dirty bitsets. */
+	private static final int WORD_BITS = 64;
+	/** The number of words in the pixel dirty bitset. */
+	private static final int PIXEL_WORDS = PIXEL_LENGTH / WORD_BITS;
+	/** The number of words in the attribute dirty bitset. */
+	private static final int ATTR_WORDS = ATTR_LENGTH / WORD_BITS;
 	/**
-	 * Maps a given attribute value to its corresponding paper value, to avoid
-	 * having to decode it explicitly.
+	 * Bitset that indicates whether a particular pixel byte has been changed:
+	 * bit <TT>(offset &amp; 63)</TT> of word <TT>(offset &gt;&gt; 6)</TT>.
 	 */
-	private static int[] m_paperTable;
+	private long[] m_pixelDirty;
 	/**
-	 * Bit vector that indicates whether a particular memory byte has been
-	 * changed.
+	 * Summary of {@link #m_pixelDirty}: bit <TT>w</TT> is set if word
+	 * <TT>w</TT> may have bits set, so that the words of the unchanged rows
+	 * are not even read.
 	 */
-	private static boolean[] m_screenChanged;
+	private long[] m_pixelSummary;
+	/**
+	 * Bitset that indicates whether a particular attribute byte has been
+	 * changed; the attributes are expanded into the pixel bytes they color
+	 * when the screen is rendered.
+	 */
+	private long[] m_attrDirty;
+	/** The change detection strategy: TRACK_WRITES or TRACK_SHADOW. */
+	private int m_tracking = TRACK_WRITES;
+	/**
+	 * The contents of the screen memory when it was last compared, 8 bytes
+	 * per long (TRACK_SHADOW only.)
+	 */
+	private long[] m_shadow;
+	/** The screen bank that {@link #m_shadowView} reads. */
+	private byte[] m_shadowBank;
+	/** A little-endian view of the screen bank, to read it 8 bytes at a time. */
+	private ByteBuffer m_shadowView;
 	/** If true, the screen needs repainting. */
-	protected static boolean m_screenDirty;
+	protected boolean m_screenDirty;
 	/** If true, the border needs repainting. */
-	private static boolean m_borderDirty;
-	/** Surface holder of the main surface */
-	private static SurfaceHolder surfaceHolder;
+	private boolean m_borderDirty;
+	/** The sink that displays the rendered frames (may be null.) */
+	private IFrameSink frameSink;
 	/**
-	 * The physical memory page from which data starts.
+	 * The RAM bank from which the screen data is displayed: bank 5 (mapped at
+	 * 0x4000), or bank 7 when the 128k shows its shadow screen.
 	 */
-	public static int M_PAGE = 0x4000;
+	public int M_PAGE = Z80.BANK_SCREEN;
 	/** The current cursor position used by {@link #print(char, int)}. */
-	private static int m_cursorX = 0, m_cursorY = 0;
+	private int m_cursorX = 0, m_cursorY = 0;
 	/** screen buffer - screen is held here and rendered on demand */
-	private static int[] screenBuffer = new int[X_PIXELS * Y_PIXELS];
-	/** Bitmap used for rendering */
-	private static Bitmap screenBitmap;
-	private static int m_pix8Width;
-
-	static {
-		screenBitmap = createCompatibleImage(X_PIXELS, Y_PIXELS);
-		m_screenChanged = new boolean[SCREEN_LENGTH];
-	}
+	private int[] screenBuffer;
+	/**
+	 * The RGB565 screen buffer, used instead of {@link #screenBuffer} when the
+	 * frame sink is an {@link IFrameSink16}.
+	 */
+	private short[] m_screenBuffer16;
+	/** The reusable buffer through which m_screenBuffer16 is presented. */
+	private ShortBuffer m_screenView16;
+	/** The cached CPU component. */
+	private Z80 m_cpu;
 
 	/**
 	 * <UL>
-	 * <LI>Set cached pointers to the BaseSpectrum and BaseMemory objects.</LI>
-	 * <LI>Allocate pixel modification bit vector.</LI>
-	 * <LI>Allocate ink and paper tables.</LI>
-	 * <LI>Set the size of the Canvas object, and add it to the Container.</LI>
-	 * <LI>Add the keyboard object as the KeyListener.</LI>
-	 * <LI>Set the scale.</LI>
+	 * <LI>Set cached pointers to the BaseSpectrum and Z80 objects.</LI>
+	 * <LI>Allocate pixel modification bit vector and screen buffer.</LI>
+	 * <LI>Build the ink and paper color tables of both flash phases.</LI>
+	 * <LI>Cache the frame sink.</LI>
 	 * </UL>
 	 */
-	public static void init(final SurfaceHolder hodler) {
-		m_inkTable = new int[128];
-		m_paperTable = new int[128];
-		surfaceHolder = hodler;
-		// Build hash tables to speed up paint()
-		for (int i = 0; i < 2; i++) {
-			for (int j = 0; j < 8; j++) {
-				for (int k = 0; k < 8; k++) {
-					m_inkTable[(i << 6) + (j << 3) + k] = k + (i << 3);
-					m_paperTable[(i << 6) + (j << 3) + k] = j + (i << 3);
-				}
-			}
+	public void init(BaseSpectrum spectrum) {
+		super.init(spectrum);
+		m_cpu = spectrum.getCPU();
+		m_pixelDirty = new long[PIXEL_WORDS];
+		m_pixelSummary = new long[(PIXEL_WORDS + WORD_BITS - 1) / WORD_BITS];
+		m_attrDirty = new long[ATTR_WORDS];
+		m_shadow = new long[SCREEN_LENGTH / 8];
+		m_shadowBank = null;
+		m_tracking = TRACK_WRITES;
+		m_inkRGB = new int[2][256];
+		m_paperRGB = new int[2][256];
+		frameSink = spectrum.getFrameSink();
+		final int[] palette;
+		if (frameSink instanceof IFrameSink16) {
+			screenBuffer = null;
+			m_screenBuffer16 = new short[X_PIXELS * Y_PIXELS];
+			m_screenView16 = ShortBuffer.wrap(m_screenBuffer16);
+			palette = s_rgb565Palette;
+		} else {
+			screenBuffer = new int[X_PIXELS * Y_PIXELS];
+			m_screenBuffer16 = null;
+			m_screenView16 = null;
+			palette = s_rgbPalette;
+		}
+		// Build the color tables to speed up draw8()
+		for (int attr8 = 0; attr8 < 256; attr8++) {
+			final int bright = ((attr8 & BRIGHT) != 0 ? 8 : 0);
+			m_inkRGB[0][attr8] = palette[bright | (attr8 & INK)];
+			m_paperRGB[0][attr8] = palette[bright | ((attr8 & PAPER) >> 3)];
+			// The flash attributes are inverted in the second phase.
+			final int flash8 = ((attr8 & FLASH) != 0 ? attr8 ^ 0x3f : attr8);
+			m_inkRGB[1][attr8] = palette[bright | (flash8 & INK)];
+			m_paperRGB[1][attr8] = palette[bright | ((flash8 & PAPER) >> 3)];
 		}
-		M_PAGE = 0x4000;
-		m_pix8Width = 8 * m_scale;
+		m_flashPhase = false;
+		m_ink = m_inkRGB[0];
+		m_paper = m_paperRGB[0];
+		M_PAGE = Z80.BANK_SCREEN;
 	}
 
 	/**
 	 * Touch all the screen bits in order to force the initial refresh.
 	 */
-	public static void reset() {
-		for (int i = 0; i < PIXEL_LENGTH; i++) {
-			m_screenChanged[i] = true;
+	public void reset() {
+		for (int w = 0; w < PIXEL_WORDS; w++) {
+			markWord(w, -1L);
 		}
 		m_screenDirty = true;
 		m_borderDirty = true;
@@ -221,46 +311,91 @@ public class BaseScreen implements Runnable {
 	/**
 	 * Release all cached pointers, set all the tables to null.
 	 */
-	public static void terminate() {
-		m_screenChanged = null;
-		m_inkTable = null;
-		m_paperTable = null;
-		screenBitmap = null;
+	public void terminate() {
+		m_pixelDirty = null;
+		m_pixelSummary = null;
+		m_attrDirty = null;
+		m_shadow = null;
+		m_shadowBank = null;
+		m_shadowView = null;
+		m_inkRGB = null;
+		m_paperRGB = null;
+		m_ink = null;
+		m_paper = null;
+		frameSink = null;
 		screenBuffer = null;
+		m_screenBuffer16 = null;
+		m_screenView16 = null;
+		m_cpu = null;
+		super.terminate();
 	}
 
 	/**
-	 * Trivial accessor to the physical memory page for the screen data.
+	 * Trivial accessor to the RAM bank for the screen data.
 	 */
-	public static int getPage() {
+	public int getPage() {
 		return M_PAGE;
 	}
 
 	/**
-	 * Trivial mutator for the physical memory page for the screen data.
+	 * Mutator for the RAM bank for the screen data.
+	 * <P>
+	 * Switching to a different bank touches the whole screen, so that it is
+	 * redrawn from the new bank next time it is rendered.
+	 */
+	public void setPage(int page) {
+		if (M_PAGE != page) {
+			M_PAGE = page;
+			reset();
+		}
+	}
+
+	/**
+	 * Trivial accessor for the change detection strategy: TRACK_WRITES or
+	 * TRACK_SHADOW.
 	 */
-	public static void setPage(int page) {
-		M_PAGE = page;
+	public int getTracking() {
+		return m_tracking;
+	}
+
+	/**
+	 * Set the change detection strategy, and touch the whole screen.
+	 * <P>
+	 * {@link #TRACK_WRITES} costs a little on every CPU write to the screen
+	 * memory, and redraws every byte that is written, even with the same
+	 * value. {@link #TRACK_SHADOW} costs a comparison of the whole screen
+	 * memory every time the screen is rendered, and only redraws the bytes
+	 * whose value changed. Which one is faster depends on how the game draws,
+	 * and should be measured (see <TT>ScreenBenchmark</TT>.)
+	 */
+	public void setTracking(int tracking) {
+		if (tracking != TRACK_WRITES && tracking != TRACK_SHADOW) {
+			throw new IllegalArgumentException("Invalid tracking: "
+					+ tracking);
+		}
+		m_tracking = tracking;
+		m_cpu.setScreenHooks(tracking == TRACK_WRITES);
+		reset();
 	}
 
 	/**
 	 * Redraw the screen, but do <i>not</i> erase it first in order to avoid
 	 * flicker.
 	 * 
-	 * This method just calls {@link #paint} with the specified Canvas context.
+	 * This method just calls {@link #paint} with the current frame sink.
 	 */
-	public static void update() {
-		if (BaseSpectrum.isNoCache())
-			paintAll(surfaceHolder);
+	public void update() {
+		if (m_spectrum.isNoCache())
+			paintAll(frameSink);
 		else
-			paint(surfaceHolder);
+			paint(frameSink);
 	}
 
 	public void run() {
-		if (BaseSpectrum.isNoCache())
-			paintAll(surfaceHolder);
+		if (m_spectrum.isNoCache())
+			paintAll(frameSink);
 		else
-			paint(surfaceHolder);
+			paint(frameSink);
 	}
 
 	/**
@@ -279,70 +414,146 @@ public class BaseScreen implements Runnable {
 	 * 
 	 * @see #draw8
 	 */
-	protected static void paint(final SurfaceHolder h) {
+	protected void paint(final IFrameSink sink) {
+		if (m_tracking == TRACK_SHADOW) {
+			compareShadow();
+		}
 		if (m_screenDirty) {
+			final long start = startTiming();
 			startRender();
-			final byte[] memory = Z80.getMemory();
-			for (int addr16 = 0; addr16 < PIXEL_LENGTH; addr16++) {
-				if (!m_screenChanged[addr16]) {
-					continue;
+			final byte[] memory = m_cpu.getBank(M_PAGE);
+			expandAttributes();
+			final long[] dirty = m_pixelDirty;
+			// The bounding box of the redrawn bytes (right and bottom are
+			// the coordinates of the last byte, not exclusive edges.)
+			int left = X_PIXELS, top = Y_PIXELS, right = -1, bottom = -1;
+			for (int s = 0; s < m_pixelSummary.length; s++) {
+				long summary = m_pixelSummary[s];
+				m_pixelSummary[s] = 0;
+				while (summary != 0) {
+					final int w = (s << 6) + Long.numberOfTrailingZeros(summary);
+					summary &= summary - 1;
+					long bits = dirty[w];
+					dirty[w] = 0;
+					while (bits != 0) {
+						final int addr16 = (w << 6)
+								+ Long.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						int x = ((addr16 & 0x1f) << 3);
+						int y = ((addr16 & 0x00e0) >> 2)
+								+ ((addr16 & 0x0700) >> 8)
+								+ ((addr16 & 0x1800) >> 5);
+						int pix8 = memory[addr16];
+						int attr8 = ((int) memory[PIXEL_LENGTH
+								+ ((x >> 3) + ((y & 0xf8) << 2))]) & 0xff;
+						draw8(x, y, pix8, attr8);
+						if (x < left)
+							left = x;
+						if (x > right)
+							right = x;
+						if (y < top)
+							top = y;
+						if (y > bottom)
+							bottom = y;
+					}
 				}
-				m_screenChanged[addr16] = false;
-				int x = ((addr16 & 0x1f) << 3);
-				int y = ((addr16 & 0x00e0) >> 2) + ((addr16 & 0x0700) >> 8)
-						+ ((addr16 & 0x1800) >> 5);
-				int pix8 = memory[addr16 + M_PAGE];
-				int attr8 = ((int) memory[M_PAGE + PIXEL_LENGTH
-						+ ((x >> 3) + ((y & 0xf8) << 2))]) & 0xff;
-				draw8(x, y, pix8, attr8);
 			}
 			endRender();
-			Canvas c = null;
-			try {
-				c = h.lockCanvas();
-				screenBitmap.setPixels(screenBuffer, 0, X_PIXELS, 0, 0,
-						X_PIXELS, Y_PIXELS);
-				c.drawBitmap(screenBitmap, 0, 0, null);
-			} finally {
-				if (c != null)
-					h.unlockCanvasAndPost(c);
+			if (right < 0) {
+				present(sink, start, 0, 0, 0, 0);
+			} else {
+				present(sink, start, left, top, right + 8, bottom + 1);
 			}
 			m_screenDirty = false;
 		}
 	}
 
-	private static void paintAll(final SurfaceHolder h) {
+	private void paintAll(final IFrameSink sink) {
+		final long start = startTiming();
 		startRender();
-		final byte[] memory = Z80.getMemory();
+		final byte[] memory = m_cpu.getBank(M_PAGE);
 		for (int addr16 = 0; addr16 < PIXEL_LENGTH; addr16++) {
 			int x = ((addr16 & 0x1f) << 3);
 			int y = ((addr16 & 0x00e0) >> 2) + ((addr16 & 0x0700) >> 8)
 					+ ((addr16 & 0x1800) >> 5);
-			int pix8 = memory[M_PAGE + addr16];
-			int attr8 = ((int) memory[M_PAGE + PIXEL_LENGTH
+			int pix8 = memory[addr16];
+			int attr8 = ((int) memory[PIXEL_LENGTH
 					+ ((x >> 3) + ((y & 0xf8) << 2))]) & 0xff;
 			draw8(x, y, pix8, attr8);
 		}
 		endRender();
-		Canvas c = null;
-		try {
-			c = h.lockCanvas();
-			screenBitmap.setPixels(screenBuffer, 0, X_PIXELS, 0, 0, X_PIXELS,
-					Y_PIXELS);
-			c.drawBitmap(screenBitmap, 0, 0, null);
-		} finally {
-			if (c != null)
-				h.unlockCanvasAndPost(c);
-		}
+		present(sink, start, 0, 0, X_PIXELS, Y_PIXELS);
 		m_screenDirty = false;
 	}
 
+	/**
+	 * Start timing a paint: return the current time if the paint is measured
+	 * (see <TT>BaseSpectrum.isTimed()</TT>), or 0 otherwise.
+	 */
+	private long startTiming() {
+		return (m_spectrum.isTimed() ? System.nanoTime() : 0);
+	}
+
+	/**
+	 * Hand the rendered screen buffer to the sink (if any), and record the
+	 * rendering and presentation times of a paint that started at
+	 * <TT>start</TT> (see {@link #startTiming}), as well as the number of
+	 * pixels presented.
+	 * <P>
+	 * The region from (<TT>left</TT>, <TT>top</TT>) to (<TT>right</TT>,
+	 * <TT>bottom</TT>), exclusive, is the part of the screen that changed; if
+	 * it covers more than {@link #FULL_FRAME_PERCENT}% of the screen, the
+	 * whole frame is presented instead. A RGB565 sink uploads the whole rows
+	 * of the region (see {@link IFrameSink16}), so those are the pixels
+	 * recorded for it.
+	 */
+	private void present(final IFrameSink sink, final long start, int left,
+			int top, int right, int bottom) {
+		final long rendered = (start != 0 ? System.nanoTime() : 0);
+		int pixels = (right - left) * (bottom - top);
+		if (pixels * 100 > X_PIXELS * Y_PIXELS * FULL_FRAME_PERCENT) {
+			left = 0;
+			top = 0;
+			right = X_PIXELS;
+			bottom = Y_PIXELS;
+			pixels = X_PIXELS * Y_PIXELS;
+		}
+		if (sink instanceof IRegionFrameSink) {
+			((IRegionFrameSink) sink).setDirtyRegion(left, top, right, bottom);
+		}
+		if (m_screenView16 != null) {
+			pixels = X_PIXELS * (bottom - top);
+			m_screenView16.clear();
+			((IFrameSink16) sink).present(m_screenView16, X_PIXELS, Y_PIXELS);
+		} else if (sink != null) {
+			sink.present(screenBuffer, X_PIXELS, Y_PIXELS);
+		}
+		if (start != 0) {
+			final long presented = System.nanoTime();
+			if (PerformanceCounter.isEnabled()) {
+				PerformanceCounter.record(PerformanceCounter.RENDER, rendered
+						- start);
+				if (sink != null) {
+					PerformanceCounter.record(PerformanceCounter.PRESENT,
+							presented - rendered);
+				}
+			}
+			final FrameStats stats = m_spectrum.getFrameStats();
+			if (stats != null) {
+				stats.paint(rendered - start, presented - rendered, pixels);
+			}
+			m_spectrum.getFrameSkipper().painted(presented - start);
+		}
+	}
+
 	/**
 	 * Draws the given 8 bits (pix8), with the given attribute values (attr8) at
 	 * coordinates x, y on the Canvas.
 	 * <P>
-	 * This method is implemented as appropriate for performance reasons in the
-	 * various child classes.
+	 * The colors come from the tables of the current flash phase, and each
+	 * pixel is blended from them with its mask in {@link #s_pixelMasks}, so
+	 * there are no per-pixel branches or palette lookups. The pixels go to the
+	 * RGB565 buffer if there is one (the colors are then RGB565 values too.)
 	 * 
 	 * @param x
 	 *            The X coordinate where the pixels should be drawn onto the
@@ -355,40 +566,34 @@ public class BaseScreen implements Runnable {
 	 * @param attr8
 	 *            The attributes used to draw the 8 bits.
 	 */
-	private static void draw8(final int x, final int y, int pix8, int attr8) {
-		if (m_flashPhase && ((attr8 & FLASH) != 0)) {
-			attr8 = (attr8 & 0xc0) | (~attr8 & 0x3f);
-		}
-		final int ipix = m_inkTable[attr8 & ~FLASH];
-		final int ppix = m_paperTable[attr8 & ~FLASH];
-		final int offset, width;
-		width = m_screenWidth;
-		offset = y * width + x;
-		for (int i = 0; i < m_pix8Width;) {
-			int rgb = s_rgbPalette[((pix8 & 0x80) != 0 ? ipix : ppix)];
-			for (int j = 0; j < m_scale; j++) {
-				screenBuffer[offset + i++] = rgb;
-			}
-			pix8 <<= 1;
+	private void draw8(final int x, final int y, final int pix8,
+			final int attr8) {
+		final int paper = m_paper[attr8];
+		final int xor = m_ink[attr8] ^ paper;
+		final int[] masks = s_pixelMasks;
+		final int m = (pix8 & 0xff) << 3;
+		final int offset = y * X_PIXELS + x;
+		final short[] buffer16 = m_screenBuffer16;
+		if (buffer16 != null) {
+			buffer16[offset] = (short) (paper ^ (xor & masks[m]));
+			buffer16[offset + 1] = (short) (paper ^ (xor & masks[m + 1]));
+			buffer16[offset + 2] = (short) (paper ^ (xor & masks[m + 2]));
+			buffer16[offset + 3] = (short) (paper ^ (xor & masks[m + 3]));
+			buffer16[offset + 4] = (short) (paper ^ (xor & masks[m + 4]));
+			buffer16[offset + 5] = (short) (paper ^ (xor & masks[m + 5]));
+			buffer16[offset + 6] = (short) (paper ^ (xor & masks[m + 6]));
+			buffer16[offset + 7] = (short) (paper ^ (xor & masks[m + 7]));
+			return;
 		}
-		/*
-		 * for (int i = 1; i < m_pix8Height; i++) {
-		 * System.arraycopy(screenBuffer, offset, screenBuffer, offset + i
-		 * width, m_pix8Width); }
-		 */
-	}
-
-	/**
-	 * Create and return an Image object that isa appropriate for this Screen
-	 * object.
-	 * <P>
-	 * Override this method to return image types that are optimized for the
-	 * particular JVM and/or platform.
-	 */
-	private static Bitmap createCompatibleImage(final int width,
-			final int height) {
-		final Bitmap b = Bitmap.createBitmap(width, height, Config.RGB_565);
-		return b;
+		final int[] buffer = screenBuffer;
+		buffer[offset] = paper ^ (xor & masks[m]);
+		buffer[offset + 1] = paper ^ (xor & masks[m + 1]);
+		buffer[offset + 2] = paper ^ (xor & masks[m + 2]);
+		buffer[offset + 3] = paper ^ (xor & masks[m + 3]);
+		buffer[offset + 4] = paper ^ (xor & masks[m + 4]);
+		buffer[offset + 5] = paper ^ (xor & masks[m + 5]);
+		buffer[offset + 6] = paper ^ (xor & masks[m + 6]);
+		buffer[offset + 7] = paper ^ (xor & masks[m + 7]);
 	}
 
 	/**
@@ -396,7 +601,7 @@ public class BaseScreen implements Runnable {
 	 * <P>
 	 * Override this method to receive a notification.
 	 */
-	public static void startRender() {
+	public void startRender() {
 		// Empty
 	}
 
@@ -405,7 +610,7 @@ public class BaseScreen implements Runnable {
 	 * <P>
 	 * Override this method to receive a notification.
 	 */
-	public static void endRender() {
+	public void endRender() {
 		// Empty
 	}
 
@@ -416,13 +621,15 @@ public class BaseScreen implements Runnable {
 	 * The next time the screen is rendered, all flash attributes will appear
 	 * correctly.
 	 */
-	public static void flash() {
-		if (BaseSpectrum.isNoCache())
+	public void flash() {
+		if (m_spectrum.isNoCache())
 			return;
 		m_flashPhase = !m_flashPhase;
-		final byte[] memory = Z80.getMemory();
+		m_ink = m_inkRGB[m_flashPhase ? 1 : 0];
+		m_paper = m_paperRGB[m_flashPhase ? 1 : 0];
+		final byte[] memory = m_cpu.getBank(M_PAGE);
 		for (int i = 0, addr16 = PIXEL_LENGTH; i < ATTR_LENGTH; i++, addr16++) {
-			int val8 = ((int) memory[M_PAGE + addr16]) & 0xff;
+			int val8 = ((int) memory[addr16]) & 0xff;
 			if ((val8 & FLASH) != 0) {
 				attrTouch(addr16);
 			}
@@ -440,11 +647,10 @@ public class BaseScreen implements Runnable {
 	 *            The 16-bit absolute memory address (in the attribute memory
 	 *            area) which should be touched.
 	 */
-	public static void attrTouch(int addr16) {
-		addr16 = ((addr16 & 0x300) << 3) + (addr16 & 0xff);
-		for (int i = 0; i < 8; i++, addr16 += X_PIXELS) {
-			screenTouch(addr16);
-		}
+	public void attrTouch(final int addr16) {
+		final int attr = addr16 & 0x3ff;
+		m_attrDirty[attr >> 6] |= 1L << attr;
+		m_screenDirty = true;
 	}
 
 	/**
@@ -452,16 +658,120 @@ public class BaseScreen implements Runnable {
 	 * next time the screen is rendered.
 	 * 
 	 * @param addr16
-	 *            The 16-bit absolute memory address (in the screen memory area)
-	 *            which should be touched.
+	 *            The offset (in the pixel area of the screen page) which
+	 *            should be touched.
 	 */
-	public static void screenTouch(final int addr16) {
-		try {
-			m_screenChanged[addr16 & 0x3fff] = true;
+	public void screenTouch(final int addr16) {
+		m_pixelDirty[addr16 >> 6] |= 1L << addr16;
+		m_pixelSummary[addr16 >> 12] |= 1L << (addr16 >> 6);
+		m_screenDirty = true;
+	}
+
+	/**
+	 * Mark the given bits of a word of the pixel dirty bitset.
+	 */
+	private void markWord(final int w, final long bits) {
+		m_pixelDirty[w] |= bits;
+		m_pixelSummary[w >> 6] |= 1L << w;
+	}
+
+	/**
+	 * Compare the screen memory against the shadow copy, 8 bytes at a time,
+	 * touch the bytes that changed and update the shadow copy.
+	 */
+	private void compareShadow() {
+		final byte[] memory = m_cpu.getBank(M_PAGE);
+		if (memory != m_shadowBank) {
+			m_shadowBank = memory;
+			m_shadowView = ByteBuffer.wrap(memory).order(
+					ByteOrder.LITTLE_ENDIAN);
+		}
+		final ByteBuffer view = m_shadowView;
+		final long[] shadow = m_shadow;
+		for (int i = 0; i < PIXEL_LENGTH / 8; i++) {
+			final long value = view.getLong(i << 3);
+			final long diff = value ^ shadow[i];
+			if (diff != 0) {
+				shadow[i] = value;
+				markWord(i >> 3, changedBytes(diff) << ((i & 7) << 3));
+				m_screenDirty = true;
+			}
+		}
+		for (int i = PIXEL_LENGTH / 8; i < SCREEN_LENGTH / 8; i++) {
+			final long value = view.getLong(i << 3);
+			final long diff = value ^ shadow[i];
+			if (diff != 0) {
+				shadow[i] = value;
+				final int attr = (i << 3) - PIXEL_LENGTH;
+				m_attrDirty[attr >> 6] |= changedBytes(diff) << attr;
+				m_screenDirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Return a mask with bit <TT>j</TT> set if byte <TT>j</TT> (counting from
+	 * the lowest) of the given long is not zero.
+	 */
+	private static long changedBytes(long diff) {
+		diff |= diff >>> 4;
+		diff |= diff >>> 2;
+		diff |= diff >>> 1;
+		diff &= 0x0101010101010101L;
+		// Gather bit 8 * j into bit 56 + j; no two products overlap.
+		return (diff * 0x0102040810204080L) >>> 56;
+	}
+
+	/**
+	 * Expand the touched attributes into the pixel bytes they color, and
+	 * clear them.
+	 * <P>
+	 * A word of the attribute bitset covers two character rows of a third of
+	 * the screen; the pixel bytes of each of the 8 pixel lines of these rows
+	 * are a word of the pixel bitset, with the same bit for the same column.
+	 * A whole word is therefore expanded with 8 ORs.
+	 */
+	private void expandAttributes() {
+		for (int j = 0; j < ATTR_WORDS; j++) {
+			final long bits = m_attrDirty[j];
+			if (bits != 0) {
+				m_attrDirty[j] = 0;
+				final int attr = j << 6;
+				int w = (((attr & 0x300) << 3) + (attr & 0xff)) >> 6;
+				for (int i = 0; i < 8; i++, w += X_PIXELS / WORD_BITS) {
+					markWord(w, bits);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Touch all the screen and attribute bytes in a range of the screen page,
+	 * marking them for update next time the screen is rendered.
+	 * <P>
+	 * This has the same effect as touching every byte of the range in turn,
+	 * but the pixel bytes are marked in one go.
+	 * 
+	 * @param offset
+	 *            The offset in the screen page where the range starts.
+	 * @param length
+	 *            The length of the range, which must not cross the end of
+	 *            the page.
+	 */
+	public void touchRange(final int offset, final int length) {
+		final int end = offset + length;
+		final int pixelEnd = Math.min(end, PIXEL_LENGTH);
+		for (int i = offset; i < pixelEnd;) {
+			final int w = i >> 6;
+			final int n = Math.min(pixelEnd, (w + 1) << 6) - (w << 6);
+			markWord(w, (-1L << i) & (-1L >>> (WORD_BITS - n)));
 			m_screenDirty = true;
-		} catch (Exception e) {
-			Log.e("screenTouch", "Error:" + addr16 + "; " + (addr16 & 0x3fff)
-					+ "; " + m_screenChanged.length);
+			i = (w + 1) << 6;
+		}
+
+		final int attrEnd = Math.min(end, SCREEN_LENGTH);
+		for (int i = Math.max(offset, PIXEL_LENGTH); i < attrEnd; i++) {
+			attrTouch(i);
 		}
 	}
 
@@ -469,7 +779,7 @@ public class BaseScreen implements Runnable {
 	 * Change the current border color, and mark the border as dirty for update
 	 * at the next screen refresh.
 	 */
-	public static void setBorderColor(int val8) {
+	public void setBorderColor(int val8) {
 		m_borderDirty = true;
 	}
 
@@ -527,7 +837,7 @@ public class BaseScreen implements Runnable {
 	 * @see #print(String, int)
 	 * @see #println(String, int)
 	 */
-	public static void setCursor(int x, int y) {
+	public void setCursor(int x, int y) {
 		if (x < 0 || x >= COLS || y < 0 || y >= ROWS) {
 			throw new IllegalArgumentException("Invalid coordinates: " + x
 					+ "," + y);
@@ -541,7 +851,7 @@ public class BaseScreen implements Runnable {
 	 * 
 	 * @return Current cursor X position
 	 */
-	public static int getCursorX() {
+	public int getCursorX() {
 		return m_cursorX;
 	}
 
@@ -550,7 +860,7 @@ public class BaseScreen implements Runnable {
 	 * 
 	 * @return Current cursor Y position
 	 */
-	public static int getCursorY() {
+	public int getCursorY() {
 		return m_cursorY;
 	}
 
@@ -560,7 +870,7 @@ public class BaseScreen implements Runnable {
 	 * @param attr
 	 *            Attribute color used to clear the screen
 	 */
-	public static void clear(int attr) {
+	public void clear(int attr) {
 		setCursor(0, 0);
 		clear(COLS, ROWS, attr);
 	}
@@ -576,7 +886,7 @@ public class BaseScreen implements Runnable {
 	 * @param attr
 	 *            Attribute color used to clear
 	 */
-	public static void clear(int width, int height, int attr) {
+	public void clear(int width, int height, int attr) {
 		int saveX = m_cursorX;
 		int saveY = m_cursorY;
 		for (int row = saveY; row < height; row++) {
@@ -604,7 +914,7 @@ public class BaseScreen implements Runnable {
 	 * @param attr
 	 *            The attribute used to print the letter on the screen
 	 */
-	public static void print(char letter, int attr) {
+	public void print(char letter, int attr) {
 		if (m_cursorX < COLS && m_cursorY < ROWS) {
 			int screenAddr16 = cursorToPixelAddr16(m_cursorX, m_cursorY);
 			// The Spectrum character set is a subset of ASCII,
@@ -613,9 +923,9 @@ public class BaseScreen implements Runnable {
 				letter = '?';
 			}
 			int letterAddr16 = CHARSET_ADDR + (letter - ' ') * 8;
-			Z80.write8(cursorToAttrAddr16(m_cursorX, m_cursorY), attr);
+			m_cpu.write8(cursorToAttrAddr16(m_cursorX, m_cursorY), attr);
 			for (int i = 0; i < 8; i++) {
-				Z80.write8(screenAddr16, Z80.getMemory()[letterAddr16]);
+				m_cpu.write8(screenAddr16, m_cpu.read8(letterAddr16));
 				screenAddr16 += X_PIXELS;
 				letterAddr16++;
 			}
@@ -633,7 +943,7 @@ public class BaseScreen implements Runnable {
 	 * 
 	 * @see #print(char, int)
 	 */
-	public static void println(char letter, int attr) {
+	public void println(char letter, int attr) {
 		int saveX = m_cursorX;
 		int saveY = m_cursorY;
 		print(letter, attr);
@@ -650,7 +960,7 @@ public class BaseScreen implements Runnable {
 	 * 
 	 * @see #print(char, int)
 	 */
-	public static void print(String string, int attr) {
+	public void print(String string, int attr) {
 		for (int i = 0; i < string.length(); i++) {
 			print(string.charAt(i), attr);
 		}
@@ -668,7 +978,7 @@ public class BaseScreen implements Runnable {
 	 * 
 	 * @see #print(String, int)
 	 */
-	public static void println(String string, int attr) {
+	public void println(String string, int attr) {
 		int saveX = m_cursorX;
 		int saveY = m_cursorY;
 		print(string, attr);
@@ -680,7 +990,7 @@ public class BaseScreen implements Runnable {
 	 * <P>
 	 * Since the screen data is not saved, this method does nothing.
 	 */
-	public static void load(BaseLoader loader) {
+	public void load(BaseLoader loader) {
 		// Empty
 	}
 
@@ -2,15 +2,22 @@ package org.razvan.jzx;
 
 import java.io.InputStream;
 
-import android.util.Log;
-import android.view.KeyEvent;
-import android.view.SurfaceHolder;
-
 /**
  * Base class extended by all Spectrum models (48k, 128k).
  * <P>
  * This class provides basic, common spectrum functionality for the various
  * spectrum models.
+ * <P>
+ * The emulation core does not depend on any particular platform: rendered
+ * frames are handed to an {@link IFrameSink}, messages go to an
+ * {@link ILogger} and key events are fed in through {@link BaseKeyboard}.
+ * When the emulation is not paced (see {@link #setThrottled}) the emulator
+ * runs at the full speed of the host, which is useful for running it headless.
+ * <P>
+ * Every instance of this class is a complete machine: it owns its own CPU,
+ * memory, I/O, screen and keyboard components, and shares no mutable state
+ * with other instances. Several machines can therefore run side by side, for
+ * example on the worker threads of a {@link Scheduler}.
  * 
  * @author <A HREF="mailto:razvan.surdulescu@post.harvard.edu">Razvan
  *         Surdulescu</A> (c) 2001 - 2006
@@ -23,153 +30,544 @@ import android.view.SurfaceHolder;
  *         name for publicity reasons or modify the code without permission from
  *         me.
  */
-public class BaseSpectrum implements Runnable {
-	/**
-	 * The 20ms frequency of the interrupt clock.
-	 * 
-	 * NOTE: This is set to 19 (instead of 20) because many games are
-	 * frame-synchronized, and if they miss a screen refresh even by a little
-	 * they wait until the next one. This means that roughly one out of two
-	 * times, they will wait a frame too long. This effectively reduces the
-	 * framerate by 50% to around 30FPS. By setting the frequency to 19, we
-	 * guarantee that an interrupt will have arrived by the next frame, so the
-	 * effective framerate is around 50FPS.
-	 */
-	public static final long FREQUENCY_MS = 19L;
-	// public static final long FREQUENCY_MS = 1L;
+public abstract class BaseSpectrum implements Runnable, IEventHandler {
+	/** The CPU clock of the 48k Spectrum, in Hz. */
+	public static final int CLOCK_48 = 3500000;
 	/** 48k Spectrum model 2 (issue 2) */
 	public static final int ISSUE_2 = 2;
 	/** 48k Spectrum model 3 (issue 3) */
 	public static final int ISSUE_3 = 3;
-	private static long m_frequency = FREQUENCY_MS;
-	/** The model (issue) of this Spectrum. */
-	private static int m_issue = ISSUE_3;
-	/** The current vertical line being drawn. */
-	private static int m_vline;
 	/**
-	 * The current scale value for this Spectrum.
+	 * Event fired every {@link #FLASH_FRAMES} frames to toggle the flash.
 	 * <P>
-	 * This value is retrieved by the screen object during its <TT>init()</TT>
-	 * phase.
+	 * The event ids below are also used as their priorities, so that the
+	 * events due at the end of a frame fire in this order.
+	 */
+	public static final int EVENT_FLASH = 1;
+	/**
+	 * Event fired at the end of every frame to refresh the screen, if the
+	 * frame is not skipped (see {@link FrameSkipper}.)
 	 */
-	private static int m_scale = 1;
+	public static final int EVENT_SCREEN = 2;
+	/** Event fired at the end of every frame to interrupt the CPU. */
+	public static final int EVENT_INTERRUPT = 3;
+	/** The number of frames between flash toggles (twice per second.) */
+	public static final int FLASH_FRAMES = 25;
+	/**
+	 * The number of frames between screen refreshes, when the frame skipping
+	 * is not adaptive.
+	 */
+	public static final int SCREEN_FRAMES = 2;
+	/** Speed: run as fast as the host allows, without waiting at all. */
+	public static final int SPEED_MAX = 0;
+	/** Speed: run at the speed of the original machine. */
+	public static final int SPEED_1X = 1;
+	/** Speed: run twice as fast as the original machine. */
+	public static final int SPEED_2X = 2;
+	/** Speed: run four times as fast as the original machine. */
+	public static final int SPEED_4X = 4;
+	/** Speed: run ten times as fast as the original machine. */
+	public static final int SPEED_10X = 10;
+	/** The number of frames over which the achieved speed is measured. */
+	private static final int SPEED_FRAMES = 50;
+	/**
+	 * The memory contention delays of the 8 T-States of every 8 pixel
+	 * character cell, while the ULA is reading the screen.
+	 */
+	private static final byte[] CONTENTION_PATTERN = { 6, 5, 4, 3, 2, 1, 0, 0 };
+	/** The number of T-States per TV line during which the ULA reads. */
+	private static final int CONTENTION_CYCLES = 128;
+	/**
+	 * The number of uncontended T-States at the end of the contention table,
+	 * for the instruction that runs past the end of the frame.
+	 */
+	private static final int CONTENTION_SLACK = 256;
+	/** The model (issue) of this Spectrum. */
+	private int m_issue = ISSUE_3;
 	/**
 	 * The number of lines per TV frame.
 	 * <P>
 	 * This value is different for the different Spectrum models.
 	 */
-	private static int m_tvLines;
+	private final int m_tvLines;
 	/**
 	 * The number of CPU T-States per TV line.
 	 * <P>
 	 * This value is different for the different Spectrum models.
 	 */
-	private static int m_cyclesLine;
-	private static InputStream romIS;
-	private static boolean noCache;
-	private static Clock clock;
-	private static Z80 cpu;
+	private final int m_cyclesLine;
+	/** The number of CPU T-States per TV frame. */
+	private final int m_cyclesFrame;
+	/** The duration of a TV frame of the original machine, in nanoseconds. */
+	private final long m_framePeriod;
+	/**
+	 * The CPU clock, in Hz.
+	 * <P>
+	 * This value is different for the different Spectrum models.
+	 */
+	private final int m_clockHz;
+	/**
+	 * The T-State (counting from the interrupt) at which the ULA starts
+	 * reading the first line of the screen.
+	 * <P>
+	 * This value is different for the different Spectrum models.
+	 */
+	private final int m_contentionStart;
+	/**
+	 * The absolute T-State at which the current TV frame started.
+	 * <P>
+	 * The CPU counts its T-States from the start of the current frame, so the
+	 * absolute T-State is the sum of the two.
+	 */
+	private long m_frameStart;
+	/** If true, the CPU is delayed when it contends with the ULA. */
+	private boolean m_contended = true;
+	/** The memory contention table, created when it is first needed. */
+	private byte[] m_contention;
+	/** The events scheduled by the components, ordered by T-State. */
+	private final EventQueue m_events = new EventQueue();
+	private InputStream romIS;
+	private boolean noCache;
+	/** The pacer that synchronizes the frames to the original machine. */
+	private FramePacer m_pacer;
+	/** The frame skipper that decides which frames are refreshed. */
+	private FrameSkipper m_skipper;
+	/** The CPU (and memory) component. */
+	protected Z80 m_cpu;
+	/** The I/O component. */
+	protected BaseIO m_io;
+	/** The screen component. */
+	protected BaseScreen m_screen;
+	/** The keyboard component. */
+	protected BaseKeyboard m_keyboard;
+	/** The sink that displays the rendered frames (may be null.) */
+	private IFrameSink m_frameSink;
+	/** The logger used by all the components. */
+	private ILogger m_logger = new ConsoleLogger();
+	/**
+	 * The requested speed: a multiple of the speed of the original machine,
+	 * or {@link #SPEED_MAX}. It may be changed by any thread.
+	 */
+	private volatile int m_speed = SPEED_1X;
+	/** The speed the emulation thread is currently running at. */
+	private int m_pacedSpeed;
+	/** The wall time of the last screen refresh in a turbo mode. */
+	private long m_lastRefresh;
+	/** The wall time at which the current speed measurement started. */
+	private long m_speedStart;
+	/** The speed achieved over the last {@link #SPEED_FRAMES} frames. */
+	private volatile double m_speedFactor;
+	/** Stop the emulation after this many frames (0 means never.) */
+	private long m_frameLimit;
+	/** The number of frames emulated since the emulation was started. */
+	private long m_frameCount;
+	/**
+	 * The wall time (in nanoseconds) at which the current frame started, if
+	 * the frames are measured (by the {@link PerformanceCounter} or the
+	 * {@link #m_frameStats}), or 0 otherwise.
+	 */
+	private long m_emulateStart;
+	/** The CPU T-State at which the current frame started. */
+	private int m_emulateTStates;
+	/** The timings of the most recent frames (may be null.) */
+	private FrameStats m_frameStats;
+
+	/**
+	 * Create a Spectrum with the TV timings of the 48k.
+	 */
+	public BaseSpectrum() {
+		this(312, 224, 14335, CLOCK_48);
+	}
 
 	/**
-	 * Allocate the clock object, and initialize all contained references (CPU,
+	 * Create a Spectrum with the given TV timings.
+	 * 
+	 * @param tvLines
+	 *            The number of lines per TV frame.
+	 * @param cyclesLine
+	 *            The number of CPU T-States per TV line.
+	 * @param contentionStart
+	 *            The T-State, counting from the interrupt, at which the ULA
+	 *            starts reading the first line of the screen.
+	 * @param clockHz
+	 *            The CPU clock, in Hz.
+	 */
+	protected BaseSpectrum(int tvLines, int cyclesLine, int contentionStart,
+			int clockHz) {
+		m_tvLines = tvLines;
+		m_cyclesLine = cyclesLine;
+		m_cyclesFrame = tvLines * cyclesLine;
+		m_contentionStart = contentionStart;
+		m_clockHz = clockHz;
+		m_framePeriod = (long) m_cyclesFrame * 1000000000L / clockHz;
+	}
+
+	/**
+	 * Allocate the frame pacer, and initialize all contained references (CPU,
 	 * memory, I/O, screen and keyboard.)
+	 * 
+	 * @param sink
+	 *            The sink that displays the rendered frames, or null if the
+	 *            frames should not be displayed.
+	 * @param is
+	 *            The stream from which the ROM is read.
 	 */
-	public static void init(SurfaceHolder holder, InputStream is) {
-		clock = new Clock(m_frequency);
-		cpu = new Z80();
-		Z80.init();
-		BaseIO.init();
-		BaseScreen.init(holder);
-		BaseKeyboard.init();
-		m_tvLines = 312;
-		m_cyclesLine = 224;
-		noCache = false;
+	public void init(IFrameSink sink, InputStream is) {
 		romIS = is;
+		m_frameSink = sink;
+		m_pacer = new FramePacer(getFramePeriod());
+		m_skipper = new FrameSkipper(getFramePeriod(), SCREEN_FRAMES);
+		noCache = false;
+
+		// All the components must exist before any of them is initialized,
+		// since they cache references to each other in init().
+		m_cpu = createCPU();
+		m_io = createIO();
+		m_screen = createScreen();
+		m_keyboard = createKeyboard();
+		m_cpu.init(this);
+		m_io.init(this);
+		m_screen.init(this);
+		m_keyboard.init(this);
+		m_cpu.setContention(m_contended ? getContentionTable() : null);
+
+		m_frameStart = 0;
+		m_events.clear();
+		m_events.add(FLASH_FRAMES * m_cyclesFrame, EVENT_FLASH, this,
+				EVENT_FLASH);
+		m_events.add(m_cyclesFrame, EVENT_SCREEN, this, EVENT_SCREEN);
+		m_events.add(m_cyclesFrame, EVENT_INTERRUPT, this, EVENT_INTERRUPT);
 	}
 
 	/**
 	 * Reset all contained references (CPU, memory, I/O, screen and keyboard.)
 	 */
-	public static void reset() {
-		Z80.reset();
-		BaseIO.reset();
-		BaseScreen.reset();
-		BaseKeyboard.reset();
+	public void reset() {
+		m_cpu.reset();
+		m_io.reset();
+		m_screen.reset();
+		m_keyboard.reset();
 	}
 
 	/**
 	 * Terminate all contained references (CPU, memory, I/O, screen and
 	 * keyboard) and subsequently set them to null.
 	 */
-	public static void terminate() {
-		BaseKeyboard.terminate();
-		BaseIO.terminate();
-		BaseScreen.terminate();
-		Z80.terminate();
-		clock = null;
+	public void terminate() {
+		m_keyboard.terminate();
+		m_io.terminate();
+		m_screen.terminate();
+		m_cpu.terminate();
+		m_keyboard = null;
+		m_io = null;
+		m_screen = null;
+		m_cpu = null;
+		m_frameSink = null;
+		m_events.clear();
+		m_pacer = null;
+		m_skipper = null;
 	}
 
 	public void run() {
 		Thread.currentThread().setName("SpectrumEmulator");
-		BaseSpectrum.emulate();
+		emulate();
+	}
+
+	/**
+	 * Allocate the CPU component; called from <TT>init()</TT>.
+	 */
+	protected Z80 createCPU() {
+		return new Z80();
+	}
+
+	/**
+	 * Allocate the I/O component; called from <TT>init()</TT>.
+	 * <P>
+	 * Override this method to supply the I/O specialization of the model.
+	 */
+	protected BaseIO createIO() {
+		return new BaseIO();
+	}
+
+	/**
+	 * Allocate the screen component; called from <TT>init()</TT>.
+	 */
+	protected BaseScreen createScreen() {
+		return new BaseScreen();
+	}
+
+	/**
+	 * Allocate the keyboard component; called from <TT>init()</TT>.
+	 */
+	protected BaseKeyboard createKeyboard() {
+		return new BaseKeyboard();
+	}
+
+	/**
+	 * Trivial accessor for the CPU (and memory) component.
+	 */
+	public Z80 getCPU() {
+		return m_cpu;
+	}
+
+	/**
+	 * Trivial accessor for the I/O component.
+	 */
+	public BaseIO getIO() {
+		return m_io;
+	}
+
+	/**
+	 * Trivial accessor for the screen component.
+	 */
+	public BaseScreen getScreen() {
+		return m_screen;
+	}
+
+	/**
+	 * Trivial accessor for the keyboard component.
+	 */
+	public BaseKeyboard getKeyboard() {
+		return m_keyboard;
+	}
+
+	/**
+	 * Trivial accessor for the queue on which the components schedule their
+	 * events.
+	 */
+	public EventQueue getEventQueue() {
+		return m_events;
+	}
+
+	/**
+	 * The absolute number of T-States emulated since <TT>init()</TT>.
+	 * <P>
+	 * This is the time base of the events in the {@link #getEventQueue()}.
+	 */
+	public long getTStates() {
+		return m_frameStart + m_cpu.getTStates();
+	}
+
+	/**
+	 * The number of T-States the CPU may run, counting from the start of the
+	 * current frame, before the next event is due.
+	 */
+	public int getEventBudget() {
+		final long budget = m_events.getNextTState() - m_frameStart;
+		return (budget > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) budget);
+	}
+
+	/**
+	 * Trivial accessor for the sink that displays the rendered frames (may be
+	 * null.)
+	 */
+	public IFrameSink getFrameSink() {
+		return m_frameSink;
 	}
 
 	/**
 	 * Trivial accessor for the issue (model) of this Spectrum.
 	 */
-	public static int getIssue() {
+	public int getIssue() {
 		return m_issue;
 	}
 
 	/**
-	 * Trivial accessor for the scale parameter of this Spectrum.
+	 * Accessor for the current TV line being drawn, counting from the
+	 * interrupt; it is derived from the T-States of the CPU.
+	 */
+	public int getVline() {
+		final int vline = m_cpu.getTStates() / m_cyclesLine;
+		return (vline < m_tvLines ? vline : m_tvLines - 1);
+	}
+
+	/**
+	 * Trivial accessor for the number of lines per TV frame.
+	 */
+	public int getTvLines() {
+		return m_tvLines;
+	}
+
+	/**
+	 * Trivial accessor for the number of CPU T-States per TV line.
+	 */
+	public int getCyclesLine() {
+		return m_cyclesLine;
+	}
+
+	/**
+	 * Trivial accessor for the number of CPU T-States per TV frame.
+	 */
+	public int getCyclesFrame() {
+		return m_cyclesFrame;
+	}
+
+	/**
+	 * Is the CPU delayed when it contends with the ULA for memory or I/O?
+	 */
+	public boolean isContended() {
+		return m_contended;
+	}
+
+	/**
+	 * Emulate the memory and I/O contention of the ULA, or run in the faster
+	 * uncontended mode, in which the CPU is never delayed.
+	 */
+	public void setContended(boolean contended) {
+		m_contended = contended;
+		if (m_cpu != null) {
+			m_cpu.setContention(contended ? getContentionTable() : null);
+		}
+	}
+
+	/**
+	 * Accessor for the memory contention table: the number of T-States by
+	 * which an access to contended memory is delayed, for every T-State of
+	 * the frame (counting from the interrupt.)
 	 * <P>
-	 * This method is called by the screen object in its <TT>init()</TT> method.
+	 * During each of the 192 screen lines, the ULA reads for
+	 * {@link #CONTENTION_CYCLES} T-States; an access that starts in an 8
+	 * T-State cell is delayed until the ULA is done with that cell. The table
+	 * is built from the timings of the model the first time it is needed.
 	 */
-	public static int getScale() {
-		return m_scale;
+	public byte[] getContentionTable() {
+		if (m_contention == null) {
+			final byte[] table = new byte[m_cyclesFrame + CONTENTION_SLACK];
+			for (int line = 0; line < BaseScreen.Y_PIXELS; line++) {
+				final int start = m_contentionStart + line * m_cyclesLine;
+				for (int i = 0; i < CONTENTION_CYCLES; i++) {
+					table[start + i] = CONTENTION_PATTERN[i & 7];
+				}
+			}
+			m_contention = table;
+		}
+		return m_contention;
 	}
 
 	/**
-	 * Trivial mutator for the scale parameter of this Spectrum.
+	 * Trivial accessor for the number of frames emulated since the emulation
+	 * was last started.
 	 */
-	public static void setScale(int scale) {
-		m_scale = scale;
+	public long getFrameCount() {
+		return m_frameCount;
 	}
 
 	/**
-	 * Trivial accessor for the current TV line being drawn.
+	 * Trivial accessor for the timings of the most recent frames (may be
+	 * null.)
 	 */
-	public static int getVline() {
-		return m_vline;
+	public FrameStats getFrameStats() {
+		return m_frameStats;
 	}
 
 	/**
-	 * Get the frequency used by the {@link #m_clock}.
-	 * 
-	 * @return The clock frequency, in milliseconds
+	 * Record the timings of every frame into the given statistics, or stop
+	 * recording them if <TT>stats</TT> is null.
 	 */
-	public static long getFrequency() {
-		return m_frequency;
+	public void setFrameStats(FrameStats stats) {
+		m_frameStats = stats;
 	}
 
 	/**
-	 * Set the frequency used by the {@link #m_clock}.
-	 * 
-	 * @param frequency
-	 *            The clock frequency, in milliseconds
+	 * Trivial accessor for the logger used by all the components.
 	 */
-	public void setFrequency(long frequency) {
-		if (frequency <= 0) {
-			throw new IllegalArgumentException("Invalid frequency: "
-					+ frequency);
+	public ILogger getLogger() {
+		return m_logger;
+	}
+
+	/**
+	 * Trivial mutator for the logger used by all the components.
+	 */
+	public void setLogger(ILogger logger) {
+		if (logger == null) {
+			throw new IllegalArgumentException("Invalid logger: " + logger);
 		}
-		m_frequency = frequency;
-		clock.setFrequency(frequency);
+		m_logger = logger;
+	}
+
+	/**
+	 * Is the emulation synchronized to the frame rate of the original machine
+	 * (at any speed other than {@link #SPEED_MAX})?
+	 */
+	public boolean isThrottled() {
+		return (m_speed != SPEED_MAX);
+	}
+
+	/**
+	 * Run at the speed of the original machine ({@link #SPEED_1X}), or at the
+	 * full speed of the host ({@link #SPEED_MAX}.)
+	 */
+	public void setThrottled(boolean throttled) {
+		setSpeed(throttled ? SPEED_1X : SPEED_MAX);
+	}
+
+	/**
+	 * Trivial accessor for the requested speed: a multiple of the speed of the
+	 * original machine, or {@link #SPEED_MAX}.
+	 */
+	public int getSpeed() {
+		return m_speed;
+	}
+
+	/**
+	 * Set the speed to a multiple of the speed of the original machine
+	 * ({@link #SPEED_1X}, {@link #SPEED_2X}, {@link #SPEED_4X},
+	 * {@link #SPEED_10X} or any other), or to {@link #SPEED_MAX}.
+	 * <P>
+	 * This method may be called from any thread while the emulation is
+	 * running; the new speed takes effect at the next interrupt. At any speed
+	 * other than 1x, the screen is refreshed at most as often as on the
+	 * original machine, so the extra frames are not rendered or presented.
+	 */
+	public void setSpeed(int speed) {
+		if (speed < 0) {
+			throw new IllegalArgumentException("Invalid speed: " + speed);
+		}
+		m_speed = speed;
+	}
+
+	/**
+	 * The speed achieved by the emulation over the last
+	 * {@link #SPEED_FRAMES} frames, as a multiple of the speed of the
+	 * original machine (1.0 is real time.)
+	 */
+	public double getSpeedFactor() {
+		return m_speedFactor;
+	}
+
+	/**
+	 * Trivial accessor for the CPU clock, in Hz.
+	 */
+	public int getClockHz() {
+		return m_clockHz;
+	}
+
+	/**
+	 * The duration of a TV frame of the original machine, in nanoseconds
+	 * (about 19.97ms, or 50.08Hz, on the 48k.)
+	 */
+	public long getFramePeriod() {
+		return m_framePeriod;
+	}
+
+	/**
+	 * Trivial accessor for the pacer that synchronizes the frames to the
+	 * original machine; it also measures the frame-time jitter.
+	 */
+	public FramePacer getPacer() {
+		return m_pacer;
+	}
+
+	/**
+	 * Trivial accessor for the frame skipper that decides which frames are
+	 * refreshed; it also counts the refreshed and skipped frames.
+	 */
+	public FrameSkipper getFrameSkipper() {
+		return m_skipper;
 	}
 
 	/** String that describes the type of Spectrum ("48", "128"). */
-	public static String getMode() {
+	public String getMode() {
 		return "48";
 	}
 
@@ -178,71 +576,194 @@ public class BaseSpectrum implements Runnable {
 	 * <P>
 	 * The steps performed are as follows:
 	 * <UL>
-	 * <LI>Start the clock.</LI>
+	 * <LI>Start the frame pacer.</LI>
 	 * <LI>Repeat until stopped:</LI>
 	 * <UL>
-	 * <LI>If the current CPU T-States is more than the number of cycles per
-	 * line, increment the number of lines.</LI>
-	 * <LI>If the number of lines is greater than the number of lines per frame:
-	 * </LI>
+	 * <LI>Decode and execute CPU instructions until the next event is due.</LI>
+	 * <LI>Fire the events that are due:</LI>
 	 * <UL>
-	 * <LI>If this is the 25th frame (twice per second) toggle the flash.</LI>
-	 * </UL>
-	 * <LI>Refresh the current screen frame.</LI>
-	 * <LI>Wait for the next CPU interrupt.</LI>
-	 * <LI>Decode and execute the next CPU instruction.</LI> </UL> </UL>
-	 */
-	public static void emulate() {
-		clock.start();
-		cpu.emulate();
-		clock.end();
-	}
-
-	private static int m_frames;
-	private static int m_interrupts;
-	private static long m_fpsTimer = System.currentTimeMillis();
-
-	public static void update() {
-		int tStates = Z80.getTStates();
-		if (tStates >= m_cyclesLine) {
-			tStates -= m_cyclesLine;
-			Z80.setTStates(tStates);
-			// Tell the IO that this many cycles have elapsed
-			// in order to facilitate processing data in the
-			// streamers
-			// BaseIO.advance(m_cyclesLine);
-			if (++m_vline == m_tvLines) {
-				m_vline = 0;
-				m_frames++;
-				long elapsed = System.currentTimeMillis() - m_fpsTimer;
-				if (elapsed > 1000L) {
-					m_fpsTimer = System.currentTimeMillis();
-					m_frames = 0;
-				}
-				// Fire an interrupt per frame
-				m_interrupts++;
-				// Every 25 interrupts (twice/sec)
-				// toggle the flash.
-				if (m_interrupts == 25) {
-					m_interrupts = 0;
-					BaseScreen.flash();
-				}
-				// TODO:measure performance and lock the video memory
-				if ((m_interrupts % 2) == 0)
-					BaseScreen.update();
-				// new Thread(m_screen).start();
-				// m_screen.update();
-				synchronized (clock) {
-					while (!clock.interrupted) {
-						try {
-							clock.wait();
-						} catch (InterruptedException ie) {
-							Log.e(BaseSpectrum.class.getName(), ie.toString());
-						}
-					}
-					clock.interrupted = false;
-				}
-				Z80.interrupt();
+	 * <LI>Every 25th frame (twice per second) toggle the flash.</LI>
+	 * <LI>Every other frame, refresh the current screen frame.</LI>
+	 * <LI>At the end of every frame, wait until the frame is due, then
+	 * interrupt the CPU.</LI>
+	 * </UL> </UL> </UL>
+	 */
+	public void emulate() {
+		emulate(0);
+	}
+
+	/**
+	 * Run the main emulator loop for the given number of frames, or until
+	 * stopped if <TT>frames</TT> is 0.
+	 * 
+	 * @see #emulate()
+	 */
+	public void emulate(long frames) {
+		if (frames < 0) {
+			throw new IllegalArgumentException("Invalid frame count: "
+					+ frames);
+		}
+		m_frameLimit = frames;
+		m_frameCount = 0;
+		m_emulateStart = startTiming();
+		m_emulateTStates = m_cpu.getTStates();
+		m_speedStart = System.nanoTime();
+		m_lastRefresh = m_speedStart;
+		m_pacedSpeed = -1;
+		pace();
+		m_cpu.emulate();
+	}
+
+	/**
+	 * Fire the events that are due.
+	 * <P>
+	 * This method is called by the CPU every time it has run up to the
+	 * T-State of the next event (see <TT>Z80.execute()</TT>), not before every
+	 * instruction.
+	 */
+	public void update() {
+		m_events.fire(m_frameStart + m_cpu.getTStates());
+	}
+
+	/**
+	 * Handle the flash, screen and interrupt events, and schedule their next
+	 * occurrence.
+	 */
+	public void event(int id, long tstate) {
+		switch (id) {
+		case EVENT_FLASH:
+			m_screen.flash();
+			m_events.add(tstate + FLASH_FRAMES * m_cyclesFrame, EVENT_FLASH,
+					this, EVENT_FLASH);
+			break;
+
+		case EVENT_SCREEN:
+			if (isRefreshDue()) {
+				m_screen.update();
+			}
+			m_events.add(tstate + m_cyclesFrame, EVENT_SCREEN, this,
+					EVENT_SCREEN);
+			break;
+
+		case EVENT_INTERRUPT:
+			final long waitStart = startTiming();
+			final boolean paced = (m_pacedSpeed != SPEED_MAX);
+			if (paced) {
+				m_pacer.waitFrame();
+			}
+			final long waitEnd = (paced ? startTiming() : waitStart);
+			if (m_emulateStart != 0 && waitStart != 0) {
+				endFrame(waitStart - m_emulateStart, waitEnd - waitStart);
+			}
+			m_emulateStart = waitEnd;
+			// Rebase the CPU T-States on the start of the next frame.
+			m_frameStart += m_cyclesFrame;
+			m_cpu.addTStates(-m_cyclesFrame);
+			m_emulateTStates = m_cpu.getTStates();
+			m_cpu.interrupt();
+			if (++m_frameCount == m_frameLimit) {
+				m_cpu.stop();
+			}
+			if (m_frameCount % SPEED_FRAMES == 0) {
+				final long now = System.nanoTime();
+				m_speedFactor = (double) (SPEED_FRAMES * m_framePeriod)
+						/ Math.max(now - m_speedStart, 1);
+				m_speedStart = now;
+			}
+			pace();
+			m_events.add(tstate + m_cyclesFrame, EVENT_INTERRUPT, this,
+					EVENT_INTERRUPT);
+			break;
+		}
+	}
+
+	/**
+	 * If the requested speed has changed, set up the frame pacer for it.
+	 */
+	private void pace() {
+		final int speed = m_speed;
+		if (speed != m_pacedSpeed) {
+			m_pacedSpeed = speed;
+			if (speed != SPEED_MAX) {
+				m_pacer.setPeriod(m_framePeriod / speed);
+				m_pacer.start();
+			}
+		}
+	}
+
+	/**
+	 * Should the screen be refreshed at the end of this frame?
+	 * <P>
+	 * At 1x the {@link FrameSkipper} adapts the skip ratio to the time it
+	 * takes to emulate and paint a frame, and skips the frames that would make
+	 * the emulation lag behind real time. In the turbo modes the screen is
+	 * only refreshed if the original machine would have refreshed it since
+	 * the last time (in wall time), so that the turbo frames are neither
+	 * rendered nor presented. Without a frame sink nothing is presented, and
+	 * the screen is rendered every {@link #SCREEN_FRAMES} frames, so that
+	 * headless runs still measure the rendering.
+	 */
+	private boolean isRefreshDue() {
+		if (m_frameSink == null) {
+			return m_skipper.isRefreshDue(false, false);
+		}
+		if (m_pacedSpeed == SPEED_1X) {
+			return m_skipper.isRefreshDue(true,
+					m_pacer.getLastLateness() > m_framePeriod / 4);
+		}
+		final long now = System.nanoTime();
+		if (now - m_lastRefresh < SCREEN_FRAMES * m_framePeriod) {
+			return false;
+		}
+		m_lastRefresh = now;
+		return true;
+	}
+
+	/**
+	 * Are the frames measured, by the {@link PerformanceCounter}, the
+	 * {@link FrameStats} or (when the frames are presented) the
+	 * {@link FrameSkipper}?
+	 */
+	public boolean isTimed() {
+		return (PerformanceCounter.isEnabled() || m_frameStats != null
+				|| m_frameSink != null);
+	}
+
+	/**
+	 * Return the current wall time, in nanoseconds, if the frames are
+	 * measured, or 0 otherwise.
+	 */
+	private long startTiming() {
+		return (isTimed() ? System.nanoTime() : 0);
+	}
+
+	/**
+	 * Record the timings of the frame that ends at the current interrupt.
+	 * 
+	 * @param busyNanos
+	 *            The wall time of the frame, apart from waiting for the
+	 *            interrupt.
+	 * @param waitNanos
+	 *            The wall time spent waiting for the interrupt.
+	 */
+	private void endFrame(long busyNanos, long waitNanos) {
+		m_skipper.endFrame(busyNanos);
+		if (PerformanceCounter.isEnabled()) {
+			PerformanceCounter.record(PerformanceCounter.EMULATE, busyNanos);
+			if (m_pacedSpeed != SPEED_MAX) {
+				PerformanceCounter.record(PerformanceCounter.WAIT, waitNanos);
+			}
+		}
+		final FrameStats stats = m_frameStats;
+		if (stats != null) {
+			stats.endFrame(busyNanos, waitNanos, m_cpu.getTStates()
+					- m_emulateTStates);
+			final int summaryFrames = stats.getSummaryFrames();
+			if (summaryFrames > 0 && stats.getCount() % summaryFrames == 0) {
+				m_logger.log(ILogger.C_DEBUG, stats.getSummary() + " speed="
+						+ Math.round(m_speedFactor * 100) / 100.0 + "x"
+						+ (m_pacedSpeed != SPEED_MAX ? " " + m_pacer.getSummary()
+								: "") + " " + m_skipper.getSummary());
 			}
 		}
 	}
@@ -250,59 +771,49 @@ public class BaseSpectrum implements Runnable {
 	/**
 	 * Pause the emulation (asynchronous).
 	 */
-	public static void pause() {
-		cpu.pause();
+	public void pause() {
+		m_cpu.pause();
 	}
 
 	/**
 	 * Unpause the emulation (asynchronous).
 	 */
-	public static void unpause() {
-		cpu.unpause();
+	public void unpause() {
+		m_cpu.unpause();
 	}
 
 	/**
 	 * Stop the emulation (asynchronous.)
 	 */
-	public static void stop() {
-		cpu.stop();
+	public void stop() {
+		m_cpu.stop();
 	}
 
 	/**
 	 * Load the Spectrum contents from the given loader, by calling the
 	 * <TT>load()</TT> method of all contained components.
 	 */
-	public static void load(BaseLoader loader) {
-		Z80.load(loader);
-		BaseIO.load(loader);
-		BaseScreen.load(loader);
-		BaseKeyboard.load(loader);
+	public void load(BaseLoader loader) {
+		m_cpu.load(loader);
+		m_io.load(loader);
+		m_screen.load(loader);
+		m_keyboard.load(loader);
 	}
 
-	public static InputStream getRomIS() {
+	public InputStream getRomIS() {
 		return romIS;
 	}
 
-	public static void setRomIS(InputStream romIS) {
-		BaseSpectrum.romIS = romIS;
-	}
-
-	public static boolean doKeyUp(int keyCode, KeyEvent msg) {
-		BaseKeyboard.keyReleased(msg);
-		return true;
-	}
-
-	public static boolean doKeyDown(int keyCode, KeyEvent msg) {
-		BaseKeyboard.keyPressed(msg);
-		return true;
+	public void setRomIS(InputStream romIS) {
+		this.romIS = romIS;
 	}
 
-	public static boolean isNoCache() {
+	public boolean isNoCache() {
 		return noCache;
 	}
 
-	public static void setNoCache(boolean noCache) {
-		BaseSpectrum.noCache = noCache;
+	public void setNoCache(boolean noCache) {
+		this.noCache = noCache;
 	}
 
 }
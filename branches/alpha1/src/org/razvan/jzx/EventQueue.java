@@ -0,0 +1,193 @@
+package org.razvan.jzx;
+
+/**
+ * A queue of events ordered by the absolute T-State at which they are due.
+ * <P>
+ * The CPU does not run the logic of every subsystem after each instruction;
+ * instead, it runs instructions until the T-State of the earliest event in
+ * this queue (see {@link #getNextTState}) and then calls {@link #fire}, which
+ * dispatches all the events that have become due to their handlers.
+ * <P>
+ * Events that are due at the same T-State fire in increasing order of their
+ * priority. This is how, for example, the screen is refreshed at the end of
+ * the frame before the interrupt that is due at the same time.
+ * <P>
+ * The queue is a binary heap kept in parallel arrays: the key of an event is
+ * its T-State shifted left by 8 bits, plus its priority. Scheduling and firing
+ * events does not allocate any objects, except when the arrays have to grow.
+ *
+ * @see IEventHandler
+ */
+public class EventQueue {
+	/** The highest priority value an event may have. */
+	public static final int MAX_PRIORITY = 0xff;
+
+	/** The initial capacity of the heap. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The heap keys: (tstate << 8) | priority. */
+	private long[] m_keys = new long[INITIAL_CAPACITY];
+
+	/** The handlers of the events, parallel to the keys. */
+	private IEventHandler[] m_handlers = new IEventHandler[INITIAL_CAPACITY];
+
+	/** The ids of the events, parallel to the keys. */
+	private int[] m_ids = new int[INITIAL_CAPACITY];
+
+	/** The number of events in the queue. */
+	private int m_size;
+
+	/**
+	 * Schedule an event.
+	 *
+	 * @param tstate
+	 *            The absolute T-State at which the event is due.
+	 * @param priority
+	 *            The order (0 - {@link #MAX_PRIORITY}) among events due at the
+	 *            same T-State; lower values fire first.
+	 * @param handler
+	 *            The handler that is called when the event fires.
+	 * @param id
+	 *            The id handed back to the handler.
+	 */
+	public void add(final long tstate, final int priority,
+			final IEventHandler handler, final int id) {
+		if (priority < 0 || priority > MAX_PRIORITY) {
+			throw new IllegalArgumentException("Invalid priority: " + priority);
+		}
+		if (m_size == m_keys.length) {
+			grow();
+		}
+
+		final long key = (tstate << 8) | priority;
+		int i = m_size++;
+		while (i > 0) {
+			final int parent = (i - 1) >> 1;
+			if (m_keys[parent] <= key) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		m_keys[i] = key;
+		m_handlers[i] = handler;
+		m_ids[i] = id;
+	}
+
+	/**
+	 * The absolute T-State of the earliest event, or
+	 * <TT>Long.MAX_VALUE</TT> if the queue is empty.
+	 */
+	public long getNextTState() {
+		return (m_size > 0 ? m_keys[0] >> 8 : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Fire, in order, all the events that are due at or before the given
+	 * absolute T-State, including those scheduled by the handlers themselves.
+	 */
+	public void fire(final long now) {
+		while (m_size > 0 && (m_keys[0] >> 8) <= now) {
+			final long tstate = m_keys[0] >> 8;
+			final IEventHandler handler = m_handlers[0];
+			final int id = m_ids[0];
+			removeAt(0);
+			handler.event(id, tstate);
+		}
+	}
+
+	/**
+	 * Remove all the events scheduled by the given handler.
+	 */
+	public void remove(final IEventHandler handler) {
+		int i = 0;
+		while (i < m_size) {
+			if (m_handlers[i] == handler) {
+				removeAt(i);
+				// The last event was moved into slot i; check it again.
+				i = 0;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Remove all the events.
+	 */
+	public void clear() {
+		for (int i = 0; i < m_size; i++) {
+			m_handlers[i] = null;
+		}
+		m_size = 0;
+	}
+
+	/**
+	 * Trivial accessor for the number of events in the queue.
+	 */
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Remove the event at the given heap slot, moving the last event into its
+	 * place and restoring the heap order.
+	 */
+	private void removeAt(int i) {
+		final int last = --m_size;
+		final long key = m_keys[last];
+		final IEventHandler handler = m_handlers[last];
+		final int id = m_ids[last];
+		m_handlers[last] = null;
+		if (i == last) {
+			return;
+		}
+
+		// Sift down...
+		while (true) {
+			int child = (i << 1) + 1;
+			if (child >= last) {
+				break;
+			}
+			if (child + 1 < last && m_keys[child + 1] < m_keys[child]) {
+				child++;
+			}
+			if (key <= m_keys[child]) {
+				break;
+			}
+			move(child, i);
+			i = child;
+		}
+		// ...or up, when removing from the middle of the heap.
+		while (i > 0) {
+			final int parent = (i - 1) >> 1;
+			if (m_keys[parent] <= key) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		m_keys[i] = key;
+		m_handlers[i] = handler;
+		m_ids[i] = id;
+	}
+
+	private void move(final int from, final int to) {
+		m_keys[to] = m_keys[from];
+		m_handlers[to] = m_handlers[from];
+		m_ids[to] = m_ids[from];
+	}
+
+	private void grow() {
+		final int capacity = m_keys.length * 2;
+		final long[] keys = new long[capacity];
+		final IEventHandler[] handlers = new IEventHandler[capacity];
+		final int[] ids = new int[capacity];
+		System.arraycopy(m_keys, 0, keys, 0, m_size);
+		System.arraycopy(m_handlers, 0, handlers, 0, m_size);
+		System.arraycopy(m_ids, 0, ids, 0, m_size);
+		m_keys = keys;
+		m_handlers = handlers;
+		m_ids = ids;
+	}
+}
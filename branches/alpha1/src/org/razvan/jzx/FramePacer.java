@@ -0,0 +1,234 @@
+package org.razvan.jzx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Frame pacer which synchronizes the emulation to the frame rate of the
+ * original machine.
+ * <P>
+ * The emulation loop decodes and executes instructions at the full speed of
+ * the host machine, and calls {@link #waitFrame} at the end of every frame.
+ * The pacer keeps an absolute deadline for every frame, measured with
+ * <TT>System.nanoTime()</TT>, and blocks the emulation thread until the
+ * deadline is reached: it parks the thread until shortly before the deadline,
+ * then spins for the rest of the time, since a parked thread can wake up well
+ * after its deadline. The next deadline is one frame period after the previous
+ * deadline (not after the time the thread actually woke up), so the lateness
+ * of each wakeup does not accumulate into a drift.
+ * <P>
+ * If the emulation falls behind by more than {@link #MAX_LAG_FRAMES} frames,
+ * for example because it was paused, the pacer gives up on the missed
+ * deadlines and restarts from the current time, instead of running the
+ * missed frames at full speed.
+ * <P>
+ * The pacer also measures the lateness of every wakeup, and the intervals
+ * between the wakeups, to report the frame-time jitter.
+ */
+public class FramePacer {
+	/** The time before the deadline at which the pacer stops parking. */
+	public static final long SPIN_NANOS = 1000000L;
+
+	/** The number of frames the emulation may fall behind before resyncing. */
+	public static final int MAX_LAG_FRAMES = 5;
+
+	/** The period of a frame, in nanoseconds. */
+	private long m_period;
+
+	/** The deadline of the current frame. */
+	private long m_deadline;
+
+	/** The time of the last wakeup, or 0 if there was none. */
+	private long m_lastWakeup;
+
+	/** The number of frames waited for since the last reset. */
+	private long m_frames;
+
+	/** The number of times the pacer restarted after falling behind. */
+	private long m_resyncs;
+
+	/** The sum of the lateness of the wakeups, in nanoseconds. */
+	private long m_latenessSum;
+
+	/** The maximum lateness of a wakeup, in nanoseconds. */
+	private long m_latenessMax;
+
+	/** The lateness of the last wakeup, in nanoseconds. */
+	private long m_lateness;
+
+	/** The number of intervals between two wakeups. */
+	private long m_intervals;
+
+	/** The sum of the deviations of the intervals from the period. */
+	private double m_deviationSum;
+
+	/** The sum of the squared deviations of the intervals from the period. */
+	private double m_deviationSquares;
+
+	/** The maximum (absolute) deviation of an interval from the period. */
+	private long m_deviationMax;
+
+	/**
+	 * Create a pacer with the given frame period.
+	 *
+	 * @param period
+	 *            The period of a frame, in nanoseconds.
+	 */
+	public FramePacer(long period) {
+		setPeriod(period);
+	}
+
+	/**
+	 * Trivial accessor for the period of a frame, in nanoseconds.
+	 */
+	public long getPeriod() {
+		return m_period;
+	}
+
+	/**
+	 * Set the period of a frame, in nanoseconds; it is used from the next
+	 * deadline on.
+	 */
+	public void setPeriod(long period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Invalid period: " + period);
+		}
+		m_period = period;
+	}
+
+	/**
+	 * Start pacing: the first frame ends one period from now.
+	 */
+	public void start() {
+		m_deadline = System.nanoTime() + m_period;
+		m_lastWakeup = 0;
+		m_lateness = 0;
+	}
+
+	/**
+	 * Block until the deadline of the current frame, and move the deadline to
+	 * the end of the next frame.
+	 */
+	public void waitFrame() {
+		final long deadline = m_deadline;
+		long remaining = deadline - System.nanoTime();
+		while (remaining > SPIN_NANOS) {
+			LockSupport.parkNanos(remaining - SPIN_NANOS);
+			remaining = deadline - System.nanoTime();
+		}
+		long now = System.nanoTime();
+		while (now - deadline < 0) {
+			now = System.nanoTime();
+		}
+
+		m_frames++;
+		final long lateness = now - deadline;
+		m_lateness = lateness;
+		m_latenessSum += lateness;
+		if (lateness > m_latenessMax) {
+			m_latenessMax = lateness;
+		}
+		if (m_lastWakeup != 0) {
+			final long deviation = (now - m_lastWakeup) - m_period;
+			m_intervals++;
+			m_deviationSum += deviation;
+			m_deviationSquares += (double) deviation * deviation;
+			if (Math.abs(deviation) > m_deviationMax) {
+				m_deviationMax = Math.abs(deviation);
+			}
+		}
+		m_lastWakeup = now;
+
+		m_deadline = deadline + m_period;
+		if (lateness > MAX_LAG_FRAMES * m_period) {
+			m_deadline = now + m_period;
+			m_lastWakeup = 0;
+			m_resyncs++;
+		}
+	}
+
+	/**
+	 * Discard the jitter statistics.
+	 */
+	public void reset() {
+		m_frames = 0;
+		m_resyncs = 0;
+		m_latenessSum = 0;
+		m_latenessMax = 0;
+		m_intervals = 0;
+		m_deviationSum = 0;
+		m_deviationSquares = 0;
+		m_deviationMax = 0;
+		m_lastWakeup = 0;
+	}
+
+	/**
+	 * Trivial accessor for the number of frames waited for since the last
+	 * reset.
+	 */
+	public long getFrames() {
+		return m_frames;
+	}
+
+	/**
+	 * Trivial accessor for the number of times the pacer restarted after
+	 * falling behind, since the last reset.
+	 */
+	public long getResyncs() {
+		return m_resyncs;
+	}
+
+	/**
+	 * Return the mean lateness of the wakeups, in nanoseconds.
+	 */
+	public long getMeanLateness() {
+		return (m_frames > 0 ? m_latenessSum / m_frames : 0);
+	}
+
+	/**
+	 * Trivial accessor for the lateness of the last wakeup, in nanoseconds:
+	 * how far the emulation is behind real time.
+	 */
+	public long getLastLateness() {
+		return m_lateness;
+	}
+
+	/**
+	 * Trivial accessor for the maximum lateness of a wakeup, in nanoseconds.
+	 */
+	public long getMaxLateness() {
+		return m_latenessMax;
+	}
+
+	/**
+	 * Return the standard deviation of the intervals between the wakeups
+	 * from the frame period (the frame-time jitter), in nanoseconds.
+	 */
+	public long getJitter() {
+		if (m_intervals == 0) {
+			return 0;
+		}
+		final double mean = m_deviationSum / m_intervals;
+		final double variance = m_deviationSquares / m_intervals - mean * mean;
+		return (long) Math.sqrt(Math.max(variance, 0));
+	}
+
+	/**
+	 * Trivial accessor for the maximum deviation of an interval between two
+	 * wakeups from the frame period, in nanoseconds.
+	 */
+	public long getMaxDeviation() {
+		return m_deviationMax;
+	}
+
+	/**
+	 * Return a one line summary of the jitter statistics, in microseconds,
+	 * for example <TT>"jitter=12us maxdev=240us late=5us maxlate=240us
+	 * resyncs=0"</TT>.
+	 */
+	public String getSummary() {
+		return "jitter=" + (getJitter() / 1000) + "us maxdev="
+				+ (m_deviationMax / 1000) + "us late="
+				+ (getMeanLateness() / 1000) + "us maxlate="
+				+ (m_latenessMax / 1000) + "us resyncs=" + m_resyncs;
+	}
+}
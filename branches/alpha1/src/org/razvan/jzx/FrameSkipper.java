@@ -0,0 +1,220 @@
+package org.razvan.jzx;
+
+/**
+ * Adaptive frame skipping: decide at the end of every frame whether the
+ * screen should be refreshed (rendered and presented.)
+ * <P>
+ * The skipper keeps running averages of the wall time spent emulating a frame
+ * and of the wall time spent painting the screen (rendering plus
+ * presentation.) From these it picks the smallest skip ratio <TT>n</TT> (the
+ * screen is refreshed once every <TT>n</TT> frames) for which <TT>n</TT>
+ * frames of emulation and one paint fit into {@link #HEADROOM_PERCENT}% of
+ * the time budget of <TT>n</TT> frames, up to {@link #MAX_RATIO}. A fast host
+ * therefore refreshes every frame, and a slow one skips as many frames as it
+ * must to keep up.
+ * <P>
+ * If the emulation has fallen behind real time anyway, the frames are run
+ * back to back without any refresh until it catches up, but the screen is
+ * still refreshed at least every {@link #MAX_CATCH_UP} frames.
+ * <P>
+ * When the skip ratio is not adaptive (for example when there is no frame
+ * budget, because the emulation is not paced), the screen is refreshed every
+ * {@link #getDefaultRatio} frames.
+ */
+public class FrameSkipper {
+	/** The largest skip ratio picked by the adaptive frame skipping. */
+	public static final int MAX_RATIO = 5;
+
+	/** The largest number of frames run back to back to catch up. */
+	public static final int MAX_CATCH_UP = 10;
+
+	/** The percentage of the frame budget that the skip ratio aims for. */
+	public static final int HEADROOM_PERCENT = 90;
+
+	/**
+	 * The weight of a new sample in the running averages, as a shift: each
+	 * sample counts for 1/8.
+	 */
+	private static final int AVERAGE_SHIFT = 3;
+
+	/** The wall time budget of a frame, in nanoseconds. */
+	private final long m_budget;
+
+	/** The skip ratio when the frame skipping is not adaptive. */
+	private final int m_defaultRatio;
+
+	/** The current adaptive skip ratio. */
+	private int m_ratio;
+
+	/** The running average of the emulation time of a frame. */
+	private long m_emulateCost;
+
+	/** The running average of the time of a paint. */
+	private long m_paintCost;
+
+	/** The painting time of the current frame, so far. */
+	private long m_framePaint;
+
+	/** The number of frames since the screen was last refreshed. */
+	private int m_sinceRefresh;
+
+	/** The number of refreshed frames since the last reset. */
+	private long m_refreshed;
+
+	/** The number of skipped frames since the last reset. */
+	private long m_skipped;
+
+	/** The number of frames skipped to catch up since the last reset. */
+	private long m_caughtUp;
+
+	/**
+	 * Create a frame skipper.
+	 *
+	 * @param budget
+	 *            The wall time budget of a frame, in nanoseconds.
+	 * @param defaultRatio
+	 *            The skip ratio when the frame skipping is not adaptive.
+	 */
+	public FrameSkipper(long budget, int defaultRatio) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Invalid budget: " + budget);
+		}
+		if (defaultRatio <= 0) {
+			throw new IllegalArgumentException("Invalid ratio: "
+					+ defaultRatio);
+		}
+		m_budget = budget;
+		m_defaultRatio = defaultRatio;
+		m_ratio = defaultRatio;
+	}
+
+	/**
+	 * Decide whether the screen should be refreshed at the end of the
+	 * current frame.
+	 *
+	 * @param adaptive
+	 *            If true, use the adaptive skip ratio, otherwise the default
+	 *            one.
+	 * @param lagging
+	 *            If true, the emulation has fallen behind real time.
+	 */
+	public boolean isRefreshDue(boolean adaptive, boolean lagging) {
+		m_sinceRefresh++;
+		if (adaptive && lagging && m_sinceRefresh < MAX_CATCH_UP) {
+			m_caughtUp++;
+			m_skipped++;
+			return false;
+		}
+		if (!lagging && m_sinceRefresh < (adaptive ? m_ratio : m_defaultRatio)) {
+			m_skipped++;
+			return false;
+		}
+		m_sinceRefresh = 0;
+		m_refreshed++;
+		return true;
+	}
+
+	/**
+	 * Add the wall time of a paint (rendering plus presentation) to the
+	 * current frame.
+	 */
+	public final void painted(final long nanos) {
+		m_framePaint += nanos;
+		m_paintCost += (nanos - m_paintCost) >> AVERAGE_SHIFT;
+	}
+
+	/**
+	 * End the current frame, and adapt the skip ratio.
+	 *
+	 * @param busyNanos
+	 *            The wall time of the frame, apart from waiting; it includes
+	 *            the painting time.
+	 */
+	public final void endFrame(final long busyNanos) {
+		final long emulate = Math.max(busyNanos - m_framePaint, 0);
+		m_framePaint = 0;
+		m_emulateCost += (emulate - m_emulateCost) >> AVERAGE_SHIFT;
+
+		// n * emulate + paint <= n * budget, so n >= paint / (budget - emulate)
+		final long spare = m_budget * HEADROOM_PERCENT / 100 - m_emulateCost;
+		if (spare <= 0) {
+			m_ratio = MAX_RATIO;
+		} else {
+			final long ratio = (m_paintCost + spare - 1) / spare;
+			m_ratio = (int) Math.max(1, Math.min(ratio, MAX_RATIO));
+		}
+	}
+
+	/**
+	 * Discard the statistics.
+	 */
+	public void reset() {
+		m_refreshed = 0;
+		m_skipped = 0;
+		m_caughtUp = 0;
+	}
+
+	/**
+	 * Trivial accessor for the current adaptive skip ratio: the screen is
+	 * refreshed once every that many frames.
+	 */
+	public int getRatio() {
+		return m_ratio;
+	}
+
+	/**
+	 * Trivial accessor for the skip ratio when the frame skipping is not
+	 * adaptive.
+	 */
+	public int getDefaultRatio() {
+		return m_defaultRatio;
+	}
+
+	/**
+	 * Trivial accessor for the running average of the emulation time of a
+	 * frame, in nanoseconds.
+	 */
+	public long getEmulateCost() {
+		return m_emulateCost;
+	}
+
+	/**
+	 * Trivial accessor for the running average of the time of a paint, in
+	 * nanoseconds.
+	 */
+	public long getPaintCost() {
+		return m_paintCost;
+	}
+
+	/**
+	 * Trivial accessor for the number of refreshed frames since the last
+	 * reset.
+	 */
+	public long getRefreshed() {
+		return m_refreshed;
+	}
+
+	/**
+	 * Trivial accessor for the number of skipped frames since the last reset.
+	 */
+	public long getSkipped() {
+		return m_skipped;
+	}
+
+	/**
+	 * Trivial accessor for the number of frames skipped to catch up since the
+	 * last reset.
+	 */
+	public long getCaughtUp() {
+		return m_caughtUp;
+	}
+
+	/**
+	 * Return a one line summary of the frame skipping, for example
+	 * <TT>"skip=1/2 refreshed=250 skipped=250 caughtup=0"</TT>.
+	 */
+	public String getSummary() {
+		return "skip=1/" + m_ratio + " refreshed=" + m_refreshed + " skipped="
+				+ m_skipped + " caughtup=" + m_caughtUp;
+	}
+}
@@ -0,0 +1,323 @@
+package org.razvan.jzx;
+
+import java.io.PrintStream;
+
+/**
+ * A ring buffer of the timings of the most recently emulated frames.
+ * <P>
+ * When frame statistics are attached to a Spectrum (see
+ * <TT>BaseSpectrum.setFrameStats()</TT>), every frame is recorded at its
+ * interrupt: the wall time spent emulating the CPU, rendering the screen
+ * (<TT>BaseScreen.paint()</TT>), presenting it to the frame sink (locking,
+ * drawing and posting the canvas) and waiting for the next interrupt, plus
+ * the number of T-States the frame took and the number of pixels that were
+ * presented (the area of the changed regions handed to the frame sink, which
+ * is what the sink uploads.) The records are kept in a
+ * preallocated array of primitives, so recording does not allocate anything;
+ * once the buffer is full, the oldest records are overwritten.
+ * <P>
+ * The records can be written as CSV ({@link #writeCSV}) or JSON
+ * ({@link #writeJSON}), and {@link #getSummary} describes the effective frame
+ * rate, the emulated CPU speed, the idle time and the presented pixels over
+ * the buffered frames.
+ */
+public class FrameStats {
+	/** Field: the nanoseconds spent emulating the CPU. */
+	public static final int EMULATE = 0;
+	/** Field: the nanoseconds spent rendering the screen. */
+	public static final int RENDER = 1;
+	/** Field: the nanoseconds spent presenting the screen to the sink. */
+	public static final int PRESENT = 2;
+	/** Field: the nanoseconds spent waiting for the interrupt. */
+	public static final int WAIT = 3;
+	/** Field: the T-States of the frame. */
+	public static final int TSTATES = 4;
+	/** Field: the number of pixels presented to the sink. */
+	public static final int UPLOADED = 5;
+	/** The number of fields in a record. */
+	public static final int FIELDS = 6;
+
+	/** The names of the fields, in the exported files. */
+	private static final String[] FIELD_NAMES = { "emulate_ns", "render_ns",
+			"present_ns", "wait_ns", "tstates", "upload_px" };
+
+	/** The number of frames kept, when none is specified (10s at 50Hz.) */
+	public static final int DEFAULT_CAPACITY = 512;
+
+	/** The fields of the records. */
+	private final long[] m_records;
+
+	/** The capacity minus one; the capacity is a power of two. */
+	private final int m_mask;
+
+	/** The number of frames recorded since the last clear. */
+	private long m_count;
+
+	/** The rendering time of the current frame, so far. */
+	private long m_render;
+
+	/** The presentation time of the current frame, so far. */
+	private long m_present;
+
+	/** The pixels presented in the current frame, so far. */
+	private long m_uploaded;
+
+	/**
+	 * The number of frames between two summaries logged by the Spectrum (0
+	 * means never.)
+	 */
+	private int m_summaryFrames;
+
+	/**
+	 * Create frame statistics that keep {@link #DEFAULT_CAPACITY} frames.
+	 */
+	public FrameStats() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create frame statistics that keep the given number of frames, rounded
+	 * up to a power of two.
+	 */
+	public FrameStats(int capacity) {
+		if (capacity <= 0 || capacity > (1 << 20)) {
+			throw new IllegalArgumentException("Invalid capacity: "
+					+ capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		m_records = new long[size * FIELDS];
+		m_mask = size - 1;
+	}
+
+	/**
+	 * Add the given rendering and presentation times, and the given number of
+	 * presented pixels, to the current frame.
+	 * <P>
+	 * This is called by the screen every time it is painted.
+	 */
+	public final void paint(final long renderNanos, final long presentNanos,
+			final int pixels) {
+		m_render += renderNanos;
+		m_present += presentNanos;
+		m_uploaded += pixels;
+	}
+
+	/**
+	 * Record the current frame, overwriting the oldest record if the buffer
+	 * is full.
+	 *
+	 * @param busyNanos
+	 *            The wall time of the frame, apart from waiting for the
+	 *            interrupt; it includes the painting time.
+	 * @param waitNanos
+	 *            The wall time spent waiting for the interrupt.
+	 * @param tstates
+	 *            The T-States of the frame.
+	 */
+	public final void endFrame(final long busyNanos, final long waitNanos,
+			final int tstates) {
+		final int i = ((int) m_count & m_mask) * FIELDS;
+		final long[] records = m_records;
+		records[i + EMULATE] = Math.max(busyNanos - m_render - m_present, 0);
+		records[i + RENDER] = m_render;
+		records[i + PRESENT] = m_present;
+		records[i + WAIT] = waitNanos;
+		records[i + TSTATES] = tstates;
+		records[i + UPLOADED] = m_uploaded;
+		m_render = 0;
+		m_present = 0;
+		m_uploaded = 0;
+		m_count++;
+	}
+
+	/**
+	 * Trivial accessor for the number of frames the buffer can hold.
+	 */
+	public int getCapacity() {
+		return m_mask + 1;
+	}
+
+	/**
+	 * Trivial accessor for the number of frames recorded since the last clear
+	 * (including those that were overwritten.)
+	 */
+	public long getCount() {
+		return m_count;
+	}
+
+	/**
+	 * The number of frames in the buffer.
+	 */
+	public int size() {
+		return (int) Math.min(m_count, m_mask + 1);
+	}
+
+	/**
+	 * Return a field of a buffered frame.
+	 *
+	 * @param frame
+	 *            The frame, from 0 (the oldest) to <TT>size() - 1</TT>.
+	 * @param field
+	 *            The field ({@link #EMULATE} ... {@link #UPLOADED}.)
+	 */
+	public long get(int frame, int field) {
+		if (frame < 0 || frame >= size()) {
+			throw new IndexOutOfBoundsException("Invalid frame: " + frame);
+		}
+		return m_records[((int) (m_count - size() + frame) & m_mask) * FIELDS
+				+ field];
+	}
+
+	/**
+	 * Discard all the records.
+	 */
+	public void clear() {
+		m_count = 0;
+		m_render = 0;
+		m_present = 0;
+		m_uploaded = 0;
+	}
+
+	/**
+	 * Trivial accessor for the number of frames between two summaries logged
+	 * by the Spectrum (0 means never.)
+	 */
+	public int getSummaryFrames() {
+		return m_summaryFrames;
+	}
+
+	/**
+	 * Trivial mutator for the number of frames between two summaries logged
+	 * by the Spectrum (0 means never.)
+	 */
+	public void setSummaryFrames(int frames) {
+		if (frames < 0) {
+			throw new IllegalArgumentException("Invalid frame count: "
+					+ frames);
+		}
+		m_summaryFrames = frames;
+	}
+
+	/**
+	 * Return the sum of a field over the buffered frames.
+	 */
+	public long getTotal(int field) {
+		long total = 0;
+		final int size = size();
+		for (int n = 0; n < size; n++) {
+			total += m_records[n * FIELDS + field];
+		}
+		return total;
+	}
+
+	/**
+	 * Return the wall time of the buffered frames, in nanoseconds.
+	 */
+	public long getWallTime() {
+		return getTotal(EMULATE) + getTotal(RENDER) + getTotal(PRESENT)
+				+ getTotal(WAIT);
+	}
+
+	/**
+	 * Return the effective frame rate of the buffered frames.
+	 */
+	public double getFPS() {
+		final long wall = getWallTime();
+		return (wall > 0 ? size() * 1e9 / wall : 0);
+	}
+
+	/**
+	 * Return the effective speed of the emulated CPU over the buffered
+	 * frames, in MHz.
+	 */
+	public double getMHz() {
+		final long wall = getWallTime();
+		return (wall > 0 ? getTotal(TSTATES) * 1e3 / wall : 0);
+	}
+
+	/**
+	 * Return the percentage of the wall time of the buffered frames spent
+	 * waiting for the interrupt.
+	 */
+	public double getIdlePercent() {
+		final long wall = getWallTime();
+		return (wall > 0 ? getTotal(WAIT) * 100.0 / wall : 0);
+	}
+
+	/**
+	 * Return the mean number of pixels presented per buffered frame.
+	 */
+	public long getMeanUploaded() {
+		final int size = size();
+		return (size > 0 ? getTotal(UPLOADED) / size : 0);
+	}
+
+	/**
+	 * Return a one line summary of the buffered frames, for example
+	 * <TT>"fps=50.0 mhz=3.49 idle=81.2% upload=2048px"</TT>.
+	 */
+	public String getSummary() {
+		return "fps=" + round(getFPS(), 10) + " mhz=" + round(getMHz(), 100)
+				+ " idle=" + round(getIdlePercent(), 10) + "% upload="
+				+ getMeanUploaded() + "px";
+	}
+
+	/**
+	 * Write the buffered frames, from oldest to newest, as CSV: a header
+	 * line, then one line per frame.
+	 */
+	public void writeCSV(PrintStream out) {
+		final StringBuffer line = new StringBuffer(64);
+		line.append("frame");
+		for (int j = 0; j < FIELDS; j++) {
+			line.append(',').append(FIELD_NAMES[j]);
+		}
+		out.println(line);
+		final int size = size();
+		for (int frame = 0; frame < size; frame++) {
+			line.setLength(0);
+			line.append(m_count - size + frame);
+			for (int j = 0; j < FIELDS; j++) {
+				line.append(',').append(get(frame, j));
+			}
+			out.println(line);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write the summary and the buffered frames, from oldest to newest, as a
+	 * JSON object.
+	 */
+	public void writeJSON(PrintStream out) {
+		final int size = size();
+		out.println("{");
+		out.println("  \"fps\": " + round(getFPS(), 10) + ",");
+		out.println("  \"mhz\": " + round(getMHz(), 100) + ",");
+		out.println("  \"idle_percent\": " + round(getIdlePercent(), 10)
+				+ ",");
+		out.println("  \"upload_px\": " + getMeanUploaded() + ",");
+		out.println("  \"frames\": [");
+		final StringBuffer line = new StringBuffer(128);
+		for (int frame = 0; frame < size; frame++) {
+			line.setLength(0);
+			line.append("    {\"frame\": ").append(m_count - size + frame);
+			for (int j = 0; j < FIELDS; j++) {
+				line.append(", \"").append(FIELD_NAMES[j]).append("\": ");
+				line.append(get(frame, j));
+			}
+			line.append(frame < size - 1 ? "}," : "}");
+			out.println(line);
+		}
+		out.println("  ]");
+		out.println("}");
+		out.flush();
+	}
+
+	private static double round(double value, int scale) {
+		return Math.round(value * scale) / (double) scale;
+	}
+}
@@ -0,0 +1,98 @@
+package org.razvan.jzx;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.razvan.jzx.v48.Spectrum;
+
+/**
+ * Run the emulator without any display attached, at the full speed of the
+ * host.
+ * <P>
+ * This is used for profiling the emulation core and for regression timing on a
+ * plain JVM. The frames are still rendered into the screen buffer (so that the
+ * rendering cost is included in the measurement), but they are not displayed.
+ * The latencies of the frame phases are reported at the end (see
+ * {@link PerformanceCounter}).
+ * <P>
+ * If a trace file is given, the last {@link Tracer#DEFAULT_CAPACITY}
+ * instructions are written to it when the emulation ends (see
+ * {@link TraceDecoder}); tracing slows the emulation down. A trace file of
+ * "-" means no trace.
+ * <P>
+ * If a timing file is given, the timings of the last
+ * {@link FrameStats#DEFAULT_CAPACITY} frames are written to it, as JSON if
+ * its name ends with ".json" and as CSV otherwise.
+ * <P>
+ * Usage:
+ * <TT>java org.razvan.jzx.Headless rom snapshot.z80 [frames [trace.bin [timing.csv]]]</TT>
+ */
+public class Headless {
+	/** The number of frames to run when none is specified. */
+	private static final int DEFAULT_FRAMES = 3000;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: Headless rom snapshot.z80 "
+					+ "[frames [trace.bin [timing.csv]]]");
+			System.exit(1);
+		}
+		int frames = (args.length > 2 ? Integer.parseInt(args[2])
+				: DEFAULT_FRAMES);
+
+		BaseSpectrum spectrum = new Spectrum();
+		spectrum.setThrottled(false);
+		spectrum.init(null, new FileInputStream(args[0]));
+		spectrum.reset();
+		Z80Loader loader = new Z80Loader(spectrum.getLogger());
+		loader.load(new FileInputStream(args[1]));
+		spectrum.load(loader);
+		Tracer tracer = null;
+		if (args.length > 3 && !args[3].equals("-")) {
+			tracer = new Tracer();
+			spectrum.getCPU().setTracer(tracer);
+		}
+
+		FrameStats stats = new FrameStats();
+		spectrum.setFrameStats(stats);
+		PerformanceCounter.setEnable(true);
+		long start = System.nanoTime();
+		spectrum.emulate(frames);
+		long elapsed = System.nanoTime() - start;
+
+		long tstates = spectrum.getFrameCount() * spectrum.getTvLines()
+				* spectrum.getCyclesLine();
+		double seconds = elapsed / 1e9;
+		System.out.println("frames=" + spectrum.getFrameCount() + " time="
+				+ (elapsed / 1000000) + "ms fps="
+				+ (int) (spectrum.getFrameCount() / seconds) + " mhz="
+				+ ((tstates / seconds) / 1e6));
+		System.out.println("last " + stats.size() + " frames: "
+				+ stats.getSummary());
+		PerformanceCounter.report();
+		if (tracer != null) {
+			OutputStream os = new FileOutputStream(args[3]);
+			try {
+				tracer.dump(os);
+			} finally {
+				os.close();
+			}
+		}
+		if (args.length > 4) {
+			PrintStream out = new PrintStream(new FileOutputStream(args[4]));
+			try {
+				if (args[4].endsWith(".json")) {
+					stats.writeJSON(out);
+				} else {
+					stats.writeCSV(out);
+				}
+			} finally {
+				out.close();
+			}
+		}
+		spectrum.terminate();
+	}
+}
@@ -0,0 +1,28 @@
+package org.razvan.jzx;
+
+/**
+ * Interface implemented by all components that schedule events on the
+ * {@link EventQueue} of a Spectrum.
+ * <P>
+ * A component typically handles several kinds of events; the id passed to
+ * {@link EventQueue#add} is handed back when the event fires, so that the
+ * component can tell them apart without allocating an object per event.
+ *
+ * @see EventQueue
+ */
+public interface IEventHandler {
+	/**
+	 * Handle an event that has become due.
+	 * <P>
+	 * The handler may schedule further events (including a repeat of this
+	 * one) from within this method.
+	 *
+	 * @param id
+	 *            The id with which the event was scheduled.
+	 * @param tstate
+	 *            The absolute T-State for which the event was scheduled. The
+	 *            CPU may be a few T-States past it, since events are only
+	 *            checked between instructions.
+	 */
+	public void event(int id, long tstate);
+}
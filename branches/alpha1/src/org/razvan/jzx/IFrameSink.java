@@ -0,0 +1,30 @@
+package org.razvan.jzx;
+
+/**
+ * Interface implemented by all classes that are able to display the frames
+ * rendered by the emulator.
+ * <P>
+ * The screen component renders the Spectrum display into an array of RGB
+ * values and hands it to the frame sink. The sink is responsible for getting
+ * the pixels onto a physical display (an Android surface, a file, etc.) or it
+ * may simply discard them when the emulator runs headless.
+ *
+ * @see BaseScreen
+ */
+public interface IFrameSink {
+	/**
+	 * Present a freshly rendered frame.
+	 * <P>
+	 * The pixel array is owned by the screen component and is reused for the
+	 * next frame, so the sink must not hold on to it after this method
+	 * returns.
+	 *
+	 * @param pixels
+	 *            The frame contents, one RGB value per pixel, row by row.
+	 * @param width
+	 *            The width of the frame, in pixels.
+	 * @param height
+	 *            The height of the frame, in pixels.
+	 */
+	public void present(int[] pixels, int width, int height);
+}
@@ -0,0 +1,35 @@
+package org.razvan.jzx;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Interface implemented by the frame sinks that display 16-bit RGB565
+ * pixels, such as an Android <TT>Bitmap</TT> of <TT>Config.RGB_565</TT>.
+ * <P>
+ * When the frame sink of the Spectrum implements this interface, the screen
+ * component renders directly into a buffer of RGB565 values (with the palette
+ * precomputed in RGB565) and presents the frames with
+ * {@link #present(ShortBuffer, int, int)}, so that the sink can upload them
+ * with a single bulk copy instead of converting every pixel. Since a bulk copy
+ * takes a range of the buffer, a sink that is also an
+ * {@link IRegionFrameSink} uploads the whole rows of the changed region.
+ *
+ * @see BaseScreen
+ */
+public interface IFrameSink16 extends IFrameSink {
+	/**
+	 * Present a freshly rendered frame.
+	 * <P>
+	 * The buffer is owned by the screen component and is reused for the next
+	 * frame, so the sink must not hold on to it after this method returns.
+	 * Its position is 0 and its limit is <TT>width * height</TT>.
+	 *
+	 * @param pixels
+	 *            The frame contents, one RGB565 value per pixel, row by row.
+	 * @param width
+	 *            The width of the frame, in pixels.
+	 * @param height
+	 *            The height of the frame, in pixels.
+	 */
+	public void present(ShortBuffer pixels, int width, int height);
+}
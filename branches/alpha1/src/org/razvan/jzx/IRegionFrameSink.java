@@ -0,0 +1,34 @@
+package org.razvan.jzx;
+
+/**
+ * Interface implemented by the frame sinks that can present only the part of
+ * a frame that changed, such as a sink that locks a dirty rectangle of an
+ * Android surface.
+ * <P>
+ * Before every frame it presents, the screen component tells such a sink
+ * which region changed since the previous frame, with
+ * {@link #setDirtyRegion}. The region is the bounding box of the changed
+ * screen bytes; it is the whole frame when a large part of the screen
+ * changed (see <TT>BaseScreen.FULL_FRAME_PERCENT</TT>), and it is empty when
+ * nothing changed.
+ *
+ * @see BaseScreen
+ */
+public interface IRegionFrameSink extends IFrameSink {
+	/**
+	 * Set the region of the next presented frame that changed since the
+	 * previous one; the pixels outside it are the same as in the previous
+	 * frame. The coordinates are in pixels, the right and bottom edges are
+	 * exclusive.
+	 *
+	 * @param left
+	 *            The left edge of the region.
+	 * @param top
+	 *            The top edge of the region.
+	 * @param right
+	 *            The right edge of the region.
+	 * @param bottom
+	 *            The bottom edge of the region.
+	 */
+	public void setDirtyRegion(int left, int top, int right, int bottom);
+}
@@ -1,7 +1,6 @@
 package org.razvan.jzx;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.io.PrintStream;
 
 /**
  * Track various time periods in the emulator and report them.
@@ -9,6 +8,30 @@ import java.util.Hashtable;
  * <P>
  * This class is used to determine possible performance bottlenecks.
  *
+ * <P>
+ * Every timer is identified by an integer index: the frame phases
+ * ({@link #EMULATE}, {@link #RENDER}, {@link #PRESENT} and {@link #WAIT}) are
+ * registered up front, and other timers can be added with {@link #register}.
+ * A measurement is taken with:
+ *
+ * <PRE>
+ * long start = PerformanceCounter.start();
+ * ...
+ * PerformanceCounter.end(PerformanceCounter.RENDER, start);
+ * </PRE>
+ *
+ * <P>
+ * The durations are counted in log-linear histograms (four buckets per power
+ * of two, so within 25% of the actual value), from which {@link #report}
+ * derives the median, the 99th and 99.9th percentiles and the maximum of each
+ * timer. Every thread counts into its own histograms, so recording takes no
+ * lock and allocates nothing after the first measurement of the thread; the
+ * histograms of all the threads are added up when they are read.
+ * <P>
+ * The list of the per-thread histograms is an array that is replaced, under
+ * the class lock, whenever a thread is added; the readers take the current
+ * array and need no lock.
+ *
  * @author <A HREF="mailto:razvan.surdulescu@post.harvard.edu">Razvan Surdulescu</A> (c) 2001 - 2006
  * <BR>
  * You may use and distribute this software for free provided you include
@@ -16,118 +39,267 @@ import java.util.Hashtable;
  * publicity reasons or modify the code without permission from me.
  */
 public class PerformanceCounter {
+	/** Timer: emulating a frame, apart from waiting for the interrupt. */
+	public static final int EMULATE = 0;
+
+	/** Timer: rendering the screen into the screen buffer. */
+	public static final int RENDER = 1;
+
+	/** Timer: handing the screen buffer to the frame sink. */
+	public static final int PRESENT = 2;
+
+	/** Timer: waiting for the frame pacer. */
+	public static final int WAIT = 3;
+
+	/** The maximum number of timers. */
+	public static final int MAX_TIMERS = 16;
+
+	/** The number of histogram buckets per power of two. */
+	private static final int SUB_BUCKETS = 4;
+
+	/** The number of histogram buckets per timer. */
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
 	/**
-	 * Store the total amount of time performed by a particular action
-	 * and the number of times that action was performed.
+	 * The number of slots per timer in the per-thread arrays: the buckets,
+	 * then the maximum.
 	 */
-	private static class Pair {
-		double time;
-		int count;
-	}
-	
+	private static final int SLOTS = BUCKETS + 1;
+
 	/** Enable or disable the performance counter functionality. */
-	private static boolean s_enable = false;
-	
-	/**
-	 * Skip this many events of any given time before recording
-	 * times for that event type.
-	 */
-	private static int s_warmup = 50;
-	
-	/** The list of start times for an event of a given type. */
-	private static Hashtable s_startTimes = new Hashtable();
-	
-	/** The list of {@link Pair} objects for an event of a given type. */
-	private static Hashtable s_timePairs = new Hashtable();
-	
+	private static volatile boolean s_enable = false;
+
+	/** The names of the registered timers. */
+	private static final String[] s_names = new String[MAX_TIMERS];
+
+	/** The number of registered timers. */
+	private static int s_timers;
+
+	/** The histograms of every thread that has recorded anything. */
+	private static volatile long[][] s_histograms = new long[0][];
+
+	/** The histograms of the current thread. */
+	private static final ThreadLocal<long[]> s_local =
+			new ThreadLocal<long[]>() {
+		protected long[] initialValue() {
+			final long[] histograms = new long[MAX_TIMERS * SLOTS];
+			addHistograms(histograms);
+			return histograms;
+		}
+	};
+
+	static {
+		register("emulate");
+		register("render");
+		register("present");
+		register("wait");
+	}
+
 	/** Enable or disable the counter functionality. */
 	public static void setEnable(boolean flag) {
 		s_enable = flag;
 	}
-	
-	/** Set the warmup count. */
-	public static void setWarmup(int value) {
-		if (value < 0) {
-			throw new IllegalArgumentException("Invalid warmup count: " + value);
-		}
-		
-		s_warmup = value;
+
+	/** Is the counter functionality enabled? */
+	public static boolean isEnabled() {
+		return s_enable;
 	}
-	
+
 	/**
-	 * Start tracking a new event of specified type.
-	 *
+	 * Register a new timer with the given name, and return its index.
 	 * <P>
-	 * You may not start the same event type twice in a row;
-	 * you must {@link #end} it first!
-	 *
-	 * @param name The type of performance event to start
+	 * Timers should be registered once, at startup.
 	 */
-	public static synchronized void start(String name) {
-		if (!s_enable) {
-			return;
+	public static synchronized int register(String name) {
+		if (s_timers == MAX_TIMERS) {
+			throw new IllegalStateException("Too many timers: " + name);
 		}
-		
-		if (s_startTimes.containsKey(name)) {
-			throw new IllegalArgumentException("Timer '" + name + "' already started");
-		} else {
-			long start = NativeTimer.currentTimeNanos();
-			
-			s_startTimes.put(name, new Double(start / 1000.0));
+		s_names[s_timers] = name;
+		return s_timers++;
+	}
+
+	/**
+	 * Add the histograms of a new thread to {@link #s_histograms}, by
+	 * replacing the array.
+	 */
+	private static synchronized void addHistograms(long[] histograms) {
+		final long[][] old = s_histograms;
+		final long[][] all = new long[old.length + 1][];
+		System.arraycopy(old, 0, all, 0, old.length);
+		all[old.length] = histograms;
+		s_histograms = all;
+	}
+
+	/**
+	 * Start a measurement: return the current time, to be passed to
+	 * {@link #end}, or 0 if the counter is disabled.
+	 */
+	public static long start() {
+		return (s_enable ? System.nanoTime() : 0);
+	}
+
+	/**
+	 * End a measurement that was started with {@link #start}, and record it
+	 * for the given timer.
+	 */
+	public static void end(int timer, long start) {
+		if (s_enable && start != 0) {
+			record(timer, System.nanoTime() - start);
 		}
 	}
-	
+
 	/**
-	 * End tracking an event of specified time and record
-	 * the amount of time it took to complete.
-	 *
-	 * <P>
-	 * You may not end the same event type twice in a row;
-	 * you must {@link #start} it first!
-	 *
-	 * @param name The type of performance event to end
+	 * Record a duration, in nanoseconds, for the given timer.
 	 */
-	public static synchronized void end(String name) {
-		if (!s_enable) {
-			return;
-		}
-		
-		long end = NativeTimer.currentTimeNanos();
-		
-		if (!s_startTimes.containsKey(name)) {
-			throw new IllegalArgumentException("Timer '" + name + "' not already started");
-		} else {
-			double start = ((Double) s_startTimes.remove(name)).doubleValue();
-			
-			Pair pair;
-			if (s_timePairs.containsKey(name)) {
-				pair = (Pair) s_timePairs.get(name);
-			} else {
-				pair = new Pair();
-				s_timePairs.put(name, pair);
+	public static void record(int timer, long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		final long[] histograms = s_local.get();
+		final int base = timer * SLOTS;
+		histograms[base + bucket(nanos)]++;
+		if (nanos > histograms[base + BUCKETS]) {
+			histograms[base + BUCKETS] = nanos;
+		}
+	}
+
+	/**
+	 * Return the bucket of a duration: its power of two, and the two bits
+	 * below its highest bit.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		final int mantissa = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return ((exponent - 1) * SUB_BUCKETS) + mantissa;
+	}
+
+	/**
+	 * Return the largest duration that falls into the given bucket.
+	 */
+	private static long bucketLimit(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + 1;
+		final long mantissa = bucket % SUB_BUCKETS;
+		return (((SUB_BUCKETS + mantissa + 1) << (exponent - 2)) - 1);
+	}
+
+	/**
+	 * Discard all the measurements, for example at the end of a warmup.
+	 */
+	public static void reset() {
+		final long[][] all = s_histograms;
+		for (int i = 0; i < all.length; i++) {
+			final long[] histograms = all[i];
+			for (int j = 0; j < histograms.length; j++) {
+				histograms[j] = 0;
 			}
-			
-			pair.count++;
-			if (pair.count > s_warmup) {
-				pair.time += (end / 1000.0 - start);
+		}
+	}
+
+	/**
+	 * Return the number of measurements of the given timer.
+	 */
+	public static long getCount(int timer) {
+		long count = 0;
+		final long[] buckets = sum(timer);
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets[i];
+		}
+		return count;
+	}
+
+	/**
+	 * Return the given percentile (0 - 100) of the durations of the given
+	 * timer, in nanoseconds; the percentile 100 is the maximum.
+	 */
+	public static long getPercentile(int timer, double percentile) {
+		return percentile(sum(timer), percentile);
+	}
+
+	/**
+	 * Add up the buckets and maxima of the given timer over all threads.
+	 */
+	private static long[] sum(int timer) {
+		final long[] result = new long[SLOTS];
+		final int base = timer * SLOTS;
+		final long[][] all = s_histograms;
+		for (int i = 0; i < all.length; i++) {
+			final long[] histograms = all[i];
+			for (int j = 0; j < BUCKETS; j++) {
+				result[j] += histograms[base + j];
 			}
+			result[BUCKETS] = Math.max(result[BUCKETS],
+					histograms[base + BUCKETS]);
 		}
+		return result;
 	}
-	
+
+	private static long percentile(long[] buckets, double percentile) {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		if (percentile >= 100) {
+			return buckets[BUCKETS];
+		}
+		final long rank = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if (seen >= rank && buckets[i] != 0) {
+				return Math.min(bucketLimit(i), buckets[BUCKETS]);
+			}
+		}
+		return buckets[BUCKETS];
+	}
+
 	/**
 	 * Report all the performance events gathered thus far.
 	 */
-	public static synchronized void report() {
-		if (!s_enable) {
-			return;
-		}
-		
-		for (Enumeration keys = s_timePairs.keys(); keys.hasMoreElements(); ) {
-			String name = (String) keys.nextElement();
-			Pair pair = (Pair) s_timePairs.get(name);
-			
-			int count = pair.count - s_warmup;
-			System.out.println(name + "=" + (pair.time / count) + " (" + count + ")");
+	public static void report() {
+		report(System.out);
+	}
+
+	/**
+	 * Report the count, p50, p99, p999 and maximum (in microseconds) of every
+	 * timer that has any measurements.
+	 */
+	public static void report(PrintStream out) {
+		out.println("timer       count       p50(us)     p99(us)     p999(us)    max(us)");
+		for (int timer = 0; timer < s_timers; timer++) {
+			final long[] buckets = sum(timer);
+			long count = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				count += buckets[i];
+			}
+			if (count == 0) {
+				continue;
+			}
+			out.println(pad(s_names[timer], 12) + pad(Long.toString(count), 12)
+					+ pad(micros(percentile(buckets, 50)), 12)
+					+ pad(micros(percentile(buckets, 99)), 12)
+					+ pad(micros(percentile(buckets, 99.9)), 12)
+					+ micros(buckets[BUCKETS]));
+		}
+	}
+
+	private static String micros(long nanos) {
+		return Double.toString(Math.round(nanos / 100.0) / 10.0);
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buffer = new StringBuffer(s);
+		while (buffer.length() < width) {
+			buffer.append(' ');
 		}
+		return buffer.toString();
 	}
 }
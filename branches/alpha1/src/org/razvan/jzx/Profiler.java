@@ -0,0 +1,296 @@
+package org.razvan.jzx;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import org.razvan.jzx.v48.Spectrum;
+
+/**
+ * Count how often each guest instruction is executed, and how many T-States
+ * it takes.
+ * <P>
+ * When a profiler is attached to the CPU (see <TT>Z80.setProfiler()</TT>),
+ * every instruction is counted twice: by the address it is executed from, and
+ * by its opcode in one of the opcode tables (unprefixed, CB, ED, DD, FD, DDCB
+ * and FDCB.) The T-States of each instruction, including its contention
+ * delays, are added to both. All the counters live in flat arrays, so
+ * profiling does not allocate anything.
+ * <P>
+ * {@link #report} prints the hot spots, sorted by T-States; addresses in the
+ * ROM are labeled with the name of the 48k ROM routine they belong to.
+ * <P>
+ * Usage: <TT>java org.razvan.jzx.Profiler rom snapshot.z80 [frames [top]]</TT>
+ */
+public class Profiler {
+	/** Opcode table: unprefixed instructions. */
+	public static final int TABLE_MAIN = 0;
+	/** Opcode table: instructions prefixed with CB. */
+	public static final int TABLE_CB = 1;
+	/** Opcode table: instructions prefixed with ED. */
+	public static final int TABLE_ED = 2;
+	/** Opcode table: instructions prefixed with DD. */
+	public static final int TABLE_DD = 3;
+	/** Opcode table: instructions prefixed with FD. */
+	public static final int TABLE_FD = 4;
+	/** Opcode table: instructions prefixed with DD CB. */
+	public static final int TABLE_DDCB = 5;
+	/** Opcode table: instructions prefixed with FD CB. */
+	public static final int TABLE_FDCB = 6;
+	/** The number of opcode tables. */
+	public static final int TABLES = 7;
+
+	/** The prefix bytes of each opcode table, for the report. */
+	private static final String[] TABLE_PREFIXES = { "", "CB ", "ED ", "DD ",
+			"FD ", "DD CB ", "FD CB " };
+
+	/** The number of hot spots reported, when none is specified. */
+	public static final int DEFAULT_TOP = 20;
+
+	/** The addresses of the 48k ROM routines, in increasing order. */
+	private static final int[] ROM_ADDRESSES = { 0x0000, 0x0008, 0x0010,
+			0x0018, 0x0020, 0x0028, 0x0030, 0x0038, 0x0048, 0x0066, 0x028e,
+			0x02bf, 0x031e, 0x03b5, 0x03f8, 0x04c2, 0x0556, 0x05e3, 0x05e7,
+			0x0605, 0x09f4, 0x0c0a, 0x0d6b, 0x0daf, 0x0dd9, 0x0e44, 0x0e9b,
+			0x10a8, 0x11b7, 0x12a2, 0x15d4, 0x1601, 0x1b76, 0x1b8a, 0x1f3a,
+			0x1f54, 0x22aa, 0x22dc, 0x22e5, 0x24b7, 0x2d28, 0x2da2, 0x335b };
+
+	/** The names of the 48k ROM routines, parallel to ROM_ADDRESSES. */
+	private static final String[] ROM_LABELS = { "START", "ERROR-1",
+			"PRINT-A-1", "GET-CHAR", "NEXT-CHAR", "FP-CALC", "BC-SPACES",
+			"MASK-INT", "KEY-INT", "RESET", "KEY-SCAN", "KEYBOARD", "K-TEST",
+			"BEEPER", "BEEP", "SA-BYTES", "LD-BYTES", "LD-EDGE-2",
+			"LD-EDGE-1", "SAVE-ETC", "PRINT-OUT", "PO-MSG", "CLS", "CL-ALL",
+			"CL-SET", "CL-LINE", "CL-ADDR", "KEY-INPUT", "NEW", "MAIN-EXEC",
+			"WAIT-KEY", "CHAN-OPEN", "STMT-RETURN", "LINE-RUN", "PAUSE",
+			"BREAK-KEY", "PIXEL-ADD", "PLOT", "PLOT-SUB", "DRAW-LINE",
+			"STACK-A", "FP-TO-BC", "CALCULATE" };
+
+	/** The number of times each address was executed. */
+	private final long[] m_pcCounts = new long[0x10000];
+
+	/** The T-States spent in the instructions at each address. */
+	private final long[] m_pcTStates = new long[0x10000];
+
+	/** The number of times each opcode was executed, per table. */
+	private final long[] m_opCounts = new long[TABLES << 8];
+
+	/** The T-States spent in each opcode, per table. */
+	private final long[] m_opTStates = new long[TABLES << 8];
+
+	/**
+	 * Count an instruction.
+	 *
+	 * @param pc16
+	 *            The address of the instruction.
+	 * @param op
+	 *            The opcode index, as returned by {@link #opcode}.
+	 * @param tstates
+	 *            The T-States the instruction took.
+	 */
+	public final void count(final int pc16, final int op, final int tstates) {
+		m_pcCounts[pc16]++;
+		m_pcTStates[pc16] += tstates;
+		m_opCounts[op]++;
+		m_opTStates[op] += tstates;
+	}
+
+	/**
+	 * Return the index of an instruction in the opcode counters: its table
+	 * shifted left by 8 bits, plus its opcode in that table.
+	 *
+	 * @param b0
+	 *            The first byte of the instruction.
+	 * @param b1
+	 *            The second byte of the instruction.
+	 * @param b3
+	 *            The fourth byte of the instruction (the opcode of a DDCB or
+	 *            FDCB instruction.)
+	 */
+	public static int opcode(final int b0, final int b1, final int b3) {
+		switch (b0) {
+		case 0xcb:
+			return (TABLE_CB << 8) | b1;
+		case 0xed:
+			return (TABLE_ED << 8) | b1;
+		case 0xdd:
+			return (b1 == 0xcb ? (TABLE_DDCB << 8) | b3 : (TABLE_DD << 8)
+					| b1);
+		case 0xfd:
+			return (b1 == 0xcb ? (TABLE_FDCB << 8) | b3 : (TABLE_FD << 8)
+					| b1);
+		default:
+			return b0;
+		}
+	}
+
+	/**
+	 * Reset all the counters.
+	 */
+	public void clear() {
+		for (int i = 0; i < m_pcCounts.length; i++) {
+			m_pcCounts[i] = 0;
+			m_pcTStates[i] = 0;
+		}
+		for (int i = 0; i < m_opCounts.length; i++) {
+			m_opCounts[i] = 0;
+			m_opTStates[i] = 0;
+		}
+	}
+
+	/**
+	 * Trivial accessor for the number of times the given address was
+	 * executed.
+	 */
+	public long getCount(int pc16) {
+		return m_pcCounts[pc16];
+	}
+
+	/**
+	 * Trivial accessor for the T-States spent in the instructions at the
+	 * given address.
+	 */
+	public long getTStates(int pc16) {
+		return m_pcTStates[pc16];
+	}
+
+	/**
+	 * Trivial accessor for the number of times the given opcode (see
+	 * {@link #opcode}) was executed.
+	 */
+	public long getOpcodeCount(int op) {
+		return m_opCounts[op];
+	}
+
+	/**
+	 * Trivial accessor for the T-States spent in the given opcode (see
+	 * {@link #opcode}.)
+	 */
+	public long getOpcodeTStates(int op) {
+		return m_opTStates[op];
+	}
+
+	/**
+	 * Return the name of the 48k ROM routine that contains the given address,
+	 * plus the offset into it ("KEY-SCAN+12"), or null if the address is not
+	 * in the ROM.
+	 */
+	public static String getLabel(int pc16) {
+		if (pc16 >= 0x4000) {
+			return null;
+		}
+		int i = ROM_ADDRESSES.length - 1;
+		while (ROM_ADDRESSES[i] > pc16) {
+			i--;
+		}
+		final int offset = pc16 - ROM_ADDRESSES[i];
+		return (offset == 0 ? ROM_LABELS[i] : ROM_LABELS[i] + "+" + offset);
+	}
+
+	/**
+	 * Print the totals, then the <TT>top</TT> addresses and opcodes that took
+	 * the most T-States.
+	 */
+	public void report(PrintStream out, int top) {
+		long instructions = 0, tstates = 0;
+		for (int i = 0; i < m_pcCounts.length; i++) {
+			instructions += m_pcCounts[i];
+			tstates += m_pcTStates[i];
+		}
+		out.println("instructions=" + instructions + " tstates=" + tstates);
+
+		out.println();
+		out.println("addr  count        tstates      %      label");
+		final int[] pcs = top(m_pcTStates, top);
+		for (int i = 0; i < pcs.length; i++) {
+			final int pc16 = pcs[i];
+			String label = getLabel(pc16);
+			out.println(pad(hex(pc16, 4), 6) + pad(Long.toString(m_pcCounts[pc16]), 13)
+					+ pad(Long.toString(m_pcTStates[pc16]), 13)
+					+ pad(percent(m_pcTStates[pc16], tstates), 7)
+					+ (label != null ? label : ""));
+		}
+
+		out.println();
+		out.println("opcode      count        tstates      %");
+		final int[] ops = top(m_opTStates, top);
+		for (int i = 0; i < ops.length; i++) {
+			final int op = ops[i];
+			out.println(pad(TABLE_PREFIXES[op >> 8] + hex(op & 0xff, 2), 12)
+					+ pad(Long.toString(m_opCounts[op]), 13)
+					+ pad(Long.toString(m_opTStates[op]), 13)
+					+ percent(m_opTStates[op], tstates));
+		}
+	}
+
+	/**
+	 * Return the indices of the (at most) <TT>n</TT> largest non-zero
+	 * values, largest first.
+	 */
+	private static int[] top(long[] values, int n) {
+		int[] indices = new int[n];
+		int size = 0;
+		for (int i = 0; i < values.length; i++) {
+			final long value = values[i];
+			if (value == 0 || (size == n && value <= values[indices[n - 1]])) {
+				continue;
+			}
+			int j = (size < n ? size++ : n - 1);
+			while (j > 0 && values[indices[j - 1]] < value) {
+				indices[j] = indices[j - 1];
+				j--;
+			}
+			indices[j] = i;
+		}
+		int[] result = new int[size];
+		System.arraycopy(indices, 0, result, 0, size);
+		return result;
+	}
+
+	private static String hex(int value, int digits) {
+		String s = Integer.toHexString(value).toUpperCase();
+		while (s.length() < digits) {
+			s = "0" + s;
+		}
+		return s;
+	}
+
+	private static String percent(long value, long total) {
+		return (total > 0 ? Double.toString(Math.round(value * 1000.0 / total) / 10.0)
+				: "0");
+	}
+
+	private static String pad(String s, int width) {
+		StringBuffer buffer = new StringBuffer(s);
+		while (buffer.length() < width) {
+			buffer.append(' ');
+		}
+		return buffer.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: Profiler rom snapshot.z80 "
+					+ "[frames [top]]");
+			System.exit(1);
+		}
+		int frames = (args.length > 2 ? Integer.parseInt(args[2]) : 3000);
+		int top = (args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_TOP);
+
+		BaseSpectrum spectrum = new Spectrum();
+		spectrum.setThrottled(false);
+		spectrum.init(null, new FileInputStream(args[0]));
+		spectrum.reset();
+		Z80Loader loader = new Z80Loader(spectrum.getLogger());
+		loader.load(new FileInputStream(args[1]));
+		spectrum.load(loader);
+
+		Profiler profiler = new Profiler();
+		spectrum.getCPU().setProfiler(profiler);
+		spectrum.emulate(frames);
+		spectrum.getCPU().setProfiler(null);
+		spectrum.terminate();
+
+		profiler.report(System.out, top);
+	}
+}
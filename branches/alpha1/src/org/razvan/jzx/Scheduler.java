@@ -0,0 +1,229 @@
+package org.razvan.jzx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.razvan.jzx.v48.Spectrum;
+
+/**
+ * Run many Spectrum machines at the same time on a fixed pool of worker
+ * threads.
+ * <P>
+ * The machines are time-sliced by frame: every machine added to the scheduler
+ * emulates a slice of {@link #getSlice()} frames on one of the workers, and is
+ * then queued again behind all the other machines. Since the machines share no
+ * mutable state, any number of them can be scheduled on any number of workers;
+ * a machine is only ever run by one worker at a time.
+ * <P>
+ * The machines are not synchronized by the frame pacer (a throttled
+ * machine would block its worker thread while waiting for the next
+ * interrupt), so they all run at the full speed of the host. The scheduler
+ * keeps count of the frames emulated by all the machines, from which it
+ * reports the aggregate emulated frames per second.
+ * <P>
+ * Usage:
+ * <TT>java org.razvan.jzx.Scheduler rom snapshot.z80 [machines [threads [seconds]]]</TT>
+ */
+public class Scheduler {
+	/** The number of frames in a slice, when none is specified. */
+	public static final int DEFAULT_SLICE = 10;
+
+	/** The worker threads on which the machines are run. */
+	private final ExecutorService m_executor;
+
+	/** The number of frames that a machine runs before it yields its worker. */
+	private final int m_slice;
+
+	/** The number of frames emulated by all the machines. */
+	private final AtomicLong m_frames = new AtomicLong();
+
+	/** The number of machines that are still scheduled. */
+	private final AtomicLong m_machines = new AtomicLong();
+
+	/** The time (from <TT>System.nanoTime()</TT>) the scheduler was created. */
+	private final long m_start = System.nanoTime();
+
+	/**
+	 * If true, the machines are not scheduled again after their slice. It is
+	 * set, and checked before queuing a slice, while holding the lock of the
+	 * scheduler, so that no slice is queued after the workers are shut down.
+	 */
+	private volatile boolean m_stop;
+
+	/**
+	 * Create a scheduler with the given number of worker threads and the
+	 * default slice.
+	 */
+	public Scheduler(int threads) {
+		this(threads, DEFAULT_SLICE);
+	}
+
+	/**
+	 * Create a scheduler with the given number of worker threads, which runs
+	 * every machine for the given number of frames at a time.
+	 */
+	public Scheduler(int threads, int slice) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("Invalid thread count: "
+					+ threads);
+		}
+		if (slice <= 0) {
+			throw new IllegalArgumentException("Invalid slice: " + slice);
+		}
+		m_executor = Executors.newFixedThreadPool(threads);
+		m_slice = slice;
+	}
+
+	/**
+	 * Trivial accessor for the number of frames in a slice.
+	 */
+	public int getSlice() {
+		return m_slice;
+	}
+
+	/**
+	 * Schedule the given machine, which must already be initialized and
+	 * loaded.
+	 * <P>
+	 * The machine is switched to unthrottled mode, and it runs until the
+	 * scheduler is stopped.
+	 */
+	public void add(BaseSpectrum spectrum) {
+		spectrum.setThrottled(false);
+		synchronized (this) {
+			if (m_stop) {
+				throw new IllegalStateException("Scheduler is stopped");
+			}
+			m_machines.incrementAndGet();
+			m_executor.execute(new Slice(spectrum));
+		}
+	}
+
+	/**
+	 * Trivial accessor for the number of machines that are still scheduled.
+	 */
+	public int getMachineCount() {
+		return (int) m_machines.get();
+	}
+
+	/**
+	 * Trivial accessor for the number of frames emulated by all the machines
+	 * since the scheduler was created.
+	 */
+	public long getFrameCount() {
+		return m_frames.get();
+	}
+
+	/**
+	 * The aggregate number of frames emulated per second by all the machines,
+	 * since the scheduler was created.
+	 */
+	public double getFramesPerSecond() {
+		long elapsed = System.nanoTime() - m_start;
+		return (elapsed > 0 ? (m_frames.get() * 1e9) / elapsed : 0);
+	}
+
+	/**
+	 * Stop scheduling the machines and wait for the slices that are running
+	 * to complete.
+	 * <P>
+	 * The machines themselves are not terminated.
+	 */
+	public void stop() throws InterruptedException {
+		synchronized (this) {
+			m_stop = true;
+			m_executor.shutdown();
+		}
+		m_executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Run one slice of a machine, then queue it again unless the scheduler
+	 * was stopped.
+	 */
+	private class Slice implements Runnable {
+		private final BaseSpectrum m_spectrum;
+
+		Slice(BaseSpectrum spectrum) {
+			m_spectrum = spectrum;
+		}
+
+		public void run() {
+			if (!m_stop) {
+				m_spectrum.emulate(m_slice);
+				m_frames.addAndGet(m_spectrum.getFrameCount());
+			}
+			synchronized (Scheduler.this) {
+				if (!m_stop) {
+					m_executor.execute(this);
+					return;
+				}
+			}
+			m_machines.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Read the given stream fully and close it.
+	 */
+	private static byte[] readFully(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int length;
+			while ((length = is.read(buffer)) > 0) {
+				out.write(buffer, 0, length);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: Scheduler rom snapshot.z80 "
+					+ "[machines [threads [seconds]]]");
+			System.exit(1);
+		}
+		int machines = (args.length > 2 ? Integer.parseInt(args[2]) : 8);
+		int threads = (args.length > 3 ? Integer.parseInt(args[3]) : Runtime
+				.getRuntime().availableProcessors());
+		int seconds = (args.length > 4 ? Integer.parseInt(args[4]) : 10);
+
+		byte[] rom = readFully(new FileInputStream(args[0]));
+		Z80Loader loader = new Z80Loader(new ConsoleLogger());
+		loader.load(new FileInputStream(args[1]));
+
+		BaseSpectrum[] spectrums = new BaseSpectrum[machines];
+		for (int i = 0; i < machines; i++) {
+			spectrums[i] = new Spectrum();
+			spectrums[i].init(null, new ByteArrayInputStream(rom));
+			spectrums[i].reset();
+			spectrums[i].load(loader);
+		}
+
+		Scheduler scheduler = new Scheduler(threads);
+		for (int i = 0; i < machines; i++) {
+			scheduler.add(spectrums[i]);
+		}
+		for (int i = 0; i < seconds; i++) {
+			Thread.sleep(1000L);
+			System.out.println("machines=" + machines + " threads=" + threads
+					+ " frames=" + scheduler.getFrameCount() + " fps="
+					+ (int) scheduler.getFramesPerSecond());
+		}
+		scheduler.stop();
+
+		for (int i = 0; i < machines; i++) {
+			spectrums[i].terminate();
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package org.razvan.jzx;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Turn a binary trace file written by {@link Tracer#dump} into text, one line
+ * per instruction:
+ *
+ * <PRE>
+ * T=1234567 PC=8000 OP=ED B0 00 00 AF=1344 BC=0010 DE=4001 HL=4000 IX=0000 IY=5C3A SP=FF00
+ * </PRE>
+ *
+ * The opcode bytes are the four bytes at PC; the instruction may only use the
+ * first of them.
+ * <P>
+ * Usage: <TT>java org.razvan.jzx.TraceDecoder trace.bin</TT>
+ */
+public class TraceDecoder {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Decode the trace in the given stream and print it.
+	 */
+	public static void decode(InputStream is, PrintStream out)
+			throws IOException {
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(is));
+		if (in.readInt() != Tracer.MAGIC) {
+			throw new IOException("Not a trace file");
+		}
+		final int version = in.readInt();
+		if (version != Tracer.VERSION) {
+			throw new IOException("Unknown trace version: " + version);
+		}
+
+		final int count = in.readInt();
+		final int[] record = new int[Tracer.RECORD_INTS];
+		final StringBuffer line = new StringBuffer(96);
+		for (int n = 0; n < count; n++) {
+			try {
+				for (int j = 0; j < Tracer.RECORD_INTS; j++) {
+					record[j] = in.readInt();
+				}
+				line.setLength(0);
+				line.append("T=").append(in.readLong());
+				line.append(" PC=");
+				hex(line, record[0] >>> 16, 4);
+				line.append(" OP=");
+				for (int shift = 24; shift >= 0; shift -= 8) {
+					hex(line, record[1] >>> shift, 2);
+					line.append(shift > 0 ? " " : "");
+				}
+				line.append(" AF=");
+				hex(line, record[2] >>> 16, 4);
+				line.append(" BC=");
+				hex(line, record[2], 4);
+				line.append(" DE=");
+				hex(line, record[3] >>> 16, 4);
+				line.append(" HL=");
+				hex(line, record[3], 4);
+				line.append(" IX=");
+				hex(line, record[4] >>> 16, 4);
+				line.append(" IY=");
+				hex(line, record[4], 4);
+				line.append(" SP=");
+				hex(line, record[0], 4);
+				out.println(line);
+			} catch (EOFException e) {
+				throw new IOException("Trace file is truncated at record " + n);
+			}
+		}
+	}
+
+	/**
+	 * Append the low <TT>digits</TT> hex digits of the given value.
+	 */
+	private static void hex(StringBuffer buffer, int value, int digits) {
+		for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+			buffer.append(HEX[(value >>> shift) & 0xf]);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TraceDecoder trace.bin");
+			System.exit(1);
+		}
+		InputStream is = new FileInputStream(args[0]);
+		try {
+			decode(is, System.out);
+		} finally {
+			is.close();
+		}
+	}
+}
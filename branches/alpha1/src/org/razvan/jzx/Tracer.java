@@ -0,0 +1,160 @@
+package org.razvan.jzx;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A ring buffer of the most recently executed Z80 instructions.
+ * <P>
+ * When a tracer is attached to the CPU (see <TT>Z80.setTracer()</TT>), every
+ * instruction is recorded before it executes: its PC, its first four opcode
+ * bytes, the AF, BC, DE, HL, IX, IY and SP registers and the absolute T-State.
+ * The records are kept in preallocated arrays of primitives, so recording does
+ * not allocate or format anything; once the buffer is full, the oldest records
+ * are overwritten.
+ * <P>
+ * The buffer is written on demand by {@link #dump} to a compact binary file,
+ * which {@link TraceDecoder} turns back into text:
+ *
+ * <PRE>
+ * int    MAGIC ("JZXT")
+ * int    VERSION
+ * int    record count
+ * record count times:
+ *     int    PC (high 16 bits) and SP (low 16 bits)
+ *     int    the four bytes at PC, first byte highest
+ *     int    AF and BC
+ *     int    DE and HL
+ *     int    IX and IY
+ *     long   absolute T-State
+ * </PRE>
+ *
+ * All values are big-endian, and the records go from oldest to newest.
+ */
+public class Tracer {
+	/** The magic number at the start of a trace file ("JZXT"). */
+	public static final int MAGIC = 0x4a5a5854;
+
+	/** The version of the trace file format. */
+	public static final int VERSION = 1;
+
+	/** The number of ints in a record (not counting the T-State.) */
+	public static final int RECORD_INTS = 5;
+
+	/** The number of records kept, when none is specified. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/** The register and opcode values of the records. */
+	private final int[] m_records;
+
+	/** The T-States of the records. */
+	private final long[] m_tstates;
+
+	/** The capacity minus one; the capacity is a power of two. */
+	private final int m_mask;
+
+	/** The number of instructions recorded since the last clear. */
+	private long m_count;
+
+	/**
+	 * Create a tracer that keeps {@link #DEFAULT_CAPACITY} records.
+	 */
+	public Tracer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a tracer that keeps the given number of records, rounded up to
+	 * a power of two.
+	 */
+	public Tracer(int capacity) {
+		if (capacity <= 0 || capacity > (1 << 24)) {
+			throw new IllegalArgumentException("Invalid capacity: "
+					+ capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		m_records = new int[size * RECORD_INTS];
+		m_tstates = new long[size];
+		m_mask = size - 1;
+	}
+
+	/**
+	 * Record an instruction, overwriting the oldest record if the buffer is
+	 * full.
+	 *
+	 * @param opcodes
+	 *            The four bytes at PC, first byte highest.
+	 */
+	public final void record(final int pc16, final int opcodes,
+			final int af16, final int bc16, final int de16, final int hl16,
+			final int ix16, final int iy16, final int sp16, final long tstate) {
+		final int slot = (int) m_count & m_mask;
+		final int i = slot * RECORD_INTS;
+		final int[] records = m_records;
+		records[i] = (pc16 << 16) | sp16;
+		records[i + 1] = opcodes;
+		records[i + 2] = (af16 << 16) | bc16;
+		records[i + 3] = (de16 << 16) | hl16;
+		records[i + 4] = (ix16 << 16) | iy16;
+		m_tstates[slot] = tstate;
+		m_count++;
+	}
+
+	/**
+	 * Trivial accessor for the number of records the buffer can hold.
+	 */
+	public int getCapacity() {
+		return m_mask + 1;
+	}
+
+	/**
+	 * Trivial accessor for the number of instructions recorded since the last
+	 * clear (including those that were overwritten.)
+	 */
+	public long getCount() {
+		return m_count;
+	}
+
+	/**
+	 * The number of records in the buffer.
+	 */
+	public int size() {
+		return (int) Math.min(m_count, m_mask + 1);
+	}
+
+	/**
+	 * Discard all the records.
+	 */
+	public void clear() {
+		m_count = 0;
+	}
+
+	/**
+	 * Write the records, from oldest to newest, in the binary trace format.
+	 * <P>
+	 * The stream is flushed, but not closed. The CPU must not be recording
+	 * while the buffer is dumped.
+	 */
+	public void dump(OutputStream os) throws IOException {
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(os));
+		final int size = size();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size);
+		for (long n = m_count - size; n < m_count; n++) {
+			final int slot = (int) n & m_mask;
+			final int i = slot * RECORD_INTS;
+			for (int j = 0; j < RECORD_INTS; j++) {
+				out.writeInt(m_records[i + j]);
+			}
+			out.writeLong(m_tstates[slot]);
+		}
+		out.flush();
+	}
+}
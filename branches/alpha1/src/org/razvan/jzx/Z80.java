@@ -3,8 +3,6 @@ package org.razvan.jzx;
 import java.io.IOException;
 import java.io.InputStream;
 
-import android.util.Log;
-
 /**
  * The Z80 CPU component of the Spectrum emulator.
  * 
@@ -17,16 +15,16 @@ import android.util.Log;
  * 
  * @see BaseSpectrum
  */
-public class Z80 {
+public class Z80 extends BaseComponent {
 	/**
 	 * Indicates that the <TT>emulate()</TT> method should end.
 	 */
-	protected static volatile boolean m_stop;
+	protected volatile boolean m_stop;
 
 	/**
 	 * Indicates that the <TT>emulate()</TT> method should pause.
 	 */
-	protected static volatile boolean m_pause;
+	protected volatile boolean m_pause;
 
 	/**
 	 * The current count of T-States for the CPU.
@@ -35,9 +33,36 @@ public class Z80 {
 	 * that is executed.
 	 * <P>
 	 * The T-States are used for synchonizing the rendering of screen lines that
-	 * comprise the screen frame.
+	 * comprise the screen frame. They count from the last interrupt, which is
+	 * also the index into the memory contention table.
+	 */
+	private int m_tstates;
+
+	/**
+	 * The T-State at which the next memory or I/O cycle of the current
+	 * instruction starts.
+	 * <P>
+	 * Each instruction adds all its T-States to <TT>m_tstates</TT> up front,
+	 * so the accesses follow this cursor instead: it starts with the
+	 * instruction, each access moves it past its own cycle, and the internal
+	 * cycles between accesses are run by <TT>idle()</TT>. The contention
+	 * delays are added to both.
+	 */
+	private int m_access;
+
+	/**
+	 * The T-States count at which the current call to <TT>execute()</TT>
+	 * returns.
+	 * <P>
+	 * A HALT instruction uses this to skip straight to the next event.
 	 */
-	private static int m_tstates;
+	private int m_tstateBudget;
+
+	/** The tracer that records every instruction, or null if not tracing. */
+	private Tracer m_tracer;
+
+	/** The profiler that counts every instruction, or null if not profiling. */
+	private Profiler m_profiler;
 
 	/** The bit mask used to extract the CARRY flag from the F register. */
 	private static final int CARRY_MASK = 0x01;
@@ -69,30 +94,63 @@ public class Z80 {
 	/** The bit mask used to extract the SIGN flag from the F register. */
 	private static final int SIGN_MASK = 0x80;
 
+	/** The bit mask used to extract the FIVE and THREE flags. */
+	private static final int FIVE_THREE_MASK = FIVE_MASK | THREE_MASK;
+
+	/** The bit mask used to extract the SIGN, ZERO and PARITY flags. */
+	private static final int SZP_MASK = SIGN_MASK | ZERO_MASK | PARITY_MASK;
+
+	/** No pending lazy flags: the F register is up to date. */
+	private static final int LAZY_NONE = 0;
+	/** Lazy flags of ADD A,n: operands A and n, 9-bit result. */
+	private static final int LAZY_ADD = 1;
+	/** Lazy flags of ADC A,n: operands A and n, 9-bit result. */
+	private static final int LAZY_ADC = 2;
+	/** Lazy flags of SUB n: operands A and n, 9-bit result. */
+	private static final int LAZY_SUB = 3;
+	/** Lazy flags of SBC A,n: operands A and n, 9-bit result. */
+	private static final int LAZY_SBC = 4;
+	/** Lazy flags of CP n: operands A and n, 9-bit result. */
+	private static final int LAZY_CP = 5;
+	/** Lazy flags of AND n: 8-bit result. */
+	private static final int LAZY_AND = 6;
+	/** Lazy flags of XOR n and OR n: 8-bit result. */
+	private static final int LAZY_OR = 7;
+	/** Lazy flags of INC r: 8-bit result, the second operand is the carry. */
+	private static final int LAZY_INC = 8;
+	/** Lazy flags of DEC r: 8-bit result, the second operand is the carry. */
+	private static final int LAZY_DEC = 9;
+	/** Lazy flags of the rotates and shifts: 8-bit result and the carry. */
+	private static final int LAZY_SHIFT = 10;
+
 	/**
-	 * Explicit flags, which represent the bits in the F register as distinct
-	 * variables.
-	 * 
-	 * @see #storeFlags
-	 * @see #retrieveFlags
+	 * The pending lazy flags: the kind of the last ALU operation (one of the
+	 * LAZY_* constants), its operands and its result.
+	 * <P>
+	 * The ALU helpers (<TT>add_a</TT>, <TT>inc8</TT>, <TT>shift_test</TT>,
+	 * etc.) only record the kind of the operation, its operands and its
+	 * result; the flags in the F register are computed from this record when
+	 * an instruction actually needs them. Most flag results are overwritten by
+	 * the next ALU operation before anything reads them.
+	 *
+	 * @see #resolveFlags
 	 */
-	private static boolean m_carryF, m_addsubtractF, m_parityoverflowF,
-			m_halfcarryF, m_zeroF, m_signF, m_5F, m_3F;
+	private int m_lazyKind, m_lazyA, m_lazyB, m_lazyR;
 
 	/** The basic registers (least significant 8 bits.) */
-	private static int m_a8, m_f8, m_b8, m_c8, m_d8, m_e8, m_h8, m_l8;
+	private int m_a8, m_f8, m_b8, m_c8, m_d8, m_e8, m_h8, m_l8;
 	/** The alternate registers (least significant 16 bits.) */
-	private static int m_af16alt, m_bc16alt, m_de16alt, m_hl16alt;
+	private int m_af16alt, m_bc16alt, m_de16alt, m_hl16alt;
 	/** The index registers (least significant 16 bits.) */
-	private static int m_ix16, m_iy16, m_xx16;
+	private int m_ix16, m_iy16, m_xx16;
 	/** The core registers (least significant 16 bits.) */
-	private static int m_sp16, m_pc16;
+	private int m_sp16, m_pc16;
 	/** The refresh and interrupt registers (least significant 8 bits.) */
-	private static int m_r8, m_i8;
+	private int m_r8, m_i8;
 	/** The interrupt mode (least significant 2 bits.) */
-	private static int m_im2;
+	private int m_im2;
 	/** The flip-flops (least significant 1 bit.) */
-	private static int m_iff1a, m_iff1b;
+	private int m_iff1a, m_iff1b;
 
 	/**
 	 * Secret, internal Z80 register that is set as follows:
@@ -101,7 +159,7 @@ public class Z80 {
 	 * high byte of the resulting address IX/IY+d JR d = high byte target
 	 * address of the jump
 	 */
-	private static int m_x8;
+	private int m_x8;
 
 	/**
 	 * Parity table for 256 bytes (true = even parity, false = odd parity).
@@ -135,37 +193,176 @@ public class Z80 {
 			false, true, };
 
 	/** Half carry table (addition). */
-	private static boolean m_halfcarryTable[] = { false, false, true, false,
-			true, false, true, true };
+	private static final int m_halfcarryTable[] = { 0, 0, HALFCARRY_MASK, 0,
+			HALFCARRY_MASK, 0, HALFCARRY_MASK, HALFCARRY_MASK };
 	/** Half carry table (subtraction). */
-	private static boolean m_subhalfcarryTable[] = { false, true, true, true,
-			false, false, false, true };
+	private static final int m_subhalfcarryTable[] = { 0, HALFCARRY_MASK,
+			HALFCARRY_MASK, HALFCARRY_MASK, 0, 0, 0, HALFCARRY_MASK };
 
 	/** Overflow table (addition). */
-	private static boolean m_overflowTable[] = { false, true, false, false,
-			false, false, true, false };
+	private static final int m_overflowTable[] = { 0, OVERFLOW_MASK, 0, 0, 0,
+			0, OVERFLOW_MASK, 0 };
 	/** Overflow table (subtraction). */
-	private static boolean m_suboverflowTable[] = { false, false, false, true,
-			true, false, false, false };
+	private static final int m_suboverflowTable[] = { 0, 0, 0, OVERFLOW_MASK,
+			OVERFLOW_MASK, 0, 0, 0 };
+
+	/** SIGN, ZERO, FIVE and THREE flags for 256 bytes. */
+	private static final int m_sz53Table[] = new int[0x100];
+
+	/** SIGN, ZERO, FIVE, THREE and PARITY flags for 256 bytes. */
+	private static final int m_sz53pTable[] = new int[0x100];
+
+	/** Flags of INC r for 256 results (except CARRY, which is unchanged.) */
+	private static final int m_incTable[] = new int[0x100];
+
+	/** Flags of DEC r for 256 results (except CARRY, which is unchanged.) */
+	private static final int m_decTable[] = new int[0x100];
+
+	/**
+	 * Flags of the 8-bit arithmetic, indexed by (A << 8) | operand: ADD A,n,
+	 * ADC A,n with CARRY set, SUB n and SBC A,n with CARRY set. These are
+	 * bytes, so that the four tables only take 256K.
+	 */
+	private static final byte m_addTable[] = new byte[0x10000],
+			m_adcTable[] = new byte[0x10000], m_subTable[] = new byte[0x10000],
+			m_sbcTable[] = new byte[0x10000];
+
+	static {
+		for (int i = 0; i < 0x100; i++) {
+			m_sz53Table[i] = (i & (SIGN_MASK | FIVE_THREE_MASK))
+					| (i == 0 ? ZERO_MASK : 0);
+			m_sz53pTable[i] = m_sz53Table[i]
+					| (m_parityTable[i] ? PARITY_MASK : 0);
+			m_incTable[i] = m_sz53Table[i]
+					| ((i & 0x0f) == 0 ? HALFCARRY_MASK : 0)
+					| (i == 0x80 ? OVERFLOW_MASK : 0);
+			m_decTable[i] = m_sz53Table[i]
+					| ((i & 0x0f) == 0x0f ? HALFCARRY_MASK : 0)
+					| (i == 0x7f ? OVERFLOW_MASK : 0) | ADDSUBTRACT_MASK;
+		}
+
+		for (int a8 = 0; a8 < 0x100; a8++) {
+			for (int val8 = 0; val8 < 0x100; val8++) {
+				final int idx = (a8 << 8) | val8;
+				m_addTable[idx] = (byte) aluFlags(a8, val8, a8 + val8, false);
+				m_adcTable[idx] = (byte) aluFlags(a8, val8, a8 + val8 + 1,
+						false);
+				m_subTable[idx] = (byte) aluFlags(a8, val8, a8 - val8, true);
+				m_sbcTable[idx] = (byte) aluFlags(a8, val8, a8 - val8 - 1,
+						true);
+			}
+		}
+	}
+
+	/** The size of a memory page (16K.) */
+	public static final int PAGE_SIZE = 0x4000;
+
+	/** The number of memory pages in the 64K address space. */
+	public static final int PAGES = 4;
+
+	/** Page mode: plain RAM, written directly. */
+	public static final int PAGE_RAM = 0;
+
+	/** Page mode: ROM, writes are dropped. */
+	public static final int PAGE_ROM = 1;
+
+	/** Page mode: RAM that holds the screen, writes are tracked. */
+	public static final int PAGE_SCREEN = 2;
+
+	/** The number of 16K RAM banks (only the 128k uses all of them.) */
+	public static final int RAM_BANKS = 8;
 
-	private static byte[] memory;
+	/** The number of 16K ROMs (only the 128k uses both of them.) */
+	public static final int ROMS = 2;
+
+	/** The RAM bank that holds the normal screen, mapped at 0x4000. */
+	public static final int BANK_SCREEN = 5;
+
+	/** The RAM bank that holds the 128k shadow screen. */
+	public static final int BANK_SHADOW = 7;
+
+	/**
+	 * The RAM banks, allocated the first time they are needed.
+	 * <P>
+	 * The 48k uses banks 5, 2 and 0, mapped at 0x4000, 0x8000 and 0xC000
+	 * (which is also the layout of the 128k after a reset.)
+	 */
+	private final byte[][] m_banks = new byte[RAM_BANKS][];
+
+	/** The ROMs, allocated the first time they are needed. */
+	private final byte[][] m_roms = new byte[ROMS][];
+
+	/**
+	 * The memory mapped at each 16K page of the address space.
+	 * <P>
+	 * The page of an address is selected with its two high bits, so every
+	 * access costs one array index instead of a series of address range
+	 * checks.
+	 */
+	private final byte[][] m_pages = new byte[PAGES][];
+
+	/**
+	 * The mode each page was mapped with (PAGE_RAM, PAGE_ROM or PAGE_SCREEN.)
+	 */
+	private final int[] m_mappedModes = new int[PAGES];
+
+	/**
+	 * The mode in which each page is accessed: the mode it was mapped with,
+	 * except that a screen page is plain RAM when the screen does not track
+	 * the writes.
+	 */
+	private final int[] m_pageModes = new int[PAGES];
+
+	/** If true, the writes to a screen page touch the screen. */
+	private boolean m_screenHooks = true;
+
+	/** Whether the memory mapped at each page is contended by the ULA. */
+	private final boolean[] m_contendedMemory = new boolean[PAGES];
+
+	/**
+	 * Whether the accesses to each page are delayed: the memory is contended
+	 * and contention is emulated.
+	 */
+	private final boolean[] m_pageContended = new boolean[PAGES];
+
+	/**
+	 * The contention delay for every T-State of the frame, or null in the
+	 * uncontended mode.
+	 * 
+	 * @see BaseSpectrum#getContentionTable
+	 */
+	private byte[] m_contention;
+
+	/** The cached I/O component. */
+	private BaseIO m_io;
+
+	/** The cached screen component. */
+	private BaseScreen m_screen;
 
 	/**
-	 * Cache references to the memory and I/O objects.
+	 * Cache references to the I/O and screen objects, allocate the memory and
+	 * read the ROM into it.
 	 */
-	public static void init() {
-		memory = new byte[0x10000];
+	public void init(BaseSpectrum spectrum) {
+		super.init(spectrum);
+		m_io = spectrum.getIO();
+		m_screen = spectrum.getScreen();
+		mapPage(0, getROM(0), PAGE_ROM, false);
+		mapPage(1, getBank(BANK_SCREEN), PAGE_SCREEN, true);
+		mapPage(2, getBank(2), PAGE_RAM, false);
+		mapPage(3, getBank(0), PAGE_RAM, false);
 		try {
 			readROM();
 		} catch (Exception e) {
-			Log.e(Z80.class.getName(), "Error reading ROM: " + e.toString());
+			m_spectrum.getLogger().log(ILogger.C_ERROR,
+					"Error reading ROM: " + e.toString());
 		}
 	}
 
 	/**
 	 * Set the PC, I, R, IM and IFF* registers to 0.
 	 */
-	public static void reset() {
+	public void reset() {
 		final byte[] randoms = new byte[] { -56, 56, 98, -105, 48, -46, 8, -85 };
 		m_pc16 = 0;
 		m_i8 = 0;
@@ -175,17 +372,20 @@ public class Z80 {
 		m_iff1b = 0;
 		int c = 0;
 		for (int i = BaseScreen.SCREEN_START; i < 0xffff; i++, c++) {
-			memory[i] = randoms[c];
+			m_pages[i >> 14][i & 0x3fff] = randoms[c];
 			if (c >= (randoms.length - 1))
 				c = 0;
 		}
 	}
 
 	/**
-	 * Does nothing.
+	 * Stop the emulation and release the cached components.
 	 */
-	public static void terminate() {
+	public void terminate() {
 		m_stop = true;
+		m_io = null;
+		m_screen = null;
+		super.terminate();
 	}
 
 	/**
@@ -195,15 +395,17 @@ public class Z80 {
 	 * the stack. If the IM is 2, jump to the address (I, 0xFF), otherwise jump
 	 * to 0x38.
 	 */
-	public static void interrupt() {
+	public void interrupt() {
 		if (m_iff1a != 0) {
 			// Make sure we don't return to a halt instruction.
-			if (read8(m_pc16) == 0x76) {
+			if (peek8(m_pc16) == 0x76) {
 				inc16pc();
 			}
 
 			m_iff1a = 0;
 			m_iff1b = 0;
+			// The acknowledge takes 7 T-States before the PC is pushed.
+			m_access = m_tstates + 7;
 			push(m_pc16);
 
 			if (m_im2 == 2) {
@@ -222,14 +424,15 @@ public class Z80 {
 	 * Set IFF1b = IFF1a, and set IFF1a to 0 (disable regular interrupts.) Push
 	 * the PC on the stack, then jump to address 0x66.
 	 */
-	public static void nmi() {
+	public void nmi() {
+		m_access = m_tstates + 5;
 		m_tstates += 15;
 
 		m_iff1b = m_iff1a;
 		m_iff1a = 0;
 
 		// Make sure we don't return to a halt instruction.
-		if (read8(m_pc16) == 0x76) {
+		if (peek8(m_pc16) == 0x76) {
 			inc16pc();
 		}
 
@@ -240,64 +443,67 @@ public class Z80 {
 	/**
 	 * Trivial accessor for the T-States value.
 	 */
-	public static int getTStates() {
+	public int getTStates() {
 		return m_tstates;
 	}
 
 	/**
 	 * Trivial mutator for the T-States value.
 	 */
-	public static void setTStates(final int tstates) {
+	public void setTStates(final int tstates) {
 		m_tstates = tstates;
+		m_access = tstates;
 	}
 
 	/**
 	 * Add a number to the current value of T-States.
 	 */
-	public static void addTStates(final int val) {
+	public void addTStates(final int val) {
 		m_tstates += val;
 	}
 
 	/**
 	 * Accessor for the 16-bit AF register (it combines the A and F registers.)
 	 */
-	private static int af16() {
+	private int af16() {
+		resolveFlags();
 		return ((m_a8 << 8) | m_f8);
 	}
 
 	/**
 	 * Accessor for the 16-bit BC register (it combines the A and F registers.)
 	 */
-	private static int bc16() {
+	private int bc16() {
 		return ((m_b8 << 8) | m_c8);
 	}
 
 	/**
 	 * Accessor for the 16-bit DE register (it combines the A and F registers.)
 	 */
-	private static int de16() {
+	private int de16() {
 		return ((m_d8 << 8) | m_e8);
 	}
 
 	/**
 	 * Accessor for the 16-bit HL register (it combines the A and F registers.)
 	 */
-	private static int hl16() {
+	private int hl16() {
 		return ((m_h8 << 8) | m_l8);
 	}
 
 	/**
 	 * Mutator for the 16-bit AF register (it sets the A and F registers.)
 	 */
-	private static void af16(final int val16) {
+	private void af16(final int val16) {
 		m_a8 = (val16 >> 8);
 		m_f8 = (val16 & 0xff);
+		m_lazyKind = LAZY_NONE;
 	}
 
 	/**
 	 * Mutator for the 16-bit BC register (it sets the A and F registers.)
 	 */
-	private static void bc16(final int val16) {
+	private void bc16(final int val16) {
 		m_b8 = (val16 >> 8);
 		m_c8 = (val16 & 0xff);
 	}
@@ -305,7 +511,7 @@ public class Z80 {
 	/**
 	 * Mutator for the 16-bit DE register (it sets the A and F registers.)
 	 */
-	private static void de16(final int val16) {
+	private void de16(final int val16) {
 		m_d8 = (val16 >> 8);
 		m_e8 = (val16 & 0xff);
 	}
@@ -313,7 +519,7 @@ public class Z80 {
 	/**
 	 * Mutator for the 16-bit HL register (it sets the A and F registers.)
 	 */
-	private static void hl16(final int val16) {
+	private void hl16(final int val16) {
 		m_h8 = (val16 >> 8);
 		m_l8 = (val16 & 0xff);
 	}
@@ -324,7 +530,7 @@ public class Z80 {
 	 * The current index register is stored in m_xx16, and could either be
 	 * m_ix16 or m_iy16.
 	 */
-	private static int xx16low8() {
+	private int xx16low8() {
 		return (m_xx16 & 0xff);
 	}
 
@@ -334,7 +540,7 @@ public class Z80 {
 	 * The current index register is stored in m_xx16, and could either be
 	 * m_ix16 or m_iy16.
 	 */
-	private static int xx16high8() {
+	private int xx16high8() {
 		return (m_xx16 >> 8);
 	}
 
@@ -344,7 +550,7 @@ public class Z80 {
 	 * The current index register is stored in m_xx16, and could either be
 	 * m_ix16 or m_iy16.
 	 */
-	private static void xx16low8(final int val8) {
+	private void xx16low8(final int val8) {
 		m_xx16 = ((m_xx16 & 0xff00) | val8);
 	}
 
@@ -354,68 +560,145 @@ public class Z80 {
 	 * The current index register is stored in m_xx16, and could either be
 	 * m_ix16 or m_iy16.
 	 */
-	private static void xx16high8(final int val8) {
+	private void xx16high8(final int val8) {
 		m_xx16 = ((val8 << 8) | (m_xx16 & 0xff));
 	}
 
 	/**
-	 * Store the values from m_*F variables into the m_f8 register, according to
-	 * the *_MASK variables.
-	 */
-	private static void storeFlags() {
-		if (m_signF)
-			m_f8 |= SIGN_MASK;
-		else
-			m_f8 &= ~SIGN_MASK;
-		if (m_zeroF)
-			m_f8 |= ZERO_MASK;
-		else
-			m_f8 &= ~ZERO_MASK;
-		if (m_halfcarryF)
-			m_f8 |= HALFCARRY_MASK;
-		else
-			m_f8 &= ~HALFCARRY_MASK;
-		if (m_parityoverflowF)
-			m_f8 |= OVERFLOW_MASK;
-		else
-			m_f8 &= ~OVERFLOW_MASK;
-		if (m_addsubtractF)
-			m_f8 |= ADDSUBTRACT_MASK;
-		else
-			m_f8 &= ~ADDSUBTRACT_MASK;
-		if (m_carryF)
-			m_f8 |= CARRY_MASK;
-		else
-			m_f8 &= ~CARRY_MASK;
-		if (m_3F)
-			m_f8 |= THREE_MASK;
-		else
-			m_f8 &= ~THREE_MASK;
-		if (m_5F)
-			m_f8 |= FIVE_MASK;
-		else
-			m_f8 &= ~FIVE_MASK;
-	}
-
-	/**
-	 * Retrieve the flags from the m_f8 register into the the m_*F variables,
-	 * according to the *_MASK variables.
-	 */
-	private static void retrieveFlags() {
-		m_signF = ((m_f8 & SIGN_MASK) != 0);
-		m_zeroF = ((m_f8 & ZERO_MASK) != 0);
-		m_halfcarryF = ((m_f8 & HALFCARRY_MASK) != 0);
-		m_parityoverflowF = ((m_f8 & OVERFLOW_MASK) != 0);
-		m_addsubtractF = ((m_f8 & ADDSUBTRACT_MASK) != 0);
-		m_carryF = ((m_f8 & CARRY_MASK) != 0);
-		m_3F = ((m_f8 & THREE_MASK) != 0);
-		m_5F = ((m_f8 & FIVE_MASK) != 0);
+	 * Compute the flags of an 8-bit addition or subtraction, given the
+	 * operands and the (unmasked) result. This is only used to build the ALU
+	 * flag tables.
+	 */
+	private static int aluFlags(final int a8, final int val8, final int work16,
+			final boolean subtract) {
+		final int idx = ((a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
+				| ((work16 & 0x88) >> 3);
+		int f8 = m_sz53Table[work16 & 0xff] | ((work16 >> 8) & CARRY_MASK);
+		if (subtract) {
+			f8 |= m_subhalfcarryTable[idx & 0x7]
+					| m_suboverflowTable[idx >> 4] | ADDSUBTRACT_MASK;
+		} else {
+			f8 |= m_halfcarryTable[idx & 0x7] | m_overflowTable[idx >> 4];
+		}
+		return f8;
+	}
+
+	/**
+	 * Record the operands and the result of an ALU operation, instead of
+	 * computing its flags.
+	 */
+	private void lazyFlags(final int kind, final int a, final int b,
+			final int r) {
+		m_lazyKind = kind;
+		m_lazyA = a;
+		m_lazyB = b;
+		m_lazyR = r;
+	}
+
+	/**
+	 * Compute the F register from the pending lazy flags, if any.
+	 * <P>
+	 * This must be called before any instruction that reads the F register or
+	 * that only changes some of its flags. The conditional jumps, calls and
+	 * returns use the cheaper <TT>zeroF()</TT>, <TT>carryF()</TT>, etc.
+	 * accessors instead.
+	 */
+	private void resolveFlags() {
+		if (m_lazyKind == LAZY_NONE) {
+			return;
+		}
+
+		final int a8 = m_lazyA;
+		final int b8 = m_lazyB;
+		final int r16 = m_lazyR;
+		final int idx = (a8 << 8) | b8;
+		int f8;
+
+		switch (m_lazyKind) {
+		case LAZY_ADD:
+			f8 = m_addTable[idx] & 0xff;
+			break;
+		case LAZY_ADC:
+			f8 = (r16 == a8 + b8 ? m_addTable[idx] : m_adcTable[idx]) & 0xff;
+			break;
+		case LAZY_SUB:
+			f8 = m_subTable[idx] & 0xff;
+			break;
+		case LAZY_SBC:
+			f8 = (r16 == a8 - b8 ? m_subTable[idx] : m_sbcTable[idx]) & 0xff;
+			break;
+		case LAZY_CP:
+			f8 = (m_subTable[idx] & (0xff & ~FIVE_THREE_MASK))
+					| (b8 & FIVE_THREE_MASK);
+			break;
+		case LAZY_AND:
+			f8 = m_sz53pTable[r16] | HALFCARRY_MASK;
+			break;
+		case LAZY_OR:
+			f8 = m_sz53pTable[r16];
+			break;
+		case LAZY_INC:
+			f8 = m_incTable[r16] | b8;
+			break;
+		case LAZY_DEC:
+			f8 = m_decTable[r16] | b8;
+			break;
+		default:
+			f8 = m_sz53pTable[r16] | b8;
+			break;
+		}
+
+		m_f8 = f8;
+		m_lazyKind = LAZY_NONE;
+	}
+
+	/**
+	 * Return the ZERO flag, without resolving all of the lazy flags.
+	 */
+	private boolean zeroF() {
+		if (m_lazyKind != LAZY_NONE) {
+			return ((m_lazyR & 0xff) == 0);
+		}
+		return ((m_f8 & ZERO_MASK) != 0);
+	}
+
+	/**
+	 * Return the SIGN flag, without resolving all of the lazy flags.
+	 */
+	private boolean signF() {
+		if (m_lazyKind != LAZY_NONE) {
+			return ((m_lazyR & 0x80) != 0);
+		}
+		return ((m_f8 & SIGN_MASK) != 0);
+	}
+
+	/**
+	 * Return the CARRY flag, without resolving all of the lazy flags.
+	 */
+	private boolean carryF() {
+		if (m_lazyKind != LAZY_NONE) {
+			if (m_lazyKind <= LAZY_CP) {
+				return ((m_lazyR & 0x100) != 0);
+			} else if (m_lazyKind <= LAZY_OR) {
+				return false;
+			}
+			return (m_lazyB != 0);
+		}
+		return ((m_f8 & CARRY_MASK) != 0);
+	}
+
+	/**
+	 * Return the PARITY/OVERFLOW flag.
+	 */
+	private boolean parityoverflowF() {
+		resolveFlags();
+		return ((m_f8 & PARITY_MASK) != 0);
 	}
 
 	/**
 	 * Increment the 16-bit PC register.
 	 */
-	private static int inc16pc() {
+	private int inc16pc() {
 		final int work16 = m_pc16;
 		m_pc16 = ((m_pc16 + 1) & 0xffff);
 		return work16;
@@ -424,7 +707,7 @@ public class Z80 {
 	/**
 	 * Increment the 16-bit SP register.
 	 */
-	private static int inc16sp() {
+	private int inc16sp() {
 		final int work16 = m_sp16;
 		m_sp16 = ((m_sp16 + 1) & 0xffff);
 		return work16;
@@ -433,7 +716,7 @@ public class Z80 {
 	/**
 	 * Increment the 16-bit BC register.
 	 */
-	private static int inc16bc() {
+	private int inc16bc() {
 		final int work16 = bc16();
 		bc16((work16 + 1) & 0xffff);
 		return work16;
@@ -442,7 +725,7 @@ public class Z80 {
 	/**
 	 * Increment the 16-bit DE register.
 	 */
-	private static int inc16de() {
+	private int inc16de() {
 		final int work16 = de16();
 		de16((work16 + 1) & 0xffff);
 		return work16;
@@ -451,7 +734,7 @@ public class Z80 {
 	/**
 	 * Increment the 16-bit HL register.
 	 */
-	private static int inc16hl() {
+	private int inc16hl() {
 		final int work16 = hl16();
 		hl16((work16 + 1) & 0xffff);
 		return work16;
@@ -460,7 +743,7 @@ public class Z80 {
 	/**
 	 * Increment the 16-bit (current) index register (m_xx16).
 	 */
-	private static int inc16xx() {
+	private int inc16xx() {
 		final int work16 = m_xx16;
 		m_xx16 = ((m_xx16 + 1) & 0xffff);
 		return work16;
@@ -469,7 +752,7 @@ public class Z80 {
 	/**
 	 * Decrement the 16-bit PC register.
 	 */
-	private static int dec16pc() {
+	private int dec16pc() {
 		final int work16 = m_pc16;
 		m_pc16 = ((m_pc16 - 1) & 0xffff);
 		return work16;
@@ -478,7 +761,7 @@ public class Z80 {
 	/**
 	 * Decrement the 16-bit SP register.
 	 */
-	private static int dec16sp() {
+	private int dec16sp() {
 		final int work16 = m_sp16;
 		m_sp16 = ((m_sp16 - 1) & 0xffff);
 		return work16;
@@ -487,7 +770,7 @@ public class Z80 {
 	/**
 	 * Decrement the 16-bit BC register.
 	 */
-	private static int dec16bc() {
+	private int dec16bc() {
 		final int work16 = bc16();
 		bc16((work16 - 1) & 0xffff);
 		return work16;
@@ -496,7 +779,7 @@ public class Z80 {
 	/**
 	 * Decrement the 16-bit DE register.
 	 */
-	private static int dec16de() {
+	private int dec16de() {
 		final int work16 = de16();
 		de16((work16 - 1) & 0xffff);
 		return work16;
@@ -505,7 +788,7 @@ public class Z80 {
 	/**
 	 * Decrement the 16-bit HL register.
 	 */
-	private static int dec16hl() {
+	private int dec16hl() {
 		final int work16 = hl16();
 		hl16((work16 - 1) & 0xffff);
 		return work16;
@@ -514,7 +797,7 @@ public class Z80 {
 	/**
 	 * Decrement the 16-bit (current) index register (m_xx16).
 	 */
-	private static int dec16xx() {
+	private int dec16xx() {
 		final int work16 = m_xx16;
 		m_xx16 = ((m_xx16 - 1) & 0xffff);
 		return work16;
@@ -524,24 +807,24 @@ public class Z80 {
 	 * Add a 16-bit value to the (current) index register (m_xx16) and set the
 	 * appropriate flags.
 	 */
-	private static void add_xx(final int val16) {
+	private void add_xx(final int val16) {
+		resolveFlags();
+
 		final int work32 = m_xx16 + val16;
 		final int idx = ((m_xx16 & 0x800) >> 9) | ((val16 & 0x800) >> 10)
 				| ((work32 & 0x800) >> 11);
 		m_xx16 = work32 & 0xffff;
-		m_halfcarryF = m_halfcarryTable[idx];
-		m_addsubtractF = false;
-		m_carryF = ((work32 & 0x10000) != 0);
-
-		final int work8 = m_xx16 >> 8;
-		m_3F = ((work8 & THREE_MASK) != 0);
-		m_5F = ((work8 & FIVE_MASK) != 0);
+		m_f8 = (m_f8 & SZP_MASK) | m_halfcarryTable[idx]
+				| ((work32 >> 16) & CARRY_MASK)
+				| ((m_xx16 >> 8) & FIVE_THREE_MASK);
 	}
 
 	/**
 	 * Add a 16-bit value to the HL register and set the appropriate flags.
 	 */
-	private static void add_hl(final int val16) {
+	private void add_hl(final int val16) {
+		resolveFlags();
+
 		m_x8 = m_h8;
 
 		final int hl16 = hl16();
@@ -549,60 +832,52 @@ public class Z80 {
 		final int idx = ((hl16 & 0x800) >> 9) | ((val16 & 0x800) >> 10)
 				| ((work32 & 0x800) >> 11);
 		hl16(work32 & 0xffff);
-		m_halfcarryF = m_halfcarryTable[idx];
-		m_addsubtractF = false;
-		m_carryF = ((work32 & 0x10000) != 0);
-		m_3F = ((m_h8 & THREE_MASK) != 0);
-		m_5F = ((m_h8 & FIVE_MASK) != 0);
+		m_f8 = (m_f8 & SZP_MASK) | m_halfcarryTable[idx]
+				| ((work32 >> 16) & CARRY_MASK) | (m_h8 & FIVE_THREE_MASK);
 	}
 
 	/**
 	 * Add a 16-bit value, with carry, to the HL register and set the
 	 * appropriate flags.
 	 */
-	private static void adc_hl(final int val16) {
+	private void adc_hl(final int val16) {
+		resolveFlags();
+
 		int hl16 = hl16();
-		final int work32 = hl16 + val16 + (m_carryF ? 1 : 0);
+		final int work32 = hl16 + val16 + (m_f8 & CARRY_MASK);
 		final int idx = ((hl16 & 0x8800) >> 9) | ((val16 & 0x8800) >> 10)
 				| ((work32 & 0x8800) >> 11);
 		hl16 = (work32 & 0xffff);
 		hl16(hl16);
-		m_signF = ((hl16 & 0x8000) != 0);
-		m_zeroF = (hl16 == 0);
-		m_halfcarryF = m_halfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_overflowTable[idx >> 4];
-		m_addsubtractF = false;
-		m_carryF = ((work32 & 0x10000) != 0);
-		m_3F = ((m_h8 & THREE_MASK) != 0);
-		m_5F = ((m_h8 & FIVE_MASK) != 0);
+		m_f8 = (m_h8 & (SIGN_MASK | FIVE_THREE_MASK))
+				| (hl16 == 0 ? ZERO_MASK : 0) | m_halfcarryTable[idx & 0x7]
+				| m_overflowTable[idx >> 4] | ((work32 >> 16) & CARRY_MASK);
 	}
 
 	/**
 	 * Subtract a 16-bit value, with carry, from the HL register and set the
 	 * appropriate flags.
 	 */
-	private static void sbc_hl(final int val16) {
+	private void sbc_hl(final int val16) {
+		resolveFlags();
+
 		int hl16 = hl16();
-		final int work32 = hl16 - val16 - (m_carryF ? 1 : 0);
+		final int work32 = hl16 - val16 - (m_f8 & CARRY_MASK);
 		final int idx = ((hl16 & 0x8800) >> 9) | ((val16 & 0x8800) >> 10)
 				| ((work32 & 0x8800) >> 11);
 		hl16 = (work32 & 0xffff);
 		hl16(hl16);
-		m_signF = ((hl16 & 0x8000) != 0);
-		m_zeroF = (hl16 == 0);
-		m_halfcarryF = m_subhalfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_suboverflowTable[idx >> 4];
-		m_addsubtractF = true;
-		m_carryF = ((work32 & 0x10000) != 0);
-		m_3F = ((m_h8 & THREE_MASK) != 0);
-		m_5F = ((m_h8 & FIVE_MASK) != 0);
+		m_f8 = (m_h8 & (SIGN_MASK | FIVE_THREE_MASK))
+				| (hl16 == 0 ? ZERO_MASK : 0) | m_subhalfcarryTable[idx & 0x7]
+				| m_suboverflowTable[idx >> 4] | ((work32 >> 16) & CARRY_MASK)
+				| ADDSUBTRACT_MASK;
 	}
 
 	/**
 	 * Add two 16-bit values and return the 16-bit result, without setting any
 	 * flags.
 	 */
-	private static int add16(final int reg16, final int val16) {
+	private int add16(final int reg16, final int val16) {
 		return (reg16 + val16) & 0xffff;
 	}
 
@@ -610,7 +885,7 @@ public class Z80 {
 	 * Subtract two 16-bit values and return the 16-bit result, without setting
 	 * any flags.
 	 */
-	private static int sub16(final int reg16, final int val16) {
+	private int sub16(final int reg16, final int val16) {
 		return (reg16 - val16) & 0xffff;
 	}
 
@@ -618,7 +893,7 @@ public class Z80 {
 	 * Increment a 16-bit values and return the 16-bit result, without setting
 	 * any flags.
 	 */
-	private static int inc16(final int reg16) {
+	private int inc16(final int reg16) {
 		return (reg16 + 1) & 0xffff;
 	}
 
@@ -626,7 +901,7 @@ public class Z80 {
 	 * Increment twice a 16-bit values and return the 16-bit result, without
 	 * setting any flags.
 	 */
-	private static int incinc16(final int reg16) {
+	private int incinc16(final int reg16) {
 		return (reg16 + 2) & 0xffff;
 	}
 
@@ -634,7 +909,7 @@ public class Z80 {
 	 * Decrement a 16-bit values and return the 16-bit result, without setting
 	 * any flags.
 	 */
-	private static int dec16(final int reg16) {
+	private int dec16(final int reg16) {
 		return (reg16 - 1) & 0xffff;
 	}
 
@@ -642,7 +917,7 @@ public class Z80 {
 	 * Decrement twice a 16-bit values and return the 16-bit result, without
 	 * setting any flags.
 	 */
-	private static int decdec16(final int reg16) {
+	private int decdec16(final int reg16) {
 		return (reg16 - 2) & 0xffff;
 	}
 
@@ -650,15 +925,9 @@ public class Z80 {
 	 * Increment a 8-bit value and return the 8-bit result, setting the
 	 * appropriate flags.
 	 */
-	private static int inc8(final int reg8) {
+	private int inc8(final int reg8) {
 		final int work8 = (reg8 + 1) & 0xff;
-		m_signF = ((work8 & 0x80) != 0);
-		m_zeroF = (work8 == 0);
-		m_halfcarryF = ((work8 & 0x0f) == 0);
-		m_parityoverflowF = (work8 == 0x80);
-		m_addsubtractF = false;
-		m_3F = ((work8 & THREE_MASK) != 0);
-		m_5F = ((work8 & FIVE_MASK) != 0);
+		lazyFlags(LAZY_INC, reg8, (carryF() ? 1 : 0), work8);
 		return work8;
 	}
 
@@ -666,15 +935,9 @@ public class Z80 {
 	 * Decrement a 8-bit value and return the 8-bit result, setting the
 	 * appropriate flags.
 	 */
-	private static int dec8(final int reg8) {
+	private int dec8(final int reg8) {
 		final int work8 = (reg8 - 1) & 0xff;
-		m_signF = ((work8 & 0x80) != 0);
-		m_zeroF = (work8 == 0);
-		m_halfcarryF = ((work8 & 0x0f) == 0x0f);
-		m_parityoverflowF = (work8 == 0x7f);
-		m_addsubtractF = true;
-		m_3F = ((work8 & THREE_MASK) != 0);
-		m_5F = ((work8 & FIVE_MASK) != 0);
+		lazyFlags(LAZY_DEC, reg8, (carryF() ? 1 : 0), work8);
 		return work8;
 	}
 
@@ -682,10 +945,10 @@ public class Z80 {
 	 * Rotate left with carry a 8-bit value and return the 8-bit result, setting
 	 * the appropriate flags.
 	 */
-	private static int rlc8(final int reg8) {
-		m_carryF = ((reg8 & 0x80) != 0);
-		final int work8 = ((reg8 << 1) | (m_carryF ? 1 : 0)) & 0xff;
-		shift_test(work8);
+	private int rlc8(final int reg8) {
+		final int carry = reg8 >> 7;
+		final int work8 = ((reg8 << 1) | carry) & 0xff;
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -693,10 +956,10 @@ public class Z80 {
 	 * Rotate right with carry a 8-bit value and return the 8-bit result,
 	 * setting the appropriate flags.
 	 */
-	private static int rrc8(final int reg8) {
-		m_carryF = ((reg8 & 0x01) != 0);
-		final int work8 = ((reg8 >> 1) | ((m_carryF ? 1 : 0) << 7));
-		shift_test(work8);
+	private int rrc8(final int reg8) {
+		final int carry = reg8 & 0x01;
+		final int work8 = ((reg8 >> 1) | (carry << 7));
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -704,11 +967,10 @@ public class Z80 {
 	 * Rotate left a 8-bit value and return the 8-bit result, setting the
 	 * appropriate flags.
 	 */
-	private static int rl8(final int reg8) {
-		boolean carry = ((reg8 & 0x80) != 0);
-		final int work8 = ((reg8 << 1) | (m_carryF ? 1 : 0)) & 0xff;
-		m_carryF = carry;
-		shift_test(work8);
+	private int rl8(final int reg8) {
+		final int carry = reg8 >> 7;
+		final int work8 = ((reg8 << 1) | (carryF() ? 1 : 0)) & 0xff;
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -716,11 +978,10 @@ public class Z80 {
 	 * Rotate right a 8-bit value and return the 8-bit result, setting the
 	 * appropriate flags.
 	 */
-	private static int rr8(final int reg8) {
-		boolean carry = ((reg8 & 0x01) != 0);
-		final int work8 = ((reg8 >> 1) | ((m_carryF ? 1 : 0) << 7));
-		m_carryF = carry;
-		shift_test(work8);
+	private int rr8(final int reg8) {
+		final int carry = reg8 & 0x01;
+		final int work8 = ((reg8 >> 1) | ((carryF() ? 1 : 0) << 7));
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -728,10 +989,10 @@ public class Z80 {
 	 * Shift left a 8-bit value and return the 8-bit result, setting the
 	 * appropriate flags.
 	 */
-	private static int sla8(final int reg8) {
-		m_carryF = ((reg8 & 0x80) != 0);
+	private int sla8(final int reg8) {
+		final int carry = reg8 >> 7;
 		final int work8 = (reg8 << 1) & 0xff;
-		shift_test(work8);
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -739,11 +1000,10 @@ public class Z80 {
 	 * Shift right a 8-bit value and return the 8-bit result, setting the
 	 * appropriate flags.
 	 */
-	private static int sra8(final int reg8) {
-		m_carryF = ((reg8 & 0x01) != 0);
-		int work8 = (reg8 & 0x80);
-		work8 = ((reg8 >> 1) | work8);
-		shift_test(work8);
+	private int sra8(final int reg8) {
+		final int carry = reg8 & 0x01;
+		final int work8 = ((reg8 >> 1) | (reg8 & 0x80));
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -751,10 +1011,10 @@ public class Z80 {
 	 * Shift left with 1-pad a 8-bit value and return the 8-bit result, setting
 	 * the appropriate flags.
 	 */
-	private static int sli8(final int reg8) {
-		m_carryF = ((reg8 & 0x80) != 0);
+	private int sli8(final int reg8) {
+		final int carry = reg8 >> 7;
 		final int work8 = ((reg8 << 1) | 0x01) & 0xff;
-		shift_test(work8);
+		shift_test(work8, carry);
 		return work8;
 	}
 
@@ -762,30 +1022,25 @@ public class Z80 {
 	 * Shift right with 1-pad a 8-bit value and return the 8-bit result, setting
 	 * the appropriate flags.
 	 */
-	private static int srl8(final int reg8) {
-		m_carryF = ((reg8 & 0x01) != 0);
+	private int srl8(final int reg8) {
+		final int carry = reg8 & 0x01;
 		final int work8 = (reg8 >> 1);
-		shift_test(work8);
+		shift_test(work8, carry);
 		return work8;
 	}
 
 	/**
-	 * Set the appropriate flags as a result of a shift operation.
+	 * Set the appropriate flags as a result of a shift operation, with the
+	 * given value (0 or 1) for the CARRY flag.
 	 */
-	private static void shift_test(final int reg8) {
-		m_signF = ((reg8 & 0x80) != 0);
-		m_zeroF = (reg8 == 0);
-		m_halfcarryF = false;
-		m_parityoverflowF = m_parityTable[reg8];
-		m_addsubtractF = false;
-		m_3F = ((reg8 & THREE_MASK) != 0);
-		m_5F = ((reg8 & FIVE_MASK) != 0);
+	private void shift_test(final int reg8, final int carry) {
+		lazyFlags(LAZY_SHIFT, 0, carry, reg8);
 	}
 
 	/**
 	 * Pop the current 16-bit value at the top of the stack and return it.
 	 */
-	private static int pop16() {
+	private int pop16() {
 		final int work16 = read16(m_sp16);
 		m_sp16 = incinc16(m_sp16);
 		return work16;
@@ -794,220 +1049,414 @@ public class Z80 {
 	/**
 	 * Push the given 16-bit value on the top of the stack.
 	 */
-	private static void push(final int reg16) {
-		m_sp16 = decdec16(m_sp16);
-		write16(m_sp16, reg16);
+	private void push(final int reg16) {
+		m_sp16 = dec16(m_sp16);
+		write8(m_sp16, reg16 >> 8);
+		m_sp16 = dec16(m_sp16);
+		write8(m_sp16, reg16 & 0xff);
 	}
 
-	private static void ld_a_special(final int reg8) {
+	private void ld_a_special(final int reg8) {
+		resolveFlags();
+
 		m_a8 = reg8;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = false;
-		m_parityoverflowF = (m_iff1b != 0);
-		m_addsubtractF = false;
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
+		m_f8 = (m_f8 & CARRY_MASK) | m_sz53Table[m_a8]
+				| (m_iff1b != 0 ? PARITY_MASK : 0);
 	}
 
 	/**
 	 * Add a 8-bit value to the A register and set the appropriate flags.
 	 */
-	private static void add_a(final int val8) {
+	private void add_a(final int val8) {
 		final int work16 = m_a8 + val8;
-		final int idx = ((m_a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
-				| ((work16 & 0x88) >> 3);
+		lazyFlags(LAZY_ADD, m_a8, val8, work16);
 		m_a8 = work16 & 0xff;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = m_halfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_overflowTable[idx >> 4];
-		m_addsubtractF = false;
-		m_carryF = ((work16 & 0x100) != 0);
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
 	}
 
 	/**
 	 * Add with carry a 8-bit value to the A register and set the appropriate
 	 * flags.
 	 */
-	private static void adc_a(final int val8) {
-		final int work16 = m_a8 + val8 + (m_carryF ? 1 : 0);
-		final int idx = ((m_a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
-				| ((work16 & 0x88) >> 3);
+	private void adc_a(final int val8) {
+		final int work16 = m_a8 + val8 + (carryF() ? 1 : 0);
+		lazyFlags(LAZY_ADC, m_a8, val8, work16);
 		m_a8 = work16 & 0xff;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = m_halfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_overflowTable[idx >> 4];
-		m_addsubtractF = false;
-		m_carryF = ((work16 & 0x100) != 0);
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
 	}
 
 	/**
 	 * Subtract a 8-bit value from the A register and set the appropriate flags.
 	 */
-	private static void sub_a(final int val8) {
+	private void sub_a(final int val8) {
 		final int work16 = m_a8 - val8;
-		final int idx = ((m_a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
-				| ((work16 & 0x88) >> 3);
+		lazyFlags(LAZY_SUB, m_a8, val8, work16);
 		m_a8 = work16 & 0xff;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = m_subhalfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_suboverflowTable[idx >> 4];
-		m_addsubtractF = true;
-		m_carryF = ((work16 & 0x100) != 0);
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
 	}
 
 	/**
 	 * Subtract with carry a 8-bit value from the A register and set the
 	 * appropriate flags.
 	 */
-	private static void sbc_a(final int val8) {
-		final int work16 = m_a8 - val8 - (m_carryF ? 1 : 0);
-		final int idx = ((m_a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
-				| ((work16 & 0x88) >> 3);
+	private void sbc_a(final int val8) {
+		final int work16 = m_a8 - val8 - (carryF() ? 1 : 0);
+		lazyFlags(LAZY_SBC, m_a8, val8, work16);
 		m_a8 = work16 & 0xff;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = m_subhalfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_suboverflowTable[idx >> 4];
-		m_addsubtractF = true;
-		m_carryF = ((work16 & 0x100) != 0);
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
 	}
 
 	/**
 	 * And a 8-bit value to the A register and set the appropriate flags.
 	 */
-	private static void and_a(final int val8) {
+	private void and_a(final int val8) {
 		m_a8 &= val8;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = true;
-		m_parityoverflowF = m_parityTable[m_a8];
-		m_addsubtractF = false;
-		m_carryF = false;
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
+		lazyFlags(LAZY_AND, 0, 0, m_a8);
 	}
 
 	/**
 	 * Xor a 8-bit value to the A register and set the appropriate flags.
 	 */
-	private static void xor_a(final int val8) {
+	private void xor_a(final int val8) {
 		m_a8 ^= val8;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = false;
-		m_parityoverflowF = m_parityTable[m_a8];
-		m_addsubtractF = false;
-		m_carryF = false;
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
+		lazyFlags(LAZY_OR, 0, 0, m_a8);
 	}
 
 	/**
 	 * Or a 8-bit value to the A register and set the appropriate flags.
 	 */
-	private static void or_a(final int val8) {
+	private void or_a(final int val8) {
 		m_a8 |= val8;
-		m_signF = ((m_a8 & 0x80) != 0);
-		m_zeroF = (m_a8 == 0);
-		m_halfcarryF = false;
-		m_parityoverflowF = m_parityTable[m_a8];
-		m_addsubtractF = false;
-		m_carryF = false;
-		m_3F = ((m_a8 & THREE_MASK) != 0);
-		m_5F = ((m_a8 & FIVE_MASK) != 0);
+		lazyFlags(LAZY_OR, 0, 0, m_a8);
 	}
 
 	/**
 	 * Compare a 8-bit value to the A register and set the appropriate flags.
 	 */
-	private static void cmp_a(final int val8) {
+	private void cmp_a(final int val8) {
 		final int work16 = m_a8 - val8;
-		final int idx = ((m_a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
-				| ((work16 & 0x88) >> 3);
-		m_signF = ((work16 & 0x80) != 0);
-		m_zeroF = ((work16 & 0xff) == 0);
-		m_halfcarryF = m_subhalfcarryTable[idx & 0x7];
-		m_parityoverflowF = m_suboverflowTable[idx >> 4];
-		m_addsubtractF = true;
-		m_carryF = ((work16 & 0x0100) != 0);
-		m_3F = ((val8 & THREE_MASK) != 0);
-		m_5F = ((val8 & FIVE_MASK) != 0);
+		lazyFlags(LAZY_CP, m_a8, val8, work16);
 	}
 
 	/**
 	 * Compare a 8-bit value to the A register and set the appropriate flags,
 	 * except PARITY and CARRY.
 	 */
-	private static void cmp_a_special(final int val8) {
-		final int work16 = m_a8 - val8;
-		final int idx = ((m_a8 & 0x88) >> 1) | ((val8 & 0x88) >> 2)
-				| ((work16 & 0x88) >> 3);
-		m_signF = ((work16 & 0x80) != 0);
-		m_zeroF = ((work16 & 0xff) == 0);
-		m_halfcarryF = m_subhalfcarryTable[idx & 0x7];
-		m_addsubtractF = true;
+	private void cmp_a_special(final int val8) {
+		resolveFlags();
+
+		m_f8 = (m_f8 & (PARITY_MASK | CARRY_MASK | FIVE_THREE_MASK))
+				| (m_subTable[(m_a8 << 8) | val8]
+						& (SIGN_MASK | ZERO_MASK | HALFCARRY_MASK))
+				| ADDSUBTRACT_MASK;
 	}
 
 	/**
 	 * Test the given bit in a byte and set the appropriate flags.
 	 */
-	private static void bit(final int bit3, final int reg8) {
-		m_zeroF = ((reg8 & (0x01 << bit3)) == 0);
-		m_halfcarryF = true;
-		m_parityoverflowF = m_zeroF;
-		m_addsubtractF = false;
-		m_signF = ((reg8 & (0x01 << bit3)) == 0x80);
-		m_3F = (bit3 == 3 && !m_zeroF);
-		m_5F = (bit3 == 5 && !m_zeroF);
+	private void bit(final int bit3, final int reg8) {
+		resolveFlags();
+
+		final int work8 = reg8 & (0x01 << bit3);
+		m_f8 = (m_f8 & CARRY_MASK) | HALFCARRY_MASK
+				| (work8 & (SIGN_MASK | FIVE_THREE_MASK))
+				| (work8 == 0 ? ZERO_MASK | PARITY_MASK : 0);
 	}
 
-	private static void bit_hl(final int bit3, final int val8) {
-		m_zeroF = ((val8 & (0x01 << bit3)) == 0);
-		m_halfcarryF = true;
-		m_parityoverflowF = m_zeroF;
-		m_addsubtractF = false;
-		m_signF = ((val8 & (0x01 << bit3)) == 0x80);
-		m_3F = ((m_x8 & THREE_MASK) != 0);
-		m_5F = ((m_x8 & FIVE_MASK) != 0);
+	private void bit_hl(final int bit3, final int val8) {
+		resolveFlags();
+
+		final int work8 = val8 & (0x01 << bit3);
+		m_f8 = (m_f8 & CARRY_MASK) | HALFCARRY_MASK | (work8 & SIGN_MASK)
+				| (work8 == 0 ? ZERO_MASK | PARITY_MASK : 0)
+				| (m_x8 & FIVE_THREE_MASK);
 	}
 
-	private static void bit_xx(final int bit3, final int val8) {
-		m_zeroF = ((val8 & (0x01 << bit3)) == 0);
-		m_halfcarryF = true;
-		m_parityoverflowF = m_zeroF;
-		m_addsubtractF = false;
-		m_signF = ((val8 & (0x01 << bit3)) == 0x80);
-		m_3F = ((xx16high8() & THREE_MASK) != 0);
-		m_5F = ((xx16high8() & FIVE_MASK) != 0);
+	private void bit_xx(final int bit3, final int val8) {
+		resolveFlags();
+
+		final int work8 = val8 & (0x01 << bit3);
+		m_f8 = (m_f8 & CARRY_MASK) | HALFCARRY_MASK | (work8 & SIGN_MASK)
+				| (work8 == 0 ? ZERO_MASK | PARITY_MASK : 0)
+				| (xx16high8() & FIVE_THREE_MASK);
 	}
 
 	/**
 	 * Read an 8-bit value from a 16-bit I/O port and return it.
 	 */
-	private static int in8(final int port16) {
-		final int work8 = BaseIO.in8(port16);
-		m_signF = ((work8 & 0x80) != 0);
-		m_zeroF = (work8 == 0);
-		m_halfcarryF = false;
-		m_parityoverflowF = m_parityTable[work8];
-		m_addsubtractF = false;
-		m_3F = ((work8 & THREE_MASK) != 0);
-		m_5F = ((work8 & FIVE_MASK) != 0);
+	private int in8(final int port16) {
+		final int work8 = m_io.in8(port16);
+		resolveFlags();
+		m_f8 = (m_f8 & CARRY_MASK) | m_sz53pTable[work8];
 		return work8;
 	}
 
+	/**
+	 * Return the number of iterations that a repeating block instruction may
+	 * run before the next event, given that each repetition takes 21
+	 * T-States and that the first iteration always runs.
+	 */
+	private int blockIterations(final int count) {
+		final int remaining = m_tstateBudget - m_tstates;
+		final int iterations = (remaining > 21 ? (remaining + 20) / 21 : 1);
+		return (iterations < count ? iterations : count);
+	}
+
+	/**
+	 * LDIR (step 1) and LDDR (step -1): copy the block in bulk, up to the
+	 * end of the block or the next event, whichever comes first.
+	 * <P>
+	 * The registers, flags, R and T-States end up exactly as if the
+	 * instruction had been executed byte by byte; if the block is not done,
+	 * the PC is left on the instruction so that it resumes after the event.
+	 */
+	private void block_ld(final int step) {
+		resolveFlags();
+		final int bc = bc16();
+		final int count = (bc == 0 ? 0x10000 : bc);
+		int iterations = blockIterations(count);
+		int src = hl16();
+		int dst = de16();
+
+		// A copy over the instruction itself must stop right after that
+		// write, so that the next iteration fetches whatever was written.
+		final int pc16 = decdec16(m_pc16);
+		final int hit = Math.min((step * (pc16 - dst)) & 0xffff,
+				(step * (pc16 + 1 - dst)) & 0xffff);
+		if (hit < iterations) {
+			iterations = hit + 1;
+		}
+
+		// The delays of contended accesses depend on the T-State of each
+		// access, so those blocks run one byte per instruction.
+		int work8;
+		if (isContended(pc16, 2, 1) || isContended(src, iterations, step)
+				|| isContended(dst, iterations, step)) {
+			iterations = 1;
+			work8 = read8(src);
+			write8(dst, work8);
+			idle(dst, 2);
+			if (count > 1) {
+				idle(dst, 5);
+			}
+		} else {
+			copy(src, dst, iterations, step);
+			work8 = peek8((src + step * (iterations - 1)) & 0xffff);
+		}
+		src = (src + step * iterations) & 0xffff;
+		dst = (dst + step * iterations) & 0xffff;
+		work8 += m_a8;
+		hl16(src);
+		de16(dst);
+		bc16((count - iterations) & 0xffff);
+
+		m_r8 = (m_r8 & 0x80) | ((m_r8 + 2 * (iterations - 1)) & 0x7f);
+		m_tstates += 21 * iterations;
+		m_f8 = (m_f8 & (SIGN_MASK | ZERO_MASK | CARRY_MASK))
+				| (work8 & THREE_MASK) | ((work8 & ONE_MASK) << 5);
+		if (iterations < count) {
+			m_f8 |= PARITY_MASK;
+			m_pc16 = decdec16(m_pc16);
+		} else {
+			m_tstates -= 5;
+		}
+	}
+
+	/**
+	 * Does a block of memory touch a page whose accesses are delayed by
+	 * contention?
+	 * 
+	 * @param addr16
+	 *            The first address of the block.
+	 * @param length
+	 *            The number of bytes in the block.
+	 * @param step
+	 *            1 if the block goes up from addr16, -1 if it goes down.
+	 */
+	private boolean isContended(int addr16, int length, final int step) {
+		if (m_contention == null) {
+			return false;
+		}
+		while (true) {
+			if (m_pageContended[addr16 >> 14]) {
+				return true;
+			}
+			final int n = (step > 0 ? PAGE_SIZE - (addr16 & 0x3fff)
+					: (addr16 & 0x3fff) + 1);
+			if (n >= length) {
+				return false;
+			}
+			length -= n;
+			addr16 = (addr16 + step * n) & 0xffff;
+		}
+	}
+
+	/**
+	 * Copy a block of memory the way a sequence of LDI (step 1) or LDD (step
+	 * -1) instructions would.
+	 * <P>
+	 * The block is split on 16K page boundaries (and on the 64K wrap), and
+	 * each part is handled according to the mode of its destination page:
+	 * writes to a ROM page are dropped, and a screen page is touched once per
+	 * range instead of once per byte. Ranges whose destination overlaps the
+	 * part of the source that is yet to be read (such as a fill with DE = HL +
+	 * 1) are copied byte by byte, since the copy must see its own writes.
+	 */
+	private void copy(int src, int dst, int length, final int step) {
+		while (length > 0) {
+			int n = length;
+			if (step > 0) {
+				n = Math.min(n, PAGE_SIZE - (src & 0x3fff));
+				n = Math.min(n, PAGE_SIZE - (dst & 0x3fff));
+			} else {
+				n = Math.min(n, (src & 0x3fff) + 1);
+				n = Math.min(n, (dst & 0x3fff) + 1);
+			}
+
+			final int mode = m_pageModes[dst >> 14];
+			if (mode != PAGE_ROM) {
+				final byte[] from = m_pages[src >> 14];
+				final byte[] to = m_pages[dst >> 14];
+				final int srcOffset = src & 0x3fff;
+				final int dstOffset = dst & 0x3fff;
+				// How far ahead of the source the destination is.
+				final int ahead = step * (dstOffset - srcOffset);
+				// The lowest offset of the destination range.
+				final int start = (step > 0 ? dstOffset : dstOffset - n + 1);
+				if (from == to && ahead > 0 && ahead < n) {
+					for (int i = 0; i < n; i++) {
+						to[dstOffset + step * i] = from[srcOffset + step * i];
+					}
+				} else {
+					System.arraycopy(from, start - step * ahead, to, start, n);
+				}
+				if (mode == PAGE_SCREEN) {
+					m_screen.touchRange(start, n);
+				}
+			}
+
+			src = (src + step * n) & 0xffff;
+			dst = (dst + step * n) & 0xffff;
+			length -= n;
+		}
+	}
+
+	/**
+	 * CPIR (step 1) and CPDR (step -1): scan the block until a match, the
+	 * end of the block or the next event, whichever comes first.
+	 * <P>
+	 * Every iteration overwrites all the flags except for CARRY, so only the
+	 * last comparison needs to be flagged.
+	 */
+	private void block_cp(final int step) {
+		resolveFlags();
+		final int bc = bc16();
+		final int count = (bc == 0 ? 0x10000 : bc);
+		int hl = hl16();
+		int iterations = blockIterations(count);
+		if (isContended(decdec16(m_pc16), 2, 1)
+				|| isContended(hl, iterations, step)) {
+			iterations = 1;
+		}
+		int val8;
+		int done = 0;
+		do {
+			val8 = read8(hl);
+			idle(hl, 5);
+			hl = (hl + step) & 0xffff;
+			done++;
+		} while (val8 != m_a8 && done < iterations);
+		if (done < count && val8 != m_a8) {
+			idle((hl - step) & 0xffff, 5);
+		}
+		hl16(hl);
+		bc16((count - done) & 0xffff);
+
+		cmp_a_special(val8);
+		final int work8 = m_a8 - val8 - ((m_f8 & HALFCARRY_MASK) >> 4);
+		m_f8 = (m_f8 & ~(PARITY_MASK | FIVE_THREE_MASK))
+				| (work8 & THREE_MASK) | ((work8 & ONE_MASK) << 5);
+
+		m_r8 = (m_r8 & 0x80) | ((m_r8 + 2 * (done - 1)) & 0x7f);
+		m_tstates += 21 * done;
+		if (done < count) {
+			m_f8 |= PARITY_MASK;
+		}
+		if (done < count && val8 != m_a8) {
+			m_pc16 = decdec16(m_pc16);
+		} else {
+			m_tstates -= 5;
+		}
+	}
+
+	/**
+	 * INIR (step 1) and INDR (step -1): repeat the input without going back
+	 * through the decoder, up to the end of the block or the next event.
+	 * <P>
+	 * Every port read happens at the same T-State as it would if the
+	 * instruction were decoded again for each byte, so that contended and
+	 * floating bus reads are unaffected. An instruction in contended memory
+	 * goes back through the decoder every time, since its own fetches are
+	 * delayed.
+	 */
+	private void block_in(final int step) {
+		resolveFlags();
+		final int pc16 = decdec16(m_pc16);
+		final boolean refetch = isContended(pc16, 2, 1);
+		while (true) {
+			// The next bus cycle follows the two fetches (see m_access.)
+			m_access = m_tstates + 8;
+			m_tstates += 16;
+			idle(ir16(), 1);
+			final int hl = hl16();
+			write8(hl, m_io.in8(bc16()));
+			m_b8 = ((m_b8 - 1) & 0xff);
+			hl16((hl + step) & 0xffff);
+			if (m_b8 == 0) {
+				break;
+			}
+			idle(hl, 5);
+			m_tstates += 5;
+			// Also stop after a write over the instruction itself (see
+			// block_ld.)
+			if (refetch || m_tstates >= m_tstateBudget
+					|| ((hl - pc16) & 0xffff) < 2) {
+				m_pc16 = decdec16(m_pc16);
+				break;
+			}
+			m_r8 = (m_r8 & 0x80) | ((m_r8 + 2) & 0x7f);
+		}
+		m_f8 = (m_f8 & ~ZERO_MASK) | (m_sz53Table[m_b8] & ZERO_MASK)
+				| ADDSUBTRACT_MASK;
+	}
+
+	/**
+	 * OTIR (step 1) and OTDR (step -1): repeat the output without going back
+	 * through the decoder, up to the end of the block or the next event.
+	 * 
+	 * @see #block_in
+	 */
+	private void block_out(final int step) {
+		resolveFlags();
+		final boolean refetch = isContended(decdec16(m_pc16), 2, 1);
+		while (true) {
+			m_access = m_tstates + 8;
+			m_tstates += 16;
+			idle(ir16(), 1);
+			m_b8 = ((m_b8 - 1) & 0xff);
+			m_io.out(bc16(), read8(hl16()));
+			hl16((hl16() + step) & 0xffff);
+			if (m_b8 == 0) {
+				break;
+			}
+			idle(bc16(), 5);
+			m_tstates += 5;
+			if (refetch || m_tstates >= m_tstateBudget) {
+				m_pc16 = decdec16(m_pc16);
+				break;
+			}
+			m_r8 = (m_r8 & 0x80) | ((m_r8 + 2) & 0x7f);
+		}
+		m_f8 = (m_f8 & ~ZERO_MASK) | (m_sz53Table[m_b8] & ZERO_MASK)
+				| ADDSUBTRACT_MASK;
+	}
+
 	/**
 	 * M1 cycle: fetch an instruction and increment the PC register.
 	 * <P>
@@ -1019,10 +1468,21 @@ public class Z80 {
 	 * etcetera. The sequence LD R,A/LD A,R increases A by two, except for the
 	 * highest bit: this bit of the R register is never changed.
 	 */
-	private static int mone8() {
+	private int mone8() {
 		m_r8 = (m_r8 & 0x80) | ((m_r8 + 1) & 0x7f);
 
-		return read8(inc16pc());
+		final int op8 = read8(inc16pc());
+		// An M1 cycle takes one T-State more than a memory read.
+		m_access++;
+		return op8;
+	}
+
+	/**
+	 * The address that the CPU puts on the bus during the refresh, and
+	 * during most internal T-States: the 16-bit IR register pair.
+	 */
+	private int ir16() {
+		return (m_i8 << 8) | m_r8;
 	}
 
 	/**
@@ -1053,1828 +1513,2107 @@ public class Z80 {
 	}
 
 	/**
-	 * Decode one instruction: call <TT>mone8()</TT> to retrieve the opcode,
-	 * decode it and execute it.
+	 * Run the CPU until stopped.
+	 * <P>
+	 * Instructions are executed by <TT>execute()</TT> up to the T-State of the
+	 * next scheduled event (at the latest, the interrupt at the end of the
+	 * frame);
+	 * the events are then fired once, by <TT>BaseSpectrum.update()</TT>,
+	 * rather than checked before every instruction. The stop and pause
+	 * requests are also honored between events.
 	 */
 	public void emulate() {
+		m_stop = false;
 		while (true) {
-			BaseSpectrum.update();
-
-			int work16 = 0;
-			int work8 = 0;
-			//Log.w("emulate", toStr());
-			int op8 = mone8();
-			switch (op8) {
+			execute(m_spectrum.getEventBudget());
+			m_spectrum.update();
 
-			/* nop */
-			case 0x00:
-				m_tstates += 4;
+			if (m_stop) {
 				break;
+			}
 
-			/* ld bc,NN */
-			case 0x01:
-				m_tstates += 10;
-				bc16(read16(m_pc16));
-				m_pc16 = incinc16(m_pc16);
-				break;
+			if (m_pause) {
+				synchronized (this) {
+					while (m_pause) {
+						try {
+							wait();
+						} catch (InterruptedException ie) {
+							m_spectrum.getLogger().log(ILogger.C_ERROR,
+									ie.toString());
+						}
+					}
+				}
+			}
+		}
+	}
 
-			/* ld (bc),a */
-			case 0x02:
-				m_tstates += 7;
-				write8(bc16(), m_a8);
+	/**
+	 * Decode and execute instructions until the T-States count reaches the
+	 * given budget.
+	 * <P>
+	 * Each iteration calls <TT>mone8()</TT> to retrieve the opcode, decodes
+	 * it and executes it. Since the last instruction may overrun the budget,
+	 * the T-States count is left at or just past <TT>tstateBudget</TT>; the
+	 * caller is responsible for subtracting the elapsed budget.
+	 * 
+	 * @param tstateBudget
+	 *            The T-States count at which to return.
+	 */
+	public void execute(final int tstateBudget) {
+		m_tstateBudget = tstateBudget;
+		if (m_tracer != null || m_profiler != null) {
+			executeInstrumented(tstateBudget);
+			return;
+		}
+		while (m_tstates < tstateBudget) {
+			m_access = m_tstates;
+			int op8 = mone8();
+			switch (op8 >> 6) {
+			case 0:
+				decode00(op8);
 				break;
-
-			/* inc bc */
-			case 0x03:
-				m_tstates += 6;
-				inc16bc();
+			case 1:
+				decode40(op8);
 				break;
-
-			/* inc b */
-			case 0x04:
-				m_tstates += 4;
-				m_b8 = inc8(m_b8);
+			case 2:
+				decode80(op8);
 				break;
-
-			/* dec b */
-			case 0x05:
-				m_tstates += 4;
-				m_b8 = dec8(m_b8);
+			default:
+				decodeC0(op8);
 				break;
+			}
+		}
+	}
 
-			/* ld b,N */
-			case 0x06:
-				m_tstates += 7;
-				m_b8 = read8(inc16pc());
-				break;
+	/**
+	 * The same as <TT>execute()</TT>, but every instruction is recorded by
+	 * the tracer before it executes, and counted by the profiler after it
+	 * executes.
+	 * <P>
+	 * This is a separate loop so that, when neither is attached, the
+	 * instruction loop of <TT>execute()</TT> does not check for them.
+	 */
+	private void executeInstrumented(final int tstateBudget) {
+		final Tracer tracer = m_tracer;
+		final Profiler profiler = m_profiler;
+		final long frameStart = m_spectrum.getTStates() - m_tstates;
+		while (m_tstates < tstateBudget) {
+			final int pc16 = m_pc16;
+			final int b0 = peek8(pc16);
+			final int b1 = peek8((pc16 + 1) & 0xffff);
+			final int b2 = peek8((pc16 + 2) & 0xffff);
+			final int b3 = peek8((pc16 + 3) & 0xffff);
+			final int tstates = m_tstates;
+			if (tracer != null) {
+				tracer.record(pc16, (b0 << 24) | (b1 << 16) | (b2 << 8) | b3,
+						af16(), bc16(), de16(), hl16(), m_ix16, m_iy16,
+						m_sp16, frameStart + tstates);
+			}
 
-			/* rlca */
-			case 0x07:
-				m_tstates += 4;
-				m_carryF = ((m_a8 & 0x80) != 0);
-				m_a8 = (((m_a8 << 1) | (m_carryF ? 1 : 0)) & 0xff);
-				m_halfcarryF = false;
-				m_addsubtractF = false;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
+			m_access = tstates;
+			int op8 = mone8();
+			switch (op8 >> 6) {
+			case 0:
+				decode00(op8);
 				break;
-
-			/* ex af,af' */
-			case 0x08:
-				m_tstates += 4;
-				storeFlags();
-				work16 = af16();
-				af16(m_af16alt);
-				m_af16alt = work16;
-				retrieveFlags();
+			case 1:
+				decode40(op8);
 				break;
-
-			/* add hl,bc */
-			case 0x09:
-				m_tstates += 11;
-				add_hl(bc16());
+			case 2:
+				decode80(op8);
 				break;
-
-			/* ld a,(bc) */
-			case 0x0A:
-				m_tstates += 7;
-				m_a8 = read8(bc16());
+			default:
+				decodeC0(op8);
 				break;
+			}
 
-			/* dec bc */
-			case 0x0B:
-				m_tstates += 6;
-				dec16bc();
-				break;
+			if (profiler != null) {
+				profiler.count(pc16, Profiler.opcode(b0, b1, b3), m_tstates
+						- tstates);
+			}
+		}
+	}
 
-			/* inc c */
-			case 0x0C:
-				m_tstates += 4;
-				m_c8 = inc8(m_c8);
-				break;
+	/**
+	 * Trivial accessor for the tracer that records every instruction, or
+	 * null if not tracing.
+	 */
+	public Tracer getTracer() {
+		return m_tracer;
+	}
 
-			/* dec c */
-			case 0x0D:
-				m_tstates += 4;
-				m_c8 = dec8(m_c8);
-				break;
+	/**
+	 * Start recording every instruction with the given tracer, or stop
+	 * tracing if it is null.
+	 * <P>
+	 * This takes effect at the next event.
+	 */
+	public void setTracer(Tracer tracer) {
+		m_tracer = tracer;
+	}
 
-			/* ld c,N */
-			case 0x0E:
-				m_tstates += 7;
-				m_c8 = read8(inc16pc());
-				break;
+	/**
+	 * Trivial accessor for the profiler that counts every instruction, or
+	 * null if not profiling.
+	 */
+	public Profiler getProfiler() {
+		return m_profiler;
+	}
 
-			/* rrca */
-			case 0x0F:
-				m_tstates += 4;
-				m_carryF = ((m_a8 & 0x01) != 0);
-				m_a8 = (m_a8 >> 1) | ((m_carryF ? 1 : 0) << 7);
-				m_halfcarryF = false;
-				m_addsubtractF = false;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
-				break;
+	/**
+	 * Start counting every instruction with the given profiler, or stop
+	 * profiling if it is null.
+	 * <P>
+	 * This takes effect at the next event.
+	 */
+	public void setProfiler(Profiler profiler) {
+		m_profiler = profiler;
+	}
 
-			/* djnz D */
-			case 0x10:
-				m_b8 = ((m_b8 - 1) & 0xff);
-				if (m_b8 != 0) {
-					m_tstates += 13;
-					m_pc16 = add16(m_pc16, (byte) read8(m_pc16) + 1);
-				} else {
-					m_tstates += 8;
-					inc16pc();
-				}
-				break;
+	/**
+	 * Decode the instructions whose first opcode is 0xCB.
+	 */
+	private void decodeCB(final int op8) {
+		switch (op8 >> 6) {
+		case 0:
+			decodeCBShift(op8);
+			break;
+		case 1:
+			decodeCBBit(op8);
+			break;
+		case 2:
+			decodeCBRes(op8);
+			break;
+		default:
+			decodeCBSet(op8);
+			break;
+		}
+	}
 
-			/* ld de,NN */
-			case 0x11:
-				m_tstates += 10;
-				de16(read16(m_pc16));
-				m_pc16 = incinc16(m_pc16);
-				break;
+	/**
+	 * Decode the unprefixed instructions 0x00 - 0x3F.
+	 */
+	private void decode00(int op8) {
+		int work16 = 0;
+		int work8 = 0;
 
-			/* ld (de),a */
-			case 0x12:
-				m_tstates += 7;
-				write8(de16(), m_a8);
-				break;
+		switch (op8) {
+		/* nop */
+		case 0x00:
+			m_tstates += 4;
+			break;
 
-			/* inc de */
-			case 0x13:
-				m_tstates += 6;
-				inc16de();
-				break;
+		/* ld bc,NN */
+		case 0x01:
+			m_tstates += 10;
+			bc16(read16(m_pc16));
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* inc d */
-			case 0x14:
-				m_tstates += 4;
-				m_d8 = inc8(m_d8);
-				break;
+		/* ld (bc),a */
+		case 0x02:
+			m_tstates += 7;
+			write8(bc16(), m_a8);
+			break;
 
-			/* dec d */
-			case 0x15:
-				m_tstates += 4;
-				m_d8 = dec8(m_d8);
-				break;
+		/* inc bc */
+		case 0x03:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			inc16bc();
+			break;
 
-			/* ld d,N */
-			case 0x16:
-				m_tstates += 7;
-				m_d8 = read8(inc16pc());
-				break;
+		/* inc b */
+		case 0x04:
+			m_tstates += 4;
+			m_b8 = inc8(m_b8);
+			break;
 
-			/* rla */
-			case 0x17:
-				m_tstates += 4;
-				work8 = (m_carryF ? 1 : 0);
-				m_carryF = ((m_a8 & 0x80) != 0);
-				m_a8 = (((m_a8 << 1) | work8) & 0xff);
-				m_halfcarryF = false;
-				m_addsubtractF = false;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
-				break;
+		/* dec b */
+		case 0x05:
+			m_tstates += 4;
+			m_b8 = dec8(m_b8);
+			break;
 
-			/* jr D */
-			case 0x18:
-				m_tstates += 12;
-				m_pc16 = add16(m_pc16, (byte) read8(m_pc16) + 1);
-				m_x8 = m_pc16 >> 8;
-				break;
+		/* ld b,N */
+		case 0x06:
+			m_tstates += 7;
+			m_b8 = read8(inc16pc());
+			break;
 
-			/* add hl,de */
-			case 0x19:
-				m_tstates += 11;
-				add_hl(de16());
-				break;
+		/* rlca */
+		case 0x07:
+			resolveFlags();
+			m_tstates += 4;
+			m_a8 = (((m_a8 << 1) | (m_a8 >> 7)) & 0xff);
+			m_f8 = (m_f8 & SZP_MASK)
+					| (m_a8 & (FIVE_THREE_MASK | CARRY_MASK));
+			break;
 
-			/* ld a,(de) */
-			case 0x1A:
-				m_tstates += 7;
-				m_a8 = read8(de16());
-				break;
+		/* ex af,af' */
+		case 0x08:
+			m_tstates += 4;
+			work16 = af16();
+			af16(m_af16alt);
+			m_af16alt = work16;
+			break;
 
-			/* dec de */
-			case 0x1B:
-				m_tstates += 6;
-				dec16de();
-				break;
+		/* add hl,bc */
+		case 0x09:
+			m_tstates += 11;
+			idle(ir16(), 7);
+			add_hl(bc16());
+			break;
 
-			/* inc e */
-			case 0x1C:
-				m_tstates += 4;
-				m_e8 = inc8(m_e8);
-				break;
+		/* ld a,(bc) */
+		case 0x0A:
+			m_tstates += 7;
+			m_a8 = read8(bc16());
+			break;
 
-			/* dec e */
-			case 0x1D:
-				m_tstates += 4;
-				m_e8 = dec8(m_e8);
-				break;
+		/* dec bc */
+		case 0x0B:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			dec16bc();
+			break;
 
-			/* ld e,N */
-			case 0x1E:
-				m_tstates += 7;
-				m_e8 = read8(inc16pc());
-				break;
+		/* inc c */
+		case 0x0C:
+			m_tstates += 4;
+			m_c8 = inc8(m_c8);
+			break;
 
-			/* rra */
-			case 0x1F:
-				m_tstates += 4;
-				work8 = (m_carryF ? 1 : 0);
-				m_carryF = ((m_a8 & 0x01) != 0);
-				m_a8 = (m_a8 >> 1) | (work8 << 7);
-				m_halfcarryF = false;
-				m_addsubtractF = false;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
-				break;
+		/* dec c */
+		case 0x0D:
+			m_tstates += 4;
+			m_c8 = dec8(m_c8);
+			break;
 
-			/* jr nz,D */
-			case 0x20:
-				if (!m_zeroF) {
-					m_tstates += 12;
-					m_pc16 = add16(m_pc16, (byte) read8(m_pc16) + 1);
-				} else {
-					m_tstates += 7;
-					inc16pc();
-				}
-				break;
+		/* ld c,N */
+		case 0x0E:
+			m_tstates += 7;
+			m_c8 = read8(inc16pc());
+			break;
 
-			/* ld hl,NN */
-			case 0x21:
-				m_tstates += 10;
-				hl16(read16(m_pc16));
-				m_pc16 = incinc16(m_pc16);
-				break;
+		/* rrca */
+		case 0x0F:
+			resolveFlags();
+			m_tstates += 4;
+			work8 = (m_a8 & 0x01);
+			m_a8 = (m_a8 >> 1) | (work8 << 7);
+			m_f8 = (m_f8 & SZP_MASK) | (m_a8 & FIVE_THREE_MASK) | work8;
+			break;
 
-			/* ld (NN),hl */
-			case 0x22:
-				m_tstates += 16;
-				write16(read16(m_pc16), hl16());
-				m_pc16 = incinc16(m_pc16);
-				break;
+		/* djnz D */
+		case 0x10:
+			idle(ir16(), 1);
+			m_b8 = ((m_b8 - 1) & 0xff);
+			if (m_b8 != 0) {
+				m_tstates += 13;
+				work8 = read8(m_pc16);
+				idle(m_pc16, 5);
+				m_pc16 = add16(m_pc16, (byte) work8 + 1);
+			} else {
+				m_tstates += 8;
+				contend(inc16pc());
+			}
+			break;
 
-			/* inc hl */
-			case 0x23:
-				m_tstates += 6;
-				inc16hl();
-				break;
+		/* ld de,NN */
+		case 0x11:
+			m_tstates += 10;
+			de16(read16(m_pc16));
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* inc h */
-			case 0x24:
-				m_tstates += 4;
-				m_h8 = inc8(m_h8);
-				break;
+		/* ld (de),a */
+		case 0x12:
+			m_tstates += 7;
+			write8(de16(), m_a8);
+			break;
 
-			/* dec h */
-			case 0x25:
-				m_tstates += 4;
-				m_h8 = dec8(m_h8);
-				break;
+		/* inc de */
+		case 0x13:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			inc16de();
+			break;
 
-			/* ld h,N */
-			case 0x26:
-				m_tstates += 7;
-				m_h8 = read8(inc16pc());
-				break;
+		/* inc d */
+		case 0x14:
+			m_tstates += 4;
+			m_d8 = inc8(m_d8);
+			break;
 
-			/* daa */
-			case 0x27:
-				m_tstates += 4;
-				boolean carry = m_carryF;
-				boolean addsubtract = m_addsubtractF;
-				if (!addsubtract) {
-					work8 = 0;
-					if (m_halfcarryF || (m_a8 & 0x0f) > 9) {
-						work8 = 0x06;
-					}
-					if (m_carryF || (m_a8 >> 4) > 9
-							|| ((m_a8 >> 4) >= 9 && (m_a8 & 0x0f) > 9)) {
-						work8 |= 0x60;
-						carry = true;
-					}
-				} else {
-					if (m_carryF) {
-						work8 = m_halfcarryF ? 0x9a : 0xa0;
-					} else {
-						work8 = m_halfcarryF ? 0xfa : 0x00;
-					}
-				}
-				add_a(work8);
-				m_addsubtractF = addsubtract;
-				m_parityoverflowF = m_parityTable[m_a8];
-				m_carryF = carry;
-				break;
+		/* dec d */
+		case 0x15:
+			m_tstates += 4;
+			m_d8 = dec8(m_d8);
+			break;
 
-			/* jr z,D */
-			case 0x28:
-				if (m_zeroF) {
-					m_tstates += 12;
-					m_pc16 = add16(m_pc16, (byte) read8(m_pc16) + 1);
-				} else {
-					m_tstates += 7;
-					inc16pc();
-				}
-				break;
+		/* ld d,N */
+		case 0x16:
+			m_tstates += 7;
+			m_d8 = read8(inc16pc());
+			break;
 
-			/* add hl,hl */
-			case 0x29:
-				m_tstates += 11;
-				add_hl(hl16());
-				break;
+		/* rla */
+		case 0x17:
+			resolveFlags();
+			m_tstates += 4;
+			work8 = (m_a8 >> 7);
+			m_a8 = (((m_a8 << 1) | (m_f8 & CARRY_MASK)) & 0xff);
+			m_f8 = (m_f8 & SZP_MASK) | (m_a8 & FIVE_THREE_MASK) | work8;
+			break;
 
-			/* ld hl,(NN) */
-			case 0x2A:
-				m_tstates += 16;
-				hl16(read16(read16(m_pc16)));
-				m_pc16 = incinc16(m_pc16);
-				break;
+		/* jr D */
+		case 0x18:
+			m_tstates += 12;
+			work8 = read8(m_pc16);
+			idle(m_pc16, 5);
+			m_pc16 = add16(m_pc16, (byte) work8 + 1);
+			m_x8 = m_pc16 >> 8;
+			break;
 
-			/* dec hl */
-			case 0x2B:
-				m_tstates += 6;
-				dec16hl();
-				break;
+		/* add hl,de */
+		case 0x19:
+			m_tstates += 11;
+			idle(ir16(), 7);
+			add_hl(de16());
+			break;
 
-			/* inc l */
-			case 0x2C:
-				m_tstates += 4;
-				m_l8 = inc8(m_l8);
-				break;
+		/* ld a,(de) */
+		case 0x1A:
+			m_tstates += 7;
+			m_a8 = read8(de16());
+			break;
 
-			/* dec l */
-			case 0x2D:
-				m_tstates += 4;
-				m_l8 = dec8(m_l8);
-				break;
+		/* dec de */
+		case 0x1B:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			dec16de();
+			break;
 
-			/* ld l,N */
-			case 0x2E:
-				m_tstates += 7;
-				m_l8 = read8(inc16pc());
-				break;
+		/* inc e */
+		case 0x1C:
+			m_tstates += 4;
+			m_e8 = inc8(m_e8);
+			break;
 
-			/* cpl */
-			case 0x2F:
-				m_tstates += 4;
-				m_a8 ^= 0xff;
-				m_halfcarryF = true;
-				m_addsubtractF = true;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
-				break;
+		/* dec e */
+		case 0x1D:
+			m_tstates += 4;
+			m_e8 = dec8(m_e8);
+			break;
 
-			/* jr nc,D */
-			case 0x30:
-				if (!m_carryF) {
-					m_tstates += 12;
-					m_pc16 = add16(m_pc16, (byte) read8(m_pc16) + 1);
-				} else {
-					m_tstates += 7;
-					inc16pc();
-				}
-				break;
+		/* ld e,N */
+		case 0x1E:
+			m_tstates += 7;
+			m_e8 = read8(inc16pc());
+			break;
 
-			/* ld sp,NN */
-			case 0x31:
-				m_tstates += 10;
-				m_sp16 = read16(m_pc16);
-				m_pc16 = incinc16(m_pc16);
-				break;
+		/* rra */
+		case 0x1F:
+			resolveFlags();
+			m_tstates += 4;
+			work8 = (m_a8 & 0x01);
+			m_a8 = (m_a8 >> 1) | ((m_f8 & CARRY_MASK) << 7);
+			m_f8 = (m_f8 & SZP_MASK) | (m_a8 & FIVE_THREE_MASK) | work8;
+			break;
 
-			/* ld (NN),a */
-			case 0x32:
-				m_tstates += 13;
-				write8(read16(m_pc16), m_a8);
-				m_pc16 = incinc16(m_pc16);
-				break;
+		/* jr nz,D */
+		case 0x20:
+			if (!zeroF()) {
+				m_tstates += 12;
+				work8 = read8(m_pc16);
+				idle(m_pc16, 5);
+				m_pc16 = add16(m_pc16, (byte) work8 + 1);
+			} else {
+				m_tstates += 7;
+				contend(inc16pc());
+			}
+			break;
 
-			/* inc sp */
-			case 0x33:
-				m_tstates += 6;
-				inc16sp();
-				break;
+		/* ld hl,NN */
+		case 0x21:
+			m_tstates += 10;
+			hl16(read16(m_pc16));
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* inc (hl) */
-			case 0x34:
-				m_tstates += 11;
-				work8 = read8(hl16());
-				work8 = inc8(work8);
-				write8(hl16(), work8);
-				break;
+		/* ld (NN),hl */
+		case 0x22:
+			m_tstates += 16;
+			write16(read16(m_pc16), hl16());
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* dec (hl) */
-			case 0x35:
-				m_tstates += 11;
-				work8 = read8(hl16());
-				work8 = dec8(work8);
-				write8(hl16(), work8);
-				break;
+		/* inc hl */
+		case 0x23:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			inc16hl();
+			break;
 
-			/* ld (hl),N */
-			case 0x36:
-				m_tstates += 10;
-				write8(hl16(), read8(inc16pc()));
-				break;
+		/* inc h */
+		case 0x24:
+			m_tstates += 4;
+			m_h8 = inc8(m_h8);
+			break;
 
-			/* scf */
-			case 0x37:
-				m_tstates += 4;
-				m_halfcarryF = false;
-				m_addsubtractF = false;
-				m_carryF = true;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
-				break;
+		/* dec h */
+		case 0x25:
+			m_tstates += 4;
+			m_h8 = dec8(m_h8);
+			break;
+
+		/* ld h,N */
+		case 0x26:
+			m_tstates += 7;
+			m_h8 = read8(inc16pc());
+			break;
 
-			/* jr c,D */
-			case 0x38:
-				if (m_carryF) {
-					m_tstates += 12;
-					m_pc16 = add16(m_pc16, (byte) read8(m_pc16) + 1);
+		/* daa */
+		case 0x27:
+			resolveFlags();
+			m_tstates += 4;
+			boolean carry = ((m_f8 & CARRY_MASK) != 0);
+			boolean halfcarry = ((m_f8 & HALFCARRY_MASK) != 0);
+			boolean addsubtract = ((m_f8 & ADDSUBTRACT_MASK) != 0);
+			if (!addsubtract) {
+				work8 = 0;
+				if (halfcarry || (m_a8 & 0x0f) > 9) {
+					work8 = 0x06;
+				}
+				if (carry || (m_a8 >> 4) > 9
+						|| ((m_a8 >> 4) >= 9 && (m_a8 & 0x0f) > 9)) {
+					work8 |= 0x60;
+					carry = true;
+				}
+			} else {
+				if (carry) {
+					work8 = halfcarry ? 0x9a : 0xa0;
 				} else {
-					m_tstates += 7;
-					inc16pc();
+					work8 = halfcarry ? 0xfa : 0x00;
 				}
-				break;
+			}
+			add_a(work8);
+			resolveFlags();
+			m_f8 = (m_f8 & ~(PARITY_MASK | ADDSUBTRACT_MASK | CARRY_MASK))
+					| (m_sz53pTable[m_a8] & PARITY_MASK)
+					| (addsubtract ? ADDSUBTRACT_MASK : 0)
+					| (carry ? CARRY_MASK : 0);
+			break;
 
-			/* add hl,sp */
-			case 0x39:
-				m_tstates += 11;
-				add_hl(m_sp16);
-				break;
+		/* jr z,D */
+		case 0x28:
+			if (zeroF()) {
+				m_tstates += 12;
+				work8 = read8(m_pc16);
+				idle(m_pc16, 5);
+				m_pc16 = add16(m_pc16, (byte) work8 + 1);
+			} else {
+				m_tstates += 7;
+				contend(inc16pc());
+			}
+			break;
 
-			/* ld a,(NN) */
-			case 0x3A:
-				m_tstates += 13;
-				m_a8 = read8(read16(m_pc16));
-				m_pc16 = incinc16(m_pc16);
-				break;
+		/* add hl,hl */
+		case 0x29:
+			m_tstates += 11;
+			idle(ir16(), 7);
+			add_hl(hl16());
+			break;
 
-			/* dec sp */
-			case 0x3B:
-				m_tstates += 6;
-				dec16sp();
-				break;
+		/* ld hl,(NN) */
+		case 0x2A:
+			m_tstates += 16;
+			hl16(read16(read16(m_pc16)));
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* inc a */
-			case 0x3C:
-				m_tstates += 4;
-				m_a8 = inc8(m_a8);
-				break;
-
-			/* dec a */
-			case 0x3D:
-				m_tstates += 4;
-				m_a8 = dec8(m_a8);
-				break;
-
-			/* ld a,N */
-			case 0x3E:
-				m_tstates += 7;
-				m_a8 = read8(inc16pc());
-				break;
-
-			/* ccf */
-			case 0x3F:
-				m_tstates += 4;
-				m_halfcarryF = m_carryF;
-				m_addsubtractF = false;
-				m_carryF = !m_carryF;
-				m_3F = ((m_a8 & THREE_MASK) != 0);
-				m_5F = ((m_a8 & FIVE_MASK) != 0);
-				break;
-
-			/* ld b,b */
-			case 0x40:
-				m_tstates += 4;
-				break;
-
-			/* ld b,c */
-			case 0x41:
-				m_tstates += 4;
-				m_b8 = m_c8;
-				break;
+		/* dec hl */
+		case 0x2B:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			dec16hl();
+			break;
 
-			/* ld b,d */
-			case 0x42:
-				m_tstates += 4;
-				m_b8 = m_d8;
-				break;
+		/* inc l */
+		case 0x2C:
+			m_tstates += 4;
+			m_l8 = inc8(m_l8);
+			break;
 
-			/* ld b,e */
-			case 0x43:
-				m_tstates += 4;
-				m_b8 = m_e8;
-				break;
+		/* dec l */
+		case 0x2D:
+			m_tstates += 4;
+			m_l8 = dec8(m_l8);
+			break;
 
-			/* ld b,h */
-			case 0x44:
-				m_tstates += 4;
-				m_b8 = m_h8;
-				break;
+		/* ld l,N */
+		case 0x2E:
+			m_tstates += 7;
+			m_l8 = read8(inc16pc());
+			break;
 
-			/* ld b,l */
-			case 0x45:
-				m_tstates += 4;
-				m_b8 = m_l8;
-				break;
+		/* cpl */
+		case 0x2F:
+			resolveFlags();
+			m_tstates += 4;
+			m_a8 ^= 0xff;
+			m_f8 = (m_f8 & (SZP_MASK | CARRY_MASK)) | HALFCARRY_MASK
+					| ADDSUBTRACT_MASK | (m_a8 & FIVE_THREE_MASK);
+			break;
 
-			/* ld b,(hl) */
-			case 0x46:
+		/* jr nc,D */
+		case 0x30:
+			if (!carryF()) {
+				m_tstates += 12;
+				work8 = read8(m_pc16);
+				idle(m_pc16, 5);
+				m_pc16 = add16(m_pc16, (byte) work8 + 1);
+			} else {
 				m_tstates += 7;
-				m_b8 = read8(hl16());
-				break;
+				contend(inc16pc());
+			}
+			break;
 
-			/* ld b,a */
-			case 0x47:
-				m_tstates += 4;
-				m_b8 = m_a8;
-				break;
+		/* ld sp,NN */
+		case 0x31:
+			m_tstates += 10;
+			m_sp16 = read16(m_pc16);
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* ld c,b */
-			case 0x48:
-				m_tstates += 4;
-				m_c8 = m_b8;
-				break;
+		/* ld (NN),a */
+		case 0x32:
+			m_tstates += 13;
+			write8(read16(m_pc16), m_a8);
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* ld c,c */
-			case 0x49:
-				m_tstates += 4;
-				break;
+		/* inc sp */
+		case 0x33:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			inc16sp();
+			break;
 
-			/* ld c,d */
-			case 0x4A:
-				m_tstates += 4;
-				m_c8 = m_d8;
-				break;
+		/* inc (hl) */
+		case 0x34:
+			m_tstates += 11;
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			work8 = inc8(work8);
+			write8(hl16(), work8);
+			break;
 
-			/* ld c,e */
-			case 0x4B:
-				m_tstates += 4;
-				m_c8 = m_e8;
-				break;
+		/* dec (hl) */
+		case 0x35:
+			m_tstates += 11;
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			work8 = dec8(work8);
+			write8(hl16(), work8);
+			break;
 
-			/* ld c,h */
-			case 0x4C:
-				m_tstates += 4;
-				m_c8 = m_h8;
-				break;
+		/* ld (hl),N */
+		case 0x36:
+			m_tstates += 10;
+			write8(hl16(), read8(inc16pc()));
+			break;
 
-			/* ld c,l */
-			case 0x4D:
-				m_tstates += 4;
-				m_c8 = m_l8;
-				break;
+		/* scf */
+		case 0x37:
+			resolveFlags();
+			m_tstates += 4;
+			m_f8 = (m_f8 & SZP_MASK) | CARRY_MASK | (m_a8 & FIVE_THREE_MASK);
+			break;
 
-			/* ld c,(hl) */
-			case 0x4E:
+		/* jr c,D */
+		case 0x38:
+			if (carryF()) {
+				m_tstates += 12;
+				work8 = read8(m_pc16);
+				idle(m_pc16, 5);
+				m_pc16 = add16(m_pc16, (byte) work8 + 1);
+			} else {
 				m_tstates += 7;
-				m_c8 = read8(hl16());
-				break;
-
-			/* ld c,a */
-			case 0x4F:
-				m_tstates += 4;
-				m_c8 = m_a8;
-				break;
+				contend(inc16pc());
+			}
+			break;
 
-			/* ld d,b */
-			case 0x50:
-				m_tstates += 4;
-				m_d8 = m_b8;
-				break;
+		/* add hl,sp */
+		case 0x39:
+			m_tstates += 11;
+			idle(ir16(), 7);
+			add_hl(m_sp16);
+			break;
 
-			/* ld d,c */
-			case 0x51:
-				m_tstates += 4;
-				m_d8 = m_c8;
-				break;
+		/* ld a,(NN) */
+		case 0x3A:
+			m_tstates += 13;
+			m_a8 = read8(read16(m_pc16));
+			m_pc16 = incinc16(m_pc16);
+			break;
 
-			/* ld d,d */
-			case 0x52:
-				m_tstates += 4;
-				break;
+		/* dec sp */
+		case 0x3B:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			dec16sp();
+			break;
 
-			/* ld d,e */
-			case 0x53:
-				m_tstates += 4;
-				m_d8 = m_e8;
-				break;
+		/* inc a */
+		case 0x3C:
+			m_tstates += 4;
+			m_a8 = inc8(m_a8);
+			break;
 
-			/* ld d,h */
-			case 0x54:
-				m_tstates += 4;
-				m_d8 = m_h8;
-				break;
+		/* dec a */
+		case 0x3D:
+			m_tstates += 4;
+			m_a8 = dec8(m_a8);
+			break;
 
-			/* ld d,l */
-			case 0x55:
-				m_tstates += 4;
-				m_d8 = m_l8;
-				break;
+		/* ld a,N */
+		case 0x3E:
+			m_tstates += 7;
+			m_a8 = read8(inc16pc());
+			break;
 
-			/* ld d,(hl) */
-			case 0x56:
-				m_tstates += 7;
-				m_d8 = read8(hl16());
-				break;
+		/* ccf */
+		case 0x3F:
+			resolveFlags();
+			m_tstates += 4;
+			m_f8 = ((m_f8 & (SZP_MASK | CARRY_MASK))
+					| ((m_f8 & CARRY_MASK) << 4) | (m_a8 & FIVE_THREE_MASK))
+					^ CARRY_MASK;
+			break;
+		}
+	}
 
-			/* ld d,a */
-			case 0x57:
-				m_tstates += 4;
-				m_d8 = m_a8;
-				break;
+	/**
+	 * Decode the unprefixed instructions 0x40 - 0x7F: the 8-bit loads and HALT.
+	 */
+	private void decode40(int op8) {
+		switch (op8) {
+		/* ld b,b */
+		case 0x40:
+			m_tstates += 4;
+			break;
 
-			/* ld e,b */
-			case 0x58:
-				m_tstates += 4;
-				m_e8 = m_b8;
-				break;
+		/* ld b,c */
+		case 0x41:
+			m_tstates += 4;
+			m_b8 = m_c8;
+			break;
 
-			/* ld e,c */
-			case 0x59:
-				m_tstates += 4;
-				m_e8 = m_c8;
-				break;
+		/* ld b,d */
+		case 0x42:
+			m_tstates += 4;
+			m_b8 = m_d8;
+			break;
 
-			/* ld e,d */
-			case 0x5A:
-				m_tstates += 4;
-				m_e8 = m_d8;
-				break;
+		/* ld b,e */
+		case 0x43:
+			m_tstates += 4;
+			m_b8 = m_e8;
+			break;
 
-			/* ld e,e */
-			case 0x5B:
-				m_tstates += 4;
-				break;
+		/* ld b,h */
+		case 0x44:
+			m_tstates += 4;
+			m_b8 = m_h8;
+			break;
 
-			/* ld e,h */
-			case 0x5C:
-				m_tstates += 4;
-				m_e8 = m_h8;
-				break;
+		/* ld b,l */
+		case 0x45:
+			m_tstates += 4;
+			m_b8 = m_l8;
+			break;
 
-			/* ld e,l */
-			case 0x5D:
-				m_tstates += 4;
-				m_e8 = m_l8;
-				break;
+		/* ld b,(hl) */
+		case 0x46:
+			m_tstates += 7;
+			m_b8 = read8(hl16());
+			break;
 
-			/* ld e,(hl) */
-			case 0x5E:
-				m_tstates += 7;
-				m_e8 = read8(hl16());
-				break;
+		/* ld b,a */
+		case 0x47:
+			m_tstates += 4;
+			m_b8 = m_a8;
+			break;
 
-			/* ld e,a */
-			case 0x5F:
-				m_tstates += 4;
-				m_e8 = m_a8;
-				break;
+		/* ld c,b */
+		case 0x48:
+			m_tstates += 4;
+			m_c8 = m_b8;
+			break;
 
-			/* ld h,b */
-			case 0x60:
-				m_tstates += 4;
-				m_h8 = m_b8;
-				break;
+		/* ld c,c */
+		case 0x49:
+			m_tstates += 4;
+			break;
 
-			/* ld h,c */
-			case 0x61:
-				m_tstates += 4;
-				m_h8 = m_c8;
-				break;
+		/* ld c,d */
+		case 0x4A:
+			m_tstates += 4;
+			m_c8 = m_d8;
+			break;
 
-			/* ld h,d */
-			case 0x62:
-				m_tstates += 4;
-				m_h8 = m_d8;
-				break;
+		/* ld c,e */
+		case 0x4B:
+			m_tstates += 4;
+			m_c8 = m_e8;
+			break;
 
-			/* ld h,e */
-			case 0x63:
-				m_tstates += 4;
-				m_h8 = m_e8;
-				break;
+		/* ld c,h */
+		case 0x4C:
+			m_tstates += 4;
+			m_c8 = m_h8;
+			break;
 
-			/* ld h,h */
-			case 0x64:
-				m_tstates += 4;
-				break;
+		/* ld c,l */
+		case 0x4D:
+			m_tstates += 4;
+			m_c8 = m_l8;
+			break;
 
-			/* ld h,l */
-			case 0x65:
-				m_tstates += 4;
-				m_h8 = m_l8;
-				break;
+		/* ld c,(hl) */
+		case 0x4E:
+			m_tstates += 7;
+			m_c8 = read8(hl16());
+			break;
 
-			/* ld h,(hl) */
-			case 0x66:
-				m_tstates += 7;
-				m_h8 = read8(hl16());
-				break;
+		/* ld c,a */
+		case 0x4F:
+			m_tstates += 4;
+			m_c8 = m_a8;
+			break;
 
-			/* ld h,a */
-			case 0x67:
-				m_tstates += 4;
-				m_h8 = m_a8;
-				break;
+		/* ld d,b */
+		case 0x50:
+			m_tstates += 4;
+			m_d8 = m_b8;
+			break;
 
-			/* ld l,b */
-			case 0x68:
-				m_tstates += 4;
-				m_l8 = m_b8;
-				break;
+		/* ld d,c */
+		case 0x51:
+			m_tstates += 4;
+			m_d8 = m_c8;
+			break;
 
-			/* ld l,c */
-			case 0x69:
-				m_tstates += 4;
-				m_l8 = m_c8;
-				break;
+		/* ld d,d */
+		case 0x52:
+			m_tstates += 4;
+			break;
 
-			/* ld l,d */
-			case 0x6A:
-				m_tstates += 4;
-				m_l8 = m_d8;
-				break;
+		/* ld d,e */
+		case 0x53:
+			m_tstates += 4;
+			m_d8 = m_e8;
+			break;
 
-			/* ld l,e */
-			case 0x6B:
-				m_tstates += 4;
-				m_l8 = m_e8;
-				break;
+		/* ld d,h */
+		case 0x54:
+			m_tstates += 4;
+			m_d8 = m_h8;
+			break;
 
-			/* ld l,h */
-			case 0x6C:
-				m_tstates += 4;
-				m_l8 = m_h8;
-				break;
+		/* ld d,l */
+		case 0x55:
+			m_tstates += 4;
+			m_d8 = m_l8;
+			break;
 
-			/* ld l,l */
-			case 0x6D:
-				m_tstates += 4;
-				break;
+		/* ld d,(hl) */
+		case 0x56:
+			m_tstates += 7;
+			m_d8 = read8(hl16());
+			break;
 
-			/* ld l,(hl) */
-			case 0x6E:
-				m_tstates += 7;
-				m_l8 = read8(hl16());
-				break;
+		/* ld d,a */
+		case 0x57:
+			m_tstates += 4;
+			m_d8 = m_a8;
+			break;
 
-			/* ld l,a */
-			case 0x6F:
-				m_tstates += 4;
-				m_l8 = m_a8;
-				break;
+		/* ld e,b */
+		case 0x58:
+			m_tstates += 4;
+			m_e8 = m_b8;
+			break;
 
-			/* ld (hl),b */
-			case 0x70:
-				m_tstates += 7;
-				write8(hl16(), m_b8);
-				break;
+		/* ld e,c */
+		case 0x59:
+			m_tstates += 4;
+			m_e8 = m_c8;
+			break;
 
-			/* ld (hl),c */
-			case 0x71:
-				m_tstates += 7;
-				write8(hl16(), m_c8);
-				break;
+		/* ld e,d */
+		case 0x5A:
+			m_tstates += 4;
+			m_e8 = m_d8;
+			break;
 
-			/* ld (hl),d */
-			case 0x72:
-				m_tstates += 7;
-				write8(hl16(), m_d8);
-				break;
+		/* ld e,e */
+		case 0x5B:
+			m_tstates += 4;
+			break;
 
-			/* ld (hl),e */
-			case 0x73:
-				m_tstates += 7;
-				write8(hl16(), m_e8);
-				break;
+		/* ld e,h */
+		case 0x5C:
+			m_tstates += 4;
+			m_e8 = m_h8;
+			break;
 
-			/* ld (hl),h */
-			case 0x74:
-				m_tstates += 7;
-				write8(hl16(), m_h8);
-				break;
+		/* ld e,l */
+		case 0x5D:
+			m_tstates += 4;
+			m_e8 = m_l8;
+			break;
 
-			/* ld (hl),l */
-			case 0x75:
-				m_tstates += 7;
-				write8(hl16(), m_l8);
-				break;
+		/* ld e,(hl) */
+		case 0x5E:
+			m_tstates += 7;
+			m_e8 = read8(hl16());
+			break;
 
-			/* halt */
-			case 0x76:
-				m_tstates += 4;
-				dec16pc();
-				break;
+		/* ld e,a */
+		case 0x5F:
+			m_tstates += 4;
+			m_e8 = m_a8;
+			break;
 
-			/* ld (hl),a */
-			case 0x77:
-				m_tstates += 7;
-				write8(hl16(), m_a8);
-				break;
+		/* ld h,b */
+		case 0x60:
+			m_tstates += 4;
+			m_h8 = m_b8;
+			break;
 
-			/* ld a,b */
-			case 0x78:
-				m_tstates += 4;
-				m_a8 = m_b8;
-				break;
+		/* ld h,c */
+		case 0x61:
+			m_tstates += 4;
+			m_h8 = m_c8;
+			break;
 
-			/* ld a,c */
-			case 0x79:
-				m_tstates += 4;
-				m_a8 = m_c8;
-				break;
+		/* ld h,d */
+		case 0x62:
+			m_tstates += 4;
+			m_h8 = m_d8;
+			break;
 
-			/* ld a,d */
-			case 0x7A:
-				m_tstates += 4;
-				m_a8 = m_d8;
-				break;
+		/* ld h,e */
+		case 0x63:
+			m_tstates += 4;
+			m_h8 = m_e8;
+			break;
 
-			/* ld a,e */
-			case 0x7B:
-				m_tstates += 4;
-				m_a8 = m_e8;
-				break;
+		/* ld h,h */
+		case 0x64:
+			m_tstates += 4;
+			break;
 
-			/* ld a,h */
-			case 0x7C:
-				m_tstates += 4;
-				m_a8 = m_h8;
-				break;
+		/* ld h,l */
+		case 0x65:
+			m_tstates += 4;
+			m_h8 = m_l8;
+			break;
 
-			/* ld a,l */
-			case 0x7D:
-				m_tstates += 4;
-				m_a8 = m_l8;
-				break;
+		/* ld h,(hl) */
+		case 0x66:
+			m_tstates += 7;
+			m_h8 = read8(hl16());
+			break;
 
-			/* ld a,(hl) */
-			case 0x7E:
-				m_tstates += 7;
-				m_a8 = read8(hl16());
-				break;
+		/* ld h,a */
+		case 0x67:
+			m_tstates += 4;
+			m_h8 = m_a8;
+			break;
 
-			/* ld a,a */
-			case 0x7F:
-				m_tstates += 4;
-				break;
+		/* ld l,b */
+		case 0x68:
+			m_tstates += 4;
+			m_l8 = m_b8;
+			break;
 
-			/* add a,b */
-			case 0x80:
-				m_tstates += 4;
-				add_a(m_b8);
-				break;
+		/* ld l,c */
+		case 0x69:
+			m_tstates += 4;
+			m_l8 = m_c8;
+			break;
 
-			/* add a,c */
-			case 0x81:
-				m_tstates += 4;
-				add_a(m_c8);
-				break;
+		/* ld l,d */
+		case 0x6A:
+			m_tstates += 4;
+			m_l8 = m_d8;
+			break;
 
-			/* add a,d */
-			case 0x82:
-				m_tstates += 4;
-				add_a(m_d8);
-				break;
+		/* ld l,e */
+		case 0x6B:
+			m_tstates += 4;
+			m_l8 = m_e8;
+			break;
 
-			/* add a,e */
-			case 0x83:
-				m_tstates += 4;
-				add_a(m_e8);
-				break;
+		/* ld l,h */
+		case 0x6C:
+			m_tstates += 4;
+			m_l8 = m_h8;
+			break;
 
-			/* add a,h */
-			case 0x84:
-				m_tstates += 4;
-				add_a(m_h8);
-				break;
+		/* ld l,l */
+		case 0x6D:
+			m_tstates += 4;
+			break;
 
-			/* add a,l */
-			case 0x85:
-				m_tstates += 4;
-				add_a(m_l8);
-				break;
+		/* ld l,(hl) */
+		case 0x6E:
+			m_tstates += 7;
+			m_l8 = read8(hl16());
+			break;
 
-			/* add a,(hl) */
-			case 0x86:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				add_a(work8);
-				break;
+		/* ld l,a */
+		case 0x6F:
+			m_tstates += 4;
+			m_l8 = m_a8;
+			break;
 
-			/* add a,a */
-			case 0x87:
-				m_tstates += 4;
-				add_a(m_a8);
-				break;
+		/* ld (hl),b */
+		case 0x70:
+			m_tstates += 7;
+			write8(hl16(), m_b8);
+			break;
 
-			/* adc a,b */
-			case 0x88:
-				m_tstates += 4;
-				adc_a(m_b8);
-				break;
+		/* ld (hl),c */
+		case 0x71:
+			m_tstates += 7;
+			write8(hl16(), m_c8);
+			break;
 
-			/* adc a,c */
-			case 0x89:
-				m_tstates += 4;
-				adc_a(m_c8);
-				break;
+		/* ld (hl),d */
+		case 0x72:
+			m_tstates += 7;
+			write8(hl16(), m_d8);
+			break;
 
-			/* adc a,d */
-			case 0x8A:
-				m_tstates += 4;
-				adc_a(m_d8);
-				break;
+		/* ld (hl),e */
+		case 0x73:
+			m_tstates += 7;
+			write8(hl16(), m_e8);
+			break;
 
-			/* adc a,e */
-			case 0x8B:
-				m_tstates += 4;
-				adc_a(m_e8);
-				break;
+		/* ld (hl),h */
+		case 0x74:
+			m_tstates += 7;
+			write8(hl16(), m_h8);
+			break;
 
-			/* adc a,h */
-			case 0x8C:
-				m_tstates += 4;
-				adc_a(m_h8);
-				break;
+		/* ld (hl),l */
+		case 0x75:
+			m_tstates += 7;
+			write8(hl16(), m_l8);
+			break;
 
-			/* adc a,l */
-			case 0x8D:
-				m_tstates += 4;
-				adc_a(m_l8);
-				break;
+		/* halt */
+		case 0x76:
+			m_tstates += 4;
+			dec16pc();
+
+			// The CPU keeps executing this HALT (4 T-States and one R
+			// increment each time) until the next event, which is the
+			// earliest an interrupt can arrive: skip straight to it, unless
+			// every fetch of the HALT is delayed by contention.
+			if (m_tstates < m_tstateBudget && !m_pageContended[m_pc16 >> 14]) {
+				final int halts = (m_tstateBudget - m_tstates + 3) >> 2;
+				m_tstates += halts << 2;
+				m_r8 = (m_r8 & 0x80) | ((m_r8 + halts) & 0x7f);
+			}
+			break;
 
-			/* adc a,(hl) */
-			case 0x8E:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				adc_a(work8);
-				break;
+		/* ld (hl),a */
+		case 0x77:
+			m_tstates += 7;
+			write8(hl16(), m_a8);
+			break;
 
-			/* adc a,a */
-			case 0x8F:
-				m_tstates += 4;
-				adc_a(m_a8);
-				break;
+		/* ld a,b */
+		case 0x78:
+			m_tstates += 4;
+			m_a8 = m_b8;
+			break;
 
-			/* sub b */
-			case 0x90:
-				m_tstates += 4;
-				sub_a(m_b8);
-				break;
+		/* ld a,c */
+		case 0x79:
+			m_tstates += 4;
+			m_a8 = m_c8;
+			break;
 
-			/* sub c */
-			case 0x91:
-				m_tstates += 4;
-				sub_a(m_c8);
-				break;
+		/* ld a,d */
+		case 0x7A:
+			m_tstates += 4;
+			m_a8 = m_d8;
+			break;
 
-			/* sub d */
-			case 0x92:
-				m_tstates += 4;
-				sub_a(m_d8);
-				break;
+		/* ld a,e */
+		case 0x7B:
+			m_tstates += 4;
+			m_a8 = m_e8;
+			break;
 
-			/* sub e */
-			case 0x93:
-				m_tstates += 4;
-				sub_a(m_e8);
-				break;
+		/* ld a,h */
+		case 0x7C:
+			m_tstates += 4;
+			m_a8 = m_h8;
+			break;
 
-			/* sub h */
-			case 0x94:
-				m_tstates += 4;
-				sub_a(m_h8);
-				break;
+		/* ld a,l */
+		case 0x7D:
+			m_tstates += 4;
+			m_a8 = m_l8;
+			break;
 
-			/* sub l */
-			case 0x95:
-				m_tstates += 4;
-				sub_a(m_l8);
-				break;
+		/* ld a,(hl) */
+		case 0x7E:
+			m_tstates += 7;
+			m_a8 = read8(hl16());
+			break;
 
-			/* sub (hl) */
-			case 0x96:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				sub_a(work8);
-				break;
+		/* ld a,a */
+		case 0x7F:
+			m_tstates += 4;
+			break;
+		}
+	}
 
-			/* sub a */
-			case 0x97:
-				m_tstates += 4;
-				sub_a(m_a8);
-				break;
+	/**
+	 * Decode the unprefixed instructions 0x80 - 0xBF: the 8-bit arithmetic.
+	 */
+	private void decode80(int op8) {
+		int work8 = 0;
 
-			/* sbc a,b */
-			case 0x98:
-				m_tstates += 4;
-				sbc_a(m_b8);
-				break;
+		switch (op8) {
+		/* add a,b */
+		case 0x80:
+			m_tstates += 4;
+			add_a(m_b8);
+			break;
 
-			/* sbc a,c */
-			case 0x99:
-				m_tstates += 4;
-				sbc_a(m_c8);
-				break;
+		/* add a,c */
+		case 0x81:
+			m_tstates += 4;
+			add_a(m_c8);
+			break;
 
-			/* sbc a,d */
-			case 0x9A:
-				m_tstates += 4;
-				sbc_a(m_d8);
-				break;
+		/* add a,d */
+		case 0x82:
+			m_tstates += 4;
+			add_a(m_d8);
+			break;
 
-			/* sbc a,e */
-			case 0x9B:
-				m_tstates += 4;
-				sbc_a(m_e8);
-				break;
+		/* add a,e */
+		case 0x83:
+			m_tstates += 4;
+			add_a(m_e8);
+			break;
 
-			/* sbc a,h */
-			case 0x9C:
-				m_tstates += 4;
-				sbc_a(m_h8);
-				break;
+		/* add a,h */
+		case 0x84:
+			m_tstates += 4;
+			add_a(m_h8);
+			break;
 
-			/* sbc a,l */
-			case 0x9D:
-				m_tstates += 4;
-				sbc_a(m_l8);
-				break;
+		/* add a,l */
+		case 0x85:
+			m_tstates += 4;
+			add_a(m_l8);
+			break;
 
-			/* sbc a,(hl) */
-			case 0x9E:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				sbc_a(work8);
-				break;
+		/* add a,(hl) */
+		case 0x86:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			add_a(work8);
+			break;
 
-			/* sbc a,a */
-			case 0x9F:
-				m_tstates += 4;
-				sbc_a(m_a8);
-				break;
+		/* add a,a */
+		case 0x87:
+			m_tstates += 4;
+			add_a(m_a8);
+			break;
 
-			/* and b */
-			case 0xA0:
-				m_tstates += 4;
-				and_a(m_b8);
-				break;
+		/* adc a,b */
+		case 0x88:
+			m_tstates += 4;
+			adc_a(m_b8);
+			break;
 
-			/* and c */
-			case 0xA1:
-				m_tstates += 4;
-				and_a(m_c8);
-				break;
+		/* adc a,c */
+		case 0x89:
+			m_tstates += 4;
+			adc_a(m_c8);
+			break;
 
-			/* and d */
-			case 0xA2:
-				m_tstates += 4;
-				and_a(m_d8);
-				break;
+		/* adc a,d */
+		case 0x8A:
+			m_tstates += 4;
+			adc_a(m_d8);
+			break;
 
-			/* and e */
-			case 0xA3:
-				m_tstates += 4;
-				and_a(m_e8);
-				break;
+		/* adc a,e */
+		case 0x8B:
+			m_tstates += 4;
+			adc_a(m_e8);
+			break;
 
-			/* and h */
-			case 0xA4:
-				m_tstates += 4;
-				and_a(m_h8);
-				break;
+		/* adc a,h */
+		case 0x8C:
+			m_tstates += 4;
+			adc_a(m_h8);
+			break;
 
-			/* and l */
-			case 0xA5:
-				m_tstates += 4;
-				and_a(m_l8);
-				break;
+		/* adc a,l */
+		case 0x8D:
+			m_tstates += 4;
+			adc_a(m_l8);
+			break;
 
-			/* and (hl) */
-			case 0xA6:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				and_a(work8);
-				break;
+		/* adc a,(hl) */
+		case 0x8E:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			adc_a(work8);
+			break;
 
-			/* and a */
-			case 0xA7:
-				m_tstates += 4;
-				and_a(m_a8);
-				break;
+		/* adc a,a */
+		case 0x8F:
+			m_tstates += 4;
+			adc_a(m_a8);
+			break;
 
-			/* xor b */
-			case 0xA8:
-				m_tstates += 4;
-				xor_a(m_b8);
-				break;
+		/* sub b */
+		case 0x90:
+			m_tstates += 4;
+			sub_a(m_b8);
+			break;
 
-			/* xor c */
-			case 0xA9:
-				m_tstates += 4;
-				xor_a(m_c8);
-				break;
+		/* sub c */
+		case 0x91:
+			m_tstates += 4;
+			sub_a(m_c8);
+			break;
 
-			/* xor d */
-			case 0xAA:
-				m_tstates += 4;
-				xor_a(m_d8);
-				break;
+		/* sub d */
+		case 0x92:
+			m_tstates += 4;
+			sub_a(m_d8);
+			break;
 
-			/* xor e */
-			case 0xAB:
-				m_tstates += 4;
-				xor_a(m_e8);
-				break;
+		/* sub e */
+		case 0x93:
+			m_tstates += 4;
+			sub_a(m_e8);
+			break;
 
-			/* xor h */
-			case 0xAC:
-				m_tstates += 4;
-				xor_a(m_h8);
-				break;
+		/* sub h */
+		case 0x94:
+			m_tstates += 4;
+			sub_a(m_h8);
+			break;
 
-			/* xor l */
-			case 0xAD:
-				m_tstates += 4;
-				xor_a(m_l8);
-				break;
+		/* sub l */
+		case 0x95:
+			m_tstates += 4;
+			sub_a(m_l8);
+			break;
 
-			/* xor (hl) */
-			case 0xAE:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				xor_a(work8);
-				break;
+		/* sub (hl) */
+		case 0x96:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			sub_a(work8);
+			break;
 
-			/* xor a */
-			case 0xAF:
-				m_tstates += 4;
-				xor_a(m_a8);
-				break;
+		/* sub a */
+		case 0x97:
+			m_tstates += 4;
+			sub_a(m_a8);
+			break;
 
-			/* or b */
-			case 0xB0:
-				m_tstates += 4;
-				or_a(m_b8);
-				break;
+		/* sbc a,b */
+		case 0x98:
+			m_tstates += 4;
+			sbc_a(m_b8);
+			break;
 
-			/* or c */
-			case 0xB1:
-				m_tstates += 4;
-				or_a(m_c8);
-				break;
+		/* sbc a,c */
+		case 0x99:
+			m_tstates += 4;
+			sbc_a(m_c8);
+			break;
 
-			/* or d */
-			case 0xB2:
-				m_tstates += 4;
-				or_a(m_d8);
-				break;
+		/* sbc a,d */
+		case 0x9A:
+			m_tstates += 4;
+			sbc_a(m_d8);
+			break;
 
-			/* or e */
-			case 0xB3:
-				m_tstates += 4;
-				or_a(m_e8);
-				break;
+		/* sbc a,e */
+		case 0x9B:
+			m_tstates += 4;
+			sbc_a(m_e8);
+			break;
 
-			/* or h */
-			case 0xB4:
-				m_tstates += 4;
-				or_a(m_h8);
-				break;
+		/* sbc a,h */
+		case 0x9C:
+			m_tstates += 4;
+			sbc_a(m_h8);
+			break;
 
-			/* or l */
-			case 0xB5:
-				m_tstates += 4;
-				or_a(m_l8);
-				break;
+		/* sbc a,l */
+		case 0x9D:
+			m_tstates += 4;
+			sbc_a(m_l8);
+			break;
 
-			/* or (hl) */
-			case 0xB6:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				or_a(work8);
-				break;
+		/* sbc a,(hl) */
+		case 0x9E:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			sbc_a(work8);
+			break;
 
-			/* or a */
-			case 0xB7:
-				m_tstates += 4;
-				or_a(m_a8);
-				break;
+		/* sbc a,a */
+		case 0x9F:
+			m_tstates += 4;
+			sbc_a(m_a8);
+			break;
 
-			/* cp b */
-			case 0xB8:
-				m_tstates += 4;
-				cmp_a(m_b8);
-				break;
+		/* and b */
+		case 0xA0:
+			m_tstates += 4;
+			and_a(m_b8);
+			break;
 
-			/* cp c */
-			case 0xB9:
-				m_tstates += 4;
-				cmp_a(m_c8);
-				break;
+		/* and c */
+		case 0xA1:
+			m_tstates += 4;
+			and_a(m_c8);
+			break;
 
-			/* cp d */
-			case 0xBA:
-				m_tstates += 4;
-				cmp_a(m_d8);
-				break;
+		/* and d */
+		case 0xA2:
+			m_tstates += 4;
+			and_a(m_d8);
+			break;
 
-			/* cp e */
-			case 0xBB:
-				m_tstates += 4;
-				cmp_a(m_e8);
-				break;
+		/* and e */
+		case 0xA3:
+			m_tstates += 4;
+			and_a(m_e8);
+			break;
 
-			/* cp h */
-			case 0xBC:
-				m_tstates += 4;
-				cmp_a(m_h8);
-				break;
+		/* and h */
+		case 0xA4:
+			m_tstates += 4;
+			and_a(m_h8);
+			break;
 
-			/* cp l */
-			case 0xBD:
-				m_tstates += 4;
-				cmp_a(m_l8);
-				break;
+		/* and l */
+		case 0xA5:
+			m_tstates += 4;
+			and_a(m_l8);
+			break;
 
-			/* cp (hl) */
-			case 0xBE:
-				m_tstates += 7;
-				work8 = read8(hl16());
-				cmp_a(work8);
-				break;
+		/* and (hl) */
+		case 0xA6:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			and_a(work8);
+			break;
 
-			/* cp a */
-			case 0xBF:
-				m_tstates += 4;
-				cmp_a(m_a8);
-				break;
+		/* and a */
+		case 0xA7:
+			m_tstates += 4;
+			and_a(m_a8);
+			break;
 
-			/* ret nz */
-			case 0xC0:
-				m_tstates += 5;
-				if (!m_zeroF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* xor b */
+		case 0xA8:
+			m_tstates += 4;
+			xor_a(m_b8);
+			break;
 
-			/* pop bc */
-			case 0xC1:
-				m_tstates += 10;
-				bc16(pop16());
-				break;
+		/* xor c */
+		case 0xA9:
+			m_tstates += 4;
+			xor_a(m_c8);
+			break;
 
-			/* jp nz,NN */
-			case 0xC2:
-				m_tstates += 10;
-				if (!m_zeroF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* xor d */
+		case 0xAA:
+			m_tstates += 4;
+			xor_a(m_d8);
+			break;
 
-			/* jp NN */
-			case 0xC3:
-				m_tstates += 10;
-				m_pc16 = read16(m_pc16);
-				break;
+		/* xor e */
+		case 0xAB:
+			m_tstates += 4;
+			xor_a(m_e8);
+			break;
 
-			/* call nz,NN */
-			case 0xC4:
-				if (!m_zeroF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* xor h */
+		case 0xAC:
+			m_tstates += 4;
+			xor_a(m_h8);
+			break;
 
-			/* push bc */
-			case 0xC5:
-				m_tstates += 11;
-				push(bc16());
-				break;
+		/* xor l */
+		case 0xAD:
+			m_tstates += 4;
+			xor_a(m_l8);
+			break;
 
-			/* add a,N */
-			case 0xC6:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				add_a(work8);
-				break;
+		/* xor (hl) */
+		case 0xAE:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			xor_a(work8);
+			break;
 
-			/* rst 0x00 */
-			case 0xC7:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x0;
-				break;
+		/* xor a */
+		case 0xAF:
+			m_tstates += 4;
+			xor_a(m_a8);
+			break;
 
-			/* ret z */
-			case 0xC8:
-				m_tstates += 5;
-				if (m_zeroF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* or b */
+		case 0xB0:
+			m_tstates += 4;
+			or_a(m_b8);
+			break;
 
-			/* ret */
-			case 0xC9:
-				m_tstates += 10;
-				m_pc16 = pop16();
-				break;
+		/* or c */
+		case 0xB1:
+			m_tstates += 4;
+			or_a(m_c8);
+			break;
 
-			/* jp z,NN */
-			case 0xCA:
-				m_tstates += 10;
-				if (m_zeroF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* or d */
+		case 0xB2:
+			m_tstates += 4;
+			or_a(m_d8);
+			break;
 
-			/**
-			 * 0xCB instructions subset
-			 */
-			case 0xCB:
-				op8 = mone8();
+		/* or e */
+		case 0xB3:
+			m_tstates += 4;
+			or_a(m_e8);
+			break;
 
-				decodeCB(op8);
-				break;
+		/* or h */
+		case 0xB4:
+			m_tstates += 4;
+			or_a(m_h8);
+			break;
 
-			/* call z,NN */
-			case 0xCC:
-				if (m_zeroF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* or l */
+		case 0xB5:
+			m_tstates += 4;
+			or_a(m_l8);
+			break;
 
-			/* call NN */
-			case 0xCD:
-				m_tstates += 17;
-				push(incinc16(m_pc16));
-				m_pc16 = read16(m_pc16);
-				break;
+		/* or (hl) */
+		case 0xB6:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			or_a(work8);
+			break;
 
-			/* adc a,N */
-			case 0xCE:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				adc_a(work8);
-				break;
+		/* or a */
+		case 0xB7:
+			m_tstates += 4;
+			or_a(m_a8);
+			break;
 
-			/* rst 0x08 */
-			case 0xCF:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x8;
-				break;
+		/* cp b */
+		case 0xB8:
+			m_tstates += 4;
+			cmp_a(m_b8);
+			break;
 
-			/* ret nc */
-			case 0xD0:
-				m_tstates += 5;
-				if (!m_carryF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* cp c */
+		case 0xB9:
+			m_tstates += 4;
+			cmp_a(m_c8);
+			break;
 
-			/* pop de */
-			case 0xD1:
-				m_tstates += 10;
-				de16(pop16());
-				break;
+		/* cp d */
+		case 0xBA:
+			m_tstates += 4;
+			cmp_a(m_d8);
+			break;
+
+		/* cp e */
+		case 0xBB:
+			m_tstates += 4;
+			cmp_a(m_e8);
+			break;
+
+		/* cp h */
+		case 0xBC:
+			m_tstates += 4;
+			cmp_a(m_h8);
+			break;
+
+		/* cp l */
+		case 0xBD:
+			m_tstates += 4;
+			cmp_a(m_l8);
+			break;
+
+		/* cp (hl) */
+		case 0xBE:
+			m_tstates += 7;
+			work8 = read8(hl16());
+			cmp_a(work8);
+			break;
+
+		/* cp a */
+		case 0xBF:
+			m_tstates += 4;
+			cmp_a(m_a8);
+			break;
+		}
+	}
+
+	/**
+	 * Decode the unprefixed instructions 0xC0 - 0xFF, including the prefixes.
+	 */
+	private void decodeC0(int op8) {
+		int work16 = 0;
+		int work8 = 0;
+
+		switch (op8) {
+		/* ret nz */
+		case 0xC0:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (!zeroF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
+
+		/* pop bc */
+		case 0xC1:
+			m_tstates += 10;
+			bc16(pop16());
+			break;
+
+		/* jp nz,NN */
+		case 0xC2:
+			m_tstates += 10;
+			if (!zeroF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
+
+		/* jp NN */
+		case 0xC3:
+			m_tstates += 10;
+			m_pc16 = read16(m_pc16);
+			break;
 
-			/* jp nc,NN */
-			case 0xD2:
+		/* call nz,NN */
+		case 0xC4:
+			if (!zeroF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				if (!m_carryF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* out (N),a */
-			case 0xD3:
-				m_tstates += 11;
-				BaseIO.out((m_a8 << 8) | read8(inc16pc()), m_a8);
-				break;
+		/* push bc */
+		case 0xC5:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(bc16());
+			break;
 
-			/* call nc,NN */
-			case 0xD4:
-				if (!m_carryF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* add a,N */
+		case 0xC6:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			add_a(work8);
+			break;
 
-			/* push de */
-			case 0xD5:
-				m_tstates += 11;
-				push(de16());
-				break;
+		/* rst 0x00 */
+		case 0xC7:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x0;
+			break;
 
-			/* sub N */
-			case 0xD6:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				sub_a(work8);
-				break;
+		/* ret z */
+		case 0xC8:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (zeroF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
 
-			/* rst 0x10 */
-			case 0xD7:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x10;
-				break;
+		/* ret */
+		case 0xC9:
+			m_tstates += 10;
+			m_pc16 = pop16();
+			break;
 
-			/* ret c */
-			case 0xD8:
-				m_tstates += 5;
-				if (m_carryF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* jp z,NN */
+		case 0xCA:
+			m_tstates += 10;
+			if (zeroF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* exx */
-			case 0xD9:
-				m_tstates += 4;
-				work16 = bc16();
-				bc16(m_bc16alt);
-				m_bc16alt = work16;
-				work16 = de16();
-				de16(m_de16alt);
-				m_de16alt = work16;
-				work16 = hl16();
-				hl16(m_hl16alt);
-				m_hl16alt = work16;
-				break;
+		/**
+		 * 0xCB instructions subset
+		 */
+		case 0xCB:
+			op8 = mone8();
+
+			decodeCB(op8);
+			break;
 
-			/* jp c,NN */
-			case 0xDA:
+		/* call z,NN */
+		case 0xCC:
+			if (zeroF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				if (m_carryF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* in a,N */
-			case 0xDB:
-				m_tstates += 11;
-				m_a8 = BaseIO.in8((m_a8 << 8) | read8(inc16pc()));
-				break;
+		/* call NN */
+		case 0xCD:
+			m_tstates += 17;
+			work16 = read16(m_pc16);
+			idle(inc16(m_pc16), 1);
+			push(incinc16(m_pc16));
+			m_pc16 = work16;
+			break;
 
-			/* call c,NN */
-			case 0xDC:
-				if (m_carryF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* adc a,N */
+		case 0xCE:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			adc_a(work8);
+			break;
 
-			/**
-			 * IX register operations
-			 */
-			case 0xDD:
-				op8 = mone8();
+		/* rst 0x08 */
+		case 0xCF:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x8;
+			break;
 
-				m_xx16 = m_ix16;
-				decodeXX(op8);
-				m_ix16 = m_xx16;
-				break;
+		/* ret nc */
+		case 0xD0:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (!carryF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
 
-			/* sbc a,N */
-			case 0xDE:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				sbc_a(work8);
-				break;
+		/* pop de */
+		case 0xD1:
+			m_tstates += 10;
+			de16(pop16());
+			break;
 
-			/* rst 0x18 */
-			case 0xDF:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x18;
-				break;
+		/* jp nc,NN */
+		case 0xD2:
+			m_tstates += 10;
+			if (!carryF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* ret po */
-			case 0xE0:
-				m_tstates += 5;
-				if (!m_parityoverflowF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* out (N),a */
+		case 0xD3:
+			m_tstates += 11;
+			m_io.out((m_a8 << 8) | read8(inc16pc()), m_a8);
+			break;
 
-			/* pop hl */
-			case 0xE1:
+		/* call nc,NN */
+		case 0xD4:
+			if (!carryF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				hl16(pop16());
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* jp po,NN */
-			case 0xE2:
+		/* push de */
+		case 0xD5:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(de16());
+			break;
+
+		/* sub N */
+		case 0xD6:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			sub_a(work8);
+			break;
+
+		/* rst 0x10 */
+		case 0xD7:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x10;
+			break;
+
+		/* ret c */
+		case 0xD8:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (carryF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
+
+		/* exx */
+		case 0xD9:
+			m_tstates += 4;
+			work16 = bc16();
+			bc16(m_bc16alt);
+			m_bc16alt = work16;
+			work16 = de16();
+			de16(m_de16alt);
+			m_de16alt = work16;
+			work16 = hl16();
+			hl16(m_hl16alt);
+			m_hl16alt = work16;
+			break;
+
+		/* jp c,NN */
+		case 0xDA:
+			m_tstates += 10;
+			if (carryF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
+
+		/* in a,N */
+		case 0xDB:
+			m_tstates += 11;
+			m_a8 = m_io.in8((m_a8 << 8) | read8(inc16pc()));
+			break;
+
+		/* call c,NN */
+		case 0xDC:
+			if (carryF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				if (!m_parityoverflowF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* ex (sp),hl */
-			case 0xE3:
-				m_tstates += 19;
-				work16 = read16(m_sp16);
-				write16(m_sp16, hl16());
-				hl16(work16);
-				break;
+		/**
+		 * IX register operations
+		 */
+		case 0xDD:
+			op8 = mone8();
 
-			/* call po,NN */
-			case 0xE4:
-				if (!m_parityoverflowF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+			m_xx16 = m_ix16;
+			decodeXX(op8);
+			m_ix16 = m_xx16;
+			break;
 
-			/* push hl */
-			case 0xE5:
-				m_tstates += 11;
-				push(hl16());
-				break;
+		/* sbc a,N */
+		case 0xDE:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			sbc_a(work8);
+			break;
 
-			/* and N */
-			case 0xE6:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				and_a(work8);
-				break;
+		/* rst 0x18 */
+		case 0xDF:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x18;
+			break;
 
-			/* rst 0x20 */
-			case 0xE7:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x20;
-				break;
+		/* ret po */
+		case 0xE0:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (!parityoverflowF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
 
-			/* ret pe */
-			case 0xE8:
-				m_tstates += 5;
-				if (m_parityoverflowF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* pop hl */
+		case 0xE1:
+			m_tstates += 10;
+			hl16(pop16());
+			break;
 
-			/* jp (hl) */
-			case 0xE9:
-				m_tstates += 4;
-				m_pc16 = hl16();
-				break;
+		/* jp po,NN */
+		case 0xE2:
+			m_tstates += 10;
+			if (!parityoverflowF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
+
+		/* ex (sp),hl */
+		case 0xE3:
+			m_tstates += 19;
+			work16 = read16(m_sp16);
+			idle(inc16(m_sp16), 1);
+			write8(inc16(m_sp16), m_h8);
+			write8(m_sp16, m_l8);
+			idle(m_sp16, 2);
+			hl16(work16);
+			break;
 
-			/* jp pe,NN */
-			case 0xEA:
+		/* call po,NN */
+		case 0xE4:
+			if (!parityoverflowF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				if (m_parityoverflowF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* ex de,hl */
-			case 0xEB:
-				m_tstates += 4;
-				work16 = de16();
-				de16(hl16());
-				hl16(work16);
-				break;
+		/* push hl */
+		case 0xE5:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(hl16());
+			break;
 
-			/* call pe,NN */
-			case 0xEC:
-				if (m_parityoverflowF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* and N */
+		case 0xE6:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			and_a(work8);
+			break;
 
-			/**
-			 * 0xED instructions subset
-			 */
-			case 0xED:
-				op8 = mone8();
+		/* rst 0x20 */
+		case 0xE7:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x20;
+			break;
 
-				decodeED(op8);
-				break;
+		/* ret pe */
+		case 0xE8:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (parityoverflowF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
 
-			/* xor N */
-			case 0xEE:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				xor_a(work8);
-				break;
+		/* jp (hl) */
+		case 0xE9:
+			m_tstates += 4;
+			m_pc16 = hl16();
+			break;
 
-			/* rst 0x28 */
-			case 0xEF:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x28;
-				break;
+		/* jp pe,NN */
+		case 0xEA:
+			m_tstates += 10;
+			if (parityoverflowF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* ret p */
-			case 0xF0:
-				m_tstates += 5;
-				if (!m_signF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* ex de,hl */
+		case 0xEB:
+			m_tstates += 4;
+			work16 = de16();
+			de16(hl16());
+			hl16(work16);
+			break;
 
-			/* pop af */
-			case 0xF1:
+		/* call pe,NN */
+		case 0xEC:
+			if (parityoverflowF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				af16(pop16());
-				retrieveFlags();
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* jp p,NN */
-			case 0xF2:
-				m_tstates += 10;
-				if (!m_signF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/**
+		 * 0xED instructions subset
+		 */
+		case 0xED:
+			op8 = mone8();
 
-			/* di */
-			case 0xF3:
-				m_tstates += 4;
-				m_iff1a = 0;
-				m_iff1b = 0;
-				break;
+			decodeED(op8);
+			break;
 
-			/* call p,NN */
-			case 0xF4:
-				if (!m_signF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* xor N */
+		case 0xEE:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			xor_a(work8);
+			break;
 
-			/* push af */
-			case 0xF5:
-				m_tstates += 11;
-				storeFlags();
-				push(af16());
-				break;
+		/* rst 0x28 */
+		case 0xEF:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x28;
+			break;
 
-			/* or N */
-			case 0xF6:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				or_a(work8);
-				break;
+		/* ret p */
+		case 0xF0:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (!signF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
 
-			/* rst 0x30 */
-			case 0xF7:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x30;
-				break;
+		/* pop af */
+		case 0xF1:
+			m_tstates += 10;
+			af16(pop16());
+			break;
 
-			/* ret m */
-			case 0xF8:
-				m_tstates += 5;
-				if (m_signF) {
-					m_tstates += 6;
-					m_pc16 = pop16();
-				}
-				break;
+		/* jp p,NN */
+		case 0xF2:
+			m_tstates += 10;
+			if (!signF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* ld sp,hl */
-			case 0xF9:
-				m_tstates += 6;
-				m_sp16 = hl16();
-				break;
+		/* di */
+		case 0xF3:
+			m_tstates += 4;
+			m_iff1a = 0;
+			m_iff1b = 0;
+			break;
 
-			/* jp m,NN */
-			case 0xFA:
+		/* call p,NN */
+		case 0xF4:
+			if (!signF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
 				m_tstates += 10;
-				if (m_signF) {
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
+			}
+			break;
 
-			/* ei */
-			case 0xFB:
-				m_tstates += 4;
-				m_iff1a = 1;
-				m_iff1b = 1;
-				break;
+		/* push af */
+		case 0xF5:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(af16());
+			break;
 
-			/* call m,NN */
-			case 0xFC:
-				if (m_signF) {
-					m_tstates += 17;
-					push(incinc16(m_pc16));
-					m_pc16 = read16(m_pc16);
-				} else {
-					m_tstates += 10;
-					m_pc16 = incinc16(m_pc16);
-				}
-				break;
+		/* or N */
+		case 0xF6:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			or_a(work8);
+			break;
 
-			/**
-			 * IY register operations
-			 */
-			case 0xFD:
-				op8 = mone8();
+		/* rst 0x30 */
+		case 0xF7:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x30;
+			break;
 
-				m_xx16 = m_iy16;
-				decodeXX(op8);
-				m_iy16 = m_xx16;
-				break;
+		/* ret m */
+		case 0xF8:
+			m_tstates += 5;
+			idle(ir16(), 1);
+			if (signF()) {
+				m_tstates += 6;
+				m_pc16 = pop16();
+			}
+			break;
 
-			/* cp N */
-			case 0xFE:
-				m_tstates += 7;
-				work8 = read8(inc16pc());
-				cmp_a(work8);
-				break;
+		/* ld sp,hl */
+		case 0xF9:
+			m_tstates += 6;
+			idle(ir16(), 2);
+			m_sp16 = hl16();
+			break;
 
-			/* rst 0x38 */
-			case 0xFF:
-				m_tstates += 11;
-				push(m_pc16);
-				m_pc16 = 0x38;
-				break;
+		/* jp m,NN */
+		case 0xFA:
+			m_tstates += 10;
+			if (signF()) {
+				m_pc16 = read16(m_pc16);
+			} else {
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
 			}
+			break;
 
-			if (m_stop) {
-				break;
-			}
+		/* ei */
+		case 0xFB:
+			m_tstates += 4;
+			m_iff1a = 1;
+			m_iff1b = 1;
+			break;
 
-			synchronized (this) {
-				while (m_pause) {
-					try {
-						wait();
-					} catch (InterruptedException ie) {
-						Log.e(this.getClass().getName(), ie.toString());
-					}
-				}
+		/* call m,NN */
+		case 0xFC:
+			if (signF()) {
+				m_tstates += 17;
+				work16 = read16(m_pc16);
+				idle(inc16(m_pc16), 1);
+				push(incinc16(m_pc16));
+				m_pc16 = work16;
+			} else {
+				m_tstates += 10;
+				contend(m_pc16);
+				contend(inc16(m_pc16));
+				m_pc16 = incinc16(m_pc16);
 			}
+			break;
+
+		/**
+		 * IY register operations
+		 */
+		case 0xFD:
+			op8 = mone8();
+
+			m_xx16 = m_iy16;
+			decodeXX(op8);
+			m_iy16 = m_xx16;
+			break;
+
+		/* cp N */
+		case 0xFE:
+			m_tstates += 7;
+			work8 = read8(inc16pc());
+			cmp_a(work8);
+			break;
+
+		/* rst 0x38 */
+		case 0xFF:
+			m_tstates += 11;
+			idle(ir16(), 1);
+			push(m_pc16);
+			m_pc16 = 0x38;
+			break;
 		}
 	}
 
 	/**
-	 * Decode the instructions whose first opcode is 0xCB.
+	 * Decode the 0xCB rotate and shift instructions (0x00 - 0x3F).
 	 */
-	private static void decodeCB(final int op8) {
+	private void decodeCBShift(final int op8) {
 		int work8 = 0;
 
 		switch (op8) {
@@ -2918,6 +3657,7 @@ public class Z80 {
 		case 0x06:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = rlc8(work8);
 			write8(hl16(), work8);
 			break;
@@ -2968,6 +3708,7 @@ public class Z80 {
 		case 0x0E:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = rrc8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3018,6 +3759,7 @@ public class Z80 {
 		case 0x16:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = rl8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3068,6 +3810,7 @@ public class Z80 {
 		case 0x1E:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = rr8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3118,6 +3861,7 @@ public class Z80 {
 		case 0x26:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = sla8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3168,6 +3912,7 @@ public class Z80 {
 		case 0x2E:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = sra8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3224,6 +3969,7 @@ public class Z80 {
 		case 0x36:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = sli8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3274,6 +4020,7 @@ public class Z80 {
 		case 0x3E:
 			m_tstates += 15;
 			work8 = read8(hl16());
+			idle(hl16(), 1);
 			work8 = srl8(work8);
 			write8(hl16(), work8);
 			break;
@@ -3283,7 +4030,16 @@ public class Z80 {
 			m_tstates += 8;
 			m_a8 = srl8(m_a8);
 			break;
+		}
+	}
+
+	/**
+	 * Decode the 0xCB BIT instructions (0x40 - 0x7F).
+	 */
+	private void decodeCBBit(final int op8) {
+		int work8 = 0;
 
+		switch (op8) {
 		/* bit 0,b */
 		case 0x40:
 			m_tstates += 8;
@@ -3324,6 +4080,7 @@ public class Z80 {
 		case 0x46:
 			m_tstates += 12;
 			bit_hl(0, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 0,a */
@@ -3372,6 +4129,7 @@ public class Z80 {
 		case 0x4E:
 			m_tstates += 12;
 			bit_hl(1, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 1,a */
@@ -3420,6 +4178,7 @@ public class Z80 {
 		case 0x56:
 			m_tstates += 12;
 			bit_hl(2, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 2,a */
@@ -3468,6 +4227,7 @@ public class Z80 {
 		case 0x5E:
 			m_tstates += 12;
 			bit_hl(3, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 3,a */
@@ -3516,6 +4276,7 @@ public class Z80 {
 		case 0x66:
 			m_tstates += 12;
 			bit_hl(4, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 4,a */
@@ -3564,6 +4325,7 @@ public class Z80 {
 		case 0x6E:
 			m_tstates += 12;
 			bit_hl(5, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 5,a */
@@ -3612,6 +4374,7 @@ public class Z80 {
 		case 0x76:
 			m_tstates += 12;
 			bit_hl(6, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 6,a */
@@ -3660,6 +4423,7 @@ public class Z80 {
 		case 0x7E:
 			m_tstates += 12;
 			bit_hl(7, read8(hl16()));
+			idle(hl16(), 1);
 			break;
 
 		/* bit 7,a */
@@ -3667,7 +4431,16 @@ public class Z80 {
 			m_tstates += 8;
 			bit(7, m_a8);
 			break;
+		}
+	}
+
+	/**
+	 * Decode the 0xCB RES instructions (0x80 - 0xBF).
+	 */
+	private void decodeCBRes(final int op8) {
+		int work8 = 0;
 
+		switch (op8) {
 		/* res 0,b */
 		case 0x80:
 			m_tstates += 8;
@@ -3707,7 +4480,9 @@ public class Z80 {
 		/* res 0,(hl) */
 		case 0x86:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xfe));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xfe);
 			break;
 
 		/* res 0,a */
@@ -3755,7 +4530,9 @@ public class Z80 {
 		/* res 1,(hl) */
 		case 0x8E:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xfd));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xfd);
 			break;
 
 		/* res 1,a */
@@ -3803,7 +4580,9 @@ public class Z80 {
 		/* res 2,(hl) */
 		case 0x96:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xfb));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xfb);
 			break;
 
 		/* res 2,a */
@@ -3851,7 +4630,9 @@ public class Z80 {
 		/* res 3,(hl) */
 		case 0x9E:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xf7));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xf7);
 			break;
 
 		/* res 3,a */
@@ -3899,7 +4680,9 @@ public class Z80 {
 		/* res 4,(hl) */
 		case 0xA6:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xef));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xef);
 			break;
 
 		/* res 4,a */
@@ -3947,7 +4730,9 @@ public class Z80 {
 		/* res 5,(hl) */
 		case 0xAE:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xdf));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xdf);
 			break;
 
 		/* res 5,a */
@@ -3995,7 +4780,9 @@ public class Z80 {
 		/* res 6,(hl) */
 		case 0xB6:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0xbf));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0xbf);
 			break;
 
 		/* res 6,a */
@@ -4043,7 +4830,9 @@ public class Z80 {
 		/* res 7,(hl) */
 		case 0xBE:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) & 0x7f));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 & 0x7f);
 			break;
 
 		/* res 7,a */
@@ -4051,7 +4840,16 @@ public class Z80 {
 			m_tstates += 8;
 			m_a8 &= 0x7f;
 			break;
+		}
+	}
 
+	/**
+	 * Decode the 0xCB SET instructions (0xC0 - 0xFF).
+	 */
+	private void decodeCBSet(final int op8) {
+		int work8 = 0;
+
+		switch (op8) {
 		/* set 0,b */
 		case 0xC0:
 			m_tstates += 8;
@@ -4091,7 +4889,9 @@ public class Z80 {
 		/* set 0,(hl) */
 		case 0xC6:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x1));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x1);
 			break;
 
 		/* set 0,a */
@@ -4139,7 +4939,9 @@ public class Z80 {
 		/* set 1,(hl) */
 		case 0xCE:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x2));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x2);
 			break;
 
 		/* set 1,a */
@@ -4187,7 +4989,9 @@ public class Z80 {
 		/* set 2,(hl) */
 		case 0xD6:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x4));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x4);
 			break;
 
 		/* set 2,a */
@@ -4235,7 +5039,9 @@ public class Z80 {
 		/* set 3,(hl) */
 		case 0xDE:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x8));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x8);
 			break;
 
 		/* set 3,a */
@@ -4283,7 +5089,9 @@ public class Z80 {
 		/* set 4,(hl) */
 		case 0xE6:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x10));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x10);
 			break;
 
 		/* set 4,a */
@@ -4331,7 +5139,9 @@ public class Z80 {
 		/* set 5,(hl) */
 		case 0xEE:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x20));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x20);
 			break;
 
 		/* set 5,a */
@@ -4379,7 +5189,9 @@ public class Z80 {
 		/* set 6,(hl) */
 		case 0xF6:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x40));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x40);
 			break;
 
 		/* set 6,a */
@@ -4427,7 +5239,9 @@ public class Z80 {
 		/* set 7,(hl) */
 		case 0xFE:
 			m_tstates += 15;
-			write8(hl16(), (read8(hl16()) | 0x80));
+			work8 = read8(hl16());
+			idle(hl16(), 1);
+			write8(hl16(), work8 | 0x80);
 			break;
 
 		/* set 7,a */
@@ -4438,6 +5252,7 @@ public class Z80 {
 		}
 	}
 
+
 	/**
 	 * Decode the index register operations.
 	 * <P>
@@ -4445,7 +5260,7 @@ public class Z80 {
 	 * caller of this method will assign m_xx16 to the appropriate index
 	 * register (m_ix16 or m_iy16).
 	 */
-	public static void decodeXX(final int op8) {
+	public void decodeXX(final int op8) {
 		int work16 = 0;
 		int work8 = 0;
 
@@ -4453,12 +5268,14 @@ public class Z80 {
 		/* add xx,bc */
 		case 0x09:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			add_xx(bc16());
 			break;
 
 		/* add xx,de */
 		case 0x19:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			add_xx(de16());
 			break;
 
@@ -4479,6 +5296,7 @@ public class Z80 {
 		/* inc xx */
 		case 0x23:
 			m_tstates += 10;
+			idle(ir16(), 2);
 			inc16xx();
 			break;
 
@@ -4503,6 +5321,7 @@ public class Z80 {
 		/* add xx,xx */
 		case 0x29:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			add_xx(m_xx16);
 			break;
 
@@ -4516,6 +5335,7 @@ public class Z80 {
 		/* dec xx */
 		case 0x2B:
 			m_tstates += 10;
+			idle(ir16(), 2);
 			dec16xx();
 			break;
 
@@ -4541,7 +5361,9 @@ public class Z80 {
 		case 0x34:
 			m_tstates += 23;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			work8 = read8(work16);
+			idle(work16, 1);
 			work8 = inc8(work8);
 			write8(work16, work8);
 			break;
@@ -4550,7 +5372,9 @@ public class Z80 {
 		case 0x35:
 			m_tstates += 23;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			work8 = read8(work16);
+			idle(work16, 1);
 			work8 = dec8(work8);
 			write8(work16, work8);
 			break;
@@ -4558,14 +5382,17 @@ public class Z80 {
 		/* ld (xx+d),N */
 		case 0x36:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(m_pc16)),
-					read8(inc16(m_pc16)));
-			m_pc16 = incinc16(m_pc16);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			work8 = read8(m_pc16);
+			idle(m_pc16, 2);
+			inc16pc();
+			write8(work16, work8);
 			break;
 
 		/* add xx,sp */
 		case 0x39:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			add_xx(m_sp16);
 			break;
 
@@ -4583,8 +5410,9 @@ public class Z80 {
 
 		/* ld b,(xx+d) */
 		case 0x46:
-			m_tstates += 15;
+			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_b8 = read8(work16);
 			break;
@@ -4603,8 +5431,9 @@ public class Z80 {
 
 		/* ld c,(xx+d) */
 		case 0x4E:
-			m_tstates += 15;
+			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_c8 = read8(work16);
 			break;
@@ -4625,6 +5454,7 @@ public class Z80 {
 		case 0x56:
 			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_d8 = read8(work16);
 			break;
@@ -4645,6 +5475,7 @@ public class Z80 {
 		case 0x5E:
 			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_e8 = read8(work16);
 			break;
@@ -4688,6 +5519,7 @@ public class Z80 {
 		case 0x66:
 			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_h8 = read8(work16);
 			break;
@@ -4737,6 +5569,7 @@ public class Z80 {
 		case 0x6E:
 			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_l8 = read8(work16);
 			break;
@@ -4750,50 +5583,57 @@ public class Z80 {
 		/* ld (xx+d),b */
 		case 0x70:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_b8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_b8);
 			break;
 
 		/* ld (xx+d),c */
 		case 0x71:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_c8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_c8);
 			break;
 
 		/* ld (xx+d),d */
 		case 0x72:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_d8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_d8);
 			break;
 
 		/* ld (xx+d),e */
 		case 0x73:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_e8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_e8);
 			break;
 
 		/* ld (xx+d),h */
 		case 0x74:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_h8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_h8);
 			break;
 
 		/* ld (xx+d),l */
 		case 0x75:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_l8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_l8);
 			break;
 
 		/* ld (xx+d),a */
 		case 0x77:
 			m_tstates += 19;
-			write8(add16(m_xx16, (byte) read8(inc16pc())),
-					m_a8);
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			write8(work16, m_a8);
 			break;
 
 		/* ld a,hx */
@@ -4812,6 +5652,7 @@ public class Z80 {
 		case 0x7E:
 			m_tstates += 19;
 			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
 			m_x8 = work16 >> 8;
 			m_a8 = read8(work16);
 			break;
@@ -4831,7 +5672,9 @@ public class Z80 {
 		/* add a,(xx+d) */
 		case 0x86:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			add_a(work8);
 			break;
 
@@ -4850,7 +5693,9 @@ public class Z80 {
 		/* adc a,(xx+d) */
 		case 0x8E:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			adc_a(work8);
 			break;
 
@@ -4869,7 +5714,9 @@ public class Z80 {
 		/* sub (xx+d) */
 		case 0x96:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			sub_a(work8);
 			break;
 
@@ -4888,7 +5735,9 @@ public class Z80 {
 		/* sbc a,(xx+d) */
 		case 0x9E:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			sbc_a(work8);
 			break;
 
@@ -4907,7 +5756,9 @@ public class Z80 {
 		/* and (xx+d) */
 		case 0xA6:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			and_a(work8);
 			break;
 
@@ -4926,7 +5777,9 @@ public class Z80 {
 		/* xor (xx+d) */
 		case 0xAE:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			xor_a(work8);
 			break;
 
@@ -4945,7 +5798,9 @@ public class Z80 {
 		/* or (xx+d) */
 		case 0xB6:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			or_a(work8);
 			break;
 
@@ -4964,7 +5819,9 @@ public class Z80 {
 		/* cp (xx+d) */
 		case 0xBE:
 			m_tstates += 19;
-			work8 = read8(add16(m_xx16, (byte) read8(inc16pc())));
+			work16 = add16(m_xx16, (byte) read8(inc16pc()));
+			idle(dec16(m_pc16), 5);
+			work8 = read8(work16);
 			cmp_a(work8);
 			break;
 
@@ -4973,1578 +5830,1860 @@ public class Z80 {
 			byte disp8 = (byte) read8(inc16pc());
 			m_xx16 = add16(m_xx16, disp8);
 
-			switch (read8(inc16pc())) {
-			// xxcbops
+			work8 = read8(inc16pc());
+			idle(dec16(m_pc16), 2);
+			decodeXXCB(work8);
 
-			/* rlc (xx+d),b */
-			case 0x00:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = rlc8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+			m_xx16 = sub16(m_xx16, disp8);
+		}
+			break;
 
-			/* rlc (xx+d),c */
-			case 0x01:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = rlc8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* pop xx */
+		case 0xE1:
+			m_tstates += 14;
+			m_xx16 = pop16();
+			break;
 
-			/* rlc (xx+d),d */
-			case 0x02:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = rlc8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* ex (sp),xx */
+		case 0xE3:
+			m_tstates += 23;
+			work16 = read16(m_sp16);
+			idle(inc16(m_sp16), 1);
+			write8(inc16(m_sp16), m_xx16 >> 8);
+			write8(m_sp16, m_xx16 & 0xff);
+			idle(m_sp16, 2);
+			m_xx16 = work16;
+			break;
 
-			/* rlc (xx+d),e */
-			case 0x03:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = rlc8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* push XX */
+		case 0xE5:
+			m_tstates += 15;
+			idle(ir16(), 1);
+			push(m_xx16);
+			break;
 
-			/* rlc (xx+d),h */
-			case 0x04:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = rlc8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* jp (xx) */
+		case 0xE9:
+			m_tstates += 8;
+			m_pc16 = m_xx16;
+			break;
 
-			/* rlc (xx+d),l */
-			case 0x05:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = rlc8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* ld sp,xx */
+		case 0xF9:
+			m_tstates += 10;
+			idle(ir16(), 2);
+			m_sp16 = m_xx16;
+			break;
 
-			/* rlc (xx+d) */
-			case 0x06:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = rlc8(work8);
-				write8(m_xx16, work8);
-				break;
+		/**
+		 * Many DD or FD opcodes after each other will effectively be NOPs,
+		 * doing nothing except repeatedly setting the flag "treat HL as IX" (or
+		 * IY) and taking up 4 T states
+		 */
 
-			/* rlc (xx+d),a */
-			case 0x07:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = rlc8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		case 0xDD:
+		case 0xFD:
+			m_tstates += 4;
+			dec16pc(); /* Back to the second DD/FD */
+			break;
 
-			/* rrc (xx+d),b */
-			case 0x08:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = rrc8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/**
+		 * DD and FD have no effect on ED instructions, or on EX DE,HL.
+		 */
 
-			/* rrc (xx+d),c */
-			case 0x09:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = rrc8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		case 0xEB:
+		case 0xED:
+			m_tstates += 8;
+			break;
 
-			/* rrc (xx+d),d */
-			case 0x0A:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = rrc8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/**
+		 * Each unimplemented opcode does the same as the nonprefixed opcode.
+		 */
 
-			/* rrc (xx+d),e */
-			case 0x0B:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = rrc8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		default:
+			m_tstates += 4;
+			dec16pc(); /* Back to the nonprefixed opcode */
 
-			/* rrc (xx+d),h */
-			case 0x0C:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = rrc8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+			m_spectrum.getLogger().log(ILogger.C_ERROR,
+					"Unimplemented instruction: " + read8(dec16(m_pc16)) + " "
+							+ read8(m_pc16) + " at " + dec16(m_pc16));
+			break;
+		}
+	}
 
-			/* rrc (xx+d),l */
-			case 0x0D:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = rrc8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+	/**
+	 * Decode the instructions whose opcodes are 0xDD 0xCB or 0xFD 0xCB.
+	 * <P>
+	 * The displacement has already been added to m_xx16 by the caller, so these
+	 * instructions operate directly on (m_xx16).
+	 */
+	private void decodeXXCB(final int op8) {
+		switch (op8 >> 6) {
+		case 0:
+			decodeXXCBShift(op8);
+			break;
+		case 1:
+			decodeXXCBBit(op8);
+			break;
+		case 2:
+			decodeXXCBRes(op8);
+			break;
+		default:
+			decodeXXCBSet(op8);
+			break;
+		}
+	}
+
+	/**
+	 * Decode the index register rotate and shift instructions (0xCB 0x00 - 0x3F).
+	 */
+	private void decodeXXCBShift(final int op8) {
+		int work8 = 0;
+
+		switch (op8) {
+		// xxcbops
+
+		/* rlc (xx+d),b */
+		case 0x00:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = rlc8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
+
+		/* rlc (xx+d),c */
+		case 0x01:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = rlc8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
+
+		/* rlc (xx+d),d */
+		case 0x02:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = rlc8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
+
+		/* rlc (xx+d),e */
+		case 0x03:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = rlc8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
+
+		/* rlc (xx+d),h */
+		case 0x04:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = rlc8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* rrc (xx+d) */
-			case 0x0E:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = rrc8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* rlc (xx+d),l */
+		case 0x05:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = rlc8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* rrc a */
-			case 0x0F:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = rrc8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* rlc (xx+d) */
+		case 0x06:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = rlc8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* rl (xx+d),b */
-			case 0x10:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = rl8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/* rlc (xx+d),a */
+		case 0x07:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = rlc8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* rl (xx+d),c */
-			case 0x11:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = rl8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* rrc (xx+d),b */
+		case 0x08:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = rrc8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* rl (xx+d),d */
-			case 0x12:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = rl8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* rrc (xx+d),c */
+		case 0x09:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = rrc8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* rl (xx+d),e */
-			case 0x13:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = rl8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* rrc (xx+d),d */
+		case 0x0A:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = rrc8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* rl (xx+d),h */
-			case 0x14:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = rl8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* rrc (xx+d),e */
+		case 0x0B:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = rrc8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* rl (xx+d),l */
-			case 0x15:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = rl8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* rrc (xx+d),h */
+		case 0x0C:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = rrc8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* rl (xx+d) */
-			case 0x16:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = rl8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* rrc (xx+d),l */
+		case 0x0D:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = rrc8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* rl (xx+d),a */
-			case 0x17:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = rl8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* rrc (xx+d) */
+		case 0x0E:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = rrc8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* rr (xx+d),b */
-			case 0x18:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = rr8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/* rrc a */
+		case 0x0F:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = rrc8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* rr (xx+d),c */
-			case 0x19:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = rr8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* rl (xx+d),b */
+		case 0x10:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = rl8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* rr (xx+d),d */
-			case 0x1A:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = rr8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* rl (xx+d),c */
+		case 0x11:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = rl8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* rr (xx+d),e */
-			case 0x1B:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = rr8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* rl (xx+d),d */
+		case 0x12:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = rl8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* rr (xx+d),h */
-			case 0x1C:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = rr8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* rl (xx+d),e */
+		case 0x13:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = rl8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* rr (xx+d),l */
-			case 0x1D:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = rr8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* rl (xx+d),h */
+		case 0x14:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = rl8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* rr (xx+d) */
-			case 0x1E:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = rr8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* rl (xx+d),l */
+		case 0x15:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = rl8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* rr (xx+d),a */
-			case 0x1F:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = rr8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* rl (xx+d) */
+		case 0x16:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = rl8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* sla (xx+d),b */
-			case 0x20:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = sla8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/* rl (xx+d),a */
+		case 0x17:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = rl8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* sla (xx+d),c */
-			case 0x21:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = sla8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* rr (xx+d),b */
+		case 0x18:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = rr8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* sla (xx+d),d */
-			case 0x22:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = sla8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* rr (xx+d),c */
+		case 0x19:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = rr8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* sla (xx+d),e */
-			case 0x23:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = sla8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* rr (xx+d),d */
+		case 0x1A:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = rr8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* sla (xx+d),h */
-			case 0x24:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = sla8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* rr (xx+d),e */
+		case 0x1B:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = rr8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* sla (xx+d),l */
-			case 0x25:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = sla8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* rr (xx+d),h */
+		case 0x1C:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = rr8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* sla (xx+d) */
-			case 0x26:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = sla8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* rr (xx+d),l */
+		case 0x1D:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = rr8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* sla (xx+d),a */
-			case 0x27:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = sla8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* rr (xx+d) */
+		case 0x1E:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = rr8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* sra (xx+d),b */
-			case 0x28:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = sra8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/* rr (xx+d),a */
+		case 0x1F:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = rr8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* sra (xx+d),c */
-			case 0x29:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = sra8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* sla (xx+d),b */
+		case 0x20:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = sla8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* sra (xx+d),d */
-			case 0x2A:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = sra8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* sla (xx+d),c */
+		case 0x21:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = sla8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* sra (xx+d),e */
-			case 0x2B:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = sra8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* sla (xx+d),d */
+		case 0x22:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = sla8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* sra (xx+d),h */
-			case 0x2C:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = sra8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* sla (xx+d),e */
+		case 0x23:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = sla8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* sra (xx+d),l */
-			case 0x2D:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = sra8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* sla (xx+d),h */
+		case 0x24:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = sla8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* sra (xx+d) */
-			case 0x2E:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = sra8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* sla (xx+d),l */
+		case 0x25:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = sla8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* sra (xx+d),a */
-			case 0x2F:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = sra8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* sla (xx+d) */
+		case 0x26:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = sla8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/**
-			 * The next 8 opcodes are undocumented.
-			 */
+		/* sla (xx+d),a */
+		case 0x27:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = sla8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* sli (xx+d),b */
-			case 0x30:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = sli8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/* sra (xx+d),b */
+		case 0x28:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = sra8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* sli (xx+d),c */
-			case 0x31:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = sli8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* sra (xx+d),c */
+		case 0x29:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = sra8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* sli (xx+d),d */
-			case 0x32:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = sli8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* sra (xx+d),d */
+		case 0x2A:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = sra8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* sli (xx+d),e */
-			case 0x33:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = sli8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* sra (xx+d),e */
+		case 0x2B:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = sra8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* sli (xx+d),h */
-			case 0x34:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = sli8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* sra (xx+d),h */
+		case 0x2C:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = sra8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* sli (xx+d),l */
-			case 0x35:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = sli8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* sra (xx+d),l */
+		case 0x2D:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = sra8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* sli (xx+d) */
-			case 0x36:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = sli8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* sra (xx+d) */
+		case 0x2E:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = sra8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* sli (xx+d),a */
-			case 0x37:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = sli8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* sra (xx+d),a */
+		case 0x2F:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = sra8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* srl (xx+d),b */
-			case 0x38:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16);
-				m_b8 = srl8(m_b8);
-				write8(m_xx16, m_b8);
-				break;
+		/**
+		 * The next 8 opcodes are undocumented.
+		 */
 
-			/* srl (xx+d),c */
-			case 0x39:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16);
-				m_c8 = srl8(m_c8);
-				write8(m_xx16, m_c8);
-				break;
+		/* sli (xx+d),b */
+		case 0x30:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = sli8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* srl (xx+d),d */
-			case 0x3A:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16);
-				m_d8 = srl8(m_d8);
-				write8(m_xx16, m_d8);
-				break;
+		/* sli (xx+d),c */
+		case 0x31:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = sli8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* srl (xx+d),e */
-			case 0x3B:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16);
-				m_e8 = srl8(m_e8);
-				write8(m_xx16, m_e8);
-				break;
+		/* sli (xx+d),d */
+		case 0x32:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = sli8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* srl (xx+d),h */
-			case 0x3C:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16);
-				m_h8 = srl8(m_h8);
-				write8(m_xx16, m_h8);
-				break;
+		/* sli (xx+d),e */
+		case 0x33:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = sli8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* srl (xx+d),l */
-			case 0x3D:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16);
-				m_l8 = srl8(m_l8);
-				write8(m_xx16, m_l8);
-				break;
+		/* sli (xx+d),h */
+		case 0x34:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = sli8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* srl (xx+d) */
-			case 0x3E:
-				m_tstates += 23;
-				work8 = read8(m_xx16);
-				work8 = srl8(work8);
-				write8(m_xx16, work8);
-				break;
+		/* sli (xx+d),l */
+		case 0x35:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = sli8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* srl (xx+d),a */
-			case 0x3F:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16);
-				m_a8 = srl8(m_a8);
-				write8(m_xx16, m_a8);
-				break;
+		/* sli (xx+d) */
+		case 0x36:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = sli8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* bit 0,(ix+d) */
-			case 0x40: /* unofficial */
-			case 0x41: /* unofficial */
-			case 0x42: /* unofficial */
-			case 0x43: /* unofficial */
-			case 0x44: /* unofficial */
-			case 0x45: /* unofficial */
-			case 0x46:
-			case 0x47: /* unofficial */
-				m_tstates += 20;
-				bit_xx(0, read8(m_xx16));
-				break;
+		/* sli (xx+d),a */
+		case 0x37:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = sli8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* bit 1,(xx+d) */
-			case 0x48: /* unofficial */
-			case 0x49: /* unofficial */
-			case 0x4A: /* unofficial */
-			case 0x4B: /* unofficial */
-			case 0x4C: /* unofficial */
-			case 0x4D: /* unofficial */
-			case 0x4E:
-			case 0x4F: /* unofficial */
-				m_tstates += 20;
-				bit_xx(1, read8(m_xx16));
-				break;
+		/* srl (xx+d),b */
+		case 0x38:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_b8 = srl8(m_b8);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* bit 2,(xx+d) */
-			case 0x50: /* unofficial */
-			case 0x51: /* unofficial */
-			case 0x52: /* unofficial */
-			case 0x53: /* unofficial */
-			case 0x54: /* unofficial */
-			case 0x55: /* unofficial */
-			case 0x56:
-			case 0x57: /* unofficial */
-				m_tstates += 20;
-				bit_xx(2, read8(m_xx16));
-				break;
+		/* srl (xx+d),c */
+		case 0x39:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_c8 = srl8(m_c8);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* bit 3,(xx+d) */
-			case 0x58: /* unofficial */
-			case 0x59: /* unofficial */
-			case 0x5A: /* unofficial */
-			case 0x5B: /* unofficial */
-			case 0x5C: /* unofficial */
-			case 0x5D: /* unofficial */
-			case 0x5E:
-			case 0x5F: /* unofficial */
-				m_tstates += 20;
-				bit_xx(3, read8(m_xx16));
-				break;
+		/* srl (xx+d),d */
+		case 0x3A:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_d8 = srl8(m_d8);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* bit 4,(xx+d) */
-			case 0x60: /* unofficial */
-			case 0x61: /* unofficial */
-			case 0x62: /* unofficial */
-			case 0x63: /* unofficial */
-			case 0x64: /* unofficial */
-			case 0x65: /* unofficial */
-			case 0x66:
-			case 0x67: /* unofficial */
-				m_tstates += 20;
-				bit_xx(4, read8(m_xx16));
-				break;
+		/* srl (xx+d),e */
+		case 0x3B:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_e8 = srl8(m_e8);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* bit 5,(xx+d) */
-			case 0x68: /* unofficial */
-			case 0x69: /* unofficial */
-			case 0x6A: /* unofficial */
-			case 0x6B: /* unofficial */
-			case 0x6C: /* unofficial */
-			case 0x6D: /* unofficial */
-			case 0x6E:
-			case 0x6F: /* unofficial */
-				m_tstates += 20;
-				bit_xx(5, read8(m_xx16));
-				break;
+		/* srl (xx+d),h */
+		case 0x3C:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_h8 = srl8(m_h8);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* bit 6,(xx+d) */
-			case 0x70: /* unofficial */
-			case 0x71: /* unofficial */
-			case 0x72: /* unofficial */
-			case 0x73: /* unofficial */
-			case 0x74: /* unofficial */
-			case 0x75: /* unofficial */
-			case 0x76:
-			case 0x77: /* unofficial */
-				m_tstates += 20;
-				bit_xx(6, read8(m_xx16));
-				break;
+		/* srl (xx+d),l */
+		case 0x3D:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_l8 = srl8(m_l8);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* bit 7,(xx+d) */
-			case 0x78: /* unofficial */
-			case 0x79: /* unofficial */
-			case 0x7A: /* unofficial */
-			case 0x7B: /* unofficial */
-			case 0x7C: /* unofficial */
-			case 0x7D: /* unofficial */
-			case 0x7E:
-			case 0x7F: /* unofficial */
-				m_tstates += 20;
-				bit_xx(7, read8(m_xx16));
-				break;
+		/* srl (xx+d) */
+		case 0x3E:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			work8 = srl8(work8);
+			write8(m_xx16, work8);
+			break;
 
-			/* res 0,(xx+d),b */
-			case 0x80:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_b8);
-				break;
+		/* srl (xx+d),a */
+		case 0x3F:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			m_a8 = srl8(m_a8);
+			write8(m_xx16, m_a8);
+			break;
+		}
+	}
 
-			/* res 0,(xx+d),c */
-			case 0x81:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_c8);
-				break;
+	/**
+	 * Decode the index register BIT instructions (0xCB 0x40 - 0x7F).
+	 */
+	private void decodeXXCBBit(final int op8) {
+		int work8 = 0;
 
-			/* res 0,(xx+d),d */
-			case 0x82:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_d8);
-				break;
+		switch (op8) {
+		/* bit 0,(ix+d) */
+		case 0x40: /* unofficial */
+		case 0x41: /* unofficial */
+		case 0x42: /* unofficial */
+		case 0x43: /* unofficial */
+		case 0x44: /* unofficial */
+		case 0x45: /* unofficial */
+		case 0x46:
+		case 0x47: /* unofficial */
+			m_tstates += 20;
+			bit_xx(0, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 0,(xx+d),e */
-			case 0x83:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_e8);
-				break;
+		/* bit 1,(xx+d) */
+		case 0x48: /* unofficial */
+		case 0x49: /* unofficial */
+		case 0x4A: /* unofficial */
+		case 0x4B: /* unofficial */
+		case 0x4C: /* unofficial */
+		case 0x4D: /* unofficial */
+		case 0x4E:
+		case 0x4F: /* unofficial */
+			m_tstates += 20;
+			bit_xx(1, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 0,(xx+d),h */
-			case 0x84:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_h8);
-				break;
+		/* bit 2,(xx+d) */
+		case 0x50: /* unofficial */
+		case 0x51: /* unofficial */
+		case 0x52: /* unofficial */
+		case 0x53: /* unofficial */
+		case 0x54: /* unofficial */
+		case 0x55: /* unofficial */
+		case 0x56:
+		case 0x57: /* unofficial */
+			m_tstates += 20;
+			bit_xx(2, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 0,(xx+d),l */
-			case 0x85:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_l8);
-				break;
+		/* bit 3,(xx+d) */
+		case 0x58: /* unofficial */
+		case 0x59: /* unofficial */
+		case 0x5A: /* unofficial */
+		case 0x5B: /* unofficial */
+		case 0x5C: /* unofficial */
+		case 0x5D: /* unofficial */
+		case 0x5E:
+		case 0x5F: /* unofficial */
+			m_tstates += 20;
+			bit_xx(3, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 0,(xx+d) */
-			case 0x86:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xfe));
-				break;
+		/* bit 4,(xx+d) */
+		case 0x60: /* unofficial */
+		case 0x61: /* unofficial */
+		case 0x62: /* unofficial */
+		case 0x63: /* unofficial */
+		case 0x64: /* unofficial */
+		case 0x65: /* unofficial */
+		case 0x66:
+		case 0x67: /* unofficial */
+			m_tstates += 20;
+			bit_xx(4, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 0,(xx+d),a */
-			case 0x87:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xfe;
-				write8(m_xx16, m_a8);
-				break;
+		/* bit 5,(xx+d) */
+		case 0x68: /* unofficial */
+		case 0x69: /* unofficial */
+		case 0x6A: /* unofficial */
+		case 0x6B: /* unofficial */
+		case 0x6C: /* unofficial */
+		case 0x6D: /* unofficial */
+		case 0x6E:
+		case 0x6F: /* unofficial */
+			m_tstates += 20;
+			bit_xx(5, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 1,(xx+d),b */
-			case 0x88:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_b8);
-				break;
+		/* bit 6,(xx+d) */
+		case 0x70: /* unofficial */
+		case 0x71: /* unofficial */
+		case 0x72: /* unofficial */
+		case 0x73: /* unofficial */
+		case 0x74: /* unofficial */
+		case 0x75: /* unofficial */
+		case 0x76:
+		case 0x77: /* unofficial */
+			m_tstates += 20;
+			bit_xx(6, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
 
-			/* res 1,(xx+d),c */
-			case 0x89:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_c8);
-				break;
+		/* bit 7,(xx+d) */
+		case 0x78: /* unofficial */
+		case 0x79: /* unofficial */
+		case 0x7A: /* unofficial */
+		case 0x7B: /* unofficial */
+		case 0x7C: /* unofficial */
+		case 0x7D: /* unofficial */
+		case 0x7E:
+		case 0x7F: /* unofficial */
+			m_tstates += 20;
+			bit_xx(7, read8(m_xx16));
+			idle(m_xx16, 1);
+			break;
+		}
+	}
 
-			/* res 1,(xx+d),d */
-			case 0x8A:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_d8);
-				break;
+	/**
+	 * Decode the index register RES instructions (0xCB 0x80 - 0xBF).
+	 */
+	private void decodeXXCBRes(final int op8) {
+		int work8 = 0;
 
-			/* res 1,(xx+d),e */
-			case 0x8B:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_e8);
-				break;
+		switch (op8) {
+		/* res 0,(xx+d),b */
+		case 0x80:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 1,(xx+d),h */
-			case 0x8C:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 0,(xx+d),c */
+		case 0x81:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 1,(xx+d),l */
-			case 0x8D:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 0,(xx+d),d */
+		case 0x82:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 1,(xx+d) */
-			case 0x8E:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xfd));
-				break;
+		/* res 0,(xx+d),e */
+		case 0x83:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 1,(xx+d),a */
-			case 0x8F:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xfd;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 0,(xx+d),h */
+		case 0x84:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* res 2,(xx+d),b */
-			case 0x90:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 0,(xx+d),l */
+		case 0x85:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* res 2,(xx+d),c */
-			case 0x91:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 0,(xx+d) */
+		case 0x86:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xfe);
+			break;
 
-			/* res 2,(xx+d),d */
-			case 0x92:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 0,(xx+d),a */
+		case 0x87:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xfe;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* res 2,(xx+d),e */
-			case 0x93:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 1,(xx+d),b */
+		case 0x88:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 2,(xx+d),h */
-			case 0x94:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 1,(xx+d),c */
+		case 0x89:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 2,(xx+d),l */
-			case 0x95:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 1,(xx+d),d */
+		case 0x8A:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 2,(xx+d) */
-			case 0x96:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xfb));
-				break;
+		/* res 1,(xx+d),e */
+		case 0x8B:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 2,(xx+d),a */
-			case 0x97:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xfb;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 1,(xx+d),h */
+		case 0x8C:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* res 3,(xx+d),b */
-			case 0x98:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 1,(xx+d),l */
+		case 0x8D:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* res 3,(xx+d),c */
-			case 0x99:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 1,(xx+d) */
+		case 0x8E:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xfd);
+			break;
 
-			/* res 3,(xx+d),d */
-			case 0x9A:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 1,(xx+d),a */
+		case 0x8F:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xfd;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* res 3,(xx+d),e */
-			case 0x9B:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 2,(xx+d),b */
+		case 0x90:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 3,(xx+d),h */
-			case 0x9C:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 2,(xx+d),c */
+		case 0x91:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 3,(xx+d),l */
-			case 0x9D:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 2,(xx+d),d */
+		case 0x92:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 3,(xx+d) */
-			case 0x9E:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xf7));
-				break;
+		/* res 2,(xx+d),e */
+		case 0x93:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 3,(xx+d),a */
-			case 0x9F:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xf7;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 2,(xx+d),h */
+		case 0x94:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* res 4,(xx+d),b */
-			case 0xA0:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 2,(xx+d),l */
+		case 0x95:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* res 4,(xx+d),c */
-			case 0xA1:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 2,(xx+d) */
+		case 0x96:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xfb);
+			break;
 
-			/* res 4,(xx+d),d */
-			case 0xA2:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 2,(xx+d),a */
+		case 0x97:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xfb;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* res 4,(xx+d),e */
-			case 0xA3:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 3,(xx+d),b */
+		case 0x98:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 4,(xx+d),h */
-			case 0xA4:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 3,(xx+d),c */
+		case 0x99:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 4,(xx+d),l */
-			case 0xA5:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 3,(xx+d),d */
+		case 0x9A:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 4,(xx+d) */
-			case 0xA6:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xef));
-				break;
+		/* res 3,(xx+d),e */
+		case 0x9B:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 4,(xx+d),a */
-			case 0xA7:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xef;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 3,(xx+d),h */
+		case 0x9C:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* res 5,(xx+d),b */
-			case 0xA8:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 3,(xx+d),l */
+		case 0x9D:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* res 5,(xx+d),c */
-			case 0xA9:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 3,(xx+d) */
+		case 0x9E:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xf7);
+			break;
 
-			/* res 5,(xx+d),d */
-			case 0xAA:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 3,(xx+d),a */
+		case 0x9F:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xf7;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* res 5,(xx+d),e */
-			case 0xAB:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 4,(xx+d),b */
+		case 0xA0:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 5,(xx+d),h */
-			case 0xAC:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 4,(xx+d),c */
+		case 0xA1:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 5,(xx+d),l */
-			case 0xAD:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 4,(xx+d),d */
+		case 0xA2:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 5,(xx+d) */
-			case 0xAE:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xdf));
-				break;
+		/* res 4,(xx+d),e */
+		case 0xA3:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 5,(xx+d),a */
-			case 0xAF:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xdf;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 4,(xx+d),h */
+		case 0xA4:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* res 6,(xx+d),b */
-			case 0xB0:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 4,(xx+d),l */
+		case 0xA5:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* res 6,(xx+d),c */
-			case 0xB1:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 4,(xx+d) */
+		case 0xA6:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xef);
+			break;
 
-			/* res 6,(xx+d),d */
-			case 0xB2:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 4,(xx+d),a */
+		case 0xA7:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xef;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* res 6,(xx+d),e */
-			case 0xB3:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 5,(xx+d),b */
+		case 0xA8:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 6,(xx+d),h */
-			case 0xB4:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 5,(xx+d),c */
+		case 0xA9:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 6,(xx+d),l */
-			case 0xB5:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 5,(xx+d),d */
+		case 0xAA:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 6,(xx+d) */
-			case 0xB6:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0xbf));
-				break;
+		/* res 5,(xx+d),e */
+		case 0xAB:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 6,(xx+d),a */
-			case 0xB7:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0xbf;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 5,(xx+d),h */
+		case 0xAC:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* res 7,(xx+d),b */
-			case 0xB8:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 5,(xx+d),l */
+		case 0xAD:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* res 7,(xx+d),c */
-			case 0xB9:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 5,(xx+d) */
+		case 0xAE:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xdf);
+			break;
 
-			/* res 7,(xx+d),d */
-			case 0xBA:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 5,(xx+d),a */
+		case 0xAF:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xdf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* res 7,(xx+d),e */
-			case 0xBB:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 6,(xx+d),b */
+		case 0xB0:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* res 7,(xx+d),h */
-			case 0xBC:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 6,(xx+d),c */
+		case 0xB1:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* res 7,(xx+d),l */
-			case 0xBD:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 6,(xx+d),d */
+		case 0xB2:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* res 7,(xx+d) */
-			case 0xBE:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) & 0x7f));
-				break;
+		/* res 6,(xx+d),e */
+		case 0xB3:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* res 7,(xx+d),a */
-			case 0xBF:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) & 0x7f;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 6,(xx+d),h */
+		case 0xB4:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 0,(xx+d),b */
-			case 0xC0:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 6,(xx+d),l */
+		case 0xB5:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 0,(xx+d),c */
-			case 0xC1:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 6,(xx+d) */
+		case 0xB6:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0xbf);
+			break;
 
-			/* set 0,(xx+d),d */
-			case 0xC2:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 6,(xx+d),a */
+		case 0xB7:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0xbf;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 0,(xx+d),e */
-			case 0xC3:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_e8);
-				break;
+		/* res 7,(xx+d),b */
+		case 0xB8:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 0,(xx+d),h */
-			case 0xC4:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_h8);
-				break;
+		/* res 7,(xx+d),c */
+		case 0xB9:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 0,(xx+d),l */
-			case 0xC5:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_l8);
-				break;
+		/* res 7,(xx+d),d */
+		case 0xBA:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 0,(xx+d) */
-			case 0xC6:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x1));
-				break;
+		/* res 7,(xx+d),e */
+		case 0xBB:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 0,(xx+d),a */
-			case 0xC7:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x1;
-				write8(m_xx16, m_a8);
-				break;
+		/* res 7,(xx+d),h */
+		case 0xBC:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 1,(xx+d),b */
-			case 0xC8:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_b8);
-				break;
+		/* res 7,(xx+d),l */
+		case 0xBD:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 1,(xx+d),c */
-			case 0xC9:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_c8);
-				break;
+		/* res 7,(xx+d) */
+		case 0xBE:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 & 0x7f);
+			break;
 
-			/* set 1,(xx+d),d */
-			case 0xCA:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_d8);
-				break;
+		/* res 7,(xx+d),a */
+		case 0xBF:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) & 0x7f;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
+		}
+	}
 
-			/* set 1,(xx+d),e */
-			case 0xCB:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_e8);
-				break;
+	/**
+	 * Decode the index register SET instructions (0xCB 0xC0 - 0xFF).
+	 */
+	private void decodeXXCBSet(final int op8) {
+		int work8 = 0;
 
-			/* set 1,(xx+d),h */
-			case 0xCC:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_h8);
-				break;
+		switch (op8) {
+		/* set 0,(xx+d),b */
+		case 0xC0:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 1,(xx+d),l */
-			case 0xCD:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 0,(xx+d),c */
+		case 0xC1:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 1,(xx+d) */
-			case 0xCE:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x2));
-				break;
+		/* set 0,(xx+d),d */
+		case 0xC2:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 1,(xx+d),a */
-			case 0xCF:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x2;
-				write8(m_xx16, m_a8);
-				break;
+		/* set 0,(xx+d),e */
+		case 0xC3:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 2,(xx+d),b */
-			case 0xD0:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_b8);
-				break;
+		/* set 0,(xx+d),h */
+		case 0xC4:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 2,(xx+d),c */
-			case 0xD1:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_c8);
-				break;
+		/* set 0,(xx+d),l */
+		case 0xC5:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 2,(xx+d),d */
-			case 0xD2:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_d8);
-				break;
+		/* set 0,(xx+d) */
+		case 0xC6:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x1);
+			break;
 
-			/* set 2,(xx+d),e */
-			case 0xD3:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_e8);
-				break;
+		/* set 0,(xx+d),a */
+		case 0xC7:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x1;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 2,(xx+d),h */
-			case 0xD4:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_h8);
-				break;
+		/* set 1,(xx+d),b */
+		case 0xC8:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 2,(xx+d),l */
-			case 0xD5:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 1,(xx+d),c */
+		case 0xC9:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 2,(xx+d) */
-			case 0xD6:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x4));
-				break;
+		/* set 1,(xx+d),d */
+		case 0xCA:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 2,(xx+d),a */
-			case 0xD7:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x4;
-				write8(m_xx16, m_a8);
-				break;
+		/* set 1,(xx+d),e */
+		case 0xCB:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 3,(xx+d),b */
-			case 0xD8:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_b8);
-				break;
+		/* set 1,(xx+d),h */
+		case 0xCC:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 3,(xx+d),c */
-			case 0xD9:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_c8);
-				break;
+		/* set 1,(xx+d),l */
+		case 0xCD:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 3,(xx+d),d */
-			case 0xDA:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_d8);
-				break;
+		/* set 1,(xx+d) */
+		case 0xCE:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x2);
+			break;
 
-			/* set 3,(xx+d),e */
-			case 0xDB:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_e8);
-				break;
+		/* set 1,(xx+d),a */
+		case 0xCF:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x2;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 3,(xx+d),h */
-			case 0xDC:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_h8);
-				break;
+		/* set 2,(xx+d),b */
+		case 0xD0:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 3,(xx+d),l */
-			case 0xDD:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 2,(xx+d),c */
+		case 0xD1:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 3,(xx+d) */
-			case 0xDE:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x8));
-				break;
+		/* set 2,(xx+d),d */
+		case 0xD2:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 3,(xx+d),a */
-			case 0xDF:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x8;
-				write8(m_xx16, m_a8);
-				break;
+		/* set 2,(xx+d),e */
+		case 0xD3:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 4,(xx+d),b */
-			case 0xE0:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_b8);
-				break;
+		/* set 2,(xx+d),h */
+		case 0xD4:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 4,(xx+d),c */
-			case 0xE1:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_c8);
-				break;
+		/* set 2,(xx+d),l */
+		case 0xD5:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 4,(xx+d),d */
-			case 0xE2:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_d8);
-				break;
+		/* set 2,(xx+d) */
+		case 0xD6:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x4);
+			break;
 
-			/* set 4,(xx+d),e */
-			case 0xE3:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_e8);
-				break;
+		/* set 2,(xx+d),a */
+		case 0xD7:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x4;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 4,(xx+d),h */
-			case 0xE4:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_h8);
-				break;
+		/* set 3,(xx+d),b */
+		case 0xD8:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 4,(xx+d),l */
-			case 0xE5:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 3,(xx+d),c */
+		case 0xD9:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 4,(xx+d) */
-			case 0xE6:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x10));
-				break;
+		/* set 3,(xx+d),d */
+		case 0xDA:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 4,(xx+d),a */
-			case 0xE7:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x10;
-				write8(m_xx16, m_a8);
-				break;
+		/* set 3,(xx+d),e */
+		case 0xDB:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 5,(xx+d),b */
-			case 0xE8:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_b8);
-				break;
+		/* set 3,(xx+d),h */
+		case 0xDC:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 5,(xx+d),c */
-			case 0xE9:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_c8);
-				break;
+		/* set 3,(xx+d),l */
+		case 0xDD:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 5,(xx+d),d */
-			case 0xEA:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_d8);
-				break;
+		/* set 3,(xx+d) */
+		case 0xDE:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x8);
+			break;
 
-			/* set 5,(xx+d),e */
-			case 0xEB:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_e8);
-				break;
+		/* set 3,(xx+d),a */
+		case 0xDF:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x8;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 5,(xx+d),h */
-			case 0xEC:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_h8);
-				break;
+		/* set 4,(xx+d),b */
+		case 0xE0:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 5,(xx+d),l */
-			case 0xED:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 4,(xx+d),c */
+		case 0xE1:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 5,(xx+d) */
-			case 0xEE:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x20));
-				break;
+		/* set 4,(xx+d),d */
+		case 0xE2:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 5(xx+d),,a */
-			case 0xEF:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x20;
-				write8(m_xx16, m_a8);
-				break;
+		/* set 4,(xx+d),e */
+		case 0xE3:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 6,(xx+d),b */
-			case 0xF0:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_b8);
-				break;
+		/* set 4,(xx+d),h */
+		case 0xE4:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 6,(xx+d),c */
-			case 0xF1:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_c8);
-				break;
+		/* set 4,(xx+d),l */
+		case 0xE5:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 6,(xx+d),d */
-			case 0xF2:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_d8);
-				break;
+		/* set 4,(xx+d) */
+		case 0xE6:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x10);
+			break;
 
-			/* set 6,(xx+d),e */
-			case 0xF3:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_e8);
-				break;
+		/* set 4,(xx+d),a */
+		case 0xE7:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x10;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 6,(xx+d),h */
-			case 0xF4:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_h8);
-				break;
+		/* set 5,(xx+d),b */
+		case 0xE8:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 6,(xx+d),l */
-			case 0xF5:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 5,(xx+d),c */
+		case 0xE9:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 6,(xx+d) */
-			case 0xF6:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x40));
-				break;
+		/* set 5,(xx+d),d */
+		case 0xEA:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 6,(xx+d),a */
-			case 0xF7:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x40;
-				write8(m_xx16, m_a8);
-				break;
+		/* set 5,(xx+d),e */
+		case 0xEB:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			/* set 7,(xx+d),b */
-			case 0xF8:
-				m_tstates += 23;
-				m_b8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_b8);
-				break;
+		/* set 5,(xx+d),h */
+		case 0xEC:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
+			break;
 
-			/* set 7,(xx+d),c */
-			case 0xF9:
-				m_tstates += 23;
-				m_c8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_c8);
-				break;
+		/* set 5,(xx+d),l */
+		case 0xED:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-			/* set 7,(xx+d),d */
-			case 0xFA:
-				m_tstates += 23;
-				m_d8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_d8);
-				break;
+		/* set 5,(xx+d) */
+		case 0xEE:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x20);
+			break;
 
-			/* set 7,(xx+d),e */
-			case 0xFB:
-				m_tstates += 23;
-				m_e8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_e8);
-				break;
+		/* set 5(xx+d),,a */
+		case 0xEF:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x20;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
+			break;
 
-			/* set 7,(xx+d),h */
-			case 0xFC:
-				m_tstates += 23;
-				m_h8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_h8);
-				break;
+		/* set 6,(xx+d),b */
+		case 0xF0:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
+			break;
 
-			/* set 7,(xx+d),l */
-			case 0xFD:
-				m_tstates += 23;
-				m_l8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_l8);
-				break;
+		/* set 6,(xx+d),c */
+		case 0xF1:
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
+			break;
 
-			/* set 7,(xx+d) */
-			case 0xFE:
-				m_tstates += 23;
-				write8(m_xx16, (read8(m_xx16) | 0x80));
-				break;
+		/* set 6,(xx+d),d */
+		case 0xF2:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
+			break;
 
-			/* set 7,(xx+d),a */
-			case 0xFF:
-				m_tstates += 23;
-				m_a8 = read8(m_xx16) | 0x80;
-				write8(m_xx16, m_a8);
-				break;
-			}
+		/* set 6,(xx+d),e */
+		case 0xF3:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-			m_xx16 = sub16(m_xx16, disp8);
-		}
+		/* set 6,(xx+d),h */
+		case 0xF4:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
 			break;
 
-		/* pop xx */
-		case 0xE1:
-			m_tstates += 14;
-			m_xx16 = pop16();
+		/* set 6,(xx+d),l */
+		case 0xF5:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
 			break;
 
-		/* ex (sp),xx */
-		case 0xE3:
+		/* set 6,(xx+d) */
+		case 0xF6:
 			m_tstates += 23;
-			work16 = read16(m_sp16);
-			write16(m_sp16, m_xx16);
-			m_xx16 = work16;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x40);
 			break;
 
-		/* push XX */
-		case 0xE5:
-			m_tstates += 15;
-			push(m_xx16);
+		/* set 6,(xx+d),a */
+		case 0xF7:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x40;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
 			break;
 
-		/* jp (xx) */
-		case 0xE9:
-			m_tstates += 8;
-			m_pc16 = m_xx16;
+		/* set 7,(xx+d),b */
+		case 0xF8:
+			m_tstates += 23;
+			m_b8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_b8);
 			break;
 
-		/* ld sp,xx */
+		/* set 7,(xx+d),c */
 		case 0xF9:
-			m_tstates += 10;
-			m_sp16 = m_xx16;
+			m_tstates += 23;
+			m_c8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_c8);
 			break;
 
-		/**
-		 * Many DD or FD opcodes after each other will effectively be NOPs,
-		 * doing nothing except repeatedly setting the flag "treat HL as IX" (or
-		 * IY) and taking up 4 T states
-		 */
-
-		case 0xDD:
-		case 0xFD:
-			m_tstates += 4;
-			dec16pc(); /* Back to the second DD/FD */
+		/* set 7,(xx+d),d */
+		case 0xFA:
+			m_tstates += 23;
+			m_d8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_d8);
 			break;
 
-		/**
-		 * DD and FD have no effect on ED instructions, or on EX DE,HL.
-		 */
+		/* set 7,(xx+d),e */
+		case 0xFB:
+			m_tstates += 23;
+			m_e8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_e8);
+			break;
 
-		case 0xEB:
-		case 0xED:
-			m_tstates += 8;
+		/* set 7,(xx+d),h */
+		case 0xFC:
+			m_tstates += 23;
+			m_h8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_h8);
 			break;
 
-		/**
-		 * Each unimplemented opcode does the same as the nonprefixed opcode.
-		 */
+		/* set 7,(xx+d),l */
+		case 0xFD:
+			m_tstates += 23;
+			m_l8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_l8);
+			break;
 
-		default:
-			m_tstates += 4;
-			dec16pc(); /* Back to the nonprefixed opcode */
+		/* set 7,(xx+d) */
+		case 0xFE:
+			m_tstates += 23;
+			work8 = read8(m_xx16);
+			idle(m_xx16, 1);
+			write8(m_xx16, work8 | 0x80);
+			break;
 
-			Log.e(Z80.class.getName(), "Unimplemented instruction: "
-					+ read8(dec16(m_pc16)) + " "
-					+ read8(m_pc16) + " at " + dec16(m_pc16));
+		/* set 7,(xx+d),a */
+		case 0xFF:
+			m_tstates += 23;
+			m_a8 = read8(m_xx16) | 0x80;
+			idle(m_xx16, 1);
+			write8(m_xx16, m_a8);
 			break;
 		}
 	}
@@ -6552,7 +7691,7 @@ public class Z80 {
 	/**
 	 * Decode the instructions whose first opcode is 0xED.
 	 */
-	private static void decodeED(final int op8) {
+	private void decodeED(final int op8) {
 		int work8 = 0;
 
 		switch (op8) {
@@ -6565,12 +7704,13 @@ public class Z80 {
 		/* out (c),b */
 		case 0x41:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_b8);
+			m_io.out(bc16(), m_b8);
 			break;
 
 		/* sbc hl,bc */
 		case 0x42:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			sbc_hl(bc16());
 			break;
 
@@ -6634,6 +7774,7 @@ public class Z80 {
 		/* ld i,a */
 		case 0x47:
 			m_tstates += 9;
+			idle(ir16(), 1);
 			m_i8 = m_a8;
 			break;
 
@@ -6646,12 +7787,13 @@ public class Z80 {
 		/* out (c),c */
 		case 0x49:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_c8);
+			m_io.out(bc16(), m_c8);
 			break;
 
 		/* adc hl,bc */
 		case 0x4A:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			adc_hl(bc16());
 			break;
 
@@ -6672,6 +7814,7 @@ public class Z80 {
 		/* ld r,a */
 		case 0x4F:
 			m_tstates += 9;
+			idle(ir16(), 1);
 			m_r8 = m_a8;
 			break;
 
@@ -6684,12 +7827,13 @@ public class Z80 {
 		/* out (c),d */
 		case 0x51:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_d8);
+			m_io.out(bc16(), m_d8);
 			break;
 
 		/* sbc hl,de */
 		case 0x52:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			sbc_hl(de16());
 			break;
 
@@ -6710,6 +7854,7 @@ public class Z80 {
 		/* ld a,i */
 		case 0x57:
 			m_tstates += 9;
+			idle(ir16(), 1);
 			ld_a_special(m_i8);
 			break;
 
@@ -6722,12 +7867,13 @@ public class Z80 {
 		/* out (c),e */
 		case 0x59:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_e8);
+			m_io.out(bc16(), m_e8);
 			break;
 
 		/* adc hl,de */
 		case 0x5A:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			adc_hl(de16());
 			break;
 
@@ -6748,6 +7894,7 @@ public class Z80 {
 		/* ld a,r */
 		case 0x5F:
 			m_tstates += 9;
+			idle(ir16(), 1);
 			ld_a_special(m_r8);
 			break;
 
@@ -6760,12 +7907,13 @@ public class Z80 {
 		/* out (c),h */
 		case 0x61:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_h8);
+			m_io.out(bc16(), m_h8);
 			break;
 
 		/* sbc hl,hl */
 		case 0x62:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			sbc_hl(hl16());
 			break;
 
@@ -6778,17 +7926,13 @@ public class Z80 {
 
 		/* rrd */
 		case 0x67:
+			resolveFlags();
 			m_tstates += 18;
 			work8 = read8(hl16());
+			idle(hl16(), 4);
 			write8(hl16(), ((work8 >> 4) | (m_a8 << 4)));
 			m_a8 = (m_a8 & 0xf0) | (work8 & 0x0f);
-			m_signF = ((m_a8 & 0x80) != 0);
-			m_zeroF = (m_a8 == 0);
-			m_halfcarryF = false;
-			m_parityoverflowF = m_parityTable[m_a8];
-			m_addsubtractF = false;
-			m_3F = ((m_a8 & THREE_MASK) != 0);
-			m_5F = ((m_a8 & FIVE_MASK) != 0);
+			m_f8 = (m_f8 & CARRY_MASK) | m_sz53pTable[m_a8];
 			break;
 
 		/* in l,(c) */
@@ -6800,12 +7944,13 @@ public class Z80 {
 		/* out (c),l */
 		case 0x69:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_l8);
+			m_io.out(bc16(), m_l8);
 			break;
 
 		/* adc hl,hl */
 		case 0x6A:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			adc_hl(hl16());
 			break;
 
@@ -6818,17 +7963,13 @@ public class Z80 {
 
 		/* rld */
 		case 0x6F:
+			resolveFlags();
 			m_tstates += 18;
 			work8 = read8(hl16());
+			idle(hl16(), 4);
 			write8(hl16(), (((work8 << 4) | (m_a8 & 0x0f))) & 0xff);
 			m_a8 = (m_a8 & 0xf0) | (work8 >> 4);
-			m_signF = ((m_a8 & 0x80) != 0);
-			m_zeroF = (m_a8 == 0);
-			m_halfcarryF = false;
-			m_parityoverflowF = m_parityTable[m_a8];
-			m_addsubtractF = false;
-			m_3F = ((m_a8 & THREE_MASK) != 0);
-			m_5F = ((m_a8 & FIVE_MASK) != 0);
+			m_f8 = (m_f8 & CARRY_MASK) | m_sz53pTable[m_a8];
 			break;
 
 		/**
@@ -6846,12 +7987,13 @@ public class Z80 {
 		/* out (c),0 */
 		case 0x71: /* unofficial */
 			m_tstates += 12;
-			BaseIO.out(bc16(), 0);
+			m_io.out(bc16(), 0);
 			break;
 
 		/* sbc hl,sp */
 		case 0x72:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			sbc_hl(m_sp16);
 			break;
 
@@ -6877,12 +8019,13 @@ public class Z80 {
 		/* out (c),a */
 		case 0x79:
 			m_tstates += 12;
-			BaseIO.out(bc16(), m_a8);
+			m_io.out(bc16(), m_a8);
 			break;
 
 		/* adc hl,sp */
 		case 0x7A:
 			m_tstates += 15;
+			idle(ir16(), 7);
 			adc_hl(m_sp16);
 			break;
 
@@ -6895,230 +8038,160 @@ public class Z80 {
 
 		/* ldi */
 		case 0xA0:
+			resolveFlags();
 			m_tstates += 16;
 			work8 = read8(hl16());
 			write8(de16(), work8);
+			idle(de16(), 2);
 			inc16de();
 			inc16hl();
 			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			m_halfcarryF = false;
-			m_addsubtractF = false;
 			work8 += m_a8;
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			m_f8 = (m_f8 & (SIGN_MASK | ZERO_MASK | CARRY_MASK))
+					| (work8 & THREE_MASK) | ((work8 & ONE_MASK) << 5);
+			if (bc16() != 0) {
+				m_f8 |= PARITY_MASK;
+			}
 			break;
 
 		/* cpi */
 		case 0xA1:
+			resolveFlags();
 			m_tstates += 16;
 			work8 = read8(hl16());
+			idle(hl16(), 5);
 			cmp_a_special(work8);
 			inc16hl();
 			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			work8 = m_a8 - work8 - (m_halfcarryF ? 1 : 0);
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			work8 = m_a8 - work8 - ((m_f8 & HALFCARRY_MASK) >> 4);
+			m_f8 = (m_f8 & ~(PARITY_MASK | FIVE_THREE_MASK))
+					| (work8 & THREE_MASK) | ((work8 & ONE_MASK) << 5);
+			if (bc16() != 0) {
+				m_f8 |= PARITY_MASK;
+			}
 			break;
 
 		/* ini */
 		case 0xA2:
+			resolveFlags();
 			m_tstates += 16;
-			write8(hl16(), BaseIO.in8(bc16()));
+			idle(ir16(), 1);
+			write8(hl16(), m_io.in8(bc16()));
 			m_b8 = ((m_b8 - 1) & 0xff);
 			inc16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
+			m_f8 = (m_f8 & ~ZERO_MASK) | (m_sz53Table[m_b8] & ZERO_MASK)
+					| ADDSUBTRACT_MASK;
 			break;
 
 		/* outi */
 		case 0xA3:
+			resolveFlags();
 			m_tstates += 16;
+			idle(ir16(), 1);
 			m_b8 = ((m_b8 - 1) & 0xff);
-			BaseIO.out(bc16(), read8(hl16()));
+			m_io.out(bc16(), read8(hl16()));
 			inc16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
+			m_f8 = (m_f8 & ~ZERO_MASK) | (m_sz53Table[m_b8] & ZERO_MASK)
+					| ADDSUBTRACT_MASK;
 			break;
 
 		/* ldd */
 		case 0xA8:
+			resolveFlags();
 			m_tstates += 16;
 			work8 = read8(hl16());
 			write8(de16(), work8);
+			idle(de16(), 2);
 			dec16de();
 			dec16hl();
 			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			m_halfcarryF = false;
-			m_addsubtractF = false;
 			work8 += m_a8;
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			m_f8 = (m_f8 & (SIGN_MASK | ZERO_MASK | CARRY_MASK))
+					| (work8 & THREE_MASK) | ((work8 & ONE_MASK) << 5);
+			if (bc16() != 0) {
+				m_f8 |= PARITY_MASK;
+			}
 			break;
 
 		/* cpd */
 		case 0xA9:
+			resolveFlags();
 			m_tstates += 16;
 			work8 = read8(hl16());
+			idle(hl16(), 5);
 			cmp_a_special(work8);
 			dec16hl();
 			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			work8 = m_a8 - work8 - (m_halfcarryF ? 1 : 0);
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			work8 = m_a8 - work8 - ((m_f8 & HALFCARRY_MASK) >> 4);
+			m_f8 = (m_f8 & ~(PARITY_MASK | FIVE_THREE_MASK))
+					| (work8 & THREE_MASK) | ((work8 & ONE_MASK) << 5);
+			if (bc16() != 0) {
+				m_f8 |= PARITY_MASK;
+			}
 			break;
 
 		/* ind */
 		case 0xAA:
+			resolveFlags();
 			m_tstates += 16;
-			write8(hl16(), BaseIO.in8(bc16()));
+			idle(ir16(), 1);
+			write8(hl16(), m_io.in8(bc16()));
 			m_b8 = ((m_b8 - 1) & 0xff);
 			dec16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
+			m_f8 = (m_f8 & ~ZERO_MASK) | (m_sz53Table[m_b8] & ZERO_MASK)
+					| ADDSUBTRACT_MASK;
 			break;
 
 		/* outd */
 		case 0xAB:
+			resolveFlags();
 			m_tstates += 16;
+			idle(ir16(), 1);
 			m_b8 = ((m_b8 - 1) & 0xff);
-			BaseIO.out(bc16(), read8(hl16()));
+			m_io.out(bc16(), read8(hl16()));
 			dec16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
+			m_f8 = (m_f8 & ~ZERO_MASK) | (m_sz53Table[m_b8] & ZERO_MASK)
+					| ADDSUBTRACT_MASK;
 			break;
 
 		/* ldir */
 		case 0xB0:
-			m_tstates += 16;
-			work8 = read8(hl16());
-			write8(de16(), work8);
-			inc16hl();
-			inc16de();
-			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			m_halfcarryF = false;
-			m_addsubtractF = false;
-			if (m_parityoverflowF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
-			work8 += m_a8;
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			block_ld(1);
 			break;
 
 		/* cpir */
 		case 0xB1:
-			m_tstates += 16;
-			work8 = read8(hl16());
-			cmp_a_special(work8);
-			inc16hl();
-			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			if (m_parityoverflowF && !m_zeroF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
-			work8 = m_a8 - work8 - (m_halfcarryF ? 1 : 0);
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			block_cp(1);
 			break;
 
 		/* inir */
 		case 0xB2:
-			m_tstates += 16;
-			write8(hl16(), BaseIO.in8(bc16()));
-			m_b8 = ((m_b8 - 1) & 0xff);
-			inc16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
-			if (!m_zeroF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
+			block_in(1);
 			break;
 
 		/* otir */
 		case 0xB3:
-			m_tstates += 16;
-			m_b8 = ((m_b8 - 1) & 0xff);
-			BaseIO.out(bc16(), read8(hl16()));
-			inc16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
-			if (!m_zeroF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
+			block_out(1);
 			break;
 
 		/* lddr */
 		case 0xB8:
-			m_tstates += 16;
-			work8 = read8(hl16());
-			write8(de16(), work8);
-			dec16hl();
-			dec16de();
-			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			m_halfcarryF = false;
-			m_addsubtractF = false;
-			if (m_parityoverflowF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
-			work8 += m_a8;
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			block_ld(-1);
 			break;
 
 		/* cpdr */
 		case 0xB9:
-			m_tstates += 16;
-			work8 = read8(hl16());
-			cmp_a_special(work8);
-			dec16hl();
-			dec16bc();
-			m_parityoverflowF = (bc16() != 0);
-			if (m_parityoverflowF && !m_zeroF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
-			work8 = m_a8 - work8 - (m_halfcarryF ? 1 : 0);
-			m_3F = ((work8 & THREE_MASK) != 0);
-			m_5F = ((work8 & ONE_MASK) != 0);
+			block_cp(-1);
 			break;
 
 		/* indr */
 		case 0xBA:
-			m_tstates += 16;
-			write8(hl16(), BaseIO.in8(bc16()));
-			m_b8 = ((m_b8 - 1) & 0xff);
-			dec16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
-			if (!m_zeroF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
+			block_in(-1);
 			break;
 
 		/* otdr */
 		case 0xBB:
-			m_tstates += 16;
-			m_b8 = ((m_b8 - 1) & 0xff);
-			BaseIO.out(bc16(), read8(hl16()));
-			dec16hl();
-			m_zeroF = (m_b8 == 0);
-			m_addsubtractF = true;
-			if (!m_zeroF) {
-				m_tstates += 5;
-				m_pc16 = decdec16(m_pc16);
-			}
+			block_out(-1);
 			break;
 
 		case 0xFB:
@@ -7142,10 +8215,9 @@ public class Z80 {
 		default:
 			m_tstates += 8;
 
-			Log
-					.e(Z80.class.getClass().getName(), "Unimplemented instruction: "
-							+ read8(decdec16(m_pc16)) + " "
-							+ read8(dec16(m_pc16)) + " at "
+			m_spectrum.getLogger().log(ILogger.C_ERROR,
+					"Unimplemented instruction: " + read8(decdec16(m_pc16))
+							+ " " + read8(dec16(m_pc16)) + " at "
 							+ decdec16(m_pc16));
 
 			break;
@@ -7156,8 +8228,8 @@ public class Z80 {
 	 * Return a string representation of the CPU state, which is useful for
 	 * debugging purposes.
 	 */
-	public static String toStr() {
-		storeFlags();
+	public String toStr() {
+		resolveFlags();
 
 		return "A=" + m_a8 + ",F=" + m_f8 + ",B=" + m_b8 + ",C=" + m_c8 + ",D="
 				+ m_d8 + ",E=" + m_e8 + ",H=" + m_h8 + ",L=" + m_l8 + ",AF1="
@@ -7165,13 +8237,13 @@ public class Z80 {
 				+ ",HL1=" + m_hl16alt + ",IX=" + m_ix16 + ",IY=" + m_iy16
 				+ ",SP=" + m_sp16 + ",PC=" + m_pc16 + ",R=" + m_r8 + ",I="
 				+ m_i8 + ",IM=" + m_im2 + ",IFF1=" + m_iff1a + ",IFF2="
-				+ m_iff1b + ",OP=" + (memory[Math.abs(m_pc16)] & 0xff);
+				+ m_iff1b + ",OP=" + read8(m_pc16);
 	}
 
 	/**
 	 * Load the CPU contents from the loader object.
 	 */
-	public static void load(BaseLoader loader) {
+	public void load(BaseLoader loader) {
 		af16(loader.getAF16());
 		bc16(loader.getBC16());
 		de16(loader.getDE16());
@@ -7190,71 +8262,260 @@ public class Z80 {
 		m_iff1a = loader.getIFF1a();
 		m_iff1b = loader.getIFF1b();
 
-		retrieveFlags();
-		byte[] loadedMemory = loader.getMemory();
+		if (loader.getMode() == BaseLoader.MODE_128) {
+			// The I/O component maps the banks as selected by the snapshot.
+			for (int bank = 0; bank < RAM_BANKS; bank++) {
+				final byte[] loadedBank = loader.getBank(bank);
+				if (loadedBank != null) {
+					System.arraycopy(loadedBank, 0, getBank(bank), 0,
+							PAGE_SIZE);
+				}
+			}
+		} else {
+			byte[] loadedMemory = loader.getMemory();
+
+			System.arraycopy(loadedMemory, 0x4000, getBank(BANK_SCREEN), 0,
+					PAGE_SIZE);
+			System.arraycopy(loadedMemory, 0x8000, getBank(2), 0, PAGE_SIZE);
+			System.arraycopy(loadedMemory, 0xc000, getBank(0), 0, PAGE_SIZE);
+		}
+	}
+
+	public int read16(final int addr16) {
+		final int low8 = read8(addr16);
+		return (read8((addr16 + 1) & 0xffff) << 8) | low8;
+	}
+
+	public void write16(final int addr16, final int val16) {
+		write8(addr16, val16 & 0xff);
+		write8((addr16 + 1) & 0xffff, val16 >> 8);
+	}
+
+	/**
+	 * Write a byte to memory, as selected by the mode of its page.
+	 * <P>
+	 * Plain RAM is written directly; the screen page also marks the byte
+	 * dirty for the next screen refresh (unless the screen finds its changes
+	 * by itself, see <TT>setScreenHooks()</TT>); writes to the ROM are
+	 * dropped. A
+	 * write to contended memory is first delayed as given by the contention
+	 * table, at the T-State of the write (see <TT>m_access</TT>.)
+	 */
+	public void write8(final int addr16, final int val8) {
+		final int page = addr16 >> 14;
+		if (m_pageContended[page]) {
+			final int delay = m_contention[m_access];
+			m_tstates += delay;
+			m_access += delay;
+		}
+		m_access += 3;
+		final int mode = m_pageModes[page];
+		if (mode == PAGE_RAM) {
+			m_pages[page][addr16 & 0x3fff] = (byte) val8;
+		} else if (mode == PAGE_SCREEN) {
+			final int offset = addr16 & 0x3fff;
+			m_pages[page][offset] = (byte) val8;
+			if (offset < BaseScreen.PIXEL_LENGTH) {
+				m_screen.screenTouch(offset);
+			} else if (offset < BaseScreen.SCREEN_LENGTH) {
+				m_screen.attrTouch(offset);
+			}
+		}
+	}
 
-		System.arraycopy(loadedMemory, BaseScreen.SCREEN_START, memory, BaseScreen.SCREEN_START,
-				memory.length - BaseScreen.SCREEN_START);
+	/**
+	 * Read a byte from memory; a read from contended memory is first delayed
+	 * as given by the contention table, at the T-State of the read (see
+	 * <TT>m_access</TT>.)
+	 */
+	public int read8(final int addr16) {
+		final int page = addr16 >> 14;
+		if (m_pageContended[page]) {
+			final int delay = m_contention[m_access];
+			m_tstates += delay;
+			m_access += delay;
+		}
+		m_access += 3;
+		return m_pages[page][addr16 & 0x3fff] & 0xff;
+	}
 
+	/**
+	 * Read a byte from memory without delaying the CPU, for tracing and
+	 * debugging.
+	 */
+	public int peek8(final int addr16) {
+		return m_pages[addr16 >> 14][addr16 & 0x3fff] & 0xff;
 	}
 
-	public static int read16(final int addr16) {
-		// Log.w("Z80.read16", Integer.toString(addr16));
-		// Log.w("Z80.read16", Integer.toString(memory.length));
-		return ((memory[addr16 + 1] & 0xff) << 8) | (memory[addr16] & 0xff);
+	/**
+	 * Run a memory cycle whose data is not used, such as the operand of a
+	 * conditional jump that is not taken; it is delayed like a read of the
+	 * given address.
+	 */
+	private void contend(final int addr16) {
+		if (m_pageContended[addr16 >> 14]) {
+			final int delay = m_contention[m_access];
+			m_tstates += delay;
+			m_access += delay;
+		}
+		m_access += 3;
 	}
 
-	public static void write16(final int addr16, final int val16) {
-		// Log.w("Z80.write16", Integer.toString(addr16));
-		memory[addr16] = (byte) (val16 & 0xff);
-		memory[(addr16 + 1) & 0xffff] = (byte) (val16 >> 8);
-		if (addr16 >= BaseScreen.SCREEN_START
-				&& addr16 <= BaseScreen.SCREEN_END) {
-			if (addr16 < (BaseScreen.SCREEN_START + BaseScreen.PIXEL_LENGTH)) {
-				BaseScreen.screenTouch(addr16);
-				BaseScreen.screenTouch(addr16 + 1);
-			} else if (addr16 < (BaseScreen.SCREEN_START
-					+ BaseScreen.PIXEL_LENGTH + BaseScreen.ATTR_LENGTH)) {
-				BaseScreen.attrTouch(addr16);
-				BaseScreen.attrTouch(addr16 + 1);
+	/**
+	 * Run the given number of internal T-States of the current instruction.
+	 * <P>
+	 * The CPU leaves the given address on the bus meanwhile, so each of those
+	 * T-States is delayed if the address is contended.
+	 */
+	private void idle(final int addr16, final int tstates) {
+		if (m_pageContended[addr16 >> 14]) {
+			for (int i = 0; i < tstates; i++) {
+				final int delay = m_contention[m_access];
+				m_tstates += delay;
+				m_access += delay + 1;
 			}
+		} else {
+			m_access += tstates;
 		}
 	}
 
-	public static void write8(final int addr16, final int val8) {
-		// RAM0 is read-only
-		if (addr16 < BaseScreen.SCREEN_START) {
+	/**
+	 * Delay the CPU for an I/O access to the given port, if it contends with
+	 * the ULA.
+	 * <P>
+	 * The I/O cycle takes 4 T-States from <TT>m_access</TT>, which are
+	 * already counted by the instruction. The ULA delays it when the port is even (it is the ULA
+	 * port) or when the high byte of the port looks like an address in
+	 * contended memory (the ULA cannot tell the two apart); in the latter
+	 * case, every T-State of the cycle may be delayed.
+	 */
+	public void contendIO(final int port16) {
+		if (m_contention == null) {
+			m_access += 4;
+			return;
+		}
+		final byte[] contention = m_contention;
+		int tstates = m_access;
+		if ((port16 & BaseIO.B_ULA) == 0) {
+			if (m_pageContended[port16 >> 14]) {
+				tstates += contention[tstates];
+			}
+			tstates += 1;
+			tstates += contention[tstates] + 3;
+		} else if (m_pageContended[port16 >> 14]) {
+			for (int i = 0; i < 4; i++) {
+				tstates += contention[tstates] + 1;
+			}
+		} else {
+			m_access += 4;
 			return;
 		}
-		memory[addr16] = (byte) val8;
-		if (addr16 >= BaseScreen.SCREEN_START
-				&& addr16 <= BaseScreen.SCREEN_END) {
-			if (addr16 < (BaseScreen.SCREEN_START + BaseScreen.PIXEL_LENGTH))
-				BaseScreen.screenTouch(addr16);
-			else if (addr16 < (BaseScreen.SCREEN_START
-					+ BaseScreen.PIXEL_LENGTH + BaseScreen.ATTR_LENGTH))
-				BaseScreen.attrTouch(addr16);
+		m_tstates += tstates - m_access - 4;
+		m_access = tstates;
+	}
+
+	/**
+	 * Emulate the memory and I/O contention with the given table, or turn it
+	 * off if the table is null.
+	 * 
+	 * @see BaseSpectrum#getContentionTable
+	 */
+	public void setContention(final byte[] contention) {
+		m_contention = contention;
+		for (int page = 0; page < PAGES; page++) {
+			m_pageContended[page] = (contention != null && m_contendedMemory[page]);
+		}
+	}
+
+	/**
+	 * Make the writes to the screen pages touch the screen (see
+	 * <TT>BaseScreen.screenTouch()</TT>), or let them be plain RAM writes,
+	 * when the screen finds its changes by itself.
+	 */
+	public void setScreenHooks(final boolean hooks) {
+		m_screenHooks = hooks;
+		for (int page = 0; page < PAGES; page++) {
+			m_pageModes[page] = pageMode(m_mappedModes[page]);
+		}
+	}
+
+	/**
+	 * Return the mode in which a page mapped with the given mode is accessed.
+	 */
+	private int pageMode(final int mode) {
+		return (mode == PAGE_SCREEN && !m_screenHooks ? PAGE_RAM : mode);
+	}
+
+	/**
+	 * Trivial accessor for the memory mapped at the given 16K page.
+	 */
+	public byte[] getPage(final int page) {
+		return m_pages[page];
+	}
+
+	/**
+	 * Accessor for the given 16K RAM bank, which is allocated the first time
+	 * it is needed.
+	 */
+	public byte[] getBank(final int bank) {
+		if (m_banks[bank] == null) {
+			m_banks[bank] = new byte[PAGE_SIZE];
 		}
+		return m_banks[bank];
 	}
 
-	public static int read8(final int addr16) {
-		return memory[addr16] & 0xff;
+	/**
+	 * Accessor for the given 16K ROM, which is allocated the first time it is
+	 * needed.
+	 */
+	public byte[] getROM(final int rom) {
+		if (m_roms[rom] == null) {
+			m_roms[rom] = new byte[PAGE_SIZE];
+		}
+		return m_roms[rom];
 	}
 
-	public static byte[] getMemory() {
-		return memory;
+	/**
+	 * Map the given memory at the given 16K page of the address space.
+	 * <P>
+	 * Only the reference is stored, so this costs the same whatever the size
+	 * of the page.
+	 * 
+	 * @param page
+	 *            The page (0 - 3) of the address space.
+	 * @param memory
+	 *            The 16K of memory to map.
+	 * @param mode
+	 *            One of PAGE_RAM, PAGE_ROM or PAGE_SCREEN.
+	 * @param contended
+	 *            True if the memory is contended by the ULA.
+	 */
+	public void mapPage(final int page, final byte[] memory, final int mode,
+			final boolean contended) {
+		m_pages[page] = memory;
+		m_mappedModes[page] = mode;
+		m_pageModes[page] = pageMode(mode);
+		m_contendedMemory[page] = contended;
+		m_pageContended[page] = (m_contention != null && contended);
 	}
 
-	public static void readROM() throws IOException {
-		InputStream is = BaseSpectrum.getRomIS();
+	/**
+	 * Read the ROM image: the first 16K go to ROM 0, and the next 16K (if
+	 * any, as in the 32K image of the 128k) go to ROM 1.
+	 */
+	public void readROM() throws IOException {
+		InputStream is = m_spectrum.getRomIS();
 		try {
-			int offset = 0;
-			while (true) {
-				int length = is.read(memory, offset, memory.length - offset);
-				if (length <= 0) {
-					break;
-				} else {
-					offset += length;
+			for (int i = 0; i < ROMS; i++) {
+				byte[] rom = getROM(i);
+				int offset = 0;
+				while (offset < rom.length) {
+					int length = is.read(rom, offset, rom.length - offset);
+					if (length <= 0) {
+						return;
+					} else {
+						offset += length;
+					}
 				}
 			}
 		} finally {
@@ -4,8 +4,6 @@ package org.razvan.jzx;
 import java.io.IOException;
 import java.io.InputStream;
 
-import android.util.Log;
-
 /**
  * Z80 Snapshot loader.
  * <P>
@@ -50,6 +48,10 @@ public class Z80Loader extends BaseLoader {
 		super();
 	}
 
+	public Z80Loader(ILogger logger) {
+		super(logger);
+	}
+
 	/**
 	 * Load the header and the body for the given snapshot name.
 	 * <P>
@@ -318,7 +320,7 @@ public class Z80Loader extends BaseLoader {
 			if (m_mode <= mode48max) {
 				// 48k mode
 				if (m_mode == 2) {
-					Log.d(getClass().getName(),
+					m_logger.log(ILogger.C_DEBUG,
 							"SamRam not supported; defaulting to 48k");
 
 					m_mode = MODE_48;
@@ -327,12 +329,12 @@ public class Z80Loader extends BaseLoader {
 					}
 				} else {
 					if (m_mode == mode48if1) {
-						Log.d(getClass().getName(),
+						m_logger.log(ILogger.C_DEBUG,
 								"IF1 not supported; defaulting to 48k");
 					}
 
 					if (m_mode == mode48mgt) {
-						Log.d(getClass().getName(),
+						m_logger.log(ILogger.C_DEBUG,
 								"MGT not supported; defaulting to 48k");
 					}
 
@@ -344,12 +346,12 @@ public class Z80Loader extends BaseLoader {
 			} else if (m_mode <= mode128max) {
 				// 128k mode
 				if (m_mode == mode128if1) {
-					Log.d(getClass().getName(),
+					m_logger.log(ILogger.C_DEBUG,
 							"IF1 not supported; defaulting to 128k");
 				}
 
 				if (m_mode == mode128mgt) {
-					Log.d(getClass().getName(),
+					m_logger.log(ILogger.C_DEBUG,
 							"MGT not supported; defaulting to 48k");
 				}
 
@@ -395,6 +397,7 @@ public class Z80Loader extends BaseLoader {
 		}
 
 		int jzxPage;
+		byte[] target = m_memory;
 
 		// Convert Z80 page number to JZXFrame ones
 		if (m_mode == MODE_48) {
@@ -413,7 +416,14 @@ public class Z80Loader extends BaseLoader {
 						+ page);
 			}
 		} else {
-			jzxPage = 1;
+			// Pages 3 - 10 hold RAM banks 0 - 7.
+			if (page < 3 || page > 10) {
+				throw new IOException("Invalid page number for 128k snapshot: "
+						+ page);
+			}
+			m_banks[page - 3] = new byte[0x4000];
+			target = m_banks[page - 3];
+			jzxPage = 0;
 		}
 
 		// The structure of a memory block is:
@@ -434,7 +444,7 @@ public class Z80Loader extends BaseLoader {
 						+ length);
 			}
 			System
-					.arraycopy(t_mem, 0, m_memory, 0x4000 * jzxPage,
+					.arraycopy(t_mem, 0, target, 0x4000 * jzxPage,
 							t_mem.length);
 		} else {
 			byte[] memory = new byte[0x4000];
@@ -497,7 +507,7 @@ public class Z80Loader extends BaseLoader {
 				throw new IOException("Block " + block + " contains only: "
 						+ addr + " bytes");
 			}
-			System.arraycopy(memory, 0, m_memory, 0x4000 * jzxPage,
+			System.arraycopy(memory, 0, target, 0x4000 * jzxPage,
 					memory.length);
 		}
 	}
@@ -0,0 +1,115 @@
+package org.razvan.jzx.v128;
+
+import org.razvan.jzx.BaseIO;
+import org.razvan.jzx.BaseLoader;
+import org.razvan.jzx.Z80;
+
+/**
+ * The 128k model specialization of the BaseIO class.
+ * <P>
+ * Besides the ports of the 48k, the 128k decodes the paging port 0x7FFD,
+ * which selects:
+ * <UL>
+ * <LI>The RAM bank (0 - 7) mapped at 0xC000 (bits 0 - 2.)</LI>
+ * <LI>The screen bank: 5, or the shadow screen in bank 7 (bit 3.)</LI>
+ * <LI>The ROM mapped at 0x0000: the 128k editor or 48k BASIC (bit 4.)</LI>
+ * <LI>Whether paging is locked until the next reset (bit 5.)</LI>
+ * </UL>
+ * <P>
+ * Paging only changes which bank the CPU has mapped at each 16K page (see
+ * <TT>Z80.mapPage()</TT>); no memory is ever copied, so programs can page as
+ * often as they like.
+ */
+public class IO extends BaseIO {
+	/** Port address for the memory paging register. */
+	public static final int P_PAGING = 0x7ffd;
+
+	/** Bit mask used to determine the RAM bank mapped at 0xC000. */
+	public static final int B_RAM = 0x07;
+
+	/** Bit mask used to determine if the shadow screen is displayed. */
+	public static final int B_SHADOW = 0x08;
+
+	/** Bit mask used to determine the ROM mapped at 0x0000. */
+	public static final int B_ROM = 0x10;
+
+	/** Bit mask used to determine if paging is locked. */
+	public static final int B_LOCK = 0x20;
+
+	/** The last value written to the paging port. */
+	private int m_last0x7ffd;
+
+	/**
+	 * Reset the port arrays and page in the 128k editor ROM, RAM bank 0 and
+	 * the normal screen.
+	 */
+	public void reset() {
+		super.reset();
+		page(0);
+	}
+
+	/**
+	 * Process an I/O "out" request.
+	 * <P>
+	 * The paging port is decoded on A15 and A1 both being zero; writes to it
+	 * are ignored once paging has been locked.
+	 * 
+	 * @see BaseIO#out
+	 */
+	public void out(final int port16, final int val8) {
+		super.out(port16, val8);
+
+		if ((port16 & 0x8002) == 0 && (m_last0x7ffd & B_LOCK) == 0) {
+			page(val8);
+		}
+	}
+
+	/**
+	 * Trivial accessor for the last value written to the paging port.
+	 */
+	public int getLast0x7ffd() {
+		return m_last0x7ffd;
+	}
+
+	/**
+	 * Map the ROM and RAM banks selected by the given paging value.
+	 * <P>
+	 * Bank 5 is always mapped at 0x4000 and bank 2 at 0x8000. Whichever bank
+	 * holds the displayed screen is mapped in screen mode, so that writes to
+	 * it are tracked, and the other banks in plain RAM mode. The odd banks are
+	 * contended by the ULA.
+	 */
+	private void page(final int val8) {
+		m_last0x7ffd = val8;
+
+		final int screen = ((val8 & B_SHADOW) != 0 ? Z80.BANK_SHADOW
+				: Z80.BANK_SCREEN);
+		final int bank = (val8 & B_RAM);
+		m_screen.setPage(screen);
+
+		m_cpu.mapPage(0, m_cpu.getROM((val8 & B_ROM) >> 4), Z80.PAGE_ROM,
+				false);
+		m_cpu.mapPage(1, m_cpu.getBank(Z80.BANK_SCREEN),
+				(screen == Z80.BANK_SCREEN ? Z80.PAGE_SCREEN : Z80.PAGE_RAM),
+				true);
+		m_cpu.mapPage(3, m_cpu.getBank(bank),
+				(screen == bank ? Z80.PAGE_SCREEN : Z80.PAGE_RAM),
+				(bank & 1) != 0);
+	}
+
+	/**
+	 * Extract the saved border color and paging value.
+	 * <P>
+	 * A 48k snapshot runs with the 48k BASIC ROM and RAM bank 0 paged in, and
+	 * paging locked, as if the 128k had been switched to 48k mode.
+	 */
+	public void load(BaseLoader loader) {
+		super.load(loader);
+
+		if (loader.getMode() == BaseLoader.MODE_128) {
+			page(loader.getLast0x7ffd());
+		} else {
+			page(B_ROM | B_LOCK);
+		}
+	}
+}
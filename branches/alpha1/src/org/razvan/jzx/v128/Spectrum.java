@@ -0,0 +1,39 @@
+package org.razvan.jzx.v128;
+
+import org.razvan.jzx.BaseIO;
+import org.razvan.jzx.BaseSpectrum;
+
+/**
+ * The 128k model specialization of the BaseSpectrum class.
+ * <P>
+ * The ROM stream given to <TT>init()</TT> should hold the 32K image of the
+ * 128k: the 128k editor ROM followed by the 48k BASIC ROM.
+ * <P>
+ * Besides its memory paging (see {@link IO}), the 128k differs from the 48k
+ * in its TV timings, and so in its memory contention table.
+ */
+public class Spectrum extends BaseSpectrum {
+	/** The CPU clock of the 128k Spectrum, in Hz. */
+	public static final int CLOCK_128 = 3546900;
+
+	/**
+	 * Create a 128k Spectrum: 311 lines of 228 T-States, with the screen
+	 * starting 14361 T-States after the interrupt, and a 3.5469MHz CPU.
+	 */
+	public Spectrum() {
+		super(311, 228, 14361, CLOCK_128);
+	}
+
+	/**
+	 * Allocate the 128k I/O component.
+	 */
+	protected BaseIO createIO() {
+		return new IO();
+	}
+
+	/** String that describes the type of Spectrum ("128"). */
+	public String getMode() {
+		return "128";
+	}
+
+}
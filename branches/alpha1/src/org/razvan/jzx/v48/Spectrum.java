@@ -1,7 +1,6 @@
 package org.razvan.jzx.v48;
 
-import java.io.InputStream;
-
+import org.razvan.jzx.BaseIO;
 import org.razvan.jzx.BaseSpectrum;
 
 /**
@@ -16,13 +15,11 @@ import org.razvan.jzx.BaseSpectrum;
  */
 public class Spectrum extends BaseSpectrum {
 
-	private static boolean noCache;
-
-	public Spectrum(InputStream is) {
-	}
-
-	public static void setNoCache(boolean noCache) {
-		Spectrum.noCache = noCache;
+	/**
+	 * Allocate the 48k I/O component.
+	 */
+	protected BaseIO createIO() {
+		return new IO();
 	}
 
-}
\ No newline at end of file
+}